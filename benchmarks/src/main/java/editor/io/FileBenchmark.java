@@ -0,0 +1,92 @@
+package editor.io;
+
+import editor.document.MappedText;
+import editor.document.Rope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reading and writing files, as Text Editor opens and saves them.
+ * <p>
+ * Files are generated in temporary directory: lines of Latin and Cyrillic words, so UTF-8 decoder
+ * meets both one-byte and two-byte characters. Small files are opened by {@link DocumentReader}
+ * after {@link TextEncoding#detect(Path)}, that is compared with {@link Files#readString(Path)},
+ * large ones are memory-mapped by {@link MappedText}, and all files are saved by {@link DocumentWriter}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileBenchmark {
+    private static final String[] WORDS = {"text", "editor", "search", "pattern", "текст", "поиск", "\n"};
+
+    @Param({"1048576", "67108864"})
+    private int fileSize;
+
+    private Path directory;
+    private Path source;
+    private Path target;
+    private Rope text;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Random random = new Random(42);
+        final StringBuilder content = new StringBuilder(fileSize);
+        while (content.length() < fileSize) {
+            content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        directory = Files.createTempDirectory("editor-benchmark");
+        source = directory.resolve("source.txt");
+        target = directory.resolve("target.txt");
+        Files.writeString(source, content, StandardCharsets.UTF_8);
+        text = Rope.of(content);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int readString() throws IOException {
+        return Files.readString(source).length();
+    }
+
+    @Benchmark
+    public int readDetected() throws IOException {
+        return new DocumentReader(TextEncoding.detect(source)).read(source).length();
+    }
+
+    @Benchmark
+    public int openMapped() throws IOException {
+        return MappedText.open(source).length();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        new DocumentWriter(TextEncoding.DEFAULT, progress -> {
+        }).write(text, target);
+    }
+}
@@ -0,0 +1,114 @@
+package editor.search;
+
+import editor.document.Rope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks of search engines, that are used by search strategies, without GUI.
+ * <p>
+ * Every benchmark finds all occurrences of pattern in generated text, in the same way,
+ * as the strategy does it: {@link SimpleSearcher} goes from occurrence to occurrence by {@link LiteralMatcher},
+ * {@link RegexSearcher} scans text by {@link LinearRegex} or, for unsupported syntax,
+ * by {@link ParallelRegexScanner}, and {@link KeywordSearcher} scans text by {@link AhoCorasick}.
+ * Pattern is the same random word for all engines, so their results are comparable.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int MEGABYTE = 1 << 20;
+
+    @Param({"1048576", "16777216"})
+    private int textSize;
+
+    @Param({"4", "32"})
+    private int patternLength;
+
+    /**
+     * Number of inserted occurrences per megabyte of text
+     */
+    @Param({"1", "1024"})
+    private int density;
+
+    private Rope text;
+    private LiteralMatcher literal;
+    private LinearRegex linear;
+    private Pattern regex;
+    private AhoCorasick keywords;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final String pattern = randomWord(random, patternLength);
+        final char[] chars = new char[textSize];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = random.nextInt(8) == 0 ? (random.nextInt(8) == 0 ? '\n' : ' ') : (char) ('a' + random.nextInt(26));
+        }
+        final int step = Math.max(MEGABYTE / density, patternLength);
+        for (int i = random.nextInt(step); i + patternLength <= chars.length; i += step) {
+            pattern.getChars(0, patternLength, chars, i);
+        }
+        text = Rope.wrap(new String(chars));
+        literal = LiteralMatcher.compile(pattern);
+        regex = Pattern.compile(pattern);
+        linear = LinearRegex.compile(regex);
+        keywords = AhoCorasick.compile(List.of(pattern, randomWord(random, patternLength), randomWord(random, 2)));
+    }
+
+    private static String randomWord(final Random random, final int length) {
+        final StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    @Benchmark
+    public int literal() {
+        int count = 0;
+        for (int index = literal.indexOf(text, 0); index != -1; index = literal.indexOf(text, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int linearRegex() {
+        final int[] count = new int[1];
+        linear.scan(text, (start, length) -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public int backtrackingRegex() {
+        final int[] count = new int[1];
+        new ParallelRegexScanner(regex).scan(text, (start, length) -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public int keywords() {
+        final int[] count = new int[1];
+        keywords.scan(text, (start, length) -> count[0]++);
+        return count[0];
+    }
+}
@@ -1,9 +1,27 @@
 package editor;
 
+import editor.cli.SearchCommand;
+import editor.metrics.Metrics;
+
 import javax.swing.*;
 
 public class ApplicationRunner {
+    /**
+     * Event dispatch thread, that is blocked for longer time, is recorded as stall
+     */
+    private static final long EDT_STALL_MILLIS = 100;
+
+    /**
+     * Starts GUI, or runs {@link SearchCommand} without GUI, if there are arguments
+     *
+     * @param args command line of headless search
+     */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(SearchCommand.run(args, System.in, System.out, System.err));
+        }
+        Metrics.getInstance().registerMBean();
+        Metrics.getInstance().watchEventDispatchThread(EDT_STALL_MILLIS);
         SwingUtilities.invokeLater(TextEditor::new);
     }
 }
@@ -1,5 +1,7 @@
 package editor;
 
+import editor.search.FileMatch;
+
 import javax.swing.*;
 
 /**
@@ -29,11 +31,51 @@ public interface Controller {
      */
     void onOpen();
 
+    /**
+     * Action when user clicks "{@code MenuClose}" item
+     */
+    void onClose();
+
+    /**
+     * Action when user selects tab of document in "{@code DocumentTabs}"
+     *
+     * @param index index of selected tab, or {@code -1}, if no tab is selected
+     */
+    void onTabSelected(final int index);
+
     /**
      * Action when user clicks "{@code UseRegExCheckbox}" button or "{@code MenuUseRegExp}" item
      */
     void onCheckBoxClick();
 
+    /**
+     * Action when user clicks "{@code MenuUseKeywords}" item
+     */
+    void onKeywordsCheckBoxClick();
+
+    /**
+     * Action when user clicks "{@code MenuUndo}" item
+     */
+    void onUndo();
+
+    /**
+     * Action when user clicks "{@code MenuRedo}" item
+     */
+    void onRedo();
+
+    /**
+     * Action when user clicks "{@code MenuGoToLine}" item
+     */
+    void onGoToLine();
+
+    /**
+     * Action when caret or selection of "{@code TextArea}" is moved
+     *
+     * @param dot position of caret
+     * @param mark other end of selection, it equals {@code dot}, if nothing is selected
+     */
+    void onCaretUpdate(final int dot, final int mark);
+
     /**
      * Action when user clicks "{@code MenuExit}" item
      */
@@ -44,6 +86,11 @@ public interface Controller {
      */
     void onSearch();
 
+    /**
+     * Action when user edits text of "{@code SearchField}"
+     */
+    void onSearchFieldEdit();
+
     /**
      * Action when user clicks "{@code PreviousMatchButton}" or "{@code MenuPreviousMatch}" item
      */
@@ -54,6 +101,31 @@ public interface Controller {
      */
     void onNextMatch();
 
+    /**
+     * Action when user clicks "{@code MenuReplace}" item
+     */
+    void onReplace();
+
+    /**
+     * Action when user clicks "{@code MenuReplaceAll}" item
+     */
+    void onReplaceAll();
+
+    /**
+     * Action when user clicks "{@code MenuFindInFiles}" item
+     */
+    void onFindInFiles();
+
+    /**
+     * Action when user double-clicks occurrence in "{@code FileMatchesList}"
+     */
+    void onOpenFileMatch();
+
+    /**
+     * Action when user clicks "{@code MenuFollow}" item
+     */
+    void onFollow();
+
     /**
      * Sets {@link JFileChooser} to {@link Controller} instance
      *
@@ -75,10 +147,31 @@ public interface Controller {
      */
     void setCheckbox(final JCheckBox regexpCheckBox);
 
+    /**
+     * Sets {@link JCheckBox} of keywords search to {@link Controller} instance
+     *
+     * @param keywordsCheckBox instance of {@code JCheckBox}
+     */
+    void setKeywordsCheckbox(final JCheckBox keywordsCheckBox);
+
     /**
      * Sets {@link JTextField} to {@link Controller} instance
      *
      * @param searchField instance of {@code JTextField}
      */
     void setSearchField(final JTextField searchField);
+
+    /**
+     * Sets {@link JTextField} of replacement to {@link Controller} instance
+     *
+     * @param replaceField instance of {@code JTextField}
+     */
+    void setReplaceField(final JTextField replaceField);
+
+    /**
+     * Sets {@link JList} of occurrences in files to {@link Controller} instance
+     *
+     * @param fileMatchesList instance of {@code JList}
+     */
+    void setFileMatchesList(final JList<FileMatch> fileMatchesList);
 }
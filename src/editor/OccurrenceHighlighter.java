@@ -0,0 +1,88 @@
+package editor;
+
+import editor.search.EmptySearcher;
+import editor.search.Searchable;
+
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+import java.awt.geom.Point2D;
+
+/**
+ * Highlighter, that paints all occurrences of pattern under text and selection.
+ * <p>
+ * Occurrences are not added as highlights of {@link DefaultHighlighter}, that paints all its highlights
+ * on every repaint. Instead, on every paint they are requested from search strategy only for the range
+ * of text, that is inside the repainted rectangle, so repaint cost depends on the size of viewport
+ * and not on the number of occurrences.
+ * </p>
+ */
+class OccurrenceHighlighter extends DefaultHighlighter {
+    private static final Highlighter.HighlightPainter PAINTER =
+            new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 236, 139));
+
+    private JTextComponent component;
+    private volatile Searchable occurrences = new EmptySearcher();
+
+    /**
+     * Sets source of occurrences and repaints component. Can be called from any thread
+     *
+     * @param occurrences strategy, that reports occurrences in range of text
+     */
+    void setOccurrences(final Searchable occurrences) {
+        this.occurrences = occurrences;
+        final JTextComponent installed = component;
+        if (installed != null) {
+            installed.repaint();
+        }
+    }
+
+    @Override
+    public void install(final JTextComponent component) {
+        super.install(component);
+        this.component = component;
+    }
+
+    @Override
+    public void deinstall(final JTextComponent component) {
+        super.deinstall(component);
+        this.component = null;
+    }
+
+    @Override
+    public void paint(final Graphics g) {
+        paintOccurrences(g);
+        super.paint(g);
+    }
+
+    private void paintOccurrences(final Graphics g) {
+        final Rectangle clip = g.getClipBounds() != null ? g.getClipBounds() : component.getVisibleRect();
+        final Rectangle bounds = innerBounds();
+        final Rectangle visible = clip.intersection(bounds);
+        if (visible.isEmpty()) {
+            return;
+        }
+        // offsets between the top left and the bottom right corners include all characters inside rectangle
+        final int from = component.viewToModel2D(new Point2D.Double(visible.x, visible.y));
+        final int to = component.viewToModel2D(new Point2D.Double(visible.getMaxX(), visible.getMaxY()));
+        if (from < 0 || to < 0) {
+            return;
+        }
+        occurrences.forEachOccurrence(from, to + 1, (start, length) -> {
+            if (length > 0 && start + length <= component.getDocument().getLength()) {
+                PAINTER.paint(g, start, start + length, bounds, component);
+            }
+        });
+    }
+
+    private Rectangle innerBounds() {
+        final Rectangle bounds = component.getBounds();
+        final Insets insets = component.getInsets();
+        bounds.x = insets.left;
+        bounds.y = insets.top;
+        bounds.width -= insets.left + insets.right;
+        bounds.height -= insets.top + insets.bottom;
+        return bounds;
+    }
+}
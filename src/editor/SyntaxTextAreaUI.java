@@ -0,0 +1,20 @@
+package editor;
+
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.PlainView;
+import javax.swing.text.View;
+
+/**
+ * UI of text area, that paints documents by {@link SyntaxView}.
+ * <p>
+ * Only plain view is replaced: wrapped and bidirectional text are painted by views of {@link BasicTextAreaUI}.
+ * </p>
+ */
+class SyntaxTextAreaUI extends BasicTextAreaUI {
+    @Override
+    public View create(final Element element) {
+        final View view = super.create(element);
+        return view.getClass() == PlainView.class ? new SyntaxView(element) : view;
+    }
+}
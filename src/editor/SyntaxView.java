@@ -0,0 +1,161 @@
+package editor;
+
+import editor.syntax.SyntaxHighlighter;
+import editor.syntax.TokenConsumer;
+import editor.syntax.TokenType;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainView;
+import javax.swing.text.Segment;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * View of plain text, that paints tokens of lines in colors of their types.
+ * <p>
+ * Tokens are requested from {@link SyntaxHighlighter} of document only for lines, that are painted,
+ * so paint cost depends on the size of viewport. Document without highlighter is painted as by {@link PlainView}.
+ * Selected text keeps color of selection.
+ * </p>
+ */
+class SyntaxView extends PlainView implements ChangeListener {
+    private static final Map<TokenType, Color> COLORS = new EnumMap<>(Map.of(
+            TokenType.KEYWORD, new Color(0, 0, 160),
+            TokenType.LITERAL, new Color(0, 0, 160),
+            TokenType.NUMBER, new Color(25, 80, 200),
+            TokenType.STRING, new Color(6, 125, 23),
+            TokenType.COMMENT, new Color(128, 128, 128),
+            TokenType.ANNOTATION, new Color(128, 128, 0),
+            TokenType.PROPERTY, new Color(135, 16, 148),
+            TokenType.TIMESTAMP, new Color(0, 128, 128),
+            TokenType.WARNING, new Color(180, 110, 0),
+            TokenType.ERROR, new Color(200, 0, 0)
+    ));
+
+    private final LineTokens tokens = new LineTokens();
+    private final Segment text = new Segment();
+    private final Segment run = new Segment();
+
+    /**
+     * Highlighter, that this view listens to
+     */
+    private SyntaxHighlighter highlighter;
+
+    SyntaxView(final Element element) {
+        super(element);
+    }
+
+    @Override
+    public void setParent(final View parent) {
+        super.setParent(parent);
+        if (parent == null) {
+            listen(null);
+        }
+    }
+
+    /**
+     * Highlighter may be installed or replaced after view is created, like when document is saved
+     * to file of another language, so it is looked up on every paint
+     */
+    @Override
+    public void paint(final Graphics g, final Shape a) {
+        listen(SyntaxHighlighter.of(getDocument()));
+        super.paint(g, a);
+    }
+
+    @Override
+    public void stateChanged(final ChangeEvent e) {
+        final Container host = getContainer();
+        if (host != null) {
+            host.repaint();
+        }
+    }
+
+    @Override
+    protected float drawUnselectedText(final Graphics2D g, final float x, final float y, final int p0, final int p1)
+            throws BadLocationException {
+        final JTextComponent host = (JTextComponent) getContainer();
+        if (highlighter == null || !host.isEnabled()) {
+            return super.drawUnselectedText(g, x, y, p0, p1);
+        }
+        final Element root = getElement();
+        final int line = root.getElementIndex(p0);
+        final int lineStart = root.getElement(line).getStartOffset();
+        tokens.count = 0;
+        highlighter.tokens(line, tokens);
+        getDocument().getText(p0, p1 - p0, text);
+
+        final Color plain = host.getForeground();
+        float position = x;
+        int offset = p0;
+        for (int i = 0; i < tokens.count && offset < p1; i++) {
+            final int start = Math.max(offset, lineStart + tokens.starts[i]);
+            final int end = Math.min(p1, lineStart + tokens.ends[i]);
+            if (start < end) {
+                position = drawRun(g, position, y, p0, offset, start, plain);
+                position = drawRun(g, position, y, p0, start, end, COLORS.get(tokens.types[i]));
+                offset = end;
+            }
+        }
+        return drawRun(g, position, y, p0, offset, p1, plain);
+    }
+
+    /**
+     * Draws characters from {@code from} to {@code to} of {@code text}, that starts at {@code p0}
+     */
+    private float drawRun(final Graphics2D g, final float x, final float y, final int p0,
+                          final int from, final int to, final Color color) {
+        if (from >= to) {
+            return x;
+        }
+        run.array = text.array;
+        run.offset = text.offset + from - p0;
+        run.count = to - from;
+        g.setColor(color);
+        return Utilities.drawTabbedText(run, x, y, g, this, from);
+    }
+
+    private void listen(final SyntaxHighlighter current) {
+        if (current == highlighter) {
+            return;
+        }
+        if (highlighter != null) {
+            highlighter.removeChangeListener(this);
+        }
+        highlighter = current;
+        if (current != null) {
+            current.addChangeListener(this);
+        }
+    }
+
+    /**
+     * Tokens of painted line, arrays are reused for all lines
+     */
+    private static final class LineTokens implements TokenConsumer {
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private TokenType[] types = new TokenType[64];
+        private int count;
+
+        @Override
+        public void accept(final int start, final int end, final TokenType type) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+                types = Arrays.copyOf(types, 2 * count);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            types[count] = type;
+            count++;
+        }
+    }
+}
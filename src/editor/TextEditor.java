@@ -1,8 +1,22 @@
 package editor;
 
+import editor.document.TextDocument;
+import editor.io.Progress;
+import editor.metrics.DiagnosticsPanel;
+import editor.search.FileMatch;
+import editor.search.Searchable;
+
 import javax.swing.*;
+import javax.swing.event.CaretListener;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.nio.file.Path;
 import java.util.Map;
 
@@ -30,16 +44,28 @@ public class TextEditor extends JFrame implements View {
             "NextMatchButton", resolveImage("right-arrow-button.png")
     );
 
-    private static final Map<String, String> NAME_TO_TEXT = Map.of(
-            "MenuFile", "File",
-            "MenuSearch", "Search",
-            "MenuOpen", "Open",
-            "MenuSave", "Save",
-            "MenuExit", "Exit",
-            "MenuStartSearch", "Start search",
-            "MenuPreviousMatch", "Previous match",
-            "MenuNextMatch", "Next match",
-            "MenuUseRegExp", "Use regular expressions"
+    private static final Map<String, String> NAME_TO_TEXT = Map.ofEntries(
+            Map.entry("MenuFile", "File"),
+            Map.entry("MenuEdit", "Edit"),
+            Map.entry("MenuSearch", "Search"),
+            Map.entry("MenuView", "View"),
+            Map.entry("MenuOpen", "Open"),
+            Map.entry("MenuSave", "Save"),
+            Map.entry("MenuClose", "Close"),
+            Map.entry("MenuExit", "Exit"),
+            Map.entry("MenuUndo", "Undo"),
+            Map.entry("MenuRedo", "Redo"),
+            Map.entry("MenuGoToLine", "Go to line"),
+            Map.entry("MenuStartSearch", "Start search"),
+            Map.entry("MenuPreviousMatch", "Previous match"),
+            Map.entry("MenuNextMatch", "Next match"),
+            Map.entry("MenuReplace", "Replace"),
+            Map.entry("MenuReplaceAll", "Replace all"),
+            Map.entry("MenuUseRegExp", "Use regular expressions"),
+            Map.entry("MenuUseKeywords", "Search any of words"),
+            Map.entry("MenuFindInFiles", "Find in files"),
+            Map.entry("MenuFollow", "Follow file"),
+            Map.entry("MenuDiagnostics", "Diagnostics")
     );
 
     private final ActionListener actionSaver = event -> getController().onSave();
@@ -47,10 +73,52 @@ public class TextEditor extends JFrame implements View {
     private final ActionListener actionSearcher = event -> getController().onSearch();
     private final ActionListener actionPrevMatch = event -> getController().onPrevMatch();
     private final ActionListener actionNextMatch = event -> getController().onNextMatch();
+    private final ActionListener actionClose = event -> getController().onClose();
     private final ActionListener actionExit = event -> getController().onExit();
+    private final ActionListener actionUndo = event -> getController().onUndo();
+    private final ActionListener actionRedo = event -> getController().onRedo();
+    private final ActionListener actionGoToLine = event -> getController().onGoToLine();
+    private final ActionListener actionReplace = event -> getController().onReplace();
+    private final ActionListener actionReplaceAll = event -> getController().onReplaceAll();
     private final ActionListener actionCheckBoxClick = event -> getController().onCheckBoxClick();
+    private final ActionListener actionKeywordsCheckBoxClick = event -> getController().onKeywordsCheckBoxClick();
+    private final ActionListener actionFindInFiles = event -> getController().onFindInFiles();
+    private final ActionListener actionFollow = event -> getController().onFollow();
+    private final ActionListener actionDiagnostics = event -> showDiagnostics();
+    private final CaretListener caretTracker = event -> getController().onCaretUpdate(event.getDot(), event.getMark());
+    private final ChangeListener tabSelector = event ->
+            getController().onTabSelected(((JTabbedPane) event.getSource()).getSelectedIndex());
+    private final MouseAdapter fileMatchOpener = new MouseAdapter() {
+        @Override
+        public void mouseClicked(final MouseEvent e) {
+            if (e.getClickCount() == 2) {
+                getController().onOpenFileMatch();
+            }
+        }
+    };
+    private final DocumentListener searchFieldListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(final DocumentEvent e) {
+            getController().onSearchFieldEdit();
+        }
+
+        @Override
+        public void removeUpdate(final DocumentEvent e) {
+            getController().onSearchFieldEdit();
+        }
+
+        @Override
+        public void changedUpdate(final DocumentEvent e) {
+        }
+    };
 
     private final Controller controller;
+    private final JTabbedPane documentTabs = new JTabbedPane();
+    private final JPanel statusPanel = new JPanel(new BorderLayout());
+    private final JLabel statusLabel = new JLabel(" ");
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JLabel caretLabel = new JLabel();
+    private JDialog diagnosticsDialog;
 
     private Controller getController() {
         if (controller == null) {
@@ -72,10 +140,11 @@ public class TextEditor extends JFrame implements View {
         return initAbstractButton(button, name, actionListener);
     }
 
-    private static void addMenuItem(final JMenu menu, final String name, final ActionListener actionListener) {
+    private static JMenuItem addMenuItem(final JMenu menu, final String name, final ActionListener actionListener) {
         final JMenuItem item = new JMenuItem();
         item.setText(NAME_TO_TEXT.get(name));
         menu.add(initAbstractButton(item, name, actionListener));
+        return item;
     }
 
     private void initFrame() {
@@ -89,32 +158,82 @@ public class TextEditor extends JFrame implements View {
         final JFileChooser fileChooser = new JFileChooser();
         fileChooser.setName("FileChooser");
         fileChooser.setVisible(false);
-        add(fileChooser, BorderLayout.PAGE_END);
+        statusPanel.add(fileChooser, BorderLayout.PAGE_END);
         getController().setFileChooser(fileChooser);
     }
 
+    /**
+     * Tabs have no components: all documents are shown in the same {@code textArea}, that is given
+     * the document of selected tab by {@code Controller}
+     */
     private void initTextArea() {
-        final JPanel textPanel = new JPanel();
+        final JPanel textPanel = new JPanel(new BorderLayout());
+        documentTabs.setName("DocumentTabs");
+        documentTabs.setTabLayoutPolicy(JTabbedPane.SCROLL_TAB_LAYOUT);
+        documentTabs.addChangeListener(tabSelector);
+        textPanel.add(documentTabs, BorderLayout.PAGE_START);
 
-        final JTextArea textArea = new JTextArea(11, 35);
+        final JTextArea textArea = new JTextArea(new TextDocument(), null, 11, 35);
         textArea.setName("TextArea");
+        textArea.setUI(new SyntaxTextAreaUI());
+        textArea.setHighlighter(new OccurrenceHighlighter());
+        textArea.addCaretListener(caretTracker);
 
         final JScrollPane scrollPane = new JScrollPane(textArea);
         scrollPane.setName("ScrollPane");
-        textPanel.add(scrollPane);
+        textPanel.add(scrollPane, BorderLayout.CENTER);
 
         add(textPanel, BorderLayout.CENTER);
         getController().setTextArea(textArea);
     }
 
+    private void initFileMatchesList() {
+        final JList<FileMatch> fileMatchesList = new JList<>(new DefaultListModel<>());
+        fileMatchesList.setName("FileMatchesList");
+        fileMatchesList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        fileMatchesList.setVisibleRowCount(11);
+        fileMatchesList.addMouseListener(fileMatchOpener);
+
+        final JScrollPane scrollPane = new JScrollPane(fileMatchesList);
+        scrollPane.setName("FileMatchesScrollPane");
+        scrollPane.setPreferredSize(new Dimension(300, 0));
+        add(scrollPane, BorderLayout.LINE_END);
+        getController().setFileMatchesList(fileMatchesList);
+    }
+
+    private void initStatusBar() {
+        statusLabel.setName("StatusLabel");
+        progressBar.setName("ProgressBar");
+        progressBar.setVisible(false);
+        caretLabel.setName("CaretLabel");
+        caretLabel.setBorder(BorderFactory.createEmptyBorder(0, 8, 0, 4));
+        showCaretPosition(1, 1, 0);
+        final JPanel indicatorsPanel = new JPanel(new BorderLayout());
+        indicatorsPanel.add(progressBar, BorderLayout.CENTER);
+        indicatorsPanel.add(caretLabel, BorderLayout.LINE_END);
+        statusPanel.add(statusLabel, BorderLayout.CENTER);
+        statusPanel.add(indicatorsPanel, BorderLayout.LINE_END);
+        add(statusPanel, BorderLayout.PAGE_END);
+    }
+
     private JTextField initSearchField() {
         final JTextField searchField = new JTextField(15);
         searchField.setPreferredSize(FIELD_DIMENSION);
         searchField.setName("SearchField");
+        searchField.getDocument().addDocumentListener(searchFieldListener);
         getController().setSearchField(searchField);
         return searchField;
     }
 
+    private JTextField initReplaceField() {
+        final JTextField replaceField = new JTextField(10);
+        replaceField.setPreferredSize(FIELD_DIMENSION);
+        replaceField.setName("ReplaceField");
+        replaceField.setToolTipText("Replacement, groups of regular expression are referred by $n and ${name}");
+        getController().setReplaceField(replaceField);
+        return replaceField;
+    }
+
     private JCheckBox initCheckBox() {
         final JCheckBox regexCheckBox = new JCheckBox("Use regex");
         regexCheckBox.setName("UseRegExCheckbox");
@@ -122,13 +241,21 @@ public class TextEditor extends JFrame implements View {
         return regexCheckBox;
     }
 
+    private JCheckBox initKeywordsCheckBox() {
+        final JCheckBox keywordsCheckBox = new JCheckBox("Any of words");
+        keywordsCheckBox.setName("UseKeywordsCheckbox");
+        getController().setKeywordsCheckbox(keywordsCheckBox);
+        return keywordsCheckBox;
+    }
+
     private static JMenu initMenu(final String name) {
         final JMenu menu = new JMenu(NAME_TO_TEXT.get(name));
         menu.setName(name);
         return menu;
     }
 
-    private void initPanel(final JTextField searchField, final JCheckBox regexCheckBox) {
+    private void initPanel(final JTextField searchField, final JTextField replaceField,
+                           final JCheckBox regexCheckBox, final JCheckBox keywordsCheckBox) {
         final JPanel controllerPanel = new JPanel(new FlowLayout());
         controllerPanel.add(initButton("SaveButton", actionSaver));
         controllerPanel.add(initButton("OpenButton", actionOpener));
@@ -136,7 +263,9 @@ public class TextEditor extends JFrame implements View {
         controllerPanel.add(initButton("StartSearchButton", actionSearcher));
         controllerPanel.add(initButton("PreviousMatchButton", actionPrevMatch));
         controllerPanel.add(initButton("NextMatchButton", actionNextMatch));
+        controllerPanel.add(replaceField);
         controllerPanel.add(regexCheckBox);
+        controllerPanel.add(keywordsCheckBox);
         add(controllerPanel, BorderLayout.NORTH);
     }
 
@@ -144,23 +273,49 @@ public class TextEditor extends JFrame implements View {
         final JMenu menuFile = initMenu("MenuFile");
         addMenuItem(menuFile, "MenuOpen", actionOpener);
         addMenuItem(menuFile, "MenuSave", actionSaver);
+        addMenuItem(menuFile, "MenuClose", actionClose);
         addMenuItem(menuFile, "MenuExit", actionExit);
         return menuFile;
     }
 
+    private JMenu initMenuEdit() {
+        final JMenu menuEdit = initMenu("MenuEdit");
+        final int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        addMenuItem(menuEdit, "MenuUndo", actionUndo)
+                .setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+        addMenuItem(menuEdit, "MenuRedo", actionRedo)
+                .setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut | InputEvent.SHIFT_DOWN_MASK));
+        addMenuItem(menuEdit, "MenuGoToLine", actionGoToLine)
+                .setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, shortcut));
+        return menuEdit;
+    }
+
     private JMenu initMenuSearch() {
         final JMenu menuSearch = initMenu("MenuSearch");
         addMenuItem(menuSearch, "MenuStartSearch", actionSearcher);
         addMenuItem(menuSearch, "MenuPreviousMatch", actionPrevMatch);
         addMenuItem(menuSearch, "MenuNextMatch", actionNextMatch);
+        addMenuItem(menuSearch, "MenuReplace", actionReplace);
+        addMenuItem(menuSearch, "MenuReplaceAll", actionReplaceAll);
         addMenuItem(menuSearch, "MenuUseRegExp", actionCheckBoxClick);
+        addMenuItem(menuSearch, "MenuUseKeywords", actionKeywordsCheckBoxClick);
+        addMenuItem(menuSearch, "MenuFindInFiles", actionFindInFiles);
         return menuSearch;
     }
 
+    private JMenu initMenuView() {
+        final JMenu menuView = initMenu("MenuView");
+        addMenuItem(menuView, "MenuFollow", actionFollow);
+        addMenuItem(menuView, "MenuDiagnostics", actionDiagnostics);
+        return menuView;
+    }
+
     private void initMenuBar() {
         final JMenuBar menuBar = new JMenuBar();
         menuBar.add(initMenuFile());
+        menuBar.add(initMenuEdit());
         menuBar.add(initMenuSearch());
+        menuBar.add(initMenuView());
         setJMenuBar(menuBar);
     }
 
@@ -173,26 +328,107 @@ public class TextEditor extends JFrame implements View {
         this.controller = new TextEditorController();
         getController().setView(this);
         initFrame();
+        initStatusBar();
         initFileChooser();
         initTextArea();
+        initFileMatchesList();
         initSearchField();
-        initPanel(initSearchField(), initCheckBox());
+        initPanel(initSearchField(), initReplaceField(), initCheckBox(), initKeywordsCheckBox());
         initMenuBar();
         pack();
         setVisible(true);
     }
 
+    /**
+     * Shows metrics of application in separate window, it isn't related to state of Text Editor
+     */
+    private void showDiagnostics() {
+        if (diagnosticsDialog == null) {
+            diagnosticsDialog = new JDialog(this, "Diagnostics");
+            diagnosticsDialog.setName("DiagnosticsDialog");
+            diagnosticsDialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+            diagnosticsDialog.add(new DiagnosticsPanel());
+            diagnosticsDialog.pack();
+            diagnosticsDialog.setLocationRelativeTo(this);
+        }
+        diagnosticsDialog.setVisible(true);
+    }
+
     @Override
     public void showWarning(final String message, final String title) {
         JOptionPane.showMessageDialog(this, message, title, JOptionPane.WARNING_MESSAGE);
     }
 
     @Override
-    public void highlightText(final JTextArea textArea, final int index, final int length) {
+    public void showProgress(final String title, final Progress progress) {
+        progressBar.setValue(progress.getPercent());
+        progressBar.setVisible(progress.getDone() < progress.getTotal());
+        statusLabel.setText(String.format("%s: %d%% (%.1f MB/s)", title, progress.getPercent(),
+                progress.getBytesPerSecond() / (1 << 20)));
+    }
+
+    @Override
+    public void showStatus(final String message) {
+        progressBar.setVisible(false);
+        statusLabel.setText(message);
+    }
+
+    @Override
+    public boolean confirm(final String message, final String title) {
+        return JOptionPane.showConfirmDialog(this, message, title, JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.WARNING_MESSAGE) == JOptionPane.OK_OPTION;
+    }
+
+    @Override
+    public String ask(final String message, final String title) {
+        return JOptionPane.showInputDialog(this, message, title, JOptionPane.QUESTION_MESSAGE);
+    }
+
+    @Override
+    public void showCaretPosition(final int line, final int column, final int selected) {
+        caretLabel.setText(selected == 0
+                ? String.format("Ln %d, Col %d", line, column)
+                : String.format("Ln %d, Col %d (%d selected)", line, column, selected));
+    }
+
+    @Override
+    public void addTab(final String title, final String tip) {
+        documentTabs.addTab(title, null, null, tip);
+    }
+
+    @Override
+    public void setTabTitle(final int index, final String title, final String tip) {
+        documentTabs.setTitleAt(index, title);
+        documentTabs.setToolTipTextAt(index, tip);
+    }
+
+    @Override
+    public void selectTab(final int index) {
+        documentTabs.setSelectedIndex(index);
+    }
+
+    @Override
+    public void removeTab(final int index) {
+        documentTabs.removeTabAt(index);
+    }
+
+    @Override
+    public void highlightText(final JTextArea textArea, final int index, final int length, final boolean grabFocus) {
         if (index >= 0) {
             textArea.setCaretPosition(index + length);
             textArea.select(index, index + length);
-            textArea.grabFocus();
+            if (grabFocus) {
+                textArea.grabFocus();
+            } else {
+                textArea.getCaret().setSelectionVisible(true);
+            }
+        }
+    }
+
+    @Override
+    public void highlightOccurrences(final JTextArea textArea, final Searchable occurrences) {
+        if (textArea.getHighlighter() instanceof OccurrenceHighlighter) {
+            ((OccurrenceHighlighter) textArea.getHighlighter()).setOccurrences(occurrences);
         }
     }
 }
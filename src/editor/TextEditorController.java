@@ -1,16 +1,45 @@
 package editor;
 
 
+import editor.document.Rope;
+import editor.document.TextDocument;
+import editor.io.DocumentWriter;
+import editor.io.FileFollower;
+import editor.io.Progress;
+import editor.io.TextEncoding;
+import editor.metrics.Counter;
+import editor.metrics.LatencyHistogram;
+import editor.metrics.Metrics;
 import editor.search.EmptySearcher;
+import editor.search.FileMatch;
+import editor.search.FileSearch;
+import editor.search.KeywordSearcher;
 import editor.search.RegexSearcher;
+import editor.search.Replacer;
+import editor.search.SearchLimitException;
+import editor.search.SearchListener;
 import editor.search.Searchable;
 import editor.search.SimpleSearcher;
+import editor.syntax.SyntaxHighlighter;
+import editor.workspace.Autosave;
+import editor.workspace.OpenDocument;
+import editor.workspace.Workspace;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnmappableCharacterException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Main logic class.
@@ -19,13 +48,89 @@ import java.nio.file.Path;
  * changes internal state of GUI components and delegates to {@link TextEditor} drawing GUI
  * </p>
  */
-public class TextEditorController implements Controller {
+public class TextEditorController implements Controller, SearchListener {
+    /**
+     * Estimated heap of all open documents, it can be set in megabytes by {@code -Deditor.documentsBudgetMb}
+     */
+    private static final long DOCUMENTS_BUDGET = Long.getLong("editor.documentsBudgetMb",
+            Runtime.getRuntime().maxMemory() / 4 >> 20) << 20;
+
+    /**
+     * Directory of autosave logs, it can be set by {@code -Deditor.autosaveDir}
+     */
+    private static final Path AUTOSAVE_DIRECTORY = Path.of(System.getProperty("editor.autosaveDir",
+            Path.of(System.getProperty("user.home"), ".text-editor", "autosave").toString()));
+
+    /**
+     * Search as you type starts, when user doesn't edit pattern for this time
+     */
+    private static final int SEARCH_DELAY_MILLIS = 250;
+
+    private static final LatencyHistogram OPEN_TIME = Metrics.getInstance().histogram("file.open");
+    private static final Counter OPEN_BYTES = Metrics.getInstance().counter("file.open.bytes");
+    private static final LatencyHistogram SAVE_TIME = Metrics.getInstance().histogram("file.save");
+    private static final Counter SAVE_BYTES = Metrics.getInstance().counter("file.save.bytes");
+    private static final LatencyHistogram HIGHLIGHT_TIME = Metrics.getInstance().histogram("view.highlight");
+
+    static {
+        Metrics.getInstance().throughput("file.open.bytesPerSecond", OPEN_BYTES, OPEN_TIME);
+        Metrics.getInstance().throughput("file.save.bytesPerSecond", SAVE_BYTES, SAVE_TIME);
+    }
+
     private View view;
     private JTextArea textArea;
     private JTextField searchField;
+    private JTextField replaceField;
     private JCheckBox regexpCheckBox;
+    private JCheckBox keywordsCheckBox;
     private JFileChooser fileChooser;
+    private JList<FileMatch> fileMatchesList;
     private Searchable searcher = new EmptySearcher();
+    private FileSearch fileSearch;
+
+    /**
+     * Follower of file of shown document, or {@code null}, if file isn't followed
+     */
+    private FileFollower follower;
+    private OpenDocument followed;
+
+    /**
+     * Number of the last started following, updates of older followers are ignored
+     */
+    private int followRequests;
+
+    /**
+     * Version of followed document, that has only the end of its rotated file, so it can be reloaded again
+     */
+    private long reloadedVersion = -1;
+    private final Workspace workspace = new Workspace(DOCUMENTS_BUDGET, new Autosave(AUTOSAVE_DIRECTORY));
+
+    /**
+     * Documents in order of their tabs
+     */
+    private final List<OpenDocument> tabs = new ArrayList<>();
+
+    /**
+     * Document of selected tab and document, that is shown in {@code textArea}.
+     * They differ, while selected document is being restored
+     */
+    private OpenDocument selected;
+    private OpenDocument shown;
+
+    /**
+     * Number of the last request to show document, older requests are ignored, when they complete
+     */
+    private int showRequests;
+    private final Timer searchTimer = new Timer(SEARCH_DELAY_MILLIS, event -> searchAsYouType());
+
+    /**
+     * {@code true} while occurrences are highlighted for pattern, that user is typing
+     */
+    private volatile boolean typing;
+
+    public TextEditorController() {
+        searchTimer.setRepeats(false);
+    }
 
     private View getView() {
         if (view == null) {
@@ -39,9 +144,57 @@ public class TextEditorController implements Controller {
         this.view = view;
     }
 
+    /**
+     * Text of {@code textArea} becomes document of the first tab.
+     * Documents with unsaved changes, that were left by crash, are recovered into next tabs
+     */
     @Override
     public void setTextArea(final JTextArea textArea) {
         this.textArea = textArea;
+        if (!(textArea.getDocument() instanceof TextDocument)) {
+            textArea.setDocument(new TextDocument());
+        }
+        selected = workspace.add((TextDocument) textArea.getDocument());
+        shown = selected;
+        workspace.show(shown);
+        tabs.add(shown);
+        getView().addTab(shown.getTitle(), null);
+        recover();
+    }
+
+    private void recover() {
+        final SwingWorker<List<OpenDocument>, Void> recoverWorker = new SwingWorker<>() {
+            @Override
+            protected List<OpenDocument> doInBackground() throws IOException {
+                return workspace.recover();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    final List<OpenDocument> recovered = get();
+                    for (final OpenDocument document : recovered) {
+                        tabs.add(document);
+                        getView().addTab(document.getTitle(), String.valueOf(document.getPath()));
+                    }
+                    if (!recovered.isEmpty()) {
+                        select(recovered.get(0), null);
+                        getView().showStatus("Recovered " + recovered.size() + " documents with unsaved changes");
+                    }
+                    final List<Path> unrecoverable = workspace.getUnrecoverable();
+                    if (!unrecoverable.isEmpty()) {
+                        getView().showWarning(unrecoverable.size() + " autosave logs cannot be replayed, because their "
+                                + "files were changed or logs are damaged. They are kept in "
+                                + unrecoverable.get(0).getParent(), "Recover");
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    getView().showWarning("Unsaved changes cannot be recovered", "Recover");
+                }
+            }
+        };
+
+        recoverWorker.execute();
     }
 
     @Override
@@ -49,23 +202,47 @@ public class TextEditorController implements Controller {
         this.regexpCheckBox = regexpCheckBox;
     }
 
+    @Override
+    public void setKeywordsCheckbox(final JCheckBox keywordsCheckBox) {
+        this.keywordsCheckBox = keywordsCheckBox;
+    }
+
     @Override
     public void setSearchField(final JTextField searchField) {
         this.searchField = searchField;
     }
 
+    @Override
+    public void setReplaceField(final JTextField replaceField) {
+        this.replaceField = replaceField;
+    }
+
     @Override
     public void setFileChooser(final JFileChooser fileChooser) {
         this.fileChooser = fileChooser;
     }
 
+    @Override
+    public void setFileMatchesList(final JList<FileMatch> fileMatchesList) {
+        this.fileMatchesList = fileMatchesList;
+    }
+
     /**
      * Saving process is background, because {@code TextArea} can contain large content
-     * and GUI shouldn't freeze while it is writing to file
+     * and GUI shouldn't freeze while it is writing to file.
+     * Snapshot of text is written by {@link DocumentWriter} in chunks and replaces file atomically,
+     * so user can continue editing and file is never left half-written.
+     * Document is saved in encoding of its file. If it has characters, that can't be encoded in it,
+     * document is saved in UTF-8, if user confirms it, instead of losing them.
+     * Saved document gets name of file in its tab and highlighting of its language,
+     * and its autosave log starts from saved file.
      */
     @Override
     public void onSave() {
-        final SwingWorker<Void, Void> onSaveWorker = new SwingWorker<>() {
+        final OpenDocument saved = shown;
+        final long version = getDocumentVersion();
+        final CharSequence text = getDocumentText();
+        final SwingWorker<Void, Progress> onSaveWorker = new SwingWorker<>() {
             @Override
             protected Void doInBackground() {
                 fileChooser.setVisible(true);
@@ -73,14 +250,36 @@ public class TextEditorController implements Controller {
                     final File file = fileChooser.getSelectedFile();
                     if (file != null) {
                         try {
-                            if (!file.exists() && !file.createNewFile()) {
-                                getView().showWarning("The given file: " + file.getPath() +
-                                        " cannot be saved", "Save file");
-                                return null;
+                            final long start = System.nanoTime();
+                            TextEncoding encoding = saved.getEncoding();
+                            try {
+                                new DocumentWriter(encoding, this::publish).write(text, file.toPath());
+                            } catch (UnmappableCharacterException e) {
+                                if (!getView().confirm("The document contains characters, that cannot be encoded in "
+                                        + encoding.getCharset() + ". Save it in UTF-8?", "Save file")) {
+                                    return null;
+                                }
+                                encoding = encoding.withCharset(StandardCharsets.UTF_8);
+                                new DocumentWriter(encoding, this::publish).write(text, file.toPath());
                             }
-                            Files.write(file.toPath(), textArea.getText().getBytes());
+                            SAVE_TIME.recordSince(start);
+                            SAVE_BYTES.add(Files.size(file.toPath()));
+                            final TextEncoding savedEncoding = encoding;
+                            SwingUtilities.invokeLater(() -> {
+                                saved.markSaved(file.toPath(), savedEncoding, version);
+                                if (saved == followed) {
+                                    stopFollowing("Stopped following saved file " + saved.getTitle());
+                                }
+                                updateTitle(saved);
+                                if (saved == shown) {
+                                    SyntaxHighlighter.install((TextDocument) textArea.getDocument(), saved.getPath());
+                                    textArea.repaint();
+                                }
+                            });
                         } catch (IOException e) {
                             e.printStackTrace();
+                            getView().showWarning("The given file: " + file.getPath() +
+                                    " cannot be saved", "Save file");
                         } finally {
                             fileChooser.setVisible(false);
                         }
@@ -88,6 +287,11 @@ public class TextEditorController implements Controller {
                 }
                 return null;
             }
+
+            @Override
+            protected void process(final List<Progress> chunks) {
+                getView().showProgress("Save file", chunks.get(chunks.size() - 1));
+            }
         };
 
         onSaveWorker.execute();
@@ -95,13 +299,14 @@ public class TextEditorController implements Controller {
 
     /**
      * Opening process is background, because file can be large
-     * and GUI shouldn't freeze while it is reading
+     * and GUI shouldn't freeze while it is reading.
+     * File is opened in new tab, or its tab is selected, if it is already open
      */
     @Override
     public void onOpen() {
-        final SwingWorker<Void, Void> onOpenWorker = new SwingWorker<>() {
+        final SwingWorker<OpenDocument, Void> onOpenWorker = new SwingWorker<>() {
             @Override
-            protected Void doInBackground() {
+            protected OpenDocument doInBackground() {
                 fileChooser.setVisible(true);
                 if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
                     final File file = fileChooser.getSelectedFile();
@@ -109,10 +314,11 @@ public class TextEditorController implements Controller {
                         final Path path = file.toPath();
                         if (Files.isRegularFile(path)) {
                             try {
-                                textArea.setText(Files.exists(path) ? Files.readString(path) : "");
+                                return openFile(path);
                             } catch (IOException e) {
                                 e.printStackTrace();
-                                textArea.setText("");
+                                getView().showWarning("The given file: " + path + " cannot be opened",
+                                        "Open file");
                             } finally {
                                 fileChooser.setVisible(false);
                             }
@@ -125,45 +331,738 @@ public class TextEditorController implements Controller {
                 }
                 return null;
             }
+
+            @Override
+            protected void done() {
+                try {
+                    final OpenDocument opened = get();
+                    if (opened != null) {
+                        select(opened, null);
+                        getView().showStatus("Opened " + opened.getTitle() + " (" + opened.getEncoding() + ")");
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
         };
 
         onOpenWorker.execute();
     }
 
+    /**
+     * Opens file in {@link Workspace}, if it isn't open yet
+     *
+     * @param path path to regular file
+     * @return document of file
+     * @throws IOException if file can't be read
+     */
+    private OpenDocument openFile(final Path path) throws IOException {
+        final OpenDocument open = workspace.find(path);
+        if (open != null) {
+            return open;
+        }
+        final long start = System.nanoTime();
+        final OpenDocument opened = workspace.open(path);
+        OPEN_TIME.recordSince(start);
+        OPEN_BYTES.add(Files.size(path));
+        return opened;
+    }
+
+    /**
+     * Selects tab of document, that is added, if document has no tab yet, and shows document
+     *
+     * @param document selected document
+     * @param then action after document is shown, or {@code null}
+     */
+    private void select(final OpenDocument document, final Runnable then) {
+        int index = tabs.indexOf(document);
+        if (index < 0) {
+            tabs.add(document);
+            index = tabs.size() - 1;
+            getView().addTab(document.getTitle(), String.valueOf(document.getPath()));
+        }
+        selected = document;
+        getView().selectTab(index);
+        show(document, then);
+    }
+
+    @Override
+    public void onTabSelected(final int index) {
+        if (index >= 0 && index < tabs.size() && tabs.get(index) != selected) {
+            selected = tabs.get(index);
+            show(selected, null);
+        }
+    }
+
+    /**
+     * Document is restored and other documents are evicted in background, so switching to evicted document
+     * doesn't freeze GUI. Document isn't shown, if user has selected another tab meanwhile.
+     * Search of the previous document is closed and pattern is searched in the shown document.
+     * Shown document is highlighted by {@link SyntaxHighlighter} of language of its file.
+     *
+     * @param document shown document
+     * @param then action after document is shown, or {@code null}
+     */
+    private void show(final OpenDocument document, final Runnable then) {
+        final int request = ++showRequests;
+        if (document == shown) {
+            if (then != null) {
+                then.run();
+            }
+            return;
+        }
+        final SwingWorker<TextDocument, Void> showWorker = new SwingWorker<>() {
+            @Override
+            protected TextDocument doInBackground() throws IOException {
+                return workspace.activate(document);
+            }
+
+            @Override
+            protected void done() {
+                if (request != showRequests) {
+                    return;
+                }
+                try {
+                    final TextDocument text = get();
+                    shown.setCaret(textArea.getCaretPosition());
+                    closeSearcher();
+                    if (followed != null) {
+                        stopFollowing("Stopped following " + followed.getTitle());
+                    }
+                    SyntaxHighlighter.install(text, document.getPath());
+                    textArea.setDocument(text);
+                    textArea.setCaretPosition(Math.min(document.getCaret(), text.getLength()));
+                    shown = document;
+                    workspace.show(document);
+                    if (!searchField.getText().isEmpty()) {
+                        searchTimer.restart();
+                    }
+                    if (then != null) {
+                        then.run();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    getView().showWarning("The document: " + document.getTitle() + " cannot be restored",
+                            "Open file");
+                }
+            }
+        };
+
+        showWorker.execute();
+    }
+
+    /**
+     * Closes document of selected tab, modified document is closed only if user confirms it.
+     * The next tab is selected, and new empty document is created instead of the last closed one
+     */
+    @Override
+    public void onClose() {
+        final OpenDocument closed = selected;
+        if (closed.isModified() && !getView().confirm("The document: " + closed.getTitle()
+                + " has unsaved changes. Close it anyway?", "Close file")) {
+            return;
+        }
+        final int index = tabs.indexOf(closed);
+        tabs.remove(index);
+        if (tabs.isEmpty()) {
+            final OpenDocument created = workspace.add(new TextDocument());
+            tabs.add(created);
+            getView().addTab(created.getTitle(), null);
+        }
+        final OpenDocument next = tabs.get(Math.min(index, tabs.size() - 1));
+        selected = next;
+        getView().removeTab(index);
+        select(next, null);
+        final SwingWorker<Void, Void> closeWorker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                workspace.close(closed);
+                return null;
+            }
+        };
+
+        closeWorker.execute();
+    }
+
+    private void updateTitle(final OpenDocument document) {
+        final int index = tabs.indexOf(document);
+        if (index >= 0) {
+            getView().setTabTitle(index, document.getTitle(), String.valueOf(document.getPath()));
+        }
+    }
+
+    /**
+     * Searches pattern of {@code searchField} in all files of chosen directory with the same mode,
+     * as search in {@code textArea}. Search is background and occurrences are appended
+     * to {@code fileMatchesList} as soon as they are found, previous search in files is cancelled.
+     */
+    @Override
+    public void onFindInFiles() {
+        final String pattern = searchField.getText();
+        if (pattern.isEmpty()) {
+            return;
+        }
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        try {
+            if (fileChooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION
+                    || fileChooser.getSelectedFile() == null) {
+                return;
+            }
+        } finally {
+            fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        }
+        final Path root = fileChooser.getSelectedFile().toPath();
+        if (fileSearch != null) {
+            fileSearch.cancel();
+        }
+        try {
+            if (keywordsCheckBox.isSelected()) {
+                fileSearch = FileSearch.keywords(List.of(pattern.trim().split("\\s+")));
+            } else {
+                fileSearch = regexpCheckBox.isSelected()
+                        ? FileSearch.regex(pattern, 0)
+                        : FileSearch.literal(pattern);
+            }
+        } catch (PatternSyntaxException e) {
+            getView().showWarning(e.getMessage(), "Find in files");
+            return;
+        }
+        final DefaultListModel<FileMatch> model = (DefaultListModel<FileMatch>) fileMatchesList.getModel();
+        model.clear();
+        final FileSearch current = fileSearch;
+        getView().showStatus("Searching in " + root);
+        final AtomicInteger failed = new AtomicInteger();
+        current.start(List.of(root), new FileSearch.Listener() {
+            @Override
+            public void onMatches(final List<FileMatch> matches) {
+                SwingUtilities.invokeLater(() -> {
+                    if (current == fileSearch) {
+                        model.addAll(matches);
+                    }
+                });
+            }
+
+            @Override
+            public void onFinished(final int files, final int skipped, final long bytes) {
+                SwingUtilities.invokeLater(() -> {
+                    if (current == fileSearch) {
+                        getView().showStatus(String.format(
+                                "%d matches in %d files (%.1f MB), %d files skipped, %d can't be searched",
+                                model.getSize(), files, bytes / (double) (1 << 20), skipped, failed.get()));
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(final Path path, final Exception e) {
+                failed.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Selects tab of file of selected occurrence, opening file, if it isn't open yet, and highlights occurrence.
+     * File is opened in background, as in {@link #onOpen()}.
+     * Occurrence is found by its line and column, because offset in file is counted by scanner, that decodes file
+     * as UTF-8 and counts line separators, while document may be decoded differently and has no {@code '\r'}
+     */
+    @Override
+    public void onOpenFileMatch() {
+        final FileMatch match = fileMatchesList.getSelectedValue();
+        if (match == null || match.getLine() > Integer.MAX_VALUE) {
+            return;
+        }
+        typing = false;
+        final Runnable highlight = () -> {
+            final int start = offsetOf((int) match.getLine(), match.getColumn());
+            highlightText(start, Math.min(match.getLength(), textArea.getDocument().getLength() - start));
+        };
+        for (final OpenDocument document : tabs) {
+            if (match.getPath().equals(document.getPath())) {
+                select(document, highlight);
+                return;
+            }
+        }
+        final SwingWorker<OpenDocument, Void> openMatchWorker = new SwingWorker<>() {
+            @Override
+            protected OpenDocument doInBackground() throws IOException {
+                return openFile(match.getPath());
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    select(get(), highlight);
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    getView().showWarning("The given file: " + match.getPath() + " cannot be opened", "Open file");
+                }
+            }
+        };
+
+        openMatchWorker.execute();
+    }
+
+    /**
+     * Replaces current occurrence, if it is selected, as one edit and highlights the next occurrence.
+     * If occurrence isn't selected, like after user moved caret, or pattern was edited, occurrence is
+     * only highlighted, so nothing is replaced, that user hasn't seen
+     */
+    @Override
+    public void onReplace() {
+        if (searchField.getText().isEmpty() || !(textArea.getDocument() instanceof TextDocument)) {
+            return;
+        }
+        if (searchTimer.isRunning()) {
+            onSearch();
+            return;
+        }
+        final int start = searcher.getPos();
+        final int length = searcher.getPatternLength();
+        if (length > 0 && textArea.getSelectionStart() == start && textArea.getSelectionEnd() == start + length) {
+            final TextDocument document = (TextDocument) textArea.getDocument();
+            try {
+                final String replacement = createReplacer().expand(document.snapshot(), start, length);
+                document.replace(start, length, Rope.of(replacement));
+            } catch (IllegalArgumentException e) {
+                getView().showWarning(e.getMessage(), "Replace");
+                return;
+            } catch (BadLocationException e) {
+                throw new IllegalStateException("Occurrence is out of document", e);
+            }
+        }
+        onNextMatch();
+    }
+
+    /**
+     * Replaces all occurrences in document of selected tab as one edit, that is undone at once.
+     * Text with replacements is built by {@link Replacer} in background in one pass over snapshot of document,
+     * so GUI doesn't freeze and document isn't edited once per occurrence. If document is edited meanwhile
+     * inside of snapshot, replacement starts again from its new text. Text, that is appended after snapshot,
+     * like new lines of followed file, doesn't change replaced range, so result is applied and appended text is kept
+     */
+    @Override
+    public void onReplaceAll() {
+        if (searchField.getText().isEmpty() || !(textArea.getDocument() instanceof TextDocument)) {
+            return;
+        }
+        final Replacer replacer;
+        try {
+            replacer = createReplacer();
+        } catch (IllegalArgumentException e) {
+            getView().showWarning(e.getMessage(), "Replace all");
+            return;
+        }
+        final TextDocument document = (TextDocument) textArea.getDocument();
+        final Rope text = document.snapshot();
+        // the first offset of document, that was edited during replacement
+        final int[] firstEdited = {Integer.MAX_VALUE};
+        final DocumentListener editListener = new DocumentListener() {
+            @Override
+            public void insertUpdate(final DocumentEvent e) {
+                firstEdited[0] = Math.min(firstEdited[0], e.getOffset());
+            }
+
+            @Override
+            public void removeUpdate(final DocumentEvent e) {
+                firstEdited[0] = Math.min(firstEdited[0], e.getOffset());
+            }
+
+            @Override
+            public void changedUpdate(final DocumentEvent e) {
+            }
+        };
+        document.addDocumentListener(editListener);
+        getView().showStatus("Replacing " + searchField.getText());
+        final SwingWorker<Replacer.Result, Void> replaceWorker = new SwingWorker<>() {
+            @Override
+            protected Replacer.Result doInBackground() {
+                return replacer.replaceAll(text);
+            }
+
+            @Override
+            protected void done() {
+                document.removeDocumentListener(editListener);
+                if (document != textArea.getDocument()) {
+                    return;
+                }
+                try {
+                    final Replacer.Result result = get();
+                    if (firstEdited[0] < text.length()) {
+                        onReplaceAll();
+                        return;
+                    }
+                    if (result.getCount() > 0) {
+                        document.replace(result.getStart(), result.getEnd() - result.getStart(), result.getText());
+                    }
+                    getView().showStatus("Replaced " + result.getCount() + " occurrences");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IllegalArgumentException
+                            || e.getCause() instanceof SearchLimitException) {
+                        getView().showWarning(e.getCause().getMessage(), "Replace all");
+                    } else {
+                        e.printStackTrace();
+                        getView().showWarning("Occurrences cannot be replaced", "Replace all");
+                    }
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException("Occurrences are out of document", e);
+                }
+            }
+        };
+
+        replaceWorker.execute();
+    }
+
+    /**
+     * Creates replacement of pattern of {@code searchField} with the same mode, as search uses
+     *
+     * @return replacement by text of {@code replaceField}
+     * @throws IllegalArgumentException if regular expression or replacement is invalid
+     */
+    private Replacer createReplacer() {
+        final String pattern = searchField.getText();
+        final String replacement = replaceField.getText();
+        if (keywordsCheckBox.isSelected()) {
+            return Replacer.keywords(List.of(pattern.trim().split("\\s+")), replacement);
+        }
+        return regexpCheckBox.isSelected()
+                ? Replacer.regex(pattern, 0, replacement)
+                : Replacer.literal(pattern, replacement);
+    }
+
     @Override
     public void onCheckBoxClick() {
         regexpCheckBox.setSelected(!regexpCheckBox.isSelected());
     }
 
+    @Override
+    public void onKeywordsCheckBoxClick() {
+        keywordsCheckBox.setSelected(!keywordsCheckBox.isSelected());
+    }
+
+    /**
+     * Undo and redo are applied to document of selected tab, caret is moved to the changed text
+     */
+    @Override
+    public void onUndo() {
+        if (textArea.getDocument() instanceof TextDocument) {
+            moveCaret(((TextDocument) textArea.getDocument()).undo());
+        }
+    }
+
+    @Override
+    public void onRedo() {
+        if (textArea.getDocument() instanceof TextDocument) {
+            moveCaret(((TextDocument) textArea.getDocument()).redo());
+        }
+    }
+
+    private void moveCaret(final int position) {
+        if (position >= 0) {
+            textArea.setCaretPosition(position);
+        }
+    }
+
+    /**
+     * Moves caret to line, that user enters as {@code line} or {@code line:column}, like occurrences in files
+     * are shown. Line start is found by index of lines of document, so jump to any line doesn't scan text.
+     * Numbers out of document are moved to the nearest line and column
+     */
+    @Override
+    public void onGoToLine() {
+        final int lines = textArea.getLineCount();
+        final String input = getView().ask("Line (1-" + lines + ") or line:column", "Go to line");
+        if (input == null || input.isBlank()) {
+            return;
+        }
+        final String[] numbers = input.trim().split(":", 2);
+        try {
+            final int line = Integer.parseInt(numbers[0].trim());
+            final int column = numbers.length > 1 ? Integer.parseInt(numbers[1].trim()) : 1;
+            textArea.setCaretPosition(offsetOf(line, column));
+            textArea.grabFocus();
+        } catch (NumberFormatException e) {
+            getView().showWarning("The given position: " + input + " is not a line number", "Go to line");
+        }
+    }
+
+    /**
+     * Finds offset of position in {@code textArea} by index of lines. Position after the end of line
+     * is moved to the end of line
+     *
+     * @param line number of line, starting from {@code 1}
+     * @param column number of character in line, starting from {@code 1}
+     * @return offset of position
+     */
+    private int offsetOf(final int line, final long column) {
+        final int lines = textArea.getLineCount();
+        final int index = Math.max(1, Math.min(line, lines)) - 1;
+        try {
+            final int start = textArea.getLineStartOffset(index);
+            final int end = index + 1 < lines ? textArea.getLineEndOffset(index) - 1 : textArea.getDocument().getLength();
+            return start + (int) Math.min(Math.max(column, 1) - 1, end - start);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Line of document has no offset", e);
+        }
+    }
+
+    /**
+     * Shows line and column of the beginning of selection, so position of highlighted occurrence is shown too.
+     * They are found by index of lines in O(log n), so moves of caret don't scan text
+     */
+    @Override
+    public void onCaretUpdate(final int dot, final int mark) {
+        final int position = Math.min(dot, mark);
+        try {
+            final int line = textArea.getLineOfOffset(position);
+            getView().showCaretPosition(line + 1, position - textArea.getLineStartOffset(line) + 1,
+                    Math.abs(dot - mark));
+        } catch (BadLocationException e) {
+            // caret of replaced document is moved by the following update
+        }
+    }
+
+    /**
+     * Starts or stops following file of shown document, like {@code tail -f} does. Text, that is appended to file,
+     * is appended to document, and search strategy finds occurrences in it, as in any other edit.
+     * Unmodified document stays unmodified. Following continues from the length of file, that text was read from,
+     * so lines, that were appended after file was opened, are appended too.
+     * When file is rotated or truncated, unmodified document is replaced by text of new file,
+     * but modified document isn't, and following stops, so changes of user aren't lost.
+     * Following stops, when another document is shown or followed document is saved.
+     */
+    @Override
+    public void onFollow() {
+        if (follower != null) {
+            stopFollowing("Stopped following " + followed.getTitle());
+            return;
+        }
+        final OpenDocument document = shown;
+        if (document.getPath() == null) {
+            getView().showWarning("The document is not saved to a file, so there is nothing to follow", "Follow file");
+            return;
+        }
+        final String name = document.getTitle();
+        final int request = ++followRequests;
+        final FileFollower current = new FileFollower(document.getPath(), document.getEncoding(),
+                document.getFileLength(), new FileFollower.Listener() {
+            @Override
+            public void appended(final Rope text, final long offset) {
+                SwingUtilities.invokeLater(() -> {
+                    if (isFollowing(request)) {
+                        document.append(text, offset);
+                    }
+                });
+            }
+
+            @Override
+            public void reset(final Rope text, final long offset, final boolean complete) {
+                SwingUtilities.invokeLater(() -> {
+                    if (!isFollowing(request)) {
+                        return;
+                    }
+                    if (document.isModified() && reloadedVersion != getDocumentVersion()) {
+                        stopFollowing("Stopped following " + name + ": file was replaced, but document has changes");
+                        return;
+                    }
+                    document.reload(text, offset, complete);
+                    reloadedVersion = complete ? -1 : getDocumentVersion();
+                    getView().showStatus(complete
+                            ? "Reloaded rotated file " + name
+                            : "Reloaded the last " + text.length() + " characters of rotated file " + name);
+                });
+            }
+
+            @Override
+            public void failed(final IOException e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() -> {
+                    if (isFollowing(request)) {
+                        stopFollowing("Stopped following " + name);
+                        getView().showWarning("The file: " + document.getPath() + " cannot be followed",
+                                "Follow file");
+                    }
+                });
+            }
+        });
+        follower = current;
+        followed = document;
+        reloadedVersion = -1;
+        current.start();
+        getView().showStatus("Following " + name);
+    }
+
+    /**
+     * Checks, if updates of follower should be applied: it wasn't stopped, so its document is shown
+     */
+    private boolean isFollowing(final int request) {
+        return follower != null && request == followRequests;
+    }
+
+    private void stopFollowing(final String status) {
+        follower.stop();
+        follower = null;
+        followed = null;
+        getView().showStatus(status);
+    }
+
     @Override
     public void onExit() {
         getView().dispose();
     }
 
+    /**
+     * Gets text for searching and saving. {@link TextDocument} gives immutable snapshot without copying,
+     * so searchers and writers don't hold a copy of whole document
+     *
+     * @return current text of {@code textArea}
+     */
+    private CharSequence getDocumentText() {
+        if (textArea.getDocument() instanceof TextDocument) {
+            return ((TextDocument) textArea.getDocument()).snapshot();
+        }
+        return textArea.getText();
+    }
+
+    private long getDocumentVersion() {
+        if (textArea.getDocument() instanceof TextDocument) {
+            return ((TextDocument) textArea.getDocument()).getVersion();
+        }
+        return -1;
+    }
+
+    /**
+     * Explicit search replaces pending search as you type
+     */
     @Override
     public void onSearch() {
-        searcher = regexpCheckBox.isSelected()
-                ? new RegexSearcher(textArea.getText(), searchField.getText(), this)
-                : new SimpleSearcher(textArea.getText(), searchField.getText(), this);
+        searchTimer.stop();
+        typing = false;
+        startSearch(searchField.getText());
+    }
+
+    /**
+     * Every edit of pattern cancels searches of the outdated pattern at once, but new search is delayed
+     * by {@value #SEARCH_DELAY_MILLIS} ms, so fast typing doesn't start a scan per keystroke.
+     */
+    @Override
+    public void onSearchFieldEdit() {
+        searcher.cancel();
+        searchTimer.restart();
+    }
+
+    /**
+     * Searches pattern, that user has typed. When literal pattern is extended,
+     * occurrences of previous strategy are narrowed instead of searching from scratch.
+     * Incomplete regular expressions are ignored until user finishes them.
+     */
+    private void searchAsYouType() {
+        final String pattern = searchField.getText();
+        typing = true;
+        if (pattern.isEmpty()) {
+            closeSearcher();
+        } else if (!regexpCheckBox.isSelected() && !keywordsCheckBox.isSelected()
+                && searcher instanceof SimpleSearcher && ((SimpleSearcher) searcher).canNarrow(pattern)) {
+            final Searchable previous = searcher;
+            searcher = new SimpleSearcher((SimpleSearcher) previous, pattern, this);
+            previous.close();
+        } else {
+            try {
+                startSearch(pattern);
+            } catch (PatternSyntaxException e) {
+                searcher = new EmptySearcher();
+            }
+        }
+    }
+
+    /**
+     * Previous strategy is closed, so it stops following edits of document.
+     * Strategies for {@link TextDocument} follow its edits and keep occurrences up to date.
+     * If keywords search is selected, pattern is a list of keywords, separated by whitespaces,
+     * and it takes precedence over regular expressions.
+     *
+     * @param pattern searched pattern
+     */
+    private void startSearch(final String pattern) {
+        closeSearcher();
+        final List<String> keywords = List.of(pattern.trim().split("\\s+"));
+        if (textArea.getDocument() instanceof TextDocument) {
+            final TextDocument document = (TextDocument) textArea.getDocument();
+            if (keywordsCheckBox.isSelected()) {
+                searcher = new KeywordSearcher(document, keywords, this);
+            } else {
+                searcher = regexpCheckBox.isSelected()
+                        ? new RegexSearcher(document, pattern, this)
+                        : new SimpleSearcher(document, pattern, this);
+            }
+        } else {
+            final CharSequence text = getDocumentText();
+            if (keywordsCheckBox.isSelected()) {
+                searcher = new KeywordSearcher(text, keywords, this);
+            } else {
+                searcher = regexpCheckBox.isSelected()
+                        ? new RegexSearcher(text, pattern, this)
+                        : new SimpleSearcher(text, pattern, this);
+            }
+        }
+    }
+
+    /**
+     * Closes current strategy and removes highlighting of its occurrences
+     */
+    private void closeSearcher() {
+        searcher.close();
+        searcher = new EmptySearcher();
+        getView().highlightOccurrences(textArea, searcher);
     }
 
     /**
-     * Invokes {@link TextEditor#highlightText(JTextArea, int, int)}
+     * Invokes {@link TextEditor#highlightText(JTextArea, int, int, boolean)}.
+     * Focus stays in {@code searchField}, while user is typing pattern.
      *
      * @param index begin index of current occurrence
      * @param length length of current occurrence
      */
+    @Override
     public void highlightText(final int index, final int length) {
-        view.highlightText(textArea, index, length);
+        final long start = System.nanoTime();
+        view.highlightText(textArea, index, length, !typing);
+        HIGHLIGHT_TIME.recordSince(start);
+    }
+
+    /**
+     * Shows warning about search, that was stopped
+     *
+     * @param message description of problem
+     */
+    @Override
+    public void showSearchWarning(final String message) {
+        getView().showWarning(message, "Search");
+    }
+
+    /**
+     * Invokes {@link TextEditor#highlightOccurrences(JTextArea, Searchable)}, if strategy is still used
+     *
+     * @param source strategy, that has found new occurrences
+     */
+    @Override
+    public void highlightOccurrences(final Searchable source) {
+        if (source == searcher) {
+            view.highlightOccurrences(textArea, source);
+        }
     }
 
     @Override
     public void onPrevMatch() {
+        typing = false;
         searcher.findPrev();
     }
 
     @Override
     public void onNextMatch() {
+        typing = false;
         searcher.findNext();
     }
 }
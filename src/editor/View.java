@@ -1,5 +1,8 @@
 package editor;
 
+import editor.io.Progress;
+import editor.search.Searchable;
+
 import javax.swing.*;
 
 /**
@@ -18,14 +21,98 @@ public interface View {
      */
     void showWarning(final String message, final String title);
 
+    /**
+     * Shows progress and throughput of long background operation, like saving of file
+     *
+     * @param title context name
+     * @param progress current progress of operation
+     */
+    void showProgress(final String title, final Progress progress);
+
+    /**
+     * Shows short result of background operation in status bar, like number of found occurrences
+     *
+     * @param message text of status
+     */
+    void showStatus(final String message);
+
+    /**
+     * Asks user to confirm action, that loses data, like closing of modified document
+     *
+     * @param message explanation of consequences
+     * @param title context name
+     * @return {@code true}, if user confirmed action
+     */
+    boolean confirm(final String message, final String title);
+
+    /**
+     * Asks user to enter value, like number of line to go to
+     *
+     * @param message description of value
+     * @param title context name
+     * @return entered text, or {@code null}, if user cancelled input
+     */
+    String ask(final String message, final String title);
+
+    /**
+     * Shows position of caret or of the beginning of selection near status
+     *
+     * @param line number of line, starting from {@code 1}
+     * @param column number of character in line, starting from {@code 1}
+     * @param selected number of selected characters
+     */
+    void showCaretPosition(final int line, final int column, final int selected);
+
+    /**
+     * Adds tab of document after all tabs, tab isn't selected
+     *
+     * @param title short name of document
+     * @param tip full name of document, or {@code null}
+     */
+    void addTab(final String title, final String tip);
+
+    /**
+     * Renames tab of document, like after saving it to another file
+     *
+     * @param index index of tab
+     * @param title short name of document
+     * @param tip full name of document, or {@code null}
+     */
+    void setTabTitle(final int index, final String title, final String tip);
+
+    /**
+     * Selects tab of document
+     *
+     * @param index index of tab
+     */
+    void selectTab(final int index);
+
+    /**
+     * Removes tab of document
+     *
+     * @param index index of tab
+     */
+    void removeTab(final int index);
+
     /**
      * Highlights one of occurrences given pattern in textArea
      *
      * @param textArea text for highlighting occurrence
      * @param index index in text, when occurrence begins
      * @param length length of occurrence
+     * @param grabFocus {@code true} if focus should be moved to textArea,
+     *                  {@code false} if user continues typing in other component
+     */
+    void highlightText(final JTextArea textArea, final int index, final int length, final boolean grabFocus);
+
+    /**
+     * Highlights all occurrences of pattern in textArea.
+     * Only occurrences in visible part of textArea are painted, so there may be any number of them
+     *
+     * @param textArea text for highlighting occurrences
+     * @param occurrences strategy, that reports occurrences in range of text
      */
-    void highlightText(final JTextArea textArea, final int index, final int length);
+    void highlightOccurrences(final JTextArea textArea, final Searchable occurrences);
 
     /**
      * Safe close frame and remove all resources it is using
@@ -0,0 +1,276 @@
+package editor.cli;
+
+import editor.search.FileMatch;
+import editor.search.FileSearch;
+import editor.search.SearchLimitException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Headless search, that runs search engines of Text Editor over files and standard input without GUI.
+ * <p>
+ * Command line is {@code [options] pattern [path...]}, like {@code grep}. Paths may be files or directories,
+ * that are searched recursively and in parallel, standard input is searched, if there are no paths
+ * or path is {@code -}. Input is read in chunks, so memory doesn't depend on its size.
+ * Every line with occurrences is printed once with its number, lines longer than {@value #PREVIEW_LENGTH}
+ * characters are cut around the first occurrence.
+ * </p>
+ * <p>
+ * Exit status is {@value #FOUND}, if anything is found, {@value #NOT_FOUND}, if nothing is found,
+ * and {@value #ERROR}, if command line is invalid or any input can't be searched completely, even if
+ * something is found in other inputs. Paths, that don't exist or can't be read, are printed to error output.
+ * Symbolic links in command line are followed, but not ones inside of directories.
+ * </p>
+ */
+public final class SearchCommand {
+    public static final int FOUND = 0;
+    public static final int NOT_FOUND = 1;
+    public static final int ERROR = 2;
+
+    private static final String STANDARD_INPUT = "-";
+    private static final int PREVIEW_LENGTH = 1 << 16;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: [options] pattern [path...]",
+            "Searches pattern in files, directories and standard input, if there are no paths or path is -",
+            "  -E      pattern is a regular expression",
+            "  -K      pattern is a list of keywords, separated by whitespaces",
+            "  -i      ignore case",
+            "  -o      print offset and length of every occurrence instead of lines",
+            "  -c      print only number of occurrences",
+            "  -m NUM  stop after NUM occurrences in each file",
+            "  --      end of options");
+
+    private final PrintWriter out;
+    private final PrintStream err;
+    private final AtomicLong found = new AtomicLong();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private final Map<Path, Long> lastLines = new ConcurrentHashMap<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private boolean regex;
+    private boolean keywords;
+    private boolean ignoreCase;
+    private boolean offsets;
+    private boolean countOnly;
+    private long maxMatches = Long.MAX_VALUE;
+    private String pattern;
+    private final List<Path> paths = new ArrayList<>();
+    private boolean standardInput;
+    private volatile FileSearch search;
+
+    private SearchCommand(final PrintStream out, final PrintStream err) {
+        this.out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE));
+        this.err = err;
+    }
+
+    /**
+     * Runs search in current thread
+     *
+     * @param args command line
+     * @param in standard input
+     * @param out output for occurrences
+     * @param err output for errors
+     * @return exit status
+     */
+    public static int run(final String[] args, final InputStream in, final PrintStream out, final PrintStream err) {
+        final SearchCommand command = new SearchCommand(out, err);
+        if (!command.parse(args)) {
+            err.println(USAGE);
+            return ERROR;
+        }
+        return command.search(in);
+    }
+
+    private boolean parse(final String[] args) {
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-") && !args[i].equals(STANDARD_INPUT); i++) {
+            switch (args[i]) {
+                case "--":
+                    i++;
+                    return parseOperands(args, i);
+                case "-E":
+                    regex = true;
+                    break;
+                case "-K":
+                    keywords = true;
+                    break;
+                case "-i":
+                    ignoreCase = true;
+                    break;
+                case "-o":
+                    offsets = true;
+                    break;
+                case "-c":
+                    countOnly = true;
+                    break;
+                case "-m":
+                    if (++i == args.length) {
+                        return false;
+                    }
+                    try {
+                        maxMatches = Long.parseLong(args[i]);
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return parseOperands(args, i);
+    }
+
+    private boolean parseOperands(final String[] args, final int from) {
+        if (from == args.length) {
+            return false;
+        }
+        pattern = args[from];
+        for (int i = from + 1; i < args.length; i++) {
+            if (args[i].equals(STANDARD_INPUT)) {
+                standardInput = true;
+            } else {
+                paths.add(Path.of(args[i]));
+            }
+        }
+        standardInput |= paths.isEmpty();
+        return !pattern.isEmpty();
+    }
+
+    /**
+     * Keywords take precedence over regular expressions, as in GUI.
+     * Fixed string is searched case-insensitively as quoted regular expression
+     */
+    private FileSearch newSearch() {
+        final FileSearch created;
+        if (keywords) {
+            created = FileSearch.keywords(List.of(pattern.trim().split("\\s+")));
+        } else if (regex || ignoreCase) {
+            final int flags = (regex ? 0 : Pattern.LITERAL)
+                    | (ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+            created = FileSearch.regex(pattern, flags);
+        } else {
+            created = FileSearch.literal(pattern);
+        }
+        created.setMaxMatchesPerFile(maxMatches);
+        created.setPreviewLength(offsets || countOnly ? 0 : PREVIEW_LENGTH);
+        return created;
+    }
+
+    private int search(final InputStream in) {
+        try {
+            if (standardInput) {
+                newSearch().search(Channels.newChannel(in), new Printer());
+            }
+            if (!paths.isEmpty()) {
+                search = newSearch();
+                search.start(paths, new Printer());
+                finished.await();
+            }
+        } catch (PatternSyntaxException | IOException | SearchLimitException e) {
+            err.println(e.getMessage());
+            return ERROR;
+        } catch (CancellationException e) {
+            // output is closed, like by head
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ERROR;
+        }
+        if (countOnly) {
+            out.println(found.get());
+        }
+        out.flush();
+        if (failed.get()) {
+            return ERROR;
+        }
+        return found.get() > 0 ? FOUND : NOT_FOUND;
+    }
+
+    /**
+     * Prints occurrences of each chunk at once
+     */
+    private final class Printer implements FileSearch.Listener {
+        @Override
+        public void onMatches(final List<FileMatch> matches) {
+            found.addAndGet(matches.size());
+            if (countOnly) {
+                return;
+            }
+            synchronized (out) {
+                for (final FileMatch match : matches) {
+                    print(match);
+                }
+                out.flush();
+                if (out.checkError()) {
+                    stop();
+                    throw new CancellationException("Output is closed");
+                }
+            }
+        }
+
+        @Override
+        public void onFinished(final int files, final int skipped, final long bytes) {
+            finished.countDown();
+        }
+
+        @Override
+        public void onFailed(final Path path, final Exception e) {
+            failed.set(true);
+            err.println(describe(path, e));
+        }
+
+        /**
+         * Gets message like {@code path: reason}, exceptions of file system may have no reason
+         */
+        private String describe(final Path path, final Exception e) {
+            if (e instanceof AccessDeniedException) {
+                return path + ": Permission denied";
+            }
+            if (e instanceof FileSystemException && ((FileSystemException) e).getReason() != null) {
+                return e.getMessage();
+            }
+            return path + ": " + (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        }
+
+        private void print(final FileMatch match) {
+            final String prefix = match.getPath() == null ? "" : match.getPath() + ":";
+            if (offsets) {
+                out.println(prefix + match.getOffset() + ":" + match.getLength());
+                return;
+            }
+            final Path key = match.getPath() == null ? Path.of(STANDARD_INPUT) : match.getPath();
+            final Long previous = lastLines.put(key, match.getLine());
+            if (previous == null || previous != match.getLine()) {
+                out.println(prefix + match.getLine() + ":" + match.getPreview());
+            }
+        }
+
+        private void stop() {
+            final FileSearch current = search;
+            if (current != null) {
+                current.cancel();
+            }
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package editor.document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * History of edits of {@link TextDocument} for undo and redo, whose memory is bounded.
+ * <p>
+ * Every edit is stored as a delta: its offset, removed text and inserted text. Texts are slices
+ * of immutable ropes, so recording an edit costs O({@code log |pieces|}) and doesn't copy text,
+ * and slices of memory-mapped files cost almost no heap. Consecutive keystrokes within
+ * {@value #COALESCE_MILLIS} ms are coalesced into one delta, and so are removal and insertion
+ * of one replacement.
+ * </p>
+ * <p>
+ * Deltas are kept in ring buffers of undo and redo, until their heap exceeds budget. Then the oldest
+ * deltas are spilled to temporary file, that is a stack of deltas in order of edits, so undo reads back
+ * only the delta, that is undone. History, that doesn't fit into {@value #MAX_SPILL_BYTES} bytes
+ * of spill, is dropped from the oldest end. Redo history isn't spilled, if it exceeds budget alone,
+ * edits, that were undone first, can't be redone. Undo and redo take time proportional to the size of delta.
+ * </p>
+ */
+public final class EditJournal {
+    private static final long COALESCE_MILLIS = 1000;
+
+    /**
+     * Keystrokes aren't coalesced into deltas longer than this
+     */
+    private static final int MAX_COALESCED = 256;
+
+    /**
+     * Approximate heap size of delta without its texts
+     */
+    private static final int DELTA_BYTES = 64;
+
+    private static final long MAX_SPILL_BYTES = 256L << 20;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    private final long budget;
+    private final Deque<Delta> undo = new ArrayDeque<>();
+    private final Deque<Delta> redo = new ArrayDeque<>();
+    private long heapBytes;
+
+    /**
+     * {@code true} while edits are coalesced into one delta regardless of time and size
+     */
+    private boolean grouping;
+
+    private FileChannel spill;
+    private Path spillPath;
+
+    /**
+     * Offsets of spilled deltas in spill file, the last one is the newest
+     */
+    private long[] spilled = new long[16];
+    private int spilledCount;
+
+    /**
+     * Constructs empty journal
+     *
+     * @param budget maximal heap of deltas in bytes, the older ones are spilled to file
+     */
+    public EditJournal(final long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Delta of one edit, that may contain several coalesced edits
+     */
+    static final class Delta {
+        private int offset;
+        private Rope removed;
+        private Rope inserted;
+        private long time;
+        private long cost;
+
+        Delta(final int offset, final Rope removed, final Rope inserted) {
+            this.offset = offset;
+            this.removed = removed;
+            this.inserted = inserted;
+            this.time = System.currentTimeMillis();
+            this.cost = cost();
+        }
+
+        int getOffset() {
+            return offset;
+        }
+
+        Rope getRemoved() {
+            return removed;
+        }
+
+        Rope getInserted() {
+            return inserted;
+        }
+
+        private long cost() {
+            return DELTA_BYTES + 2L * (removed.heapLength() + inserted.heapLength());
+        }
+    }
+
+    /**
+     * Records insertion. Redo history is dropped, as it doesn't follow the new edit
+     *
+     * @param offset position of inserted text
+     * @param inserted inserted text
+     */
+    synchronized void recordInsert(final int offset, final Rope inserted) {
+        clearRedo();
+        final Delta last = undo.peekLast();
+        if (last != null && canCoalesce(last, inserted.length())
+                && offset == last.offset + last.inserted.length() && (grouping || !endsLine(last.inserted))) {
+            last.inserted = last.inserted.append(inserted);
+            update(last);
+        } else {
+            push(new Delta(offset, Rope.empty(), inserted));
+        }
+    }
+
+    /**
+     * Records removal. Backspace and delete after the same kind of edit are coalesced,
+     * and backspace after typing removes the typed character from delta
+     *
+     * @param offset position of removed text
+     * @param removed removed text
+     */
+    synchronized void recordRemove(final int offset, final Rope removed) {
+        clearRedo();
+        final Delta last = undo.peekLast();
+        if (last != null && canCoalesce(last, removed.length())) {
+            final int typedEnd = last.offset + last.inserted.length();
+            if (last.inserted.length() >= removed.length() && offset + removed.length() == typedEnd) {
+                last.inserted = last.inserted.delete(offset - last.offset, last.inserted.length());
+                if (last.inserted.length() == 0 && last.removed.length() == 0) {
+                    heapBytes -= undo.pollLast().cost;
+                } else {
+                    update(last);
+                }
+                return;
+            }
+            if (last.inserted.length() == 0 && offset + removed.length() == last.offset) {
+                last.removed = removed.append(last.removed);
+                last.offset = offset;
+                update(last);
+                return;
+            }
+            if (last.inserted.length() == 0 && offset == last.offset) {
+                last.removed = last.removed.append(removed);
+                update(last);
+                return;
+            }
+        }
+        push(new Delta(offset, removed, Rope.empty()));
+    }
+
+    /**
+     * Starts group of edits, like removal and insertion of one replacement, that are undone at once.
+     * The first edit of group starts new delta
+     */
+    synchronized void beginGroup() {
+        final Delta last = undo.peekLast();
+        if (last != null) {
+            last.time = 0;
+        }
+        grouping = true;
+    }
+
+    /**
+     * Ends group of edits, next keystrokes aren't coalesced with it
+     */
+    synchronized void endGroup() {
+        grouping = false;
+        final Delta last = undo.peekLast();
+        if (last != null) {
+            last.time = 0;
+        }
+    }
+
+    /**
+     * Typing isn't coalesced across lines
+     */
+    private static boolean endsLine(final Rope text) {
+        return text.length() > 0 && text.charAt(text.length() - 1) == '\n';
+    }
+
+    private boolean canCoalesce(final Delta last, final int length) {
+        if (grouping) {
+            return last.time != 0;
+        }
+        return length == 1 && last.removed.length() + last.inserted.length() < MAX_COALESCED
+                && System.currentTimeMillis() - last.time < COALESCE_MILLIS;
+    }
+
+    /**
+     * Takes the last delta for undo, it is moved to redo history
+     *
+     * @return delta, or {@code null}, if there is nothing to undo
+     */
+    synchronized Delta undo() {
+        Delta delta = undo.pollLast();
+        if (delta == null) {
+            delta = unspill();
+            if (delta == null) {
+                return null;
+            }
+            heapBytes += delta.cost;
+        }
+        delta.time = 0;
+        redo.addLast(delta);
+        trim();
+        return delta;
+    }
+
+    /**
+     * Takes the last undone delta for redo, it is moved back to undo history
+     *
+     * @return delta, or {@code null}, if there is nothing to redo
+     */
+    synchronized Delta redo() {
+        final Delta delta = redo.pollLast();
+        if (delta != null) {
+            undo.addLast(delta);
+        }
+        return delta;
+    }
+
+    /**
+     * Checks, if there is edit to undo
+     *
+     * @return {@code true}, if {@link TextDocument#undo()} changes document
+     */
+    public synchronized boolean canUndo() {
+        return !undo.isEmpty() || spilledCount > 0;
+    }
+
+    /**
+     * Checks, if there is undone edit to redo
+     *
+     * @return {@code true}, if {@link TextDocument#redo()} changes document
+     */
+    public synchronized boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * Gets heap, that deltas hold
+     *
+     * @return approximate number of bytes
+     */
+    public synchronized long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Spills all undo history to file and drops redo history, like when document is evicted from heap
+     */
+    public synchronized void spillAll() {
+        redo.clear();
+        while (!undo.isEmpty()) {
+            spillOldest();
+        }
+        heapBytes = 0;
+    }
+
+    /**
+     * Drops all history, like when document is replaced by another text
+     */
+    public synchronized void clear() {
+        undo.clear();
+        redo.clear();
+        heapBytes = 0;
+        dropSpilled();
+    }
+
+    /**
+     * Drops all history and deletes spill file
+     */
+    public synchronized void close() {
+        clear();
+        if (spill != null) {
+            try {
+                spill.close();
+                Files.deleteIfExists(spillPath);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            spill = null;
+        }
+    }
+
+    private void push(final Delta delta) {
+        undo.addLast(delta);
+        heapBytes += delta.cost;
+        trim();
+    }
+
+    private void update(final Delta delta) {
+        heapBytes -= delta.cost;
+        delta.cost = delta.cost();
+        delta.time = grouping ? delta.time : System.currentTimeMillis();
+        heapBytes += delta.cost;
+        trim();
+    }
+
+    private void clearRedo() {
+        for (final Delta delta : redo) {
+            heapBytes -= delta.cost;
+        }
+        redo.clear();
+    }
+
+    /**
+     * Spills the oldest undo deltas, while history exceeds budget. The newest delta is always kept,
+     * so it can be coalesced. Redo history can't be spilled, because file is a stack of older edits,
+     * so the most recently undone deltas are dropped last
+     */
+    private void trim() {
+        while (heapBytes > budget && undo.size() > 1) {
+            spillOldest();
+        }
+        while (heapBytes > budget && redo.size() > 1) {
+            heapBytes -= redo.pollFirst().cost;
+        }
+    }
+
+    /**
+     * Writes the oldest undo delta to the end of spill, it is the newest spilled one.
+     * If spill can't be written or is full, all spilled history is dropped, because it is older
+     */
+    private void spillOldest() {
+        final Delta delta = undo.pollFirst();
+        heapBytes -= delta.cost;
+        final long bytes = HEADER_BYTES + 2L * (delta.removed.length() + delta.inserted.length());
+        try {
+            if (spill == null) {
+                spillPath = Files.createTempFile("text-editor-undo-", ".bin");
+                spillPath.toFile().deleteOnExit();
+                spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            if (spill.size() + bytes > MAX_SPILL_BYTES) {
+                dropSpilled();
+                if (bytes > MAX_SPILL_BYTES) {
+                    return;
+                }
+            }
+            final long position = spill.size();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(delta.offset).putInt(delta.removed.length()).putInt(delta.inserted.length());
+            write(header.flip(), position);
+            write(delta.removed, position + HEADER_BYTES);
+            write(delta.inserted, position + HEADER_BYTES + 2L * delta.removed.length());
+            if (spilledCount == spilled.length) {
+                spilled = Arrays.copyOf(spilled, 2 * spilledCount);
+            }
+            spilled[spilledCount++] = position;
+        } catch (IOException e) {
+            e.printStackTrace();
+            dropSpilled();
+        }
+    }
+
+    private void write(final Rope text, long position) throws IOException {
+        final char[] chars = new char[Math.min(text.length(), 1 << 16)];
+        final ByteBuffer bytes = ByteBuffer.allocate(2 * chars.length);
+        for (int from = 0; from < text.length(); from += chars.length) {
+            final int to = Math.min(text.length(), from + chars.length);
+            text.getChars(from, to, chars, 0);
+            bytes.clear();
+            bytes.asCharBuffer().put(chars, 0, to - from);
+            bytes.limit(2 * (to - from));
+            position += write(bytes, position);
+        }
+    }
+
+    private long write(final ByteBuffer bytes, final long position) throws IOException {
+        long written = 0;
+        while (bytes.hasRemaining()) {
+            written += spill.write(bytes, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * Reads the newest spilled delta and truncates it from spill
+     */
+    private Delta unspill() {
+        if (spilledCount == 0) {
+            return null;
+        }
+        final long position = spilled[--spilledCount];
+        try {
+            final ByteBuffer header = read(position, HEADER_BYTES);
+            final int offset = header.getInt();
+            final int removed = header.getInt();
+            final int inserted = header.getInt();
+            final CharBuffer chars = read(position + HEADER_BYTES, 2 * (removed + inserted)).asCharBuffer();
+            final Delta delta = new Delta(offset, Rope.wrap(chars.subSequence(0, removed).toString()),
+                    Rope.wrap(chars.subSequence(removed, removed + inserted).toString()));
+            spill.truncate(position);
+            return delta;
+        } catch (IOException e) {
+            e.printStackTrace();
+            dropSpilled();
+            return null;
+        }
+    }
+
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.allocate(length);
+        while (bytes.hasRemaining()) {
+            if (spill.read(bytes, position + bytes.position()) < 0) {
+                throw new IOException("Undo history is truncated");
+            }
+        }
+        return bytes.flip();
+    }
+
+    private void dropSpilled() {
+        spilledCount = 0;
+        if (spill != null) {
+            try {
+                spill.truncate(0);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
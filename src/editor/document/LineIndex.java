@@ -0,0 +1,430 @@
+package editor.document;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Offsets of line starts of text, that are packed in array of {@code int}.
+ * <p>
+ * Unlike elements of {@link javax.swing.text.PlainDocument}, that cost an object and two positions per line,
+ * index costs four bytes per line, and positions of lines don't have to be updated one by one on every edit.
+ * Starts are kept in gap buffer, so lines, that are inserted or removed near the previous edit,
+ * move only the gap. Edit shifts all following lines by its length, so the shift is recorded as a step,
+ * that is pending for all lines after the edited one, and it is applied lazily, when the next edit
+ * is made elsewhere. Typing at one place costs O(1) and lookups cost O(log n).
+ * </p>
+ * <p>
+ * Objects of lines, like their elements, may be linked to lines by {@link Anchor}, that are kept
+ * in the same gap buffer, so anchors move with their lines for free, while lines are inserted and removed.
+ * </p>
+ * <p>
+ * Index isn't thread-safe, it is guarded by lock of {@link TextDocument}.
+ * </p>
+ */
+public final class LineIndex {
+    /**
+     * Size of buffer, that is used for scanning text for line breaks
+     */
+    private static final int SCAN_BUFFER = 1 << 16;
+    private static final int MIN_GAP = 16;
+
+    private int[] starts;
+    private int count;
+    private int gapStart;
+    private int gapLength;
+
+    /**
+     * Starts of lines after {@code stepLine} don't include pending {@code step}
+     */
+    private int stepLine;
+    private int step;
+
+    /**
+     * Anchors of lines in the same gap buffer as starts, or {@code null}, until the first anchor is made
+     */
+    private Anchor<?>[] anchors;
+
+    private LineIndex(final int[] starts, final int count) {
+        this.starts = starts;
+        this.count = count;
+        this.gapStart = count;
+        this.gapLength = starts.length - count;
+    }
+
+    /**
+     * Constructs index of text with one empty line
+     */
+    public LineIndex() {
+        this(new int[MIN_GAP], 1);
+    }
+
+    /**
+     * Finds line starts in one pass over text. Text is read in chunks,
+     * so lazily loaded texts (like {@link MappedText}) are never materialized at once
+     *
+     * @param text text of document
+     * @return index of lines of text
+     */
+    public static LineIndex of(final CharSequence text) {
+        final LineIndex index = new LineIndex();
+        index.append(text, 0, text.length(), 0);
+        return index;
+    }
+
+    /**
+     * Gets number of lines. Text without line breaks has one line
+     *
+     * @return number of lines
+     */
+    public int getLineCount() {
+        return count;
+    }
+
+    /**
+     * Gets offset of line start
+     *
+     * @param line index of line, starting from {@code 0}
+     * @return offset of the first character of line
+     */
+    public int getLineStart(final int line) {
+        if (line < 0 || line >= count) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + count);
+        }
+        return get(line);
+    }
+
+    /**
+     * Finds line of offset by binary search
+     *
+     * @param offset offset in text
+     * @return index of line, that contains offset, offsets out of text belong to the first and the last lines
+     */
+    public int getLineOfOffset(final int offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (get(middle) <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets anchor of line, that was made by {@link #anchor(int, Object, ReferenceQueue)}
+     *
+     * @param line index of line
+     * @return anchor of line, or {@code null}, if line has no anchor
+     */
+    public Anchor<?> getAnchor(final int line) {
+        return anchors == null ? null : anchors[slot(line)];
+    }
+
+    /**
+     * Links object to line, previous anchor of line is unlinked
+     *
+     * @param line index of line
+     * @param referent object of line, it is referenced weakly
+     * @param queue queue, that receives anchor, when its object is collected
+     * @param <T> type of object
+     * @return anchor, that follows line
+     */
+    public <T> Anchor<T> anchor(final int line, final T referent, final ReferenceQueue<? super T> queue) {
+        if (anchors == null) {
+            anchors = new Anchor<?>[starts.length];
+        }
+        unlink(line);
+        final Anchor<T> anchor = new Anchor<>(referent, queue, slot(line));
+        anchors[anchor.slot] = anchor;
+        return anchor;
+    }
+
+    /**
+     * Unlinks anchor of line, if it has one. Anchors of removed lines are unlinked too
+     *
+     * @param line index of line
+     */
+    public void unlink(final int line) {
+        if (anchors != null) {
+            unlink(anchors, slot(line));
+        }
+    }
+
+    /**
+     * Unlinks anchor, whose object was collected
+     *
+     * @param anchor anchor of this index
+     */
+    public void release(final Anchor<?> anchor) {
+        if (anchor.slot >= 0 && anchors[anchor.slot] == anchor) {
+            unlink(anchors, anchor.slot);
+        }
+    }
+
+    /**
+     * Gets current line of anchor
+     *
+     * @param anchor anchor of this index
+     * @return index of line, or {@code -1}, if anchor is unlinked
+     */
+    public int getLine(final Anchor<?> anchor) {
+        if (anchor.slot < 0) {
+            return -1;
+        }
+        return anchor.slot < gapStart ? anchor.slot : anchor.slot - gapLength;
+    }
+
+    /**
+     * Estimates heap, that index holds
+     *
+     * @return approximate number of bytes
+     */
+    public long heapBytes() {
+        return (long) (anchors == null ? Integer.BYTES : 2 * Integer.BYTES) * starts.length;
+    }
+
+    /**
+     * Updates index after insertion of text: lines after the line of insertion are shifted,
+     * and line breaks of inserted text start new lines
+     *
+     * @param offset offset of inserted text
+     * @param text inserted text
+     * @return index of line, that contains offset, new lines follow it
+     */
+    public int insert(final int offset, final CharSequence text) {
+        final int line = getLineOfOffset(offset);
+        shift(line, text.length());
+        append(text, 0, text.length(), offset);
+        return line;
+    }
+
+    /**
+     * Updates index before removal of text: lines, whose line breaks are removed, are merged with the line
+     * of removal, and lines after it are shifted
+     *
+     * @param offset offset of removed text
+     * @param length length of removed text
+     * @return index of line, that contains offset, the following removed lines are merged into it
+     */
+    public int remove(final int offset, final int length) {
+        final int line = getLineOfOffset(offset);
+        final int last = getLineOfOffset(offset + length);
+        if (last > line) {
+            removeLines(line + 1, last - line);
+        }
+        shift(line, -length);
+        return line;
+    }
+
+    private int slot(final int line) {
+        return line < gapStart ? line : line + gapLength;
+    }
+
+    private static void unlink(final Anchor<?>[] anchors, final int slot) {
+        final Anchor<?> anchor = anchors[slot];
+        if (anchor != null) {
+            anchor.slot = -1;
+            anchors[slot] = null;
+        }
+    }
+
+    private int get(final int line) {
+        final int value = starts[slot(line)];
+        return line > stepLine ? value + step : value;
+    }
+
+    /**
+     * Scans text for line breaks and inserts starts of new lines in order after the line of {@code base}
+     */
+    private void append(final CharSequence text, final int from, final int to, final int base) {
+        final char[] buffer = new char[Math.min(to - from, SCAN_BUFFER)];
+        int line = getLineOfOffset(base) + 1;
+        for (int chunk = from; chunk < to; chunk += buffer.length) {
+            final int end = Math.min(to, chunk + buffer.length);
+            getChars(text, chunk, end, buffer);
+            for (int i = 0; i < end - chunk; i++) {
+                if (buffer[i] == '\n') {
+                    insertLine(line++, base + chunk - from + i + 1);
+                }
+            }
+        }
+    }
+
+    private static void getChars(final CharSequence text, final int from, final int to, final char[] buffer) {
+        if (text instanceof Rope) {
+            ((Rope) text).getChars(from, to, buffer, 0);
+        } else if (text instanceof String) {
+            ((String) text).getChars(from, to, buffer, 0);
+        } else {
+            for (int i = from; i < to; i++) {
+                buffer[i - from] = text.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Lines after {@code line} are moved by {@code delta}. Step is moved to the edited line
+     * only if it is near, otherwise the old step is applied to the rest of lines
+     */
+    private void shift(final int line, final int delta) {
+        if (delta == 0) {
+            return;
+        }
+        if (step == 0) {
+            stepLine = line;
+            step = delta;
+        } else if (line >= stepLine) {
+            applyStep(line);
+            step += delta;
+        } else if (line >= stepLine - count / 10) {
+            backStep(line);
+            step += delta;
+        } else {
+            applyStep(count - 1);
+            stepLine = line;
+            step = delta;
+        }
+    }
+
+    /**
+     * Adds step to lines from {@code stepLine} exclusive to {@code line} inclusive
+     */
+    private void applyStep(final int line) {
+        if (step != 0) {
+            add(stepLine + 1, Math.min(line, count - 1) + 1, step);
+        }
+        stepLine = line;
+        if (stepLine >= count - 1) {
+            stepLine = count - 1;
+            step = 0;
+        }
+    }
+
+    /**
+     * Subtracts step from lines from {@code line} exclusive to {@code stepLine} inclusive
+     */
+    private void backStep(final int line) {
+        if (step != 0) {
+            add(line + 1, stepLine + 1, -step);
+        }
+        stepLine = line;
+    }
+
+    /**
+     * Adds delta to raw values of lines in range, parts before and after gap are contiguous loops
+     */
+    private void add(final int from, final int to, final int delta) {
+        final int split = Math.max(from, Math.min(to, gapStart));
+        for (int i = from; i < split; i++) {
+            starts[i] += delta;
+        }
+        for (int i = split + gapLength; i < to + gapLength; i++) {
+            starts[i] += delta;
+        }
+    }
+
+    private void insertLine(final int line, final int start) {
+        if (stepLine < line) {
+            applyStep(line);
+        }
+        if (gapLength == 0) {
+            grow();
+        }
+        moveGap(line);
+        if (anchors != null) {
+            anchors[gapStart] = null;
+        }
+        starts[gapStart++] = start;
+        gapLength--;
+        count++;
+        stepLine++;
+    }
+
+    private void removeLines(final int line, final int lines) {
+        final int last = line + lines - 1;
+        if (last > stepLine) {
+            applyStep(last);
+        }
+        moveGap(line);
+        if (anchors != null) {
+            for (int slot = gapStart + gapLength; slot < gapStart + gapLength + lines; slot++) {
+                unlink(anchors, slot);
+            }
+        }
+        gapLength += lines;
+        count -= lines;
+        stepLine -= lines;
+    }
+
+    private void moveGap(final int position) {
+        if (position < gapStart) {
+            System.arraycopy(starts, position, starts, position + gapLength, gapStart - position);
+            moveAnchors(position, position + gapLength, gapStart - position);
+        } else if (position > gapStart) {
+            System.arraycopy(starts, gapStart + gapLength, starts, gapStart, position - gapStart);
+            moveAnchors(gapStart + gapLength, gapStart, position - gapStart);
+        }
+        gapStart = position;
+    }
+
+    /**
+     * Moves anchors, that cross the gap, and clears slots, that they leave
+     */
+    private void moveAnchors(final int from, final int to, final int length) {
+        if (anchors == null || length == 0) {
+            return;
+        }
+        System.arraycopy(anchors, from, anchors, to, length);
+        for (int slot = to; slot < to + length; slot++) {
+            if (anchors[slot] != null) {
+                anchors[slot].slot = slot;
+            }
+        }
+        if (from < to) {
+            Arrays.fill(anchors, from, Math.min(to, from + length), null);
+        } else {
+            Arrays.fill(anchors, Math.max(to + length, from), from + length, null);
+        }
+    }
+
+    private void grow() {
+        final int capacity = Math.max(2 * starts.length, MIN_GAP);
+        final int tail = starts.length - gapStart - gapLength;
+        final int[] grown = Arrays.copyOf(starts, capacity);
+        System.arraycopy(starts, gapStart + gapLength, grown, capacity - tail, tail);
+        if (anchors != null) {
+            final Anchor<?>[] grownAnchors = Arrays.copyOf(anchors, capacity);
+            Arrays.fill(grownAnchors, gapStart, capacity - tail, null);
+            System.arraycopy(anchors, gapStart + gapLength, grownAnchors, capacity - tail, tail);
+            for (int slot = capacity - tail; slot < capacity; slot++) {
+                if (grownAnchors[slot] != null) {
+                    grownAnchors[slot].slot = slot;
+                }
+            }
+            anchors = grownAnchors;
+        }
+        gapLength = capacity - gapStart - tail;
+        starts = grown;
+    }
+
+    /**
+     * Weak reference to object of line, that knows current line of object
+     *
+     * @param <T> type of object
+     */
+    public static final class Anchor<T> extends WeakReference<T> {
+        /**
+         * Position in gap buffer of index, or {@code -1}, if anchor is unlinked
+         */
+        private int slot;
+
+        private Anchor(final T referent, final ReferenceQueue<? super T> queue, final int slot) {
+            super(referent, queue);
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package editor.document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Text of UTF-8 or ISO-8859-1 file, that is memory-mapped and decoded lazily.
+ * <p>
+ * File is split into pages of {@value #PAGE_BYTES} bytes, aligned to code point boundaries.
+ * Opening makes one pass over mapped bytes to count characters in each page, and keeps only
+ * the index of pages on heap. Characters are decoded page by page on demand, and only last
+ * {@value #CACHED_PAGES} decoded pages (window, that is visible, plus margin) stay in memory.
+ * </p>
+ * <p>
+ * Line separators {@code "\r\n"} and {@code '\r'} are replaced by {@code '\n'}, when page is decoded,
+ * like in other documents, unless they are kept, like in files with mixed separators or in spills of documents.
+ * Both charsets encode them as single bytes, that aren't parts of other characters,
+ * so {@code '\r'} at the end of page is resolved by the first byte of the next page.
+ * Kinds of separators are found, while pages are indexed, so replacement, that can't be reversed, is detected.
+ * </p>
+ * <p>
+ * File must not be changed by other programs while text is used.
+ * </p>
+ */
+public final class MappedText implements CharSequence {
+    private static final int PAGE_BYTES = 1 << 16;
+    private static final int CACHED_PAGES = 32;
+
+    /**
+     * Regions are mapped with overlap, so every page lies inside one region
+     */
+    private static final long REGION_BYTES = 1L << 30;
+    private static final long REGION_OVERLAP = 2L * PAGE_BYTES;
+
+    /**
+     * Kinds of line separators, that are found in file
+     */
+    private static final int LINE_FEED = 1;
+    private static final int CARRIAGE_RETURN_LINE_FEED = 2;
+    private static final int CARRIAGE_RETURN = 4;
+
+    private final Path path;
+    private final MappedByteBuffer[] regions;
+    private final long[] pageBytes;
+    private final int[] pageChars;
+    private final int length;
+
+    /**
+     * {@code true}, if file has {@code '\r'}, so decoded pages are shorter, than their bytes
+     */
+    private final boolean carriageReturns;
+    private final int separators;
+    private final Map<Integer, char[]> cache = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, char[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+    private final CharsetDecoder decoder;
+
+    /**
+     * Last decoded page of each thread, so that parallel scanners don't contend on the cache
+     */
+    private final ThreadLocal<PageCursor> cursor = ThreadLocal.withInitial(PageCursor::new);
+
+    private MappedText(final Path path, final Charset charset, final MappedByteBuffer[] regions,
+                       final long[] pageBytes, final int[] pageChars, final boolean carriageReturns,
+                       final int separators) {
+        this.path = path;
+        this.decoder = charset.newDecoder();
+        this.regions = regions;
+        this.pageBytes = pageBytes;
+        this.pageChars = pageChars;
+        this.length = pageChars[pageChars.length - 1];
+        this.carriageReturns = carriageReturns;
+        this.separators = separators;
+    }
+
+    /**
+     * Maps UTF-8 file, that was written from document, into memory and indexes its pages.
+     * Its line separators are kept, as they were in document
+     *
+     * @param path path to UTF-8 file without byte order mark
+     * @return lazily decoded text of file
+     * @throws IOException if file can't be mapped, isn't valid UTF-8
+     *                     or has more characters, than document can address
+     */
+    public static MappedText open(final Path path) throws IOException {
+        return open(path, StandardCharsets.UTF_8, 0, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Maps the first bytes of file into memory and indexes their pages. Length is taken before mapping
+     * for file, that is being appended to
+     *
+     * @param path path to regular file
+     * @param charset charset of file, that can be mapped
+     * @param skip number of bytes of byte order mark, that are skipped
+     * @param length maximal number of mapped bytes
+     * @param replaceSeparators {@code true}, if line separators are replaced by {@code '\n'}
+     * @return lazily decoded text of bytes
+     * @throws IOException if file can't be mapped, isn't valid in charset
+     *                     or has more characters, than document can address
+     * @see #canMap(Charset)
+     */
+    public static MappedText open(final Path path, final Charset charset, final int skip, final long length,
+                                  final boolean replaceSeparators) throws IOException {
+        if (!canMap(charset)) {
+            throw new IllegalArgumentException("Charset " + charset + " can't be mapped");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = Math.min(channel.size(), length);
+            final MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_BYTES - 1) / REGION_BYTES)];
+            for (int i = 0; i < regions.length; i++) {
+                final long start = i * REGION_BYTES;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(size - start, REGION_BYTES + REGION_OVERLAP));
+            }
+            return index(path, charset, regions, Math.min(skip, size), size, replaceSeparators);
+        }
+    }
+
+    /**
+     * Checks, if files in charset can be mapped
+     *
+     * @param charset charset of file
+     * @return {@code true} for UTF-8 and ISO-8859-1
+     */
+    public static boolean canMap(final Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    private static MappedText index(final Path path, final Charset charset, final MappedByteBuffer[] regions,
+                                    final long skip, final long size, final boolean replaceSeparators)
+            throws IOException {
+        final int pages = (int) ((size - skip + PAGE_BYTES - 1) / PAGE_BYTES);
+        final long[] pageBytes = new long[pages + 1];
+        final int[] pageChars = new int[pages + 1];
+        pageBytes[0] = skip;
+        for (int i = 1; i < pages; i++) {
+            pageBytes[i] = alignToCodePoint(charset, regions, skip + (long) i * PAGE_BYTES);
+        }
+        pageBytes[pages] = size;
+
+        final CharsetDecoder decoder = charset.newDecoder();
+        final CharBuffer out = CharBuffer.allocate(2 * PAGE_BYTES);
+        boolean carriageReturns = false;
+        int separators = 0;
+        boolean afterCarriageReturn = false;
+        long chars = 0;
+        for (int i = 0; i < pages; i++) {
+            out.clear();
+            decode(decoder, slice(regions, pageBytes[i], pageBytes[i + 1]), out);
+            int length = out.position();
+            final char[] array = out.array();
+            for (int j = 0; j < length; j++) {
+                final char c = array[j];
+                if (c == '\n') {
+                    separators |= afterCarriageReturn ? CARRIAGE_RETURN_LINE_FEED : LINE_FEED;
+                } else if (afterCarriageReturn) {
+                    separators |= CARRIAGE_RETURN;
+                }
+                afterCarriageReturn = c == '\r';
+            }
+            if (replaceSeparators && hasCarriageReturn(array, length)) {
+                carriageReturns = true;
+                length = replaceCarriageReturns(out.array(), length, nextByte(regions, pageBytes[i + 1], size));
+            }
+            chars += length;
+            if (chars >= Integer.MAX_VALUE) {
+                throw new IOException("File " + path + " is too large to be opened");
+            }
+            pageChars[i + 1] = (int) chars;
+        }
+        if (afterCarriageReturn) {
+            separators |= CARRIAGE_RETURN;
+        }
+        return new MappedText(path, charset, regions, pageBytes, pageChars, carriageReturns, separators);
+    }
+
+    /**
+     * Moves byte offset back to the first byte of code point, that is not UTF-8 continuation byte
+     */
+    private static long alignToCodePoint(final Charset charset, final MappedByteBuffer[] regions, long offset) {
+        if (!charset.equals(StandardCharsets.UTF_8)) {
+            return offset;
+        }
+        for (int i = 0; i < 3 && (byteAt(regions, offset) & 0xC0) == 0x80; i++) {
+            offset--;
+        }
+        return offset;
+    }
+
+    private static int nextByte(final MappedByteBuffer[] regions, final long offset, final long size) {
+        return offset < size ? byteAt(regions, offset) : -1;
+    }
+
+    /**
+     * Replaces line separators in decoded page in place
+     *
+     * @param chars decoded characters of page
+     * @param length number of decoded characters
+     * @param next first byte of the next page, or {@code -1} at the end of file
+     * @return number of characters after replacement
+     */
+    private static int replaceCarriageReturns(final char[] chars, final int length, final int next) {
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = chars[i];
+            if (c == '\r') {
+                final int following = i + 1 < length ? chars[i + 1] : next;
+                if (following != '\n') {
+                    chars[kept++] = '\n';
+                }
+            } else {
+                chars[kept++] = c;
+            }
+        }
+        return kept;
+    }
+
+    private static boolean hasCarriageReturn(final char[] chars, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (chars[i] == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte byteAt(final MappedByteBuffer[] regions, final long offset) {
+        return regions[(int) (offset / REGION_BYTES)].get((int) (offset % REGION_BYTES));
+    }
+
+    private static ByteBuffer slice(final MappedByteBuffer[] regions, final long from, final long to) {
+        final ByteBuffer region = regions[(int) (from / REGION_BYTES)].duplicate();
+        final int start = (int) (from % REGION_BYTES);
+        region.limit(start + (int) (to - from)).position(start);
+        return region;
+    }
+
+    private static void decode(final CharsetDecoder decoder, final ByteBuffer in, final CharBuffer out)
+            throws CharacterCodingException {
+        decoder.reset();
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(out);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+    /**
+     * Checks, if all lines of file are separated by one separator, so replacing it by {@code '\n'} can be reversed
+     *
+     * @param lineSeparator {@code "\n"}, {@code "\r\n"} or {@code "\r"}
+     * @return {@code true}, if file has no other separators
+     */
+    public boolean isSeparatedBy(final String lineSeparator) {
+        final int kind = lineSeparator.equals("\n") ? LINE_FEED
+                : lineSeparator.equals("\r\n") ? CARRIAGE_RETURN_LINE_FEED : CARRIAGE_RETURN;
+        return (separators & ~kind) == 0;
+    }
+
+    /**
+     * Gets path of mapped file
+     *
+     * @return path of file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        final PageCursor last = cursor.get();
+        if (last.page < 0 || index < pageChars[last.page] || index >= pageChars[last.page + 1]) {
+            last.page = pageOf(index);
+            last.chars = page(last.page);
+        }
+        return last.chars[index - pageChars[last.page]];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return Rope.wrap(this).subSequence(start, end);
+    }
+
+    /**
+     * Copies characters into destination array, decoding each touched page once
+     *
+     * @param srcBegin begin index in text, inclusive
+     * @param srcEnd end index in text, exclusive
+     * @param dst destination array
+     * @param dstBegin begin index in {@code dst}
+     * @see String#getChars(int, int, char[], int)
+     */
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+        int index = srcBegin;
+        while (index < srcEnd) {
+            final int page = pageOf(index);
+            final int pageStart = pageChars[page];
+            final int count = Math.min(srcEnd, pageChars[page + 1]) - index;
+            System.arraycopy(page(page), index - pageStart, dst, dstBegin + index - srcBegin, count);
+            index += count;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final char[] chars = new char[length];
+        getChars(0, length, chars, 0);
+        return new String(chars);
+    }
+
+    private int pageOf(final int index) {
+        final int found = Arrays.binarySearch(pageChars, index);
+        int page = found >= 0 ? found : -found - 2;
+        // skip pages without characters, so that index is inside the page
+        while (pageChars[page + 1] == index) {
+            page++;
+        }
+        return page;
+    }
+
+    private synchronized char[] page(final int page) {
+        char[] chars = cache.get(page);
+        if (chars == null) {
+            final int length = pageChars[page + 1] - pageChars[page];
+            // separators are replaced in buffer of decoded length, that is at most the number of bytes
+            final CharBuffer out = CharBuffer.allocate(carriageReturns
+                    ? (int) (pageBytes[page + 1] - pageBytes[page]) : length);
+            try {
+                decode(decoder, slice(regions, pageBytes[page], pageBytes[page + 1]), out);
+            } catch (CharacterCodingException e) {
+                throw new IllegalStateException("File " + path + " was changed while it was opened", e);
+            }
+            chars = out.array();
+            if (carriageReturns) {
+                final long size = pageBytes[pageBytes.length - 1];
+                replaceCarriageReturns(chars, out.position(), nextByte(regions, pageBytes[page + 1], size));
+                chars = Arrays.copyOf(chars, length);
+            }
+            cache.put(page, chars);
+        }
+        return chars;
+    }
+
+    private static final class PageCursor {
+        private int page = -1;
+        private char[] chars;
+    }
+}
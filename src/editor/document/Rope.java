@@ -0,0 +1,557 @@
+package editor.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable balanced rope of text pieces.
+ * <p>
+ * Rope is a height-balanced (AVL) tree, whose leaves are slices of immutable character sources
+ * (strings, memory-mapped files, small buffers with typed text). Insertion, deletion and taking
+ * a subsequence cost O({@code log |pieces|}) and never copy the underlying sources, so any version
+ * of text can be kept as a cheap snapshot and read concurrently from other threads.
+ * </p>
+ */
+public final class Rope implements CharSequence {
+    /**
+     * Maximal length of leaf, when rope is built from one large source
+     */
+    private static final int LEAF_SIZE = 8192;
+
+    /**
+     * Small adjacent pieces (for example, typed characters) are merged into one leaf up to this length
+     */
+    private static final int MERGE_LIMIT = 512;
+
+    private static final Rope EMPTY = new Rope(new Leaf("", 0, 0));
+
+    private final Node root;
+
+    /**
+     * Last visited leaf. Sequential {@link #charAt(int)} calls from scanners hit it in O({@code 1}).
+     * Cursor is immutable, so racy publication between threads is harmless.
+     */
+    private Cursor last;
+
+    private Rope(final Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Gets empty rope
+     *
+     * @return rope of length {@code 0}
+     */
+    public static Rope empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates rope with given content.
+     * <p>
+     * {@link String} and {@link Rope} are shared without copying,
+     * other (possibly mutable) sequences are copied.
+     * </p>
+     *
+     * @param text content of rope
+     * @return rope with given content
+     */
+    public static Rope of(final CharSequence text) {
+        if (text instanceof Rope) {
+            return (Rope) text;
+        }
+        return wrap(text instanceof String ? text : text.toString());
+    }
+
+    /**
+     * Creates rope over given source without copying.
+     * <p>
+     * Caller guarantees, that {@code source} is never changed while rope is alive.
+     * </p>
+     *
+     * @param source immutable character source
+     * @return rope with given content
+     */
+    public static Rope wrap(final CharSequence source) {
+        return source.length() == 0 ? EMPTY : new Rope(build(source, 0, source.length()));
+    }
+
+    private static Node build(final CharSequence source, final int from, final int to) {
+        final int length = to - from;
+        if (length <= LEAF_SIZE) {
+            return new Leaf(source, from, length);
+        }
+        final int leaves = (length + LEAF_SIZE - 1) / LEAF_SIZE;
+        final int mid = from + (leaves / 2) * LEAF_SIZE;
+        return new Branch(build(source, from, mid), build(source, mid, to));
+    }
+
+    /**
+     * Creates rope with the same content, but own cache of last visited leaf.
+     * <p>
+     * Threads, that scan different parts of one rope in parallel, should use own duplicates,
+     * otherwise they evict each other's cached leaf on every access.
+     * </p>
+     *
+     * @return rope with the same content
+     */
+    public Rope duplicate() {
+        return new Rope(root);
+    }
+
+    @Override
+    public int length() {
+        return root.length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        checkIndex(index, length());
+        final Cursor cursor = last;
+        if (cursor != null && cursor.start <= index && index < cursor.start + cursor.leaf.length) {
+            return cursor.leaf.charAt(index - cursor.start);
+        }
+        Node node = root;
+        int start = 0;
+        while (node instanceof Branch) {
+            final Branch branch = (Branch) node;
+            if (index - start < branch.left.length) {
+                node = branch.left;
+            } else {
+                start += branch.left.length;
+                node = branch.right;
+            }
+        }
+        final Leaf leaf = (Leaf) node;
+        last = new Cursor(leaf, start);
+        return leaf.charAt(index - start);
+    }
+
+    @Override
+    public Rope subSequence(final int start, final int end) {
+        checkRange(start, end, length());
+        if (start == 0 && end == length()) {
+            return this;
+        }
+        if (start == end) {
+            return EMPTY;
+        }
+        return new Rope(split(split(root, end)[0], start)[1]);
+    }
+
+    /**
+     * Creates new rope with {@code text} inserted at {@code index}
+     *
+     * @param index position of insertion
+     * @param text inserted text
+     * @return rope with inserted text
+     */
+    public Rope insert(final int index, final CharSequence text) {
+        checkRange(index, index, length());
+        if (text.length() == 0) {
+            return this;
+        }
+        final Node[] parts = split(root, index);
+        return new Rope(join(join(parts[0], of(text).root), parts[1]));
+    }
+
+    /**
+     * Creates new rope without characters in range [{@code start}, {@code end})
+     *
+     * @param start begin index of removed range, inclusive
+     * @param end end index of removed range, exclusive
+     * @return rope without given range
+     */
+    public Rope delete(final int start, final int end) {
+        checkRange(start, end, length());
+        if (start == end) {
+            return this;
+        }
+        return new Rope(join(split(root, start)[0], split(root, end)[1]));
+    }
+
+    /**
+     * Creates new rope with content of {@code this} followed by content of {@code other}
+     *
+     * @param other appended text
+     * @return concatenation of ropes
+     */
+    public Rope append(final CharSequence other) {
+        return insert(length(), other);
+    }
+
+    /**
+     * Copies characters into destination array
+     *
+     * @param srcBegin begin index in rope, inclusive
+     * @param srcEnd end index in rope, exclusive
+     * @param dst destination array
+     * @param dstBegin begin index in {@code dst}
+     * @see String#getChars(int, int, char[], int)
+     */
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+        checkRange(srcBegin, srcEnd, length());
+        getChars(root, srcBegin, srcEnd, dst, dstBegin);
+    }
+
+    private static void getChars(final Node node, final int from, final int to, final char[] dst, final int dstBegin) {
+        if (from >= to) {
+            return;
+        }
+        if (node instanceof Leaf) {
+            ((Leaf) node).getChars(from, to, dst, dstBegin);
+            return;
+        }
+        final Branch branch = (Branch) node;
+        final int split = branch.left.length;
+        if (from < split) {
+            getChars(branch.left, from, Math.min(to, split), dst, dstBegin);
+        }
+        if (to > split) {
+            getChars(branch.right, Math.max(from, split) - split, to - split,
+                    dst, dstBegin + Math.max(0, split - from));
+        }
+    }
+
+    /**
+     * Counts characters, that are stored on heap. Characters of {@link MappedText} leaves are stored
+     * in memory-mapped file and aren't counted
+     *
+     * @return number of characters of leaves, that aren't backed by mapped file
+     */
+    int heapLength() {
+        return heapLength(root);
+    }
+
+    private static int heapLength(final Node node) {
+        if (node instanceof Leaf) {
+            return ((Leaf) node).source instanceof MappedText ? 0 : node.length;
+        }
+        final Branch branch = (Branch) node;
+        return heapLength(branch.left) + heapLength(branch.right);
+    }
+
+    @Override
+    public String toString() {
+        final char[] chars = new char[length()];
+        getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    private static void checkIndex(final int index, final int length) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+    }
+
+    private static void checkRange(final int start, final int end, final int length) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length);
+        }
+    }
+
+    /**
+     * Splits tree into two trees with {@code index} and {@code length - index} characters
+     */
+    private static Node[] split(final Node node, final int index) {
+        if (index == 0) {
+            return new Node[]{EMPTY.root, node};
+        }
+        if (index == node.length) {
+            return new Node[]{node, EMPTY.root};
+        }
+        if (node instanceof Leaf) {
+            final Leaf leaf = (Leaf) node;
+            return new Node[]{leaf.slice(0, index), leaf.slice(index, leaf.length)};
+        }
+        final Branch branch = (Branch) node;
+        if (index <= branch.left.length) {
+            final Node[] parts = split(branch.left, index);
+            return new Node[]{parts[0], join(parts[1], branch.right)};
+        }
+        final Node[] parts = split(branch.right, index - branch.left.length);
+        return new Node[]{join(branch.left, parts[0]), parts[1]};
+    }
+
+    /**
+     * Concatenates two balanced trees into one balanced tree.
+     * Small boundary leaves are merged, so typing char by char doesn't produce a leaf per char.
+     */
+    private static Node join(final Node left, final Node right) {
+        if (left.length == 0) {
+            return right;
+        }
+        if (right.length == 0) {
+            return left;
+        }
+        if (right.length < MERGE_LIMIT) {
+            final Leaf last = rightmost(left);
+            if (last.length + right.length <= MERGE_LIMIT && right instanceof Leaf) {
+                return replaceRightmost(left, Leaf.merge(last, (Leaf) right));
+            }
+        }
+        if (left.length < MERGE_LIMIT) {
+            final Leaf first = leftmost(right);
+            if (first.length + left.length <= MERGE_LIMIT && left instanceof Leaf) {
+                return replaceLeftmost(right, Leaf.merge((Leaf) left, first));
+            }
+        }
+        return concat(left, right);
+    }
+
+    /**
+     * Concatenates two balanced trees in O({@code |height(left) - height(right)|})
+     */
+    private static Node concat(final Node left, final Node right) {
+        if (left.height > right.height + 1) {
+            final Branch branch = (Branch) left;
+            return balance(branch.left, concat(branch.right, right));
+        }
+        if (right.height > left.height + 1) {
+            final Branch branch = (Branch) right;
+            return balance(concat(left, branch.left), branch.right);
+        }
+        return new Branch(left, right);
+    }
+
+    /**
+     * Creates node from two subtrees, whose heights differ at most by {@code 2}, using AVL rotations
+     */
+    private static Node balance(final Node left, final Node right) {
+        if (left.height > right.height + 1) {
+            final Branch l = (Branch) left;
+            if (l.left.height >= l.right.height) {
+                return new Branch(l.left, new Branch(l.right, right));
+            }
+            final Branch lr = (Branch) l.right;
+            return new Branch(new Branch(l.left, lr.left), new Branch(lr.right, right));
+        }
+        if (right.height > left.height + 1) {
+            final Branch r = (Branch) right;
+            if (r.right.height >= r.left.height) {
+                return new Branch(new Branch(left, r.left), r.right);
+            }
+            final Branch rl = (Branch) r.left;
+            return new Branch(new Branch(left, rl.left), new Branch(rl.right, r.right));
+        }
+        return new Branch(left, right);
+    }
+
+    private static Leaf rightmost(Node node) {
+        while (node instanceof Branch) {
+            node = ((Branch) node).right;
+        }
+        return (Leaf) node;
+    }
+
+    private static Leaf leftmost(Node node) {
+        while (node instanceof Branch) {
+            node = ((Branch) node).left;
+        }
+        return (Leaf) node;
+    }
+
+    private static Node replaceRightmost(final Node node, final Leaf leaf) {
+        if (node instanceof Leaf) {
+            return leaf;
+        }
+        final Branch branch = (Branch) node;
+        return new Branch(branch.left, replaceRightmost(branch.right, leaf));
+    }
+
+    private static Node replaceLeftmost(final Node node, final Leaf leaf) {
+        if (node instanceof Leaf) {
+            return leaf;
+        }
+        final Branch branch = (Branch) node;
+        return new Branch(replaceLeftmost(branch.left, leaf), branch.right);
+    }
+
+    /**
+     * Builder of rope from pieces, that are appended one after another, like text between occurrences
+     * of pattern and their replacements.
+     * <p>
+     * Short pieces are copied into leaves of {@value #LEAF_SIZE} characters, long slices of strings and ropes
+     * share their sources without copying, and the tree is built from leaves at once by {@link #build()}.
+     * So building costs O({@code |copied text| + |leaves|}) instead of O({@code log |pieces|}) per piece,
+     * as appending by {@link #append(CharSequence)} costs.
+     * </p>
+     */
+    public static final class Builder {
+        private final List<Node> leaves = new ArrayList<>();
+        private final char[] chunk = new char[LEAF_SIZE];
+        private int count;
+        private int length;
+
+        /**
+         * Appends text
+         *
+         * @param text appended text
+         * @return this builder
+         */
+        public Builder append(final CharSequence text) {
+            return append(text, 0, text.length());
+        }
+
+        /**
+         * Appends range of text
+         *
+         * @param text source of appended text
+         * @param start begin index in text, inclusive
+         * @param end end index in text, exclusive
+         * @return this builder
+         */
+        public Builder append(final CharSequence text, final int start, final int end) {
+            checkRange(start, end, text.length());
+            if (end - start >= LEAF_SIZE && (text instanceof Rope || text instanceof String)) {
+                flush();
+                if (text instanceof Rope) {
+                    collect(((Rope) text).subSequence(start, end).root);
+                } else {
+                    for (int from = start; from < end; from += LEAF_SIZE) {
+                        leaves.add(new Leaf(text, from, Math.min(LEAF_SIZE, end - from)));
+                    }
+                }
+            } else {
+                for (int from = start; from < end; ) {
+                    final int to = Math.min(end, from + LEAF_SIZE - count);
+                    copy(text, from, to);
+                    from = to;
+                }
+            }
+            length += end - start;
+            return this;
+        }
+
+        /**
+         * Gets length of appended text
+         *
+         * @return number of characters
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Builds balanced rope of appended text
+         *
+         * @return rope with appended text
+         */
+        public Rope build() {
+            flush();
+            return leaves.isEmpty() ? EMPTY : new Rope(build(0, leaves.size()));
+        }
+
+        private Node build(final int from, final int to) {
+            if (to - from == 1) {
+                return leaves.get(from);
+            }
+            final int mid = (from + to) >>> 1;
+            return new Branch(build(from, mid), build(mid, to));
+        }
+
+        private void copy(final CharSequence text, final int from, final int to) {
+            if (text instanceof String) {
+                ((String) text).getChars(from, to, chunk, count);
+            } else if (text instanceof Rope) {
+                ((Rope) text).getChars(from, to, chunk, count);
+            } else {
+                for (int i = from; i < to; i++) {
+                    chunk[count + i - from] = text.charAt(i);
+                }
+            }
+            count += to - from;
+            if (count == LEAF_SIZE) {
+                flush();
+            }
+        }
+
+        private void collect(final Node node) {
+            if (node instanceof Branch) {
+                collect(((Branch) node).left);
+                collect(((Branch) node).right);
+            } else if (node.length > 0) {
+                leaves.add(node);
+            }
+        }
+
+        private void flush() {
+            if (count > 0) {
+                leaves.add(new Leaf(new String(chunk, 0, count), 0, count));
+                count = 0;
+            }
+        }
+    }
+
+    private abstract static class Node {
+        final int length;
+        final int height;
+
+        Node(final int length, final int height) {
+            this.length = length;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Slice [{@code offset}, {@code offset + length}) of immutable source
+     */
+    private static final class Leaf extends Node {
+        private final CharSequence source;
+        private final int offset;
+
+        Leaf(final CharSequence source, final int offset, final int length) {
+            super(length, 0);
+            this.source = source;
+            this.offset = offset;
+        }
+
+        static Leaf merge(final Leaf first, final Leaf second) {
+            final char[] chars = new char[first.length + second.length];
+            first.getChars(0, first.length, chars, 0);
+            second.getChars(0, second.length, chars, first.length);
+            return new Leaf(new String(chars), 0, chars.length);
+        }
+
+        char charAt(final int index) {
+            return source.charAt(offset + index);
+        }
+
+        Leaf slice(final int from, final int to) {
+            return new Leaf(source, offset + from, to - from);
+        }
+
+        void getChars(final int from, final int to, final char[] dst, final int dstBegin) {
+            if (source instanceof String) {
+                ((String) source).getChars(offset + from, offset + to, dst, dstBegin);
+            } else if (source instanceof MappedText) {
+                ((MappedText) source).getChars(offset + from, offset + to, dst, dstBegin);
+            } else {
+                for (int i = from; i < to; i++) {
+                    dst[dstBegin + i - from] = source.charAt(offset + i);
+                }
+            }
+        }
+    }
+
+    private static final class Branch extends Node {
+        private final Node left;
+        private final Node right;
+
+        Branch(final Node left, final Node right) {
+            super(left.length + right.length, Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class Cursor {
+        private final Leaf leaf;
+        private final int start;
+
+        Cursor(final Leaf leaf, final int start) {
+            this.leaf = leaf;
+            this.start = start;
+        }
+    }
+}
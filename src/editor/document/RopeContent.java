@@ -0,0 +1,187 @@
+package editor.document;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Storage of {@link javax.swing.text.Document} content based on {@link Rope}.
+ * <p>
+ * Every modification replaces current rope with the new version in O({@code log |pieces|}),
+ * so the previous versions stay valid and can be used as immutable snapshots.
+ * Positions are tracked the same way, as in {@link javax.swing.text.StringContent}.
+ * </p>
+ */
+public class RopeContent implements AbstractDocument.Content {
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private volatile Rope rope;
+    private volatile long version = VERSIONS.incrementAndGet();
+    private final List<Mark> marks = new ArrayList<>();
+
+    /**
+     * Creates content with the only implied line break, as {@link AbstractDocument} requires
+     */
+    public RopeContent() {
+        this.rope = Rope.of("\n");
+    }
+
+    /**
+     * Gets current version of content, including implied trailing line break
+     *
+     * @return immutable rope with content
+     */
+    public Rope getRope() {
+        return rope;
+    }
+
+    /**
+     * Gets number of current version of content.
+     * Every modification gets new number, that is unique among all contents,
+     * so equal numbers always mean equal texts.
+     *
+     * @return version of content
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public synchronized Position createPosition(final int offset) throws BadLocationException {
+        if (offset < 0 || offset > rope.length()) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        final StickyPosition position = new StickyPosition(offset);
+        marks.add(position.mark);
+        return position;
+    }
+
+    @Override
+    public int length() {
+        return rope.length();
+    }
+
+    @Override
+    public UndoableEdit insertString(final int where, final String str) throws BadLocationException {
+        insert(where, str);
+        return null;
+    }
+
+    /**
+     * Inserts any immutable text without copying it, unlike {@link #insertString(int, String)}
+     *
+     * @param where position of insertion
+     * @param text inserted text
+     * @throws BadLocationException if position is out of content
+     */
+    public void insert(final int where, final CharSequence text) throws BadLocationException {
+        if (where < 0 || where >= rope.length()) {
+            throw new BadLocationException("Invalid insert", where);
+        }
+        rope = rope.insert(where, text);
+        version = VERSIONS.incrementAndGet();
+        updateMarksForInsert(where, text.length());
+    }
+
+    @Override
+    public UndoableEdit remove(final int where, final int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= rope.length()) {
+            throw new BadLocationException("Invalid remove", where + nitems);
+        }
+        rope = rope.delete(where, where + nitems);
+        version = VERSIONS.incrementAndGet();
+        updateMarksForRemove(where, nitems);
+        return null;
+    }
+
+    @Override
+    public String getString(final int where, final int len) throws BadLocationException {
+        checkBounds(where, len);
+        return rope.subSequence(where, where + len).toString();
+    }
+
+    @Override
+    public void getChars(final int where, final int len, final Segment txt) throws BadLocationException {
+        checkBounds(where, len);
+        if (txt.array == null || txt.array.length < len) {
+            txt.array = new char[len];
+        }
+        rope.getChars(where, where + len, txt.array, 0);
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    private void checkBounds(final int where, final int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > rope.length()) {
+            throw new BadLocationException("Invalid range", where + len);
+        }
+    }
+
+    private synchronized void updateMarksForInsert(final int offset, final int length) {
+        // position at zero is a special case: it never moves
+        final int from = offset == 0 ? 1 : offset;
+        updateMarks(mark -> {
+            if (mark.offset >= from) {
+                mark.offset += length;
+            }
+        });
+    }
+
+    private synchronized void updateMarksForRemove(final int offset, final int length) {
+        updateMarks(mark -> {
+            if (mark.offset >= offset + length) {
+                mark.offset -= length;
+            } else if (mark.offset >= offset) {
+                mark.offset = offset;
+            }
+        });
+    }
+
+    /**
+     * Applies update to all alive marks and drops marks, whose positions were collected
+     */
+    private void updateMarks(final Consumer<Mark> update) {
+        int alive = 0;
+        for (final Mark mark : marks) {
+            if (mark.get() != null) {
+                update.accept(mark);
+                marks.set(alive++, mark);
+            }
+        }
+        marks.subList(alive, marks.size()).clear();
+    }
+
+    private static final class Mark extends WeakReference<StickyPosition> {
+        private int offset;
+
+        Mark(final StickyPosition position, final int offset) {
+            super(position);
+            this.offset = offset;
+        }
+    }
+
+    private final class StickyPosition implements Position {
+        private final Mark mark;
+
+        StickyPosition(final int offset) {
+            this.mark = new Mark(this, offset);
+        }
+
+        @Override
+        public int getOffset() {
+            return mark.offset;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package editor.document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+import java.lang.ref.ReferenceQueue;
+
+/**
+ * Plain text document, that is stored in {@link RopeContent}.
+ * <p>
+ * Unlike {@link javax.swing.JTextArea#getText()}, that copies whole text on every call,
+ * this document gives immutable snapshots of its text in O({@code log |pieces|}),
+ * so searches on large texts don't allocate copies of the document.
+ * </p>
+ * <p>
+ * Lines are kept in {@link LineIndex} instead of element and two positions per line, as in
+ * {@link PlainDocument}, so edits don't update positions of all lines, and large files cost four bytes per line.
+ * Elements of lines are created, when views ask for them, and they are linked to their lines by anchors
+ * of the index, while views use them, because views compare lines by identity.
+ * </p>
+ * <p>
+ * Edits are recorded in {@link EditJournal} as slices of ropes, so they can be undone and redone
+ * without {@link javax.swing.undo.UndoManager}, that keeps object graph of every edit.
+ * </p>
+ */
+public class TextDocument extends AbstractDocument {
+    private static final int TAB_SIZE = 8;
+
+    /**
+     * Heap of undo history of one document, the older history is spilled to file
+     */
+    private static final long JOURNAL_BUDGET = 4L << 20;
+
+    private final RopeContent content;
+    private final Element root = new RootElement();
+    private LineIndex lines = new LineIndex();
+
+    /**
+     * Queue of anchors, whose elements aren't used by views anymore
+     */
+    private final ReferenceQueue<LineElement> collectedLines = new ReferenceQueue<>();
+    private EditJournal journal = new EditJournal(JOURNAL_BUDGET);
+
+    /**
+     * {@code true} while journal is replayed or text is loaded, so these edits aren't recorded
+     */
+    private boolean replaying;
+
+    /**
+     * Constructs empty document
+     */
+    public TextDocument() {
+        this(new RopeContent());
+    }
+
+    private TextDocument(final RopeContent content) {
+        super(content);
+        this.content = content;
+        putProperty(PlainDocument.tabSizeAttribute, TAB_SIZE);
+    }
+
+    /**
+     * Gets immutable snapshot of current text of document.
+     * <p>
+     * Snapshot is not affected by further modifications of document and can be read from any thread.
+     * </p>
+     *
+     * @return current text without implied trailing line break
+     */
+    public Rope snapshot() {
+        final Rope rope = content.getRope();
+        return rope.subSequence(0, rope.length() - 1);
+    }
+
+    /**
+     * Gets version of text, that is unique among all documents.
+     * Text with the same version as before is guaranteed to be unchanged.
+     *
+     * @return version of current text
+     */
+    public long getVersion() {
+        return content.getVersion();
+    }
+
+    /**
+     * Gets number of lines, text without line breaks has one line
+     *
+     * @return number of lines
+     */
+    public int getLineCount() {
+        readLock();
+        try {
+            return lines.getLineCount();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Finds line of offset in O(log n)
+     *
+     * @param offset offset in text
+     * @return index of line, starting from {@code 0}
+     */
+    public int getLineOfOffset(final int offset) {
+        readLock();
+        try {
+            return lines.getLineOfOffset(offset);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Gets offset of line start in O(1)
+     *
+     * @param line index of line, starting from {@code 0}
+     * @return offset of the first character of line
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public int getLineStartOffset(final int line) {
+        readLock();
+        try {
+            return lines.getLineStart(line);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Estimates heap, that document holds: characters, that are stored on heap, index of lines and undo history.
+     * Memory-mapped text isn't counted, because its pages are evicted by operating system
+     *
+     * @return approximate number of bytes
+     */
+    public long estimateHeapBytes() {
+        readLock();
+        try {
+            return 2L * content.getRope().heapLength() + lines.heapBytes() + journal.getHeapBytes();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Replaces whole text of document with given rope.
+     * <p>
+     * Unlike {@link javax.swing.JTextArea#setText(String)}, text is not copied: it becomes
+     * a piece of document content. Text is read once in chunks to find line breaks,
+     * so lazily loaded texts (like {@link MappedText}) are never materialized at once.
+     * Loading isn't recorded in journal and clears it.
+     * </p>
+     *
+     * @param text new text of document
+     */
+    public void load(final Rope text) {
+        final LineIndex loaded = LineIndex.of(text);
+        replaying = true;
+        try {
+            remove(0, getLength());
+            writeLock();
+            try {
+                content.insert(0, text);
+                final DefaultDocumentEvent event = new DefaultDocumentEvent(0, text.length(),
+                        DocumentEvent.EventType.INSERT);
+                final LineChange change = detach(0, 0, loaded.getLineCount() - 1, 0);
+                lines = loaded;
+                event.addEdit(change);
+                event.end();
+                fireInsertUpdate(event);
+            } finally {
+                writeUnlock();
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Document can't be cleared", e);
+        } finally {
+            replaying = false;
+        }
+        journal.clear();
+    }
+
+    /**
+     * Gets history of edits
+     *
+     * @return journal of document
+     */
+    public EditJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets history of edits, like history of the same text, that was evicted from heap and restored
+     *
+     * @param journal journal, whose edits lead to current text
+     */
+    public void setJournal(final EditJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Reverts the last edit, coalesced keystrokes are reverted at once
+     *
+     * @return position after restored text, where caret should be placed,
+     *         or {@code -1}, if there is nothing to undo
+     */
+    public int undo() {
+        final EditJournal.Delta delta = journal.undo();
+        if (delta == null) {
+            return -1;
+        }
+        return replay(delta.getOffset(), delta.getInserted().length(), delta.getRemoved());
+    }
+
+    /**
+     * Applies the last undone edit again
+     *
+     * @return position after inserted text, where caret should be placed,
+     *         or {@code -1}, if there is nothing to redo
+     */
+    public int redo() {
+        final EditJournal.Delta delta = journal.redo();
+        if (delta == null) {
+            return -1;
+        }
+        return replay(delta.getOffset(), delta.getRemoved().length(), delta.getInserted());
+    }
+
+    /**
+     * Replaces range of text with rope without copying it, as {@link #load(Rope)} does.
+     * If journal doesn't match text, it is cleared
+     */
+    private int replay(final int offset, final int removed, final Rope inserted) {
+        replaying = true;
+        try {
+            if (removed > 0) {
+                remove(offset, removed);
+            }
+            insert(offset, inserted);
+            return offset + inserted.length();
+        } catch (BadLocationException e) {
+            journal.clear();
+            return -1;
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * Replaces range of text with rope as one edit, that is undone at once.
+     * <p>
+     * Unlike {@link #replace(int, int, String, AttributeSet)}, text is not copied: it becomes a piece
+     * of document content and of its journal, so large replacements, like replacing all occurrences
+     * of pattern, cost one removal and one insertion.
+     * </p>
+     *
+     * @param offset begin index of replaced range
+     * @param length length of replaced range
+     * @param text new text of range
+     * @throws BadLocationException if range is out of document
+     */
+    public void replace(final int offset, final int length, final Rope text) throws BadLocationException {
+        journal.beginGroup();
+        try {
+            if (length > 0) {
+                remove(offset, length);
+            }
+            insert(offset, text);
+        } finally {
+            journal.endGroup();
+        }
+    }
+
+    /**
+     * Appends rope to the end of text without copying it.
+     * <p>
+     * Appending isn't recorded in journal, as {@link #load(Rope)} isn't: it is used for text,
+     * that was appended to file of document, like new lines of followed log, so it isn't undone.
+     * Edits in journal precede appended text, so they stay valid.
+     * </p>
+     *
+     * @param text appended text
+     */
+    public void append(final Rope text) {
+        replaying = true;
+        try {
+            insert(getLength(), text);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Text can't be appended", e);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * Inserts rope without copying it and notifies listeners, as {@link #insertString(int, String, AttributeSet)} does
+     */
+    private void insert(final int offset, final Rope text) throws BadLocationException {
+        if (text.length() == 0) {
+            return;
+        }
+        writeLock();
+        try {
+            content.insert(offset, text);
+            final DefaultDocumentEvent event = new DefaultDocumentEvent(offset, text.length(),
+                    DocumentEvent.EventType.INSERT);
+            insertUpdate(event, null);
+            event.end();
+            fireInsertUpdate(event);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Replacement of selection is undone at once. Typing without selection is replacement
+     * of empty range, so it isn't grouped and keystrokes are coalesced
+     */
+    @Override
+    public void replace(final int offset, final int length, final String text, final AttributeSet attrs)
+            throws BadLocationException {
+        if (length == 0 || text == null || text.isEmpty()) {
+            super.replace(offset, length, text, attrs);
+            return;
+        }
+        journal.beginGroup();
+        try {
+            super.replace(offset, length, text, attrs);
+        } finally {
+            journal.endGroup();
+        }
+    }
+
+    @Override
+    public Element getDefaultRootElement() {
+        return root;
+    }
+
+    @Override
+    public Element getParagraphElement(final int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    /**
+     * Inserted line breaks replace the line of insertion with new lines, as in {@link PlainDocument}
+     */
+    @Override
+    protected void insertUpdate(final DefaultDocumentEvent chng, final AttributeSet attr) {
+        final Rope inserted = content.getRope().subSequence(chng.getOffset(), chng.getOffset() + chng.getLength());
+        if (!replaying) {
+            journal.recordInsert(chng.getOffset(), inserted);
+        }
+        final int count = lines.getLineCount();
+        final int line = lines.insert(chng.getOffset(), inserted);
+        if (lines.getLineCount() > count) {
+            chng.addEdit(detach(line, 0, lines.getLineCount() - count, chng.getOffset()));
+        }
+        super.insertUpdate(chng, attr);
+    }
+
+    /**
+     * Removed text is taken before it is removed from content.
+     * Lines, whose line breaks are removed, are merged into one new line
+     */
+    @Override
+    protected void removeUpdate(final DefaultDocumentEvent chng) {
+        final int offset = chng.getOffset();
+        if (!replaying) {
+            journal.recordRemove(offset, content.getRope().subSequence(offset, offset + chng.getLength()));
+        }
+        final int line = lines.getLineOfOffset(offset);
+        final int last = lines.getLineOfOffset(offset + chng.getLength());
+        if (last > line) {
+            chng.addEdit(detach(line, last - line, 0, offset));
+        }
+        lines.remove(offset, chng.getLength());
+        super.removeUpdate(chng);
+    }
+
+    /**
+     * Detaches elements of replaced lines, they keep their last offsets.
+     * Elements of the following lines are moved by index. It costs O(number of replaced lines)
+     *
+     * @param line the first replaced line
+     * @param removed number of lines after it, that are removed
+     * @param added number of lines after it, that are added
+     * @param offset offset of edit
+     * @return change of root element, that replaces lines from {@code line} to {@code line + removed}
+     *         with lines from {@code line} to {@code line + added}
+     */
+    private LineChange detach(final int line, final int removed, final int added, final int offset) {
+        final LineElement[] detached = new LineElement[removed + 1];
+        synchronized (collectedLines) {
+            for (int i = 0; i <= removed; i++) {
+                final LineIndex.Anchor<?> anchor = lines.getAnchor(line + i);
+                final LineElement element = anchor == null ? null : (LineElement) anchor.get();
+                if (element != null) {
+                    element.detach();
+                    detached[i] = element;
+                }
+                lines.unlink(line + i);
+            }
+        }
+        return new LineChange(line, detached, added + 1, offset);
+    }
+
+    /**
+     * Gets element of line, that is the same object, while it is used
+     */
+    private LineElement getLineElement(final int line) {
+        synchronized (collectedLines) {
+            LineIndex.Anchor<?> collected;
+            while ((collected = (LineIndex.Anchor<?>) collectedLines.poll()) != null) {
+                lines.release(collected);
+            }
+            final LineIndex.Anchor<?> anchor = lines.getAnchor(line);
+            LineElement element = anchor == null ? null : (LineElement) anchor.get();
+            if (element == null) {
+                element = new LineElement();
+                element.anchor = lines.anchor(line, element, collectedLines);
+            }
+            return element;
+        }
+    }
+
+    /**
+     * Root element, whose children are lines of {@link LineIndex}
+     */
+    private final class RootElement implements Element {
+        @Override
+        public Document getDocument() {
+            return TextDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return ParagraphElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return content.length();
+        }
+
+        @Override
+        public int getElementIndex(final int offset) {
+            return lines.getLineOfOffset(offset);
+        }
+
+        @Override
+        public int getElementCount() {
+            return lines.getLineCount();
+        }
+
+        @Override
+        public Element getElement(final int index) {
+            return index >= 0 && index < lines.getLineCount() ? getLineElement(index) : null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+    }
+
+    /**
+     * Element of line, that is found by its index. Element of removed line keeps its last offsets
+     */
+    private final class LineElement implements Element {
+        private LineIndex.Anchor<LineElement> anchor;
+        private int start;
+        private int end;
+
+        LineElement() {
+        }
+
+        LineElement(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void detach() {
+            start = getStartOffset();
+            end = getEndOffset();
+            anchor = null;
+        }
+
+        private int getLine() {
+            return anchor == null ? -1 : lines.getLine(anchor);
+        }
+
+        @Override
+        public Document getDocument() {
+            return TextDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return root;
+        }
+
+        @Override
+        public String getName() {
+            return ContentElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            final int line = getLine();
+            return line < 0 ? start : lines.getLineStart(line);
+        }
+
+        @Override
+        public int getEndOffset() {
+            final int line = getLine();
+            if (line < 0) {
+                return end;
+            }
+            return line + 1 < lines.getLineCount() ? lines.getLineStart(line + 1) : content.length();
+        }
+
+        @Override
+        public int getElementIndex(final int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Override
+        public Element getElement(final int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+    }
+
+    /**
+     * Change of lines, whose elements are created, only when views ask for them,
+     * so edits of document without views, like loading in background, don't create elements
+     */
+    private final class LineChange extends AbstractUndoableEdit implements DocumentEvent.ElementChange {
+        private final int index;
+        private final LineElement[] detached;
+        private final int added;
+        private final int offset;
+        private Element[] childrenRemoved;
+        private Element[] childrenAdded;
+
+        LineChange(final int index, final LineElement[] detached, final int added, final int offset) {
+            this.index = index;
+            this.detached = detached;
+            this.added = added;
+            this.offset = offset;
+        }
+
+        @Override
+        public Element getElement() {
+            return root;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public Element[] getChildrenRemoved() {
+            if (childrenRemoved == null) {
+                childrenRemoved = new Element[detached.length];
+                for (int i = 0; i < detached.length; i++) {
+                    childrenRemoved[i] = detached[i] != null ? detached[i] : new LineElement(offset, offset);
+                }
+            }
+            return childrenRemoved;
+        }
+
+        /**
+         * Added lines are read from index, so they are valid only during notification about the edit
+         */
+        @Override
+        public Element[] getChildrenAdded() {
+            if (childrenAdded == null) {
+                childrenAdded = new Element[added];
+                for (int i = 0; i < added; i++) {
+                    childrenAdded[i] = getLineElement(index + i);
+                }
+            }
+            return childrenAdded;
+        }
+    }
+}
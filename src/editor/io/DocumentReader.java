@@ -0,0 +1,139 @@
+package editor.io;
+
+import editor.document.Rope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming reader of text file in given {@link TextEncoding}.
+ * <p>
+ * Bytes are read in chunks of {@value #CHUNK_BYTES} bytes and decoded by one {@link CharsetDecoder}
+ * into one {@link CharBuffer}, that are reused for all chunks of file, so whole file is never held as bytes.
+ * Decoded chunks become pieces of {@link Rope}. Line separators are replaced by {@code '\n'} on the fly,
+ * unless encoding has mixed separators, that are kept. Malformed input and separators, that differ
+ * from separator of encoding, aren't replaced, they fail reading, so text is never changed silently.
+ * </p>
+ */
+public final class DocumentReader {
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private final TextEncoding encoding;
+
+    /**
+     * {@code true}, if the last decoded character was {@code '\r'}, so {@code '\n'} after it is dropped
+     */
+    private boolean afterCarriageReturn;
+
+    /**
+     * {@code true}, if separator, that differs from separator of encoding, was found
+     */
+    private boolean mixed;
+
+    /**
+     * Constructs reader
+     *
+     * @param encoding encoding of read files
+     */
+    public DocumentReader(final TextEncoding encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Reads text of file
+     *
+     * @param path path to regular file
+     * @return text of file without byte order mark, whose lines are separated by {@code '\n'}
+     * @throws IOException if file can't be read or isn't valid in encoding
+     * @throws MixedLineSeparatorsException if file has different separators, but encoding doesn't keep them
+     */
+    public Rope read(final Path path) throws IOException {
+        return read(path, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads text of the first bytes of file, like of file, that is being appended to,
+     * whose length was taken before reading
+     *
+     * @param path path to regular file
+     * @param length number of read bytes, including byte order mark
+     * @return text of bytes without byte order mark, whose lines are separated by {@code '\n'}
+     * @throws IOException if file can't be read or isn't valid in encoding
+     * @throws MixedLineSeparatorsException if file has different separators, but encoding doesn't keep them
+     */
+    public Rope read(final Path path, final long length) throws IOException {
+        final CharsetDecoder decoder = encoding.getCharset().newDecoder();
+        final ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        final CharBuffer chars = CharBuffer.allocate((int) Math.ceil(CHUNK_BYTES * decoder.maxCharsPerByte()));
+        Rope text = Rope.empty();
+        afterCarriageReturn = false;
+        mixed = false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(encoding.getBom().length);
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                final long remaining = length - channel.position();
+                bytes.limit((int) Math.min(bytes.capacity(), bytes.position() + Math.max(remaining, 0)));
+                endOfInput = remaining <= 0 || channel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result = decoder.decode(bytes, chars, endOfInput);
+                if (endOfInput && result.isUnderflow()) {
+                    result = decoder.flush(chars);
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+                // undecoded tail (sequence, that continues in the next chunk) is kept
+                bytes.compact();
+                text = text.append(takeLines(chars));
+                if (endOfInput && afterCarriageReturn) {
+                    separate("\r");
+                }
+                if (mixed) {
+                    throw new MixedLineSeparatorsException("File " + path + " has different line separators");
+                }
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Takes decoded characters, replacing {@code "\r\n"} and {@code '\r'} by {@code '\n'},
+     * or keeping them, if encoding has mixed separators
+     */
+    private String takeLines(final CharBuffer chars) {
+        final char[] array = chars.array();
+        final int length = chars.position();
+        chars.clear();
+        if (encoding.isMixed()) {
+            return new String(array, 0, length);
+        }
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = array[i];
+            if (c == '\n' && afterCarriageReturn) {
+                afterCarriageReturn = false;
+                separate("\r\n");
+                continue;
+            }
+            if (afterCarriageReturn) {
+                separate("\r");
+            } else if (c == '\n') {
+                separate("\n");
+            }
+            afterCarriageReturn = c == '\r';
+            array[kept++] = afterCarriageReturn ? '\n' : c;
+        }
+        return new String(array, 0, kept);
+    }
+
+    private void separate(final String separator) {
+        mixed |= !separator.equals(encoding.getLineSeparator());
+    }
+}
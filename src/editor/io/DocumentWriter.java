@@ -0,0 +1,223 @@
+package editor.io;
+
+import editor.document.Rope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Streaming and crash-safe writer of text to file.
+ * <p>
+ * Text is encoded in chunks of {@value #CHUNK_CHARS} characters directly into {@link FileChannel}
+ * of temporary file in the same directory. Temporary file is synced to disk and atomically renamed
+ * to the target, so target file is either old or completely new even if application crashes,
+ * then directory is synced too, so rename isn't lost. Memory usage doesn't depend on size of text.
+ * </p>
+ * <p>
+ * Symbolic link is resolved, and file, that it points to, is replaced, so link stays link. Temporary file
+ * gets permissions, owner, group and access control list of replaced file, as far as file system supports them
+ * and user is allowed to set them, and permissions of new file are set by umask, like for any created file.
+ * </p>
+ * <p>
+ * Text is written in {@link TextEncoding} of file: byte order mark is written first and {@code '\n'}
+ * is replaced by line separator of file. Characters, that can't be encoded in charset, fail writing,
+ * so text is never changed silently.
+ * </p>
+ */
+public final class DocumentWriter {
+    private static final int CHUNK_CHARS = 1 << 16;
+
+    /**
+     * Minimal interval between progress reports
+     */
+    private static final long REPORT_NANOS = 100_000_000L;
+
+    private final TextEncoding encoding;
+    private final Consumer<Progress> listener;
+
+    /**
+     * Constructs writer
+     *
+     * @param encoding encoding of written files
+     * @param listener receiver of progress reports
+     */
+    public DocumentWriter(final TextEncoding encoding, final Consumer<Progress> listener) {
+        this.encoding = encoding;
+        this.listener = listener;
+    }
+
+    /**
+     * Writes text to file, replacing it atomically
+     *
+     * @param text immutable text, that is written
+     * @param target path of written file
+     * @throws IOException if file can't be written
+     * @throws java.nio.charset.UnmappableCharacterException if text has characters, that can't be encoded
+     */
+    public void write(final CharSequence text, final Path target) throws IOException {
+        final boolean exists = Files.exists(target);
+        final Path absolute = exists ? target.toRealPath() : target.toAbsolutePath();
+        final Path temp = createTemp(absolute);
+        try {
+            if (exists) {
+                copyAttributes(absolute, temp);
+            }
+            writeChunks(text, temp);
+            try {
+                Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(absolute.getParent());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates temporary file near the target. Unlike {@link Files#createTempFile}, that makes file readable
+     * only by owner, file is created with default permissions
+     */
+    private static Path createTemp(final Path target) throws IOException {
+        while (true) {
+            final String suffix = Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), Character.MAX_RADIX);
+            final Path temp = target.resolveSibling("." + target.getFileName() + "." + suffix + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // tries another name
+            }
+        }
+    }
+
+    /**
+     * Copies attributes of replaced file to temporary file. Owner and group are set before permissions,
+     * because changing of owner may reset some permission bits. Owner can be changed only by privileged user,
+     * so file of another user becomes owned by current user, if it can't be changed
+     */
+    private static void copyAttributes(final Path source, final Path temp) throws IOException {
+        final PosixFileAttributeView posix = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+        if (posix != null) {
+            final PosixFileAttributes attributes = Files.readAttributes(source, PosixFileAttributes.class);
+            try {
+                posix.setGroup(attributes.group());
+                posix.setOwner(attributes.owner());
+            } catch (IOException e) {
+                // not permitted, file keeps owner and group of current user
+            }
+            posix.setPermissions(attributes.permissions());
+        }
+        final AclFileAttributeView acl = Files.getFileAttributeView(temp, AclFileAttributeView.class);
+        if (acl != null) {
+            try {
+                acl.setOwner(Files.getOwner(source));
+            } catch (IOException e) {
+                // not permitted, file keeps current user as owner
+            }
+            acl.setAcl(Files.getFileAttributeView(source, AclFileAttributeView.class).getAcl());
+        }
+    }
+
+    /**
+     * Syncs directory to disk, so renamed file is found after crash. Directories can't be opened
+     * on some platforms, like Windows, where rename is already durable
+     */
+    private static void syncDirectory(final Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directory can't be synced on this platform
+        }
+    }
+
+    private void writeChunks(final CharSequence text, final Path path) throws IOException {
+        final CharsetEncoder encoder = encoding.getCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        final String separator = encoding.getLineSeparator();
+        final CharBuffer chars = CharBuffer.allocate(CHUNK_CHARS);
+        // characters of text are copied here, before line separators are replaced
+        final char[] lines = separator.equals("\n") ? null : new char[CHUNK_CHARS / separator.length()];
+        final ByteBuffer bytes = ByteBuffer.allocateDirect((int) Math.ceil(CHUNK_CHARS * encoder.maxBytesPerChar()));
+        final long start = System.nanoTime();
+        long reported = start;
+        long written = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            written += channel.write(ByteBuffer.wrap(encoding.getBom()));
+            int index = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                final int end;
+                if (lines == null) {
+                    end = Math.min(text.length(), index + chars.remaining());
+                    fill(text, index, end, chars);
+                } else {
+                    end = Math.min(text.length(), index + chars.remaining() / separator.length());
+                    fill(text, index, end, CharBuffer.wrap(lines));
+                    fillLines(lines, end - index, separator, chars);
+                }
+                index = end;
+                endOfInput = index == text.length();
+                chars.flip();
+                CoderResult result = encoder.encode(chars, bytes, endOfInput);
+                if (endOfInput && result.isUnderflow()) {
+                    result = encoder.flush(bytes);
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+                // unencoded tail (half of surrogate pair) is kept for the next chunk
+                chars.compact();
+                bytes.flip();
+                while (bytes.hasRemaining()) {
+                    written += channel.write(bytes);
+                }
+                bytes.clear();
+
+                final long now = System.nanoTime();
+                if (endOfInput || now - reported >= REPORT_NANOS) {
+                    reported = now;
+                    listener.accept(new Progress(index, text.length(), written, now - start));
+                }
+            }
+            channel.force(true);
+        }
+    }
+
+    private static void fillLines(final char[] lines, final int length, final String separator,
+                                  final CharBuffer chars) {
+        for (int i = 0; i < length; i++) {
+            if (lines[i] == '\n') {
+                chars.put(separator);
+            } else {
+                chars.put(lines[i]);
+            }
+        }
+    }
+
+    private static void fill(final CharSequence text, final int from, final int to, final CharBuffer chars) {
+        if (text instanceof Rope) {
+            ((Rope) text).getChars(from, to, chars.array(), chars.position());
+            chars.position(chars.position() + to - from);
+        } else {
+            chars.append(text, from, to);
+        }
+    }
+}
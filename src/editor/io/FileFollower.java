@@ -0,0 +1,319 @@
+package editor.io;
+
+import editor.document.Rope;
+import editor.metrics.Counter;
+import editor.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Follower of text file, that is appended to, like log of running application.
+ * <p>
+ * Directory of file is watched by {@link WatchService}, and size of file is also checked
+ * every {@value #POLL_MILLIS} ms, because events aren't delivered for some file systems,
+ * and if watch service is unavailable, file is only polled. Only bytes after the last read offset are read,
+ * in batches of at most {@value #BATCH_BYTES} bytes, and each batch is reported as one piece of text.
+ * Batches are decoded by one {@link CharsetDecoder}, so sequence, that is split between batches
+ * or isn't written completely yet, is kept until its end is read. Line separators are replaced by {@code '\n'},
+ * or kept, if encoding has mixed separators, as {@link DocumentReader} does.
+ * </p>
+ * <p>
+ * File is rotated, when it is replaced by another file with the same name, and truncated, when it becomes
+ * shorter, than read offset. Then followed text is read again, but only the last {@value #REREAD_BYTES} bytes
+ * of file from the first line, that begins in them, so following of large log costs the same, as following
+ * of new one. Read bytes are counted in {@link Metrics} as {@code file.follow.bytes}.
+ * </p>
+ * <p>
+ * Listener is called from thread of follower, one call at once.
+ * </p>
+ */
+public final class FileFollower {
+    private static final long POLL_MILLIS = 500;
+    private static final int BATCH_BYTES = 1 << 20;
+    private static final int REREAD_BYTES = 4 << 20;
+    private static final Counter FOLLOWED_BYTES = Metrics.getInstance().counter("file.follow.bytes");
+
+    /**
+     * Receiver of text of followed file
+     */
+    public interface Listener {
+
+        /**
+         * Receives text, that was appended to file
+         *
+         * @param text appended text
+         * @param offset offset in file after appended text
+         */
+        void appended(final Rope text, final long offset);
+
+        /**
+         * Receives text of rotated or truncated file, that replaces followed text
+         *
+         * @param text text of file, or of its end, if file is large
+         * @param offset offset in file after text
+         * @param complete {@code true}, if text is the whole file
+         */
+        void reset(final Rope text, final long offset, final boolean complete);
+
+        /**
+         * Receives problem, that has stopped following
+         *
+         * @param e error of reading, like malformed input
+         */
+        void failed(final IOException e);
+    }
+
+    private final Path path;
+    private final TextEncoding encoding;
+    private final Listener listener;
+    private final Thread thread;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BATCH_BYTES);
+    private final CharBuffer chars;
+
+    /**
+     * Offset in file, that the next batch is read from, or {@code -1} before the first check
+     */
+    private long offset;
+
+    /**
+     * Key of followed file, that changes, when file is rotated, or {@code null}, if file system has no keys
+     */
+    private Object fileKey;
+
+    /**
+     * {@code true}, if the last decoded character was {@code '\r'}, so {@code '\n'} after it is dropped
+     */
+    private boolean afterCarriageReturn;
+
+    private volatile boolean stopped;
+
+    /**
+     * Constructs follower, that isn't started
+     *
+     * @param path path to followed file
+     * @param encoding encoding of file
+     * @param offset length of file, that is already read, or {@code -1} to follow from the current end of file
+     * @param listener receiver of followed text
+     */
+    public FileFollower(final Path path, final TextEncoding encoding, final long offset, final Listener listener) {
+        this.path = path;
+        this.encoding = encoding;
+        this.offset = offset;
+        this.listener = listener;
+        this.decoder = encoding.getCharset().newDecoder();
+        this.chars = CharBuffer.allocate((int) Math.ceil(BATCH_BYTES * decoder.maxCharsPerByte()));
+        this.thread = new Thread(this::run, "file-follower");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts following in daemon thread
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops following. Batch, that is being read, may still be reported
+     */
+    public void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        try (WatchService watcher = watch()) {
+            while (!stopped) {
+                check();
+                await(watcher);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        } catch (IOException e) {
+            if (!stopped) {
+                listener.failed(e);
+            }
+        }
+    }
+
+    /**
+     * Registers directory of file in new watch service
+     *
+     * @return watch service, or {@code null}, if file system can't be watched
+     */
+    private WatchService watch() {
+        final Path directory = path.toAbsolutePath().getParent();
+        WatchService watcher = null;
+        try {
+            watcher = directory.getFileSystem().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            return watcher;
+        } catch (IOException | UnsupportedOperationException e) {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Waits for event in directory or for the next poll. Events of other files wake follower too,
+     * checking size of file costs less, than filtering them
+     */
+    private static void await(final WatchService watcher) throws InterruptedException {
+        if (watcher == null) {
+            Thread.sleep(POLL_MILLIS);
+            return;
+        }
+        final WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    /**
+     * Reads appended bytes, or reads file again, if it was rotated or truncated.
+     * File, that doesn't exist, is being rotated: it is checked again, when new file is created
+     */
+    private void check() throws IOException {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        final Object key = attributes.fileKey();
+        if (offset < 0) {
+            offset = attributes.size();
+        } else if (attributes.size() < offset || (fileKey != null && !Objects.equals(fileKey, key))) {
+            reread();
+        } else if (attributes.size() > offset) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (offset == 0) {
+                    offset = Math.min(encoding.getBom().length, channel.size());
+                }
+                read(channel, text -> listener.appended(Rope.of(text), offset));
+            }
+        }
+        fileKey = key;
+    }
+
+    /**
+     * Reads the end of rotated or truncated file and reports it as new followed text
+     */
+    private void reread() throws IOException {
+        decoder.reset();
+        bytes.clear();
+        afterCarriageReturn = false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            offset = size > REREAD_BYTES
+                    ? lineStart(channel, size - REREAD_BYTES, size)
+                    : Math.min(encoding.getBom().length, size);
+            final boolean complete = size <= REREAD_BYTES;
+            final Rope.Builder text = new Rope.Builder();
+            read(channel, text::append);
+            listener.reset(text.build(), offset, complete);
+        }
+    }
+
+    /**
+     * Finds the first line, that begins in range of file. Line feed is searched as encoded bytes
+     * at offsets, that are aligned to its length, so it isn't found inside other characters of supported charsets
+     *
+     * @return offset after the first line feed, or {@code end}, if range has no line feeds
+     */
+    private long lineStart(final FileChannel channel, final long start, final long end) throws IOException {
+        final byte[] lineFeed = "\n".getBytes(encoding.getCharset());
+        final long aligned = (start + lineFeed.length - 1) / lineFeed.length * lineFeed.length;
+        final ByteBuffer range = ByteBuffer.allocate((int) (end - aligned));
+        while (range.hasRemaining() && channel.read(range, aligned + range.position()) > 0) {
+            // reads whole range
+        }
+        for (int i = 0; i + lineFeed.length <= range.position(); i += lineFeed.length) {
+            int matched = 0;
+            while (matched < lineFeed.length && range.get(i + matched) == lineFeed[matched]) {
+                matched++;
+            }
+            if (matched == lineFeed.length) {
+                return aligned + i + lineFeed.length;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Reads bytes from offset to the current end of file in batches, decoding each batch into text.
+     * Undecoded end of batch is kept in buffer before the next batch
+     */
+    private void read(final FileChannel channel, final Consumer<String> consumer) throws IOException {
+        final long end = channel.size();
+        while (offset < end && !stopped) {
+            bytes.limit((int) Math.min(bytes.capacity(), bytes.position() + end - offset));
+            final int read = channel.read(bytes, offset);
+            if (read <= 0) {
+                break;
+            }
+            offset += read;
+            FOLLOWED_BYTES.add(read);
+            bytes.flip();
+            final CoderResult result = decoder.decode(bytes, chars, false);
+            if (result.isError()) {
+                result.throwException();
+            }
+            bytes.compact();
+            final String text = takeLines();
+            if (!text.isEmpty()) {
+                consumer.accept(text);
+            }
+        }
+    }
+
+    /**
+     * Takes decoded characters, replacing {@code "\r\n"} and {@code '\r'} by {@code '\n'},
+     * or keeping them, if encoding has mixed separators
+     */
+    private String takeLines() {
+        final char[] array = chars.array();
+        final int length = chars.position();
+        if (encoding.isMixed()) {
+            chars.clear();
+            return new String(array, 0, length);
+        }
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = array[i];
+            if (c == '\n' && afterCarriageReturn) {
+                afterCarriageReturn = false;
+                continue;
+            }
+            afterCarriageReturn = c == '\r';
+            array[kept++] = afterCarriageReturn ? '\n' : c;
+        }
+        chars.clear();
+        return new String(array, 0, kept);
+    }
+}
@@ -0,0 +1,16 @@
+package editor.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown, when file has line separators, that differ from separator of its {@link TextEncoding}.
+ * <p>
+ * Separators are replaced by {@code '\n'} only if file has one kind of them, otherwise
+ * saving would change the others. File is read again with {@link TextEncoding#withMixedLineSeparators()}.
+ * </p>
+ */
+public class MixedLineSeparatorsException extends IOException {
+    public MixedLineSeparatorsException(final String message) {
+        super(message);
+    }
+}
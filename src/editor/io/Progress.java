@@ -0,0 +1,60 @@
+package editor.io;
+
+/**
+ * Snapshot of progress of long I/O operation
+ */
+public final class Progress {
+    private final long done;
+    private final long total;
+    private final long bytes;
+    private final long nanos;
+
+    /**
+     * Constructs progress snapshot
+     *
+     * @param done number of processed characters
+     * @param total number of all characters
+     * @param bytes number of bytes, that were read or written
+     * @param nanos time elapsed since the start of operation, in nanoseconds
+     */
+    public Progress(final long done, final long total, final long bytes, final long nanos) {
+        this.done = done;
+        this.total = total;
+        this.bytes = bytes;
+        this.nanos = nanos;
+    }
+
+    public long getDone() {
+        return done;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Gets completed part of operation
+     *
+     * @return number from {@code 0} to {@code 100}
+     */
+    public int getPercent() {
+        return total == 0 ? 100 : (int) (100 * done / total);
+    }
+
+    /**
+     * Gets average throughput of operation
+     *
+     * @return number of bytes per second
+     */
+    public double getBytesPerSecond() {
+        return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+    }
+}
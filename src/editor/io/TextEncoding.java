@@ -0,0 +1,304 @@
+package editor.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Charset, byte order mark and line separator of text file, that are detected, when file is opened,
+ * and kept, so file is saved in the same encoding.
+ * <p>
+ * Only prefix of {@value #PREFIX_BYTES} bytes is read for detection. Byte order mark determines
+ * UTF-8, UTF-16 or UTF-32. Without it, prefix, whose even or odd bytes are mostly zero, is guessed to be UTF-16,
+ * prefix, that is valid UTF-8, is guessed to be UTF-8, and other files are ISO-8859-1, where every byte
+ * is one character, so any file is decoded and saved back byte for byte. Guessed charset may turn out
+ * to be wrong after prefix, then file is read again with {@link #fallback()}.
+ * </p>
+ * <p>
+ * Line separator is the only one in prefix: {@code "\r\n"}, {@code "\r"} or {@code "\n"}. Such documents
+ * have only {@code '\n'}, other separators are replaced, when file is read, and restored, when it is written.
+ * File, whose prefix has different separators, has mixed separators: they are kept in document as they are,
+ * so {@code '\r'} stays a character of text, and file is saved back byte for byte. If different separators
+ * appear only after prefix, reading fails with {@link MixedLineSeparatorsException}, and file is read again
+ * with {@link #withMixedLineSeparators()}, so replacing separators is never irreversible.
+ * </p>
+ */
+public final class TextEncoding {
+    /**
+     * Encoding of new documents and of temporary files of editor
+     */
+    public static final TextEncoding DEFAULT = new TextEncoding(StandardCharsets.UTF_8, false, "\n");
+
+    private static final int PREFIX_BYTES = 1 << 16;
+
+    /**
+     * Share of zero bytes in even or odd positions of prefix, that is guessed as UTF-16 without byte order mark
+     */
+    private static final double UTF_16_ZEROS = 0.3;
+
+    private static final Charset UTF_32BE = Charset.forName("UTF-32BE");
+    private static final Charset UTF_32LE = Charset.forName("UTF-32LE");
+
+    /**
+     * Separator of prefix, that has different separators
+     */
+    private static final String MIXED = "";
+
+    private final Charset charset;
+    private final boolean bom;
+    private final String lineSeparator;
+    private final boolean guessed;
+    private final boolean mixed;
+
+    /**
+     * Encoding with {@code MIXED} separator keeps separators and writes {@code '\n'} as is
+     */
+    private TextEncoding(final Charset charset, final boolean bom, final String lineSeparator,
+                         final boolean guessed) {
+        this.charset = charset;
+        this.bom = bom;
+        this.mixed = lineSeparator.equals(MIXED);
+        this.lineSeparator = mixed ? "\n" : lineSeparator;
+        this.guessed = guessed;
+    }
+
+    /**
+     * Constructs encoding, that is known exactly
+     *
+     * @param charset charset of text
+     * @param bom {@code true}, if file starts with byte order mark
+     * @param lineSeparator separator of lines in file
+     */
+    public TextEncoding(final Charset charset, final boolean bom, final String lineSeparator) {
+        this(charset, bom, lineSeparator, false);
+    }
+
+    /**
+     * Detects encoding of file by its prefix
+     *
+     * @param path path to regular file
+     * @return detected encoding
+     * @throws IOException if file can't be read
+     */
+    public static TextEncoding detect(final Path path) throws IOException {
+        final ByteBuffer prefix = ByteBuffer.allocate(PREFIX_BYTES);
+        final boolean complete;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (prefix.hasRemaining() && channel.read(prefix) >= 0) {
+                // prefix is read until it is full or file ends
+            }
+            complete = channel.size() <= prefix.position();
+        }
+        return detect(prefix.flip(), complete);
+    }
+
+    private static TextEncoding detect(final ByteBuffer prefix, final boolean complete) {
+        final Charset marked = charsetOfBom(prefix);
+        if (marked != null) {
+            prefix.position(bomLength(marked));
+            return new TextEncoding(marked, true, findLineSeparator(marked, prefix, complete), false);
+        }
+        // zero bytes are valid UTF-8, so UTF-16 is checked first
+        final Charset utf16 = guessUtf16(prefix);
+        if (utf16 != null) {
+            final String separator = findLineSeparator(utf16, prefix.duplicate(), complete);
+            if (separator != null) {
+                return new TextEncoding(utf16, false, separator, true);
+            }
+        }
+        final String separator = findLineSeparator(StandardCharsets.UTF_8, prefix.duplicate(), complete);
+        if (separator != null) {
+            return new TextEncoding(StandardCharsets.UTF_8, false, separator, true);
+        }
+        return new TextEncoding(StandardCharsets.ISO_8859_1, false,
+                findLineSeparator(StandardCharsets.ISO_8859_1, prefix, complete), false);
+    }
+
+    /**
+     * UTF-32 is checked before UTF-16, because little-endian marks of them have the same beginning
+     */
+    private static Charset charsetOfBom(final ByteBuffer prefix) {
+        final int length = prefix.remaining();
+        final int b0 = length > 0 ? prefix.get(0) & 0xFF : -1;
+        final int b1 = length > 1 ? prefix.get(1) & 0xFF : -1;
+        final int b2 = length > 2 ? prefix.get(2) & 0xFF : -1;
+        final int b3 = length > 3 ? prefix.get(3) & 0xFF : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (b0 == 0 && b1 == 0 && b2 == 0xFE && b3 == 0xFF) {
+            return UTF_32BE;
+        }
+        if (b0 == 0xFF && b1 == 0xFE && b2 == 0 && b3 == 0) {
+            return UTF_32LE;
+        }
+        if (b0 == 0xFE && b1 == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (b0 == 0xFF && b1 == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    private static int bomLength(final Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return 3;
+        }
+        return charset.equals(UTF_32BE) || charset.equals(UTF_32LE) ? 4 : 2;
+    }
+
+    private static Charset guessUtf16(final ByteBuffer prefix) {
+        final int pairs = prefix.remaining() / 2;
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = prefix.position(); i + 1 < prefix.limit(); i += 2) {
+            if (prefix.get(i) == 0) {
+                evenZeros++;
+            }
+            if (prefix.get(i + 1) == 0) {
+                oddZeros++;
+            }
+        }
+        if (pairs == 0 || Math.min(evenZeros, oddZeros) > 0) {
+            return null;
+        }
+        if (evenZeros > UTF_16_ZEROS * pairs) {
+            return StandardCharsets.UTF_16BE;
+        }
+        return oddZeros > UTF_16_ZEROS * pairs ? StandardCharsets.UTF_16LE : null;
+    }
+
+    /**
+     * Decodes prefix and finds its line separator
+     *
+     * @return the only line separator of prefix, {@code "\n"}, if prefix has no line breaks,
+     *         {@code MIXED}, if prefix has different separators, or {@code null}, if prefix isn't valid in charset.
+     *         Sequence, that is cut by the end of prefix, is valid
+     */
+    private static String findLineSeparator(final Charset charset, final ByteBuffer prefix,
+                                            final boolean complete) {
+        final CharBuffer chars = CharBuffer.allocate(prefix.remaining());
+        final CoderResult result = charset.newDecoder().decode(prefix, chars, complete);
+        if (result.isError()) {
+            return null;
+        }
+        chars.flip();
+        String found = null;
+        while (chars.hasRemaining()) {
+            final char c = chars.get();
+            final String separator;
+            if (c == '\n') {
+                separator = "\n";
+            } else if (c != '\r') {
+                continue;
+            } else if (!chars.hasRemaining()) {
+                // '\r' at the end of cut prefix may be followed by '\n'
+                separator = complete ? "\r" : found;
+            } else if (chars.get(chars.position()) == '\n') {
+                chars.get();
+                separator = "\r\n";
+            } else {
+                separator = "\r";
+            }
+            if (found != null && separator != null && !found.equals(separator)) {
+                return MIXED;
+            }
+            found = separator;
+        }
+        return found == null ? "\n" : found;
+    }
+
+    /**
+     * Gets charset of text
+     *
+     * @return charset, that decodes bytes after byte order mark
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Checks, if file starts with byte order mark
+     *
+     * @return {@code true}, if byte order mark is skipped, when file is read, and written before text
+     */
+    public boolean hasBom() {
+        return bom;
+    }
+
+    /**
+     * Gets byte order mark of charset
+     *
+     * @return bytes of mark, or empty array, if file has no mark
+     */
+    public byte[] getBom() {
+        if (!bom) {
+            return new byte[0];
+        }
+        final ByteBuffer mark = charset.encode("\uFEFF");
+        final byte[] bytes = new byte[mark.remaining()];
+        mark.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Gets separator of lines in file, that replaces {@code '\n'} of document, when it is written
+     *
+     * @return {@code "\n"}, {@code "\r\n"} or {@code "\r"}, or {@code "\n"}, if file has mixed separators,
+     *         that are kept in document
+     */
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    /**
+     * Checks, if file has different line separators, that are kept in document as they are
+     *
+     * @return {@code true}, if separators aren't replaced, when file is read and written
+     */
+    public boolean isMixed() {
+        return mixed;
+    }
+
+    /**
+     * Gets encoding with the same charset, that keeps line separators of file as they are
+     *
+     * @return encoding with mixed separators
+     */
+    public TextEncoding withMixedLineSeparators() {
+        return new TextEncoding(charset, bom, MIXED, guessed);
+    }
+
+    /**
+     * Gets encoding with the same line separator and another charset without byte order mark
+     *
+     * @param charset charset of text
+     * @return encoding in given charset
+     */
+    public TextEncoding withCharset(final Charset charset) {
+        return new TextEncoding(charset, false, mixed ? MIXED : lineSeparator, false);
+    }
+
+    /**
+     * Gets encoding, that is used, if file isn't valid in guessed one
+     *
+     * @return ISO-8859-1, that decodes any bytes, or {@code null}, if charset wasn't guessed
+     */
+    public TextEncoding fallback() {
+        return guessed ? withCharset(StandardCharsets.ISO_8859_1) : null;
+    }
+
+    @Override
+    public String toString() {
+        final String separator = mixed ? "mixed line separators"
+                : lineSeparator.equals("\n") ? "LF" : lineSeparator.equals("\r\n") ? "CRLF" : "CR";
+        return charset.name() + (bom ? " with BOM" : "") + ", " + separator;
+    }
+}
@@ -0,0 +1,46 @@
+package editor.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter of events or bytes.
+ * <p>
+ * Counter is backed by {@link LongAdder}, so threads, that update it concurrently, don't contend.
+ * All methods are thread-safe.
+ * </p>
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    /**
+     * Adds one to counter
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Adds given amount to counter
+     *
+     * @param amount added amount
+     */
+    public void add(final long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * Gets current value
+     *
+     * @return sum of all additions since the last reset
+     */
+    public long get() {
+        return value.sum();
+    }
+
+    void reset() {
+        value.reset();
+    }
+}
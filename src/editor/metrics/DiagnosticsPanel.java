@@ -0,0 +1,81 @@
+package editor.metrics;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Map;
+
+/**
+ * Panel, that shows all {@link Metrics}: counters, latency histograms and recent stalls
+ * of event dispatch thread with their stacks.
+ * <p>
+ * Panel is refreshed every {@value #REFRESH_MILLIS} ms, while it is displayed.
+ * </p>
+ */
+public class DiagnosticsPanel extends JPanel {
+    private static final int REFRESH_MILLIS = 1000;
+    private static final double MILLI = 1e6;
+
+    private final Metrics metrics = Metrics.getInstance();
+    private final DefaultTableModel counters = new DefaultTableModel(new Object[]{"Counter", "Value"}, 0);
+    private final DefaultTableModel latencies = new DefaultTableModel(
+            new Object[]{"Latency", "Count", "Mean, ms", "p50, ms", "p99, ms", "Max, ms"}, 0);
+    private final JTextArea stalls = new JTextArea(8, 60);
+    private final Timer refreshTimer = new Timer(REFRESH_MILLIS, event -> refresh());
+
+    /**
+     * Constructs panel with current values of metrics
+     */
+    public DiagnosticsPanel() {
+        super(new BorderLayout());
+        setName("DiagnosticsPanel");
+        stalls.setEditable(false);
+        stalls.setName("StallsArea");
+
+        final JPanel tables = new JPanel(new GridLayout(2, 1));
+        tables.add(new JScrollPane(new JTable(counters)));
+        tables.add(new JScrollPane(new JTable(latencies)));
+        add(tables, BorderLayout.CENTER);
+        add(new JScrollPane(stalls), BorderLayout.PAGE_END);
+
+        final JButton resetButton = new JButton("Reset");
+        resetButton.setName("ResetMetricsButton");
+        resetButton.addActionListener(event -> {
+            metrics.reset();
+            refresh();
+        });
+        add(resetButton, BorderLayout.PAGE_START);
+        refresh();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh() {
+        counters.setRowCount(0);
+        for (final Map.Entry<String, Long> entry : metrics.getCounters().entrySet()) {
+            counters.addRow(new Object[]{entry.getKey(), entry.getValue()});
+        }
+        latencies.setRowCount(0);
+        for (final Map.Entry<String, LatencyHistogram> entry : metrics.getHistograms().entrySet()) {
+            final LatencyHistogram histogram = entry.getValue();
+            latencies.addRow(new Object[]{entry.getKey(), histogram.getCount(),
+                    format(histogram.getMean()), format(histogram.getPercentile(50)),
+                    format(histogram.getPercentile(99)), format(histogram.getMax())});
+        }
+        stalls.setText(String.join(System.lineSeparator(), metrics.getEdtStalls()));
+    }
+
+    private static String format(final double nanos) {
+        return String.format("%.3f", nanos / MILLI);
+    }
+}
@@ -0,0 +1,161 @@
+package editor.metrics;
+
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detector of stalls of event dispatch thread.
+ * <p>
+ * Watchdog thread posts heartbeat event to {@link EventQueue} every {@value #CHECK_PERIOD_MILLIS} ms.
+ * If heartbeat isn't dispatched for longer than threshold, GUI is frozen: watchdog takes stack
+ * of event dispatch thread, that shows the code, that blocks it, and when heartbeat is finally dispatched,
+ * stall is recorded with its duration and stack. Only the last {@value #MAX_STALLS} stalls are kept.
+ * Delays of all heartbeats are recorded in {@link Metrics} as {@code edt.latency}, and stalls as {@code edt.stall}.
+ * </p>
+ */
+public final class EdtWatchdog {
+    private static final long CHECK_PERIOD_MILLIS = 50;
+    private static final int MAX_STALLS = 32;
+
+    private final long thresholdNanos;
+    private final LatencyHistogram latency = Metrics.getInstance().histogram("edt.latency");
+    private final LatencyHistogram stalls = Metrics.getInstance().histogram("edt.stall");
+    private final Deque<Stall> recent = new ArrayDeque<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "edt-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Thread dispatchThread;
+
+    /**
+     * Moment, when the pending heartbeat was posted, or {@code 0}, if there is no pending heartbeat
+     */
+    private volatile long postedAt;
+    private volatile StackTraceElement[] sample;
+
+    /**
+     * Stall of event dispatch thread
+     */
+    public static final class Stall {
+        private final long timeMillis;
+        private final long durationNanos;
+        private final StackTraceElement[] stack;
+
+        Stall(final long timeMillis, final long durationNanos, final StackTraceElement[] stack) {
+            this.timeMillis = timeMillis;
+            this.durationNanos = durationNanos;
+            this.stack = stack;
+        }
+
+        /**
+         * Gets moment, when stall ended
+         *
+         * @return time in milliseconds, as {@link System#currentTimeMillis()}
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * Gets duration of stall
+         *
+         * @return duration in nanoseconds
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * Gets stack of event dispatch thread, that was taken during stall
+         *
+         * @return stack sample, may be empty, if stall ended before it was taken
+         */
+        public StackTraceElement[] getStack() {
+            return stack.clone();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder(String.format("%tT stall %.1f ms",
+                    timeMillis, durationNanos / 1e6));
+            for (final StackTraceElement element : stack) {
+                builder.append(System.lineSeparator()).append("    at ").append(element);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Constructs watchdog, that is not started yet
+     *
+     * @param thresholdMillis minimal duration of recorded stall in milliseconds
+     */
+    public EdtWatchdog(final long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Starts watching in daemon thread
+     */
+    public void start() {
+        timer.scheduleWithFixedDelay(this::check, CHECK_PERIOD_MILLIS, CHECK_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops watching
+     */
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Gets recent stalls
+     *
+     * @return stalls from the oldest to the newest
+     */
+    public synchronized List<Stall> getStalls() {
+        return new ArrayList<>(recent);
+    }
+
+    private void check() {
+        final long posted = postedAt;
+        if (posted == 0) {
+            postedAt = System.nanoTime();
+            EventQueue.invokeLater(this::heartbeat);
+        } else if (sample == null && System.nanoTime() - posted > thresholdNanos && dispatchThread != null) {
+            final StackTraceElement[] stack = dispatchThread.getStackTrace();
+            if (postedAt == posted) {
+                // heartbeat is still pending, so stack belongs to this stall
+                sample = stack;
+            }
+        }
+    }
+
+    private void heartbeat() {
+        dispatchThread = Thread.currentThread();
+        final long duration = System.nanoTime() - postedAt;
+        latency.record(duration);
+        if (duration > thresholdNanos) {
+            final StackTraceElement[] stack = sample;
+            record(new Stall(System.currentTimeMillis(), duration, stack == null ? new StackTraceElement[0] : stack));
+        }
+        sample = null;
+        postedAt = 0;
+    }
+
+    private synchronized void record(final Stall stall) {
+        stalls.record(stall.getDurationNanos());
+        if (recent.size() == MAX_STALLS) {
+            recent.removeFirst();
+        }
+        recent.addLast(stall);
+    }
+}
@@ -0,0 +1,146 @@
+package editor.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with bounded relative error, like HdrHistogram.
+ * <p>
+ * Every power of two is split into {@value #SUB_BUCKETS} linear buckets, so any value from {@code 1} ns
+ * up to {@link Long#MAX_VALUE} is counted in fixed array of buckets with relative error at most
+ * {@code 1 / }{@value #SUB_BUCKETS}. Recording is one array increment without locks or allocation,
+ * so it is cheap enough for hot paths, like navigation over occurrences.
+ * All methods are thread-safe, but percentiles, that are read during recording, may be slightly inconsistent.
+ * </p>
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+    private static final double MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * Records latency
+     *
+     * @param nanos latency in nanoseconds, negative values are counted as {@code 0}
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Records time, that passed since given moment
+     *
+     * @param startNanos moment, taken by {@link System#nanoTime()}
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets number of recorded latencies
+     *
+     * @return number of records
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets maximal recorded latency
+     *
+     * @return maximal latency in nanoseconds or {@code 0}, if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets mean latency
+     *
+     * @return mean latency in nanoseconds or {@code 0}, if nothing was recorded
+     */
+    public double getMean() {
+        final long records = count.sum();
+        return records == 0 ? 0 : (double) sum.sum() / records;
+    }
+
+    /**
+     * Gets latency, that is not exceeded by given share of records
+     *
+     * @param percentile share of records in percents, from {@code 0} to {@code 100}
+     * @return upper bound of bucket, that contains percentile, in nanoseconds,
+     * or {@code 0}, if nothing was recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long records = count.sum();
+        if (records == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(records * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Gets short description of distribution in milliseconds
+     *
+     * @return count, mean, median, 99th percentile and maximum
+     */
+    public String summary() {
+        return String.format("count=%d mean=%.3f p50=%.3f p99=%.3f max=%.3f ms", getCount(), getMean() / MILLI,
+                getPercentile(50) / MILLI, getPercentile(99) / MILLI, getMax() / MILLI);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Values below {@value #SUB_BUCKETS} have own buckets, larger ones are grouped by their
+     * highest bit and the next {@value #SUB_BITS} bits
+     */
+    static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long upperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,157 @@
+package editor.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of all metrics of Text Editor.
+ * <p>
+ * Metrics are created on the first request by name and live until the end of application, so components
+ * keep them in fields and update them without lookup. Names are dot-separated, with the component first:
+ * {@code search.scan}, {@code file.open.bytes}, {@code edt.stall}. Gauges are read from their owners
+ * only when metrics are displayed. Registry is available by JMX as {@value #OBJECT_NAME},
+ * and in GUI by {@link DiagnosticsPanel}.
+ * All methods are thread-safe.
+ * </p>
+ */
+public final class Metrics implements MetricsMXBean {
+    public static final String OBJECT_NAME = "editor:type=Metrics";
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private volatile EdtWatchdog watchdog;
+
+    private Metrics() {
+    }
+
+    /**
+     * Gets registry, that is shared by all components
+     *
+     * @return shared registry
+     */
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets counter, creating it on the first request
+     *
+     * @param name name of counter
+     * @return counter with given name
+     */
+    public Counter counter(final String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Gets latency histogram, creating it on the first request
+     *
+     * @param name name of histogram
+     * @return histogram with given name
+     */
+    public LatencyHistogram histogram(final String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers value, that is owned by other component, like size of cache
+     *
+     * @param name name of gauge
+     * @param value supplier of current value, it must be thread-safe
+     */
+    public void gauge(final String name, final LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Registers gauge of throughput, average number of bytes per second over all operations
+     *
+     * @param name name of gauge
+     * @param bytes counter of processed bytes
+     * @param latency histogram of durations of operations
+     */
+    public void throughput(final String name, final Counter bytes, final LatencyHistogram latency) {
+        gauge(name, () -> {
+            final double nanos = latency.getMean() * latency.getCount();
+            return nanos == 0 ? 0 : (long) (bytes.get() * 1e9 / nanos);
+        });
+    }
+
+    /**
+     * Starts watchdog of event dispatch thread, if it isn't started yet
+     *
+     * @param thresholdMillis minimal duration of recorded stall in milliseconds
+     */
+    public synchronized void watchEventDispatchThread(final long thresholdMillis) {
+        if (watchdog == null) {
+            watchdog = new EdtWatchdog(thresholdMillis);
+            watchdog.start();
+        }
+    }
+
+    /**
+     * Gets recent stalls of event dispatch thread
+     *
+     * @return stalls from the oldest to the newest, empty if watchdog isn't started
+     */
+    public List<EdtWatchdog.Stall> getStalls() {
+        final EdtWatchdog current = watchdog;
+        return current == null ? List.of() : current.getStalls();
+    }
+
+    /**
+     * Registers registry in platform MBean server
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        final Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    /**
+     * Gets all latency histograms
+     *
+     * @return histograms, sorted by names
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    @Override
+    public Map<String, String> getLatencies() {
+        final Map<String, String> summaries = new TreeMap<>();
+        histograms.forEach((name, histogram) -> summaries.put(name, histogram.summary()));
+        return summaries;
+    }
+
+    @Override
+    public List<String> getEdtStalls() {
+        return getStalls().stream().map(EdtWatchdog.Stall::toString).collect(Collectors.toList());
+    }
+
+    @Override
+    public void reset() {
+        counters.values().forEach(Counter::reset);
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+}
@@ -0,0 +1,36 @@
+package editor.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of {@link Metrics}, that is available by JMX as {@value Metrics#OBJECT_NAME}
+ */
+public interface MetricsMXBean {
+    /**
+     * Gets values of all counters and gauges
+     *
+     * @return values by names
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Gets summaries of all latency histograms
+     *
+     * @return summaries by names
+     * @see LatencyHistogram#summary()
+     */
+    Map<String, String> getLatencies();
+
+    /**
+     * Gets recent stalls of event dispatch thread with their stack samples
+     *
+     * @return descriptions of stalls from the oldest to the newest
+     */
+    List<String> getEdtStalls();
+
+    /**
+     * Resets all counters and histograms
+     */
+    void reset();
+}
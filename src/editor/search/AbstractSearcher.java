@@ -1,33 +1,155 @@
 package editor.search;
 
-import editor.TextEditorController;
+import editor.document.TextDocument;
+import editor.metrics.LatencyHistogram;
+import editor.metrics.Metrics;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 /**
  * Abstract searching strategy.
  * <p>
  * This class delegates highlighting occurrence
- * to {@link TextEditorController} that will delegate it to {@link editor.TextEditor}.
+ * to {@link SearchListener}, that is {@link editor.TextEditorController} in GUI.
+ * Strategy can follow edits of {@link TextDocument}, so its occurrences don't become stale.
  * </p>
  */
 abstract class AbstractSearcher implements Searchable {
-    private final TextEditorController controller;
+    /**
+     * Time of finding next or previous occurrence in background
+     */
+    protected static final LatencyHistogram NAVIGATION = Metrics.getInstance().histogram("search.navigation");
+
+    private final SearchListener listener;
+    private TextDocument document;
+
+    private final DocumentListener documentListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(final DocumentEvent e) {
+            onEdit(document.snapshot(), e.getOffset(), 0, e.getLength());
+        }
+
+        @Override
+        public void removeUpdate(final DocumentEvent e) {
+            onEdit(document.snapshot(), e.getOffset(), e.getLength(), 0);
+        }
+
+        @Override
+        public void changedUpdate(final DocumentEvent e) {
+        }
+    };
 
     /**
-     * {@link ExecutorService} is used to avoid problems like: User fast clicks two buttons
+     * {@link SearchScheduler.Lane} is used to avoid problems like: User fast clicks two buttons
      * in order "{@code PreviousMatchButton}" then "{@code NextMatchButton}", but the
      * "{@code NextMatchButton}" ends earlier and user sees inverted order of operations.
+     * Lane is cancelled, when strategy is closed, so superseded search never highlights anything.
+     */
+    protected final SearchScheduler.Lane executor;
+
+    AbstractSearcher(final SearchListener listener) {
+        this.listener = listener;
+        this.executor = SearchScheduler.getInstance().newLane();
+    }
+
+    /**
+     * Highlights current occurrence. It may be called from thread of {@link #executor}, then position
+     * is taken at once and listener is called later from event dispatch thread, as it expects
      */
-    protected final ExecutorService executor;
+    protected void highlightTextArea() {
+        final int pos = getPos();
+        final int length = getPatternLength();
+        final Runnable highlight = () -> {
+            if (!executor.isCancelled()) {
+                listener.highlightText(pos, length);
+                listener.highlightOccurrences(this);
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            highlight.run();
+        } else {
+            SwingUtilities.invokeLater(highlight);
+        }
+    }
+
+    /**
+     * Repaints all visible occurrences, when new ones were found. Must be called from event dispatch thread
+     */
+    protected void highlightOccurrences() {
+        if (!executor.isCancelled()) {
+            listener.highlightOccurrences(this);
+        }
+    }
+
+    /**
+     * Shows warning to user, unless strategy is already superseded
+     *
+     * @param message description of problem
+     */
+    protected void showWarning(final String message) {
+        if (!executor.isCancelled()) {
+            listener.showSearchWarning(message);
+        }
+    }
+
+    /**
+     * Starts following edits of document. Must be called from thread, that edits document,
+     * right after the text for searching was taken from document
+     *
+     * @param document edited document
+     */
+    protected void follow(final TextDocument document) {
+        this.document = document;
+        document.addDocumentListener(documentListener);
+    }
+
+    /**
+     * Gets followed document
+     *
+     * @return followed document or {@code null}, if strategy searches in fixed text
+     */
+    TextDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Action, when followed document is edited
+     *
+     * @param text text of document after the edit
+     * @param offset index of edited place
+     * @param removed number of removed characters
+     * @param inserted number of inserted characters
+     */
+    protected abstract void onEdit(final CharSequence text, final int offset, final int removed, final int inserted);
+
+    /**
+     * Moves position in text according to the edit
+     *
+     * @param position index in text before the edit
+     * @param offset index of edited place
+     * @param removed number of removed characters
+     * @param inserted number of inserted characters
+     * @return index of the same place in text after the edit
+     */
+    protected static int shiftPosition(final int position, final int offset, final int removed, final int inserted) {
+        if (position < offset) {
+            return position;
+        }
+        return position < offset + removed ? offset : position - removed + inserted;
+    }
 
-    AbstractSearcher(final TextEditorController controller) {
-        this.controller = controller;
-        this.executor = Executors.newSingleThreadExecutor();
+    @Override
+    public void cancel() {
+        executor.cancel();
     }
 
-    protected synchronized void highlightTextArea() {
-        controller.highlightText(getPos(), getPatternLength());
+    @Override
+    public void close() {
+        cancel();
+        if (document != null) {
+            document.removeDocumentListener(documentListener);
+        }
     }
 }
@@ -0,0 +1,239 @@
+package editor.search;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton, that finds occurrences of any of many keywords in one pass over text.
+ * <p>
+ * Automaton is stored in flat arrays instead of node objects: transitions of each state are
+ * a sorted slice of {@code edgeChars} and {@code edgeTargets}, that is searched by binary search,
+ * and transitions of the root, that are used most often, are a direct table.
+ * Every character of text costs amortized O({@code log |alphabet of state|}), independently
+ * of number of keywords.
+ * </p>
+ * <p>
+ * Occurrences are reported as leftmost-longest and non-overlapping: the occurrence, that begins first, wins,
+ * and among occurrences, that begin at the same position, the longest one wins. Scanning continues after its end.
+ * It differs from {@link java.util.regex.Matcher#find()} for alternation of keywords, that is leftmost-first:
+ * regular expression prefers the first alternative, that matches, not the longest one, so for keywords
+ * {@code ab}, {@code abc}, {@code bca} and {@code c} in {@code abcab} automaton finds {@code abc} and {@code ab},
+ * while expression {@code ab|abc|bca|c} finds {@code ab}, {@code c} and {@code ab}.
+ * </p>
+ */
+final class AhoCorasick implements Finder {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    /**
+     * Number of scanned characters between checks of cancellation, must be power of two
+     */
+    private static final int CANCEL_CHECK_STEPS = 1 << 16;
+
+    private final int[] rootNext = new int[Character.MAX_VALUE + 1];
+    private final int[] edgeStarts;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+
+    /**
+     * Length of keyword, that ends in state, or {@code 0}
+     */
+    private final int[] keywordLengths;
+
+    /**
+     * The nearest state on failure chain, where some keyword ends, or {@link #NONE}
+     */
+    private final int[] outputs;
+    private final int maxLength;
+
+    private AhoCorasick(final long[] edges, final Map<Long, Integer> targets, final int[] keywordLengths) {
+        final int states = keywordLengths.length;
+        this.keywordLengths = keywordLengths;
+        this.edgeStarts = new int[states + 1];
+        this.edgeChars = new char[edges.length];
+        this.edgeTargets = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            edgeStarts[(int) (edges[i] >>> Character.SIZE) + 1]++;
+            edgeChars[i] = (char) edges[i];
+            edgeTargets[i] = targets.get(edges[i]);
+        }
+        for (int i = 0; i < states; i++) {
+            edgeStarts[i + 1] += edgeStarts[i];
+        }
+        for (int i = edgeStarts[ROOT]; i < edgeStarts[ROOT + 1]; i++) {
+            rootNext[edgeChars[i]] = edgeTargets[i];
+        }
+        this.fail = new int[states];
+        this.outputs = new int[states];
+        this.maxLength = Math.max(1, Arrays.stream(keywordLengths).max().orElse(0));
+        linkFailures();
+    }
+
+    /**
+     * Builds automaton for keywords. Empty keywords are ignored
+     *
+     * @param keywords searched strings
+     * @return automaton, that finds all keywords
+     */
+    static AhoCorasick compile(final List<String> keywords) {
+        final Map<Long, Integer> targets = new HashMap<>();
+        int[] keywordLengths = new int[16];
+        int states = 1;
+        for (final String keyword : keywords) {
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                final long edge = edge(state, keyword.charAt(i));
+                Integer target = targets.get(edge);
+                if (target == null) {
+                    if (states == keywordLengths.length) {
+                        keywordLengths = Arrays.copyOf(keywordLengths, 2 * states);
+                    }
+                    target = states++;
+                    targets.put(edge, target);
+                }
+                state = target;
+            }
+            keywordLengths[state] = keyword.length();
+        }
+        final long[] edges = targets.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        return new AhoCorasick(edges, targets, Arrays.copyOf(keywordLengths, states));
+    }
+
+    private static long edge(final int state, final char c) {
+        return ((long) state << Character.SIZE) | c;
+    }
+
+    /**
+     * Computes failure links and output links in order of depth of states
+     */
+    private void linkFailures() {
+        final Queue<Integer> queue = new ArrayDeque<>();
+        fail[ROOT] = ROOT;
+        outputs[ROOT] = NONE;
+        for (int i = edgeStarts[ROOT]; i < edgeStarts[ROOT + 1]; i++) {
+            fail[edgeTargets[i]] = ROOT;
+            outputs[edgeTargets[i]] = NONE;
+            queue.add(edgeTargets[i]);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            for (int i = edgeStarts[state]; i < edgeStarts[state + 1]; i++) {
+                final int target = edgeTargets[i];
+                final int suffix = step(fail[state], edgeChars[i]);
+                fail[target] = suffix;
+                outputs[target] = keywordLengths[suffix] > 0 ? suffix : outputs[suffix];
+                queue.add(target);
+            }
+        }
+    }
+
+    private int child(final int state, final char c) {
+        if (state == ROOT) {
+            return rootNext[c];
+        }
+        int low = edgeStarts[state];
+        int high = edgeStarts[state + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (edgeChars[mid] < c) {
+                low = mid + 1;
+            } else if (edgeChars[mid] > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Follows failure links until transition by character exists. Root has transitions by all characters
+     */
+    private int step(int state, final char c) {
+        int next = child(state, c);
+        while (next == NONE) {
+            state = fail[state];
+            next = child(state, c);
+        }
+        return next;
+    }
+
+    /**
+     * Finds all occurrences of keywords in text
+     *
+     * @param text text for searching
+     * @param consumer receiver of occurrences in order of their positions
+     */
+    void scan(final CharSequence text, final MatchConsumer consumer) {
+        run(text, 0, text.length(), consumer);
+    }
+
+    @Override
+    public long find(final CharSequence text, final int from, final int to) {
+        return run(text, Math.max(from, 0), to, null);
+    }
+
+    @Override
+    public int radius() {
+        return maxLength;
+    }
+
+    @Override
+    public boolean isBounded() {
+        return true;
+    }
+
+    /**
+     * Scans region in one pass. The longest keyword, that begins at each position, is kept
+     * in ring buffer, until no longer keyword can begin there, then occurrence is reported
+     *
+     * @param consumer receiver of all occurrences, or {@code null} to stop at the first one
+     * @return the first occurrence or {@link #NOT_FOUND}
+     */
+    private long run(final CharSequence text, final int from, final int to, final MatchConsumer consumer) {
+        // ring buffer of power of two size, so slot is found by mask instead of division
+        final int[] longest = new int[Integer.highestOneBit(2 * maxLength - 1)];
+        final int mask = longest.length - 1;
+        long first = NOT_FOUND;
+        int allowed = from;
+        int state = ROOT;
+        final long end = (long) to + maxLength - 1;
+        for (int i = from; i < end; i++) {
+            if (i < to) {
+                if (((i - from) & (CANCEL_CHECK_STEPS - 1)) == 0) {
+                    SearchScheduler.checkCancelled();
+                }
+                state = step(state, text.charAt(i));
+                for (int s = keywordLengths[state] > 0 ? state : outputs[state]; s != NONE; s = outputs[s]) {
+                    final int start = i - keywordLengths[s] + 1;
+                    final int slot = start & mask;
+                    longest[slot] = Math.max(longest[slot], keywordLengths[s]);
+                }
+            }
+            // no keyword, that begins here, ends after this position
+            final int start = i - maxLength + 1;
+            if (start < from) {
+                continue;
+            }
+            final int slot = start & mask;
+            final int length = longest[slot];
+            longest[slot] = 0;
+            if (length > 0 && start >= allowed) {
+                if (consumer == null) {
+                    return Finder.pack(start, length);
+                }
+                if (first == NOT_FOUND) {
+                    first = Finder.pack(start, length);
+                }
+                consumer.accept(start, length);
+                allowed = start + length;
+            }
+        }
+        return first;
+    }
+}
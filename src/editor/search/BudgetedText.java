@@ -0,0 +1,94 @@
+package editor.search;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Text, that limits number of reads of its characters.
+ * <p>
+ * {@link java.util.regex.Matcher} can't be interrupted and may backtrack exponentially,
+ * but it reads text only by {@link #charAt(int)}. This wrapper counts reads, so search stops
+ * with {@link SearchLimitException}, when it exceeds its budget, and with
+ * {@link java.util.concurrent.CancellationException}, when it is cancelled.
+ * Budget is proportional to the length of searched region, so linear searches never exceed it.
+ * Text must be read by one thread at a time.
+ * </p>
+ */
+final class BudgetedText implements CharSequence {
+    /**
+     * Number of reads, that are allowed per character of searched region
+     */
+    static final long STEPS_PER_CHAR = 1 << 8;
+
+    /**
+     * Number of reads, that are allowed for any region
+     */
+    static final long MIN_STEPS = 1 << 20;
+
+    /**
+     * Number of reads between checks of budget and cancellation, must be power of two
+     */
+    private static final int CHECK_STEPS = 1 << 12;
+
+    private final CharSequence text;
+    private long steps;
+    private long limit;
+    private volatile boolean cancelled;
+
+    /**
+     * Wraps text
+     *
+     * @param text read text
+     * @param regionLength length of region, that will be searched
+     */
+    BudgetedText(final CharSequence text, final long regionLength) {
+        this.text = text;
+        reset(regionLength);
+    }
+
+    /**
+     * Gives new budget for search in other region
+     *
+     * @param regionLength length of region, that will be searched
+     */
+    void reset(final long regionLength) {
+        steps = 0;
+        limit = MIN_STEPS + STEPS_PER_CHAR * regionLength;
+    }
+
+    /**
+     * Stops search from other thread. Unlike interruption of thread, it also works in {@link java.util.concurrent.ForkJoinPool}
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if ((++steps & (CHECK_STEPS - 1)) == 0) {
+            if (cancelled) {
+                throw new CancellationException("Search was cancelled");
+            }
+            SearchScheduler.checkCancelled();
+            if (steps > limit) {
+                throw new SearchLimitException("Regular expression is too complex for this text, "
+                        + "search was stopped after " + steps + " steps");
+            }
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
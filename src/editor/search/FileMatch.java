@@ -0,0 +1,84 @@
+package editor.search;
+
+import java.nio.file.Path;
+
+/**
+ * Occurrence of pattern in file, that was found by {@link FileSearch}
+ */
+public final class FileMatch {
+    private final Path path;
+    private final long offset;
+    private final int length;
+    private final long line;
+    private final long column;
+    private final String preview;
+
+    FileMatch(final Path path, final long offset, final int length, final long line, final long column,
+              final String preview) {
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+        this.line = line;
+        this.column = column;
+        this.preview = preview;
+    }
+
+    /**
+     * Gets file, that contains occurrence
+     *
+     * @return path to file, or {@code null}, if occurrence was found in stream, like standard input
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets index of occurrence in decoded text of file
+     *
+     * @return index of the first character of occurrence
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets length of occurrence
+     *
+     * @return number of characters in occurrence
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets line of occurrence
+     *
+     * @return number of line, starting from {@code 1}
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * Gets column of occurrence
+     *
+     * @return number of the first character of occurrence in its line, starting from {@code 1}
+     */
+    public long getColumn() {
+        return column;
+    }
+
+    /**
+     * Gets text of line around occurrence
+     *
+     * @return line, that may be cut, if it is too long
+     */
+    public String getPreview() {
+        return preview;
+    }
+
+    @Override
+    public String toString() {
+        return path + ":" + line + ":" + column + ": " + preview;
+    }
+}
@@ -0,0 +1,305 @@
+package editor.search;
+
+import editor.metrics.Counter;
+import editor.metrics.LatencyHistogram;
+import editor.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Search of pattern in all files of directory trees or in stream.
+ * <p>
+ * Directories and files are items of one shared queue, that is processed by one worker per thread
+ * of {@link SearchScheduler}, so both walking and searching are parallel. Every worker processes
+ * one item per task and submits the next task to its lane, so interactive searches in the editor
+ * wait for at most one file per thread. Files are streamed by {@link StreamScanner}, so memory
+ * doesn't depend on size of files. Fixed strings and keywords are searched in UTF-8 bytes without decoding. Files with zero bytes in their beginning are considered binary and skipped.
+ * </p>
+ * <p>
+ * Symbolic links are followed only for roots, like {@code grep -r} does, so walking can't loop.
+ * Roots, that don't exist, files and directories, that can't be read, and files, where regular expression
+ * exceeds its budget, are reported as failures, so incomplete results are never silent.
+ * </p>
+ * <p>
+ * Occurrences are found by the same engines, as search strategies use, and are reported to {@link Listener}
+ * from worker threads as soon as each chunk is scanned. By default, only the first
+ * {@value #DEFAULT_MAX_MATCHES_PER_FILE} occurrences of each file are reported.
+ * Search can be started only once.
+ * </p>
+ */
+public final class FileSearch {
+    private static final int DEFAULT_MAX_MATCHES_PER_FILE = 1000;
+    private static final int DEFAULT_PREVIEW_LENGTH = 240;
+
+    private static final LatencyHistogram FILE_TIME = Metrics.getInstance().histogram("findInFiles.file");
+    private static final Counter FILE_BYTES = Metrics.getInstance().counter("findInFiles.bytes");
+
+    static {
+        Metrics.getInstance().throughput("findInFiles.bytesPerSecond", FILE_BYTES, FILE_TIME);
+    }
+
+    private final Supplier<Finder> finders;
+    private final boolean bytewise;
+    private final ConcurrentLinkedDeque<Path> items = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final List<Worker> workers = new ArrayList<>();
+    private Set<Path> roots = Set.of();
+    private long maxMatchesPerFile = DEFAULT_MAX_MATCHES_PER_FILE;
+    private int previewLength = DEFAULT_PREVIEW_LENGTH;
+    private volatile boolean cancelled;
+    private Listener listener;
+
+    /**
+     * Receiver of results. Its methods are called from worker threads
+     */
+    public interface Listener {
+        /**
+         * Receives next occurrences of file, every file can be reported several times
+         *
+         * @param matches occurrences in order of their positions
+         */
+        void onMatches(final List<FileMatch> matches);
+
+        /**
+         * Receives the end of search, it isn't called, if search was cancelled
+         *
+         * @param files number of searched files
+         * @param skipped number of binary files, that were skipped
+         * @param bytes number of searched bytes
+         */
+        void onFinished(final int files, final int skipped, final long bytes);
+
+        /**
+         * Receives failure of file or directory, that wasn't searched completely.
+         * Occurrences, that were found before failure, are already reported
+         *
+         * @param path file or directory
+         * @param e error of reading, or {@link SearchLimitException}
+         */
+        void onFailed(final Path path, final Exception e);
+    }
+
+    private FileSearch(final Supplier<Finder> finders, final boolean bytewise) {
+        this.finders = finders;
+        this.bytewise = bytewise;
+    }
+
+    /**
+     * Creates search of fixed string
+     *
+     * @param pattern searched string
+     * @return search, that is not started yet
+     */
+    public static FileSearch literal(final String pattern) {
+        final String encoded = StreamScanner.latin1(pattern);
+        final LiteralMatcher matcher = LiteralMatcher.compile(encoded == null ? pattern : encoded);
+        return new FileSearch(() -> matcher, encoded != null);
+    }
+
+    /**
+     * Creates search of regular expression
+     *
+     * @param regex regular expression
+     * @param flags match flags, as in {@link Pattern#compile(String, int)}
+     * @return search, that is not started yet
+     * @throws java.util.regex.PatternSyntaxException if expression is invalid
+     */
+    public static FileSearch regex(final String regex, final int flags) {
+        final Pattern pattern = PatternCache.getInstance().compile(regex, flags);
+        final LinearRegex linear = LinearRegex.compile(pattern);
+        if (linear != null) {
+            return new FileSearch(() -> linear, false);
+        }
+        return new FileSearch(() -> new RegexFinder(pattern, ParallelRegexScanner.DEFAULT_MAX_MATCH_LENGTH), false);
+    }
+
+    /**
+     * Creates search of any of keywords
+     *
+     * @param keywords searched strings
+     * @return search, that is not started yet
+     */
+    public static FileSearch keywords(final List<String> keywords) {
+        final List<String> encoded = new ArrayList<>(keywords.size());
+        for (final String keyword : keywords) {
+            encoded.add(StreamScanner.latin1(keyword));
+        }
+        final boolean bytewise = !encoded.contains(null);
+        final AhoCorasick automaton = AhoCorasick.compile(bytewise ? encoded : keywords);
+        return new FileSearch(() -> automaton, bytewise);
+    }
+
+    /**
+     * Sets limit of reported occurrences in one file, must be called before search
+     *
+     * @param maxMatchesPerFile maximal number of occurrences per file
+     */
+    public void setMaxMatchesPerFile(final long maxMatchesPerFile) {
+        this.maxMatchesPerFile = maxMatchesPerFile;
+    }
+
+    /**
+     * Sets limit of length of line, that is shown with occurrence, must be called before search.
+     * Two thirds of preview are given to text after the beginning of occurrence
+     *
+     * @param previewLength maximal number of characters in preview
+     */
+    public void setPreviewLength(final int previewLength) {
+        this.previewLength = previewLength;
+    }
+
+    private StreamScanner newScanner() {
+        final int before = previewLength / 3;
+        if (bytewise) {
+            return StreamScanner.bytewise(finders.get(), maxMatchesPerFile, before, previewLength - before);
+        }
+        return StreamScanner.decoding(finders.get(), maxMatchesPerFile, before, previewLength - before);
+    }
+
+    /**
+     * Starts search in background
+     *
+     * @param roots roots of directory trees or single files
+     * @param listener receiver of results
+     */
+    public void start(final List<Path> roots, final Listener listener) {
+        this.listener = listener;
+        this.roots = Set.copyOf(roots);
+        if (roots.isEmpty()) {
+            listener.onFinished(0, 0, 0);
+            return;
+        }
+        final int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker());
+        }
+        roots.forEach(this::push);
+        workers.forEach(Worker::wake);
+    }
+
+    /**
+     * Searches stream in current thread, it isn't checked for binary content
+     *
+     * @param channel stream of bytes, like standard input, it isn't closed
+     * @param listener receiver of results, occurrences are reported with {@code null} path
+     * @throws IOException if stream can't be read
+     * @throws SearchLimitException if regular expression exceeds its budget
+     */
+    public void search(final ReadableByteChannel channel, final Listener listener) throws IOException {
+        final long read = newScanner().scan(null, channel, false, listener::onMatches);
+        listener.onFinished(1, 0, read);
+    }
+
+    /**
+     * Stops search, results of files, that are being searched now, may still be reported
+     */
+    public void cancel() {
+        cancelled = true;
+        workers.forEach(worker -> worker.lane.cancel());
+    }
+
+    private void push(final Path item) {
+        pending.incrementAndGet();
+        items.add(item);
+    }
+
+    private void finishItem() {
+        if (pending.decrementAndGet() == 0 && !cancelled) {
+            listener.onFinished(files.get(), skipped.get(), bytes.get());
+        }
+    }
+
+    /**
+     * Processes items one per task, while there are items in queue
+     */
+    private final class Worker implements Runnable {
+        private final SearchScheduler.Lane lane = SearchScheduler.getInstance().newLane();
+        private final AtomicBoolean idle = new AtomicBoolean(true);
+        private StreamScanner scanner;
+
+        void wake() {
+            if (idle.compareAndSet(true, false)) {
+                lane.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            final Path item = items.poll();
+            if (item == null) {
+                idle.set(true);
+                // item may be pushed after poll, but before idle flag was set
+                if (!items.isEmpty()) {
+                    wake();
+                }
+                return;
+            }
+            final boolean root = roots.contains(item);
+            final LinkOption[] options = root ? new LinkOption[0] : new LinkOption[]{LinkOption.NOFOLLOW_LINKS};
+            try {
+                if (Files.isDirectory(item, options)) {
+                    list(item);
+                } else if (Files.isRegularFile(item, options)) {
+                    search(item);
+                } else if (root && !Files.exists(item)) {
+                    throw new NoSuchFileException(item.toString(), null, "No such file or directory");
+                }
+            } catch (IOException | SearchLimitException e) {
+                listener.onFailed(item, e);
+            } catch (CancellationException e) {
+                return;
+            } finally {
+                finishItem();
+            }
+            lane.execute(this);
+        }
+
+        private void list(final Path directory) throws IOException {
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (final Path child : children) {
+                    push(child);
+                }
+            }
+            workers.forEach(Worker::wake);
+        }
+
+        private void search(final Path file) throws IOException {
+            final long start = System.nanoTime();
+            if (scanner == null) {
+                scanner = newScanner();
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final long read = scanner.scan(file, channel, true, listener::onMatches);
+                if (read == StreamScanner.BINARY) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                files.incrementAndGet();
+                bytes.addAndGet(read);
+                FILE_BYTES.add(read);
+                FILE_TIME.recordSince(start);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package editor.search;
+
+/**
+ * Finds occurrences of pattern in bounded regions of text.
+ * <p>
+ * It is used for rescanning small parts of text around edited places,
+ * instead of scanning the whole text again.
+ * </p>
+ */
+interface Finder {
+    /**
+     * Value of {@link #find(CharSequence, int, int)}, when there is no occurrence
+     */
+    long NOT_FOUND = -1;
+
+    /**
+     * Finds the first occurrence inside the region of text.
+     * Characters outside the region can be used as context, for example by lookarounds.
+     *
+     * @param text text for searching
+     * @param from minimal index of occurrence
+     * @param to maximal index of occurrence end, exclusive
+     * @return occurrence, packed by {@link #pack(int, int)}, or {@link #NOT_FOUND}
+     */
+    long find(final CharSequence text, final int from, final int to);
+
+    /**
+     * Gets maximal length of occurrence. It is also the length of context around
+     * edited place, that can change occurrences
+     *
+     * @return maximal length of occurrence
+     */
+    int radius();
+
+    /**
+     * Checks, that occurrences are never longer, than {@link #radius()}. Radius of unbounded patterns,
+     * like {@code a.*b}, is only overlap of scanned regions, and longer occurrences may be cut by it
+     *
+     * @return {@code true} if radius is exact bound of length of occurrence
+     */
+    boolean isBounded();
+
+    static long pack(final int start, final int length) {
+        return ((long) start << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    static int start(final long occurrence) {
+        return (int) (occurrence >>> 32);
+    }
+
+    static int length(final long occurrence) {
+        return (int) occurrence;
+    }
+}
@@ -0,0 +1,231 @@
+package editor.search;
+
+import editor.metrics.LatencyHistogram;
+import editor.metrics.Metrics;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Search strategy, that finds all occurrences of pattern at once and keeps them in {@link MatchIndex}.
+ * <p>
+ * This strategy uses O({@code |occurrences|}) additional memory, but O({@code log |occurrences|})
+ * time complexity for finding next/previous occurrence. Text is scanned in separate thread
+ * by {@link #scan(CharSequence, MatchConsumer)}, and the first occurrence is highlighted as soon as
+ * it is found, without waiting for the end of scan.
+ * When strategy follows document, {@link SearchSession} rescans only edited parts of it,
+ * or the whole text is scanned again in background, if occurrences of pattern are unbounded.
+ * If scan exceeds its budget with {@link SearchLimitException}, user is warned,
+ * and occurrences, that were found before, stay available.
+ * </p>
+ */
+abstract class IndexedSearcher extends AbstractSearcher {
+    /**
+     * Number of found occurrences between notifications of GUI about search progress
+     */
+    private static final int PUBLISH_BATCH = 1 << 12;
+
+    private static final LatencyHistogram SCAN = Metrics.getInstance().histogram("search.scan");
+    private static final LatencyHistogram RESCAN = Metrics.getInstance().histogram("search.rescan");
+
+    private final SearchSession session;
+    private final MatchIndex matches;
+
+    /**
+     * Long scans have own lane, so navigation over already found occurrences doesn't wait for them
+     */
+    private final SearchScheduler.Lane scans = SearchScheduler.getInstance().newLane();
+    private volatile CharSequence text;
+    private volatile int current = -1;
+    private volatile boolean highlighted;
+    private boolean scanning;
+    private boolean stale;
+    private boolean failed;
+
+    /**
+     * Constructs strategy. Subclass starts searching by {@link #startScan()}
+     * or {@link #highlightFirst()}, when it is initialized
+     *
+     * @param listener receiver of occurrences
+     * @param finder finder, that rescans edited parts of text
+     * @param found all occurrences in text, that were found earlier, or {@code null}
+     * @param text text for searching
+     */
+    IndexedSearcher(final SearchListener listener, final Finder finder, final MatchIndex found,
+                    final CharSequence text) {
+        super(listener);
+        this.session = new SearchSession(finder, found == null ? new MatchIndex() : found);
+        this.matches = session.getMatches();
+        this.text = text;
+    }
+
+    /**
+     * Finds all occurrences of pattern. Long scans must check {@link SearchScheduler#checkCancelled()}
+     *
+     * @param text text for searching
+     * @param consumer receiver of occurrences in order of their positions
+     */
+    protected abstract void scan(final CharSequence text, final MatchConsumer consumer);
+
+    /**
+     * Gets found occurrences
+     *
+     * @return index of occurrences
+     */
+    protected MatchIndex getMatches() {
+        return matches;
+    }
+
+    /**
+     * Checks, if all occurrences in current text are found.
+     * Must be called from thread, that edits document
+     *
+     * @return {@code true} if scan is finished and occurrences are up to date
+     */
+    protected boolean isComplete() {
+        return !scanning && !stale && !failed;
+    }
+
+    protected void startScan() {
+        scanning = true;
+        failed = false;
+        final CharSequence scannedText = text;
+        final SwingWorker<Void, Integer> searchWorker = new SwingWorker<>() {
+
+            @Override
+            protected Void doInBackground() {
+                final long startNanos = System.nanoTime();
+                scan(scannedText, (start, length) -> {
+                    matches.add(start, length);
+                    if (matches.size() % PUBLISH_BATCH == 1) {
+                        publish(matches.size());
+                    }
+                });
+                SCAN.recordSince(startNanos);
+                return null;
+            }
+
+            @Override
+            protected void process(final List<Integer> sizes) {
+                if (!isCancelled()) {
+                    highlightFirst();
+                    highlightOccurrences();
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                scanning = false;
+                try {
+                    get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    fail(e.getCause());
+                }
+                if (stale) {
+                    // document was edited during the scan, occurrences are found in old text
+                    stale = false;
+                    matches.clear();
+                    startScan();
+                } else {
+                    highlightFirst();
+                    highlightOccurrences();
+                }
+            }
+        };
+
+        scans.execute(searchWorker);
+    }
+
+    private void fail(final Throwable cause) {
+        failed = true;
+        if (cause instanceof SearchLimitException) {
+            showWarning(cause.getMessage());
+        } else {
+            cause.printStackTrace();
+        }
+    }
+
+    protected void highlightFirst() {
+        if (!highlighted) {
+            highlighted = true;
+            if (matches.size() > 0) {
+                current = matches.start(0);
+            }
+            highlightTextArea();
+        }
+    }
+
+    @Override
+    protected void onEdit(final CharSequence text, final int offset, final int removed, final int inserted) {
+        this.text = text;
+        if (current >= 0) {
+            current = shiftPosition(current, offset, removed, inserted);
+        }
+        if (scanning) {
+            stale = true;
+        } else if (failed) {
+            // occurrences can't be rescanned, found ones just follow the text
+            matches.remove(offset, offset + removed);
+            matches.shift(offset + removed, inserted - removed);
+        } else {
+            try {
+                final long start = System.nanoTime();
+                if (session.update(text, offset, removed, inserted)) {
+                    RESCAN.recordSince(start);
+                } else {
+                    matches.clear();
+                    startScan();
+                }
+            } catch (SearchLimitException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void findByNewIndex(final int newIndex) {
+        final long start = System.nanoTime();
+        final int size = matches.size();
+        if (size > 0) {
+            current = matches.start((newIndex % size + size) % size);
+            NAVIGATION.recordSince(start);
+            highlightTextArea();
+        }
+    }
+
+    @Override
+    public void findNext() {
+        executor.execute(() -> findByNewIndex(current < 0 ? 0 : matches.indexAtOrAfter(current + 1)));
+    }
+
+    @Override
+    public void findPrev() {
+        executor.execute(() -> findByNewIndex(matches.indexAtOrAfter(Math.max(current, 0)) - 1));
+    }
+
+    @Override
+    public int getPos() {
+        return Math.max(current, 0);
+    }
+
+    @Override
+    public int getPatternLength() {
+        return current < 0 ? 0 : Math.max(matches.lengthAt(current), 0);
+    }
+
+    @Override
+    public void forEachOccurrence(final int from, final int to, final MatchConsumer consumer) {
+        matches.forEach(from, to, consumer);
+    }
+
+    @Override
+    public void cancel() {
+        scans.cancel();
+        super.cancel();
+    }
+}
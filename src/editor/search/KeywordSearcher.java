@@ -0,0 +1,55 @@
+package editor.search;
+
+import editor.document.TextDocument;
+
+import java.util.List;
+
+/**
+ * Represents search strategy, that finds any of many keywords at once.
+ * <p>
+ * All keywords are found in one pass over text by {@link AhoCorasick} automaton, so time complexity
+ * of preprocessing is O({@code |text| + |keywords|}) instead of O({@code |text| * |keywords|}) for searching
+ * keywords one by one. Occurrences of different keywords are merged in order of positions,
+ * and navigation goes through all of them.
+ * All searches happens in separate thread.
+ * </p>
+ */
+public class KeywordSearcher extends IndexedSearcher {
+    private final AhoCorasick automaton;
+
+    /**
+     * Constructs strategy, that searches in fixed text
+     *
+     * @param text text for searching
+     * @param keywords searched strings
+     * @param listener receiver of occurrences
+     */
+    public KeywordSearcher(final CharSequence text, final List<String> keywords, final SearchListener listener) {
+        this(text, AhoCorasick.compile(keywords), listener);
+    }
+
+    /**
+     * Constructs strategy, that searches in document and follows its edits.
+     * Must be called from thread, that edits document.
+     *
+     * @param document document for searching
+     * @param keywords searched strings
+     * @param listener receiver of occurrences
+     */
+    public KeywordSearcher(final TextDocument document, final List<String> keywords,
+                           final SearchListener listener) {
+        this(document.snapshot(), keywords, listener);
+        follow(document);
+    }
+
+    private KeywordSearcher(final CharSequence text, final AhoCorasick automaton, final SearchListener listener) {
+        super(listener, automaton, null, text);
+        this.automaton = automaton;
+        startScan();
+    }
+
+    @Override
+    protected void scan(final CharSequence text, final MatchConsumer consumer) {
+        automaton.scan(text, consumer);
+    }
+}
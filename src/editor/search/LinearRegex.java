@@ -0,0 +1,1026 @@
+package editor.search;
+
+import editor.document.Rope;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expression engine, that never backtracks.
+ * <p>
+ * Expression is compiled into Thompson NFA, that is simulated as a DFA, whose states are built lazily
+ * and cached: state is the list of NFA threads, ordered by priority, as in Pike VM, so the leftmost occurrence
+ * and the same alternative, as {@link java.util.regex.Matcher#find()} prefers, are found.
+ * Forward scan finds the end of occurrence, and backward scan of reversed expression finds its start.
+ * Every character costs O({@code 1}) after its transition is cached, so one call of {@link #find} is linear
+ * in length of scanned range for any expression, including the ones, that make {@code java.util.regex}
+ * backtrack exponentially. Forward scan reads past the end of occurrence, while longer occurrence is still
+ * possible, so {@link #scan} may read the same characters again for the next occurrences, and is quadratic
+ * in the worst case, like for {@code x*y|x} in the long run of {@code x}.
+ * </p>
+ * <p>
+ * Memory is bounded: when DFA has {@value #MAX_STATES} states, all of them are dropped with their
+ * cached transitions, and DFA is built again from the new start state.
+ * </p>
+ * <p>
+ * Only the common subset of syntax is supported: literals, escapes, character classes, {@code .},
+ * groups, alternation and greedy or lazy quantifiers. Anchors, boundaries, lookarounds, back references,
+ * possessive quantifiers and flags except {@link Pattern#DOTALL} are not, and such expressions
+ * must be searched by {@code java.util.regex}.
+ * </p>
+ */
+final class LinearRegex implements Finder {
+    /**
+     * Expressions, that are compiled into more instructions, are not supported
+     */
+    private static final int MAX_PROGRAM = 1 << 14;
+
+    /**
+     * DFA is dropped and built again, when it has more states
+     */
+    private static final int MAX_STATES = 1 << 12;
+
+    /**
+     * Number of scanned characters between checks of cancellation, must be power of two
+     */
+    private static final int CANCEL_CHECK_STEPS = 1 << 16;
+
+    private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029};
+    private static final int[] DIGITS = {'0', '9'};
+    private static final int[] WORD_CHARS = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] SPACES = {'\t', '\r', ' ', ' '};
+
+    private final Program forward;
+    private final Program backward;
+    private final int radius;
+    private final boolean bounded;
+    private final ThreadLocal<Dfa> forwardDfa;
+    private final ThreadLocal<Dfa> backwardDfa;
+
+    private LinearRegex(final Node node) {
+        final Builder forwardBuilder = new Builder();
+        // unanchored search: lazy loop over any character has the lowest priority
+        final int loop = forwardBuilder.emit(Program.SPLIT, 0, 0);
+        forwardBuilder.emitChars(new int[]{0, Character.MAX_VALUE});
+        forwardBuilder.emit(Program.JUMP, loop, 0);
+        forwardBuilder.patch(loop, forwardBuilder.size(), loop + 1);
+        node.emit(forwardBuilder);
+        forwardBuilder.emit(Program.MATCH, 0, 0);
+        this.forward = forwardBuilder.build(loop, true);
+
+        final Builder backwardBuilder = new Builder();
+        node.reverse().emit(backwardBuilder);
+        backwardBuilder.emit(Program.MATCH, 0, 0);
+        this.backward = backwardBuilder.build(0, false);
+
+        final int maxLength = node.maxLength();
+        this.bounded = maxLength >= 0 && maxLength <= ParallelRegexScanner.DEFAULT_MAX_MATCH_LENGTH;
+        this.radius = bounded ? Math.max(maxLength, 1) : ParallelRegexScanner.DEFAULT_MAX_MATCH_LENGTH;
+        this.forwardDfa = ThreadLocal.withInitial(() -> new Dfa(forward));
+        this.backwardDfa = ThreadLocal.withInitial(() -> new Dfa(backward));
+    }
+
+    /**
+     * Compiles expression, if it is supported
+     *
+     * @param pattern compiled {@code java.util.regex} expression
+     * @return engine for expression or {@code null}, if it uses unsupported syntax or flags
+     */
+    static LinearRegex compile(final Pattern pattern) {
+        if ((pattern.flags() & ~Pattern.DOTALL) != 0) {
+            return null;
+        }
+        try {
+            final Parser parser = new Parser(pattern.pattern(), (pattern.flags() & Pattern.DOTALL) != 0);
+            return new LinearRegex(parser.parse());
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds all occurrences of expression in text
+     *
+     * @param text text for searching
+     * @param consumer receiver of occurrences in order of their positions
+     */
+    void scan(final CharSequence text, final MatchConsumer consumer) {
+        final CharSequence local = text instanceof Rope ? ((Rope) text).duplicate() : text;
+        final int length = local.length();
+        int position = 0;
+        while (position <= length) {
+            final long found = find(local, position, length);
+            if (found == NOT_FOUND) {
+                return;
+            }
+            final int start = Finder.start(found);
+            final int end = start + Finder.length(found);
+            consumer.accept(start, end - start);
+            position = start == end ? end + 1 : end;
+        }
+    }
+
+    @Override
+    public long find(final CharSequence text, final int from, final int to) {
+        final Dfa dfa = forwardDfa.get();
+        State state = dfa.start;
+        int end = state.matching ? from : -1;
+        for (int i = from; i < to && state.threads.length > 0; i++) {
+            if (((i - from) & (CANCEL_CHECK_STEPS - 1)) == 0) {
+                SearchScheduler.checkCancelled();
+            }
+            state = dfa.next(state, text.charAt(i));
+            if (state.matching) {
+                end = i + 1;
+            }
+        }
+        if (end < 0) {
+            return NOT_FOUND;
+        }
+        final Dfa reverse = backwardDfa.get();
+        state = reverse.start;
+        int start = end;
+        for (int i = end - 1; i >= from && state.threads.length > 0; i--) {
+            state = reverse.next(state, text.charAt(i));
+            if (state.matching) {
+                start = i;
+            }
+        }
+        return Finder.pack(start, end - start);
+    }
+
+    @Override
+    public int radius() {
+        return radius;
+    }
+
+    @Override
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * Instructions of NFA in flat arrays
+     */
+    private static final class Program {
+        static final int CHARS = 0;
+        static final int SPLIT = 1;
+        static final int JUMP = 2;
+        static final int MATCH = 3;
+
+        final int[] ops;
+        final int[] first;
+        final int[] second;
+
+        /**
+         * Sorted inclusive ranges of characters, that are accepted by {@link #CHARS} instructions
+         */
+        final int[][] ranges;
+        final int start;
+
+        /**
+         * {@code true} if threads of lower priority than matched one are dropped (the first match),
+         * {@code false} if all threads continue (the longest match)
+         */
+        final boolean firstMatch;
+
+        Program(final int[] ops, final int[] first, final int[] second, final int[][] ranges,
+                final int start, final boolean firstMatch) {
+            this.ops = ops;
+            this.first = first;
+            this.second = second;
+            this.ranges = ranges;
+            this.start = start;
+            this.firstMatch = firstMatch;
+        }
+
+        boolean accepts(final int pc, final char c) {
+            final int[] r = ranges[pc];
+            int low = 0;
+            int high = r.length / 2 - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (r[2 * mid + 1] < c) {
+                    low = mid + 1;
+                } else if (r[2 * mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Builder {
+        private int[] ops = new int[16];
+        private int[] first = new int[16];
+        private int[] second = new int[16];
+        private int[][] ranges = new int[16][];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int emit(final int op, final int a, final int b) {
+            if (size == MAX_PROGRAM) {
+                throw new UnsupportedOperationException("Expression is too large");
+            }
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, 2 * size);
+                first = Arrays.copyOf(first, 2 * size);
+                second = Arrays.copyOf(second, 2 * size);
+                ranges = Arrays.copyOf(ranges, 2 * size);
+            }
+            ops[size] = op;
+            first[size] = a;
+            second[size] = b;
+            return size++;
+        }
+
+        void emitChars(final int[] accepted) {
+            final int pc = emit(Program.CHARS, 0, 0);
+            ranges[pc] = accepted;
+        }
+
+        void patch(final int pc, final int a, final int b) {
+            first[pc] = a;
+            second[pc] = b;
+        }
+
+        Program build(final int start, final boolean firstMatch) {
+            return new Program(Arrays.copyOf(ops, size), Arrays.copyOf(first, size), Arrays.copyOf(second, size),
+                    Arrays.copyOf(ranges, size), start, firstMatch);
+        }
+    }
+
+    /**
+     * State of DFA: ordered list of NFA threads, that wait for the next character
+     */
+    private static final class State {
+        final int[] threads;
+        final boolean matching;
+        final State[] ascii = new State[128];
+        Map<Character, State> other;
+
+        State(final int[] threads, final boolean matching) {
+            this.threads = threads;
+            this.matching = matching;
+        }
+    }
+
+    /**
+     * Lazily built DFA, that is used by one thread
+     */
+    private static final class Dfa {
+        private final Program program;
+
+        /**
+         * States by their lists of threads, {@link IntBuffer} compares lists by content
+         */
+        private final Map<IntBuffer, State> states = new HashMap<>();
+        private final int[] visited;
+        private final int[] stack;
+        private final int[] buffer;
+        private int stamp;
+        private int count;
+        private boolean matched;
+
+        /**
+         * Start state, that is replaced, when DFA is dropped
+         */
+        State start;
+
+        Dfa(final Program program) {
+            this.program = program;
+            this.visited = new int[program.ops.length];
+            this.stack = new int[program.ops.length + 1];
+            this.buffer = new int[program.ops.length];
+            beginStep();
+            addThread(program.start);
+            this.start = state();
+        }
+
+        State next(final State state, final char c) {
+            State next = c < state.ascii.length ? state.ascii[c]
+                    : state.other == null ? null : state.other.get(c);
+            if (next == null) {
+                next = step(state, c);
+                if (c < state.ascii.length) {
+                    state.ascii[c] = next;
+                } else {
+                    if (state.other == null) {
+                        state.other = new HashMap<>();
+                    }
+                    state.other.put(c, next);
+                }
+            }
+            return next;
+        }
+
+        private State step(final State state, final char c) {
+            beginStep();
+            for (final int pc : state.threads) {
+                if (program.ops[pc] == Program.CHARS && program.accepts(pc, c) && addThread(pc + 1)) {
+                    break;
+                }
+            }
+            return state();
+        }
+
+        private void beginStep() {
+            stamp++;
+            count = 0;
+            matched = false;
+        }
+
+        /**
+         * Adds threads, that are reachable from instruction without consuming characters, in order of priority
+         *
+         * @return {@code true} if the first match was reached and threads of lower priority must be dropped
+         */
+        private boolean addThread(final int pc) {
+            int top = 0;
+            stack[top++] = pc;
+            while (top > 0) {
+                final int current = stack[--top];
+                if (visited[current] == stamp) {
+                    continue;
+                }
+                visited[current] = stamp;
+                switch (program.ops[current]) {
+                    case Program.JUMP:
+                        stack[top++] = program.first[current];
+                        break;
+                    case Program.SPLIT:
+                        stack[top++] = program.second[current];
+                        stack[top++] = program.first[current];
+                        break;
+                    case Program.MATCH:
+                        matched = true;
+                        buffer[count++] = current;
+                        if (program.firstMatch) {
+                            return true;
+                        }
+                        break;
+                    default:
+                        buffer[count++] = current;
+                        break;
+                }
+            }
+            return false;
+        }
+
+        private State state() {
+            final int[] threads = Arrays.copyOf(buffer, count);
+            final IntBuffer key = IntBuffer.wrap(threads);
+            State state = states.get(key);
+            if (state == null) {
+                if (states.size() >= MAX_STATES) {
+                    drop();
+                    state = states.get(key);
+                }
+                if (state == null) {
+                    state = new State(threads, matched);
+                    states.put(key, state);
+                }
+            }
+            return state;
+        }
+
+        /**
+         * Drops all states, because cached transitions from start state keep cleared states reachable.
+         * States, that are referenced by running scan, stay valid, but the next state is built in new DFA
+         */
+        private void drop() {
+            states.clear();
+            start = new State(start.threads, start.matching);
+            states.put(IntBuffer.wrap(start.threads), start);
+        }
+    }
+
+    /**
+     * Node of syntax tree
+     */
+    private abstract static class Node {
+        abstract void emit(final Builder builder);
+
+        /**
+         * Gets node, that matches reversed strings
+         */
+        abstract Node reverse();
+
+        /**
+         * Gets maximal length of matched string, or {@code -1}, if it is unbounded
+         */
+        abstract int maxLength();
+
+        /**
+         * Checks, if node matches empty string
+         */
+        abstract boolean nullable();
+    }
+
+    private static final class Chars extends Node {
+        private final int[] ranges;
+
+        /**
+         * {@code true} if surrogate pairs are accepted as one character, like {@code java.util.regex} does
+         * for {@code .} and negated classes
+         */
+        private final boolean supplementary;
+
+        Chars(final int[] ranges, final boolean supplementary) {
+            this.ranges = ranges;
+            this.supplementary = supplementary;
+        }
+
+        @Override
+        void emit(final Builder builder) {
+            if (!supplementary) {
+                builder.emitChars(ranges);
+                return;
+            }
+            final int split = builder.emit(Program.SPLIT, 0, 0);
+            builder.emitChars(new int[]{Character.MIN_HIGH_SURROGATE, Character.MAX_HIGH_SURROGATE});
+            builder.emitChars(new int[]{Character.MIN_LOW_SURROGATE, Character.MAX_LOW_SURROGATE});
+            final int jump = builder.emit(Program.JUMP, 0, 0);
+            builder.patch(split, split + 1, builder.size());
+            builder.emitChars(withoutHighSurrogates());
+            builder.patch(jump, builder.size(), 0);
+        }
+
+        @Override
+        Node reverse() {
+            if (!supplementary) {
+                return this;
+            }
+            final List<Node> pair = List.of(
+                    new Chars(new int[]{Character.MIN_LOW_SURROGATE, Character.MAX_LOW_SURROGATE}, false),
+                    new Chars(new int[]{Character.MIN_HIGH_SURROGATE, Character.MAX_HIGH_SURROGATE}, false));
+            return new Alternation(List.of(new Concatenation(pair), new Chars(withoutHighSurrogates(), false)));
+        }
+
+        /**
+         * Gets accepted characters, except high surrogates, that {@code java.util.regex} reads together
+         * with the following low surrogate. Unpaired high surrogates are not accepted
+         */
+        private int[] withoutHighSurrogates() {
+            final int[] result = new int[ranges.length + 2];
+            int size = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] < Character.MIN_HIGH_SURROGATE) {
+                    result[size++] = ranges[i];
+                    result[size++] = Math.min(ranges[i + 1], Character.MIN_HIGH_SURROGATE - 1);
+                }
+                if (ranges[i + 1] > Character.MAX_HIGH_SURROGATE) {
+                    result[size++] = Math.max(ranges[i], Character.MAX_HIGH_SURROGATE + 1);
+                    result[size++] = ranges[i + 1];
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        @Override
+        int maxLength() {
+            return supplementary ? 2 : 1;
+        }
+
+        @Override
+        boolean nullable() {
+            return false;
+        }
+    }
+
+    private static final class Concatenation extends Node {
+        private final List<Node> nodes;
+
+        Concatenation(final List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void emit(final Builder builder) {
+            for (final Node node : nodes) {
+                node.emit(builder);
+            }
+        }
+
+        @Override
+        Node reverse() {
+            final List<Node> reversed = new ArrayList<>();
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                reversed.add(nodes.get(i).reverse());
+            }
+            return new Concatenation(reversed);
+        }
+
+        @Override
+        int maxLength() {
+            long sum = 0;
+            for (final Node node : nodes) {
+                final int length = node.maxLength();
+                if (length < 0) {
+                    return -1;
+                }
+                sum += length;
+            }
+            return (int) Math.min(sum, Integer.MAX_VALUE);
+        }
+
+        @Override
+        boolean nullable() {
+            return nodes.stream().allMatch(Node::nullable);
+        }
+    }
+
+    private static final class Alternation extends Node {
+        private final List<Node> nodes;
+
+        Alternation(final List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void emit(final Builder builder) {
+            final int[] jumps = new int[nodes.size() - 1];
+            for (int i = 0; i < jumps.length; i++) {
+                final int split = builder.emit(Program.SPLIT, 0, 0);
+                nodes.get(i).emit(builder);
+                jumps[i] = builder.emit(Program.JUMP, 0, 0);
+                builder.patch(split, split + 1, builder.size());
+            }
+            nodes.get(jumps.length).emit(builder);
+            for (final int jump : jumps) {
+                builder.patch(jump, builder.size(), 0);
+            }
+        }
+
+        @Override
+        Node reverse() {
+            final List<Node> reversed = new ArrayList<>();
+            for (final Node node : nodes) {
+                reversed.add(node.reverse());
+            }
+            return new Alternation(reversed);
+        }
+
+        @Override
+        int maxLength() {
+            int max = 0;
+            for (final Node node : nodes) {
+                final int length = node.maxLength();
+                if (length < 0) {
+                    return -1;
+                }
+                max = Math.max(max, length);
+            }
+            return max;
+        }
+
+        @Override
+        boolean nullable() {
+            return nodes.stream().anyMatch(Node::nullable);
+        }
+    }
+
+    private static final class Repetition extends Node {
+        private final Node node;
+        private final int min;
+
+        /**
+         * Maximal number of repetitions, or {@code -1}, if it is unbounded
+         */
+        private final int max;
+        private final boolean greedy;
+
+        Repetition(final Node node, final int min, final int max, final boolean greedy) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+
+        @Override
+        void emit(final Builder builder) {
+            for (int i = 0; i < min; i++) {
+                node.emit(builder);
+            }
+            if (max < 0) {
+                final int split = builder.emit(Program.SPLIT, 0, 0);
+                node.emit(builder);
+                builder.emit(Program.JUMP, split, 0);
+                patchSplit(builder, split, builder.size());
+                return;
+            }
+            final int[] splits = new int[max - min];
+            for (int i = 0; i < splits.length; i++) {
+                splits[i] = builder.emit(Program.SPLIT, 0, 0);
+                node.emit(builder);
+            }
+            for (final int split : splits) {
+                patchSplit(builder, split, builder.size());
+            }
+        }
+
+        /**
+         * Greedy quantifier prefers one more repetition, lazy one prefers to exit
+         */
+        private void patchSplit(final Builder builder, final int split, final int exit) {
+            if (greedy) {
+                builder.patch(split, split + 1, exit);
+            } else {
+                builder.patch(split, exit, split + 1);
+            }
+        }
+
+        @Override
+        Node reverse() {
+            return new Repetition(node.reverse(), min, max, greedy);
+        }
+
+        @Override
+        int maxLength() {
+            final int length = node.maxLength();
+            if (length == 0) {
+                return 0;
+            }
+            if (max < 0 || length < 0) {
+                return -1;
+            }
+            return (int) Math.min((long) length * max, Integer.MAX_VALUE);
+        }
+
+        @Override
+        boolean nullable() {
+            return min == 0 || node.nullable();
+        }
+    }
+
+    /**
+     * Recursive descent parser of supported subset of {@link Pattern} syntax
+     */
+    private static final class Parser {
+        private final String regex;
+        private final boolean dotAll;
+        private int pos;
+
+        Parser(final String regex, final boolean dotAll) {
+            this.regex = regex;
+            this.dotAll = dotAll;
+        }
+
+        Node parse() {
+            final Node node = alternation();
+            if (pos < regex.length()) {
+                throw unsupported();
+            }
+            return node;
+        }
+
+        private static UnsupportedOperationException unsupported() {
+            return new UnsupportedOperationException("Syntax is not supported");
+        }
+
+        private boolean more() {
+            return pos < regex.length();
+        }
+
+        private char peek() {
+            return regex.charAt(pos);
+        }
+
+        private Node alternation() {
+            final List<Node> nodes = new ArrayList<>();
+            nodes.add(concatenation());
+            while (more() && peek() == '|') {
+                pos++;
+                nodes.add(concatenation());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Alternation(nodes);
+        }
+
+        private Node concatenation() {
+            final List<Node> nodes = new ArrayList<>();
+            while (more() && peek() != '|' && peek() != ')') {
+                nodes.add(repetition(atom()));
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Concatenation(nodes);
+        }
+
+        private Node repetition(Node node) {
+            while (more()) {
+                final int min;
+                final int max;
+                switch (peek()) {
+                    case '*':
+                        pos++;
+                        min = 0;
+                        max = -1;
+                        break;
+                    case '+':
+                        pos++;
+                        min = 1;
+                        max = -1;
+                        break;
+                    case '?':
+                        pos++;
+                        min = 0;
+                        max = 1;
+                        break;
+                    case '{':
+                        pos++;
+                        min = number();
+                        if (more() && peek() == ',') {
+                            pos++;
+                            max = more() && peek() == '}' ? -1 : number();
+                        } else {
+                            max = min;
+                        }
+                        expect('}');
+                        if (max >= 0 && max < min) {
+                            throw unsupported();
+                        }
+                        break;
+                    default:
+                        return node;
+                }
+                boolean greedy = true;
+                if (more() && peek() == '?') {
+                    pos++;
+                    greedy = false;
+                } else if (more() && peek() == '+') {
+                    // possessive quantifiers need backtracking control
+                    throw unsupported();
+                }
+                if (max != 1 && node.nullable()) {
+                    // java.util.regex has own rules for iterations, that match empty string
+                    throw unsupported();
+                }
+                node = new Repetition(node, min, max, greedy);
+            }
+            return node;
+        }
+
+        private int number() {
+            final int begin = pos;
+            while (more() && Character.isDigit(peek()) && pos - begin < 6) {
+                pos++;
+            }
+            if (begin == pos || (more() && Character.isDigit(peek()))) {
+                throw unsupported();
+            }
+            return Integer.parseInt(regex.substring(begin, pos));
+        }
+
+        private void expect(final char c) {
+            if (!more() || peek() != c) {
+                throw unsupported();
+            }
+            pos++;
+        }
+
+        private Node atom() {
+            final char c = regex.charAt(pos++);
+            switch (c) {
+                case '(':
+                    groupPrefix();
+                    final Node node = alternation();
+                    expect(')');
+                    return node;
+                case '[':
+                    return characterClass();
+                case '.':
+                    return new Chars(dotAll ? new int[]{0, Character.MAX_VALUE} : invert(LINE_TERMINATORS), true);
+                case '\\':
+                    return escape();
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw unsupported();
+                default:
+                    return literal(c);
+            }
+        }
+
+        /**
+         * Skips prefix of capturing, non-capturing or named group
+         */
+        private void groupPrefix() {
+            if (!more() || peek() != '?') {
+                return;
+            }
+            pos++;
+            if (more() && peek() == ':') {
+                pos++;
+                return;
+            }
+            if (more() && peek() == '<') {
+                pos++;
+                final int begin = pos;
+                while (more() && Character.isLetterOrDigit(peek())) {
+                    pos++;
+                }
+                if (pos > begin && Character.isLetter(regex.charAt(begin))) {
+                    expect('>');
+                    return;
+                }
+            }
+            throw unsupported();
+        }
+
+        private Node literal(final char c) {
+            if (Character.isSurrogate(c)) {
+                throw unsupported();
+            }
+            return new Chars(new int[]{c, c}, false);
+        }
+
+        private Node escape() {
+            if (!more()) {
+                throw unsupported();
+            }
+            final char c = regex.charAt(pos);
+            switch (c) {
+                case 'd':
+                case 'D':
+                case 'w':
+                case 'W':
+                case 's':
+                case 'S':
+                    pos++;
+                    final int[] ranges = predefined(Character.toLowerCase(c));
+                    return Character.isUpperCase(c) ? new Chars(invert(ranges), true) : new Chars(ranges, false);
+                default:
+                    return literal(escapedChar());
+            }
+        }
+
+        private static int[] predefined(final char c) {
+            switch (c) {
+                case 'd':
+                    return DIGITS;
+                case 'w':
+                    return WORD_CHARS;
+                default:
+                    return SPACES;
+            }
+        }
+
+        /**
+         * Parses escaped character, that stands for itself
+         */
+        private char escapedChar() {
+            final char c = regex.charAt(pos++);
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case 'x':
+                    return hex(2);
+                case 'u':
+                    return hex(4);
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        // boundaries, back references, properties, quotation and others
+                        throw unsupported();
+                    }
+                    return c;
+            }
+        }
+
+        private char hex(final int digits) {
+            if (pos + digits > regex.length()) {
+                throw unsupported();
+            }
+            try {
+                final int value = Integer.parseInt(regex.substring(pos, pos + digits), 16);
+                pos += digits;
+                return (char) value;
+            } catch (NumberFormatException e) {
+                throw unsupported();
+            }
+        }
+
+        private Node characterClass() {
+            boolean negated = false;
+            if (more() && peek() == '^') {
+                pos++;
+                negated = true;
+            }
+            final List<int[]> ranges = new ArrayList<>();
+            boolean first = true;
+            while (true) {
+                if (!more()) {
+                    throw unsupported();
+                }
+                char c = regex.charAt(pos++);
+                if (c == ']' && !first) {
+                    break;
+                }
+                first = false;
+                if (c == '[' || (c == '&' && more() && peek() == '&')) {
+                    // unions and intersections of classes
+                    throw unsupported();
+                }
+                if (c == '\\') {
+                    if (!more()) {
+                        throw unsupported();
+                    }
+                    final char e = peek();
+                    if ("dDwWsS".indexOf(e) >= 0) {
+                        pos++;
+                        final int[] predefined = predefined(Character.toLowerCase(e));
+                        ranges.add(Character.isUpperCase(e) ? invert(predefined) : predefined);
+                        continue;
+                    }
+                    c = escapedChar();
+                } else if (Character.isSurrogate(c)) {
+                    throw unsupported();
+                }
+                char last = c;
+                if (more() && peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                    pos++;
+                    last = regex.charAt(pos++);
+                    if (last == '\\') {
+                        if (!more()) {
+                            throw unsupported();
+                        }
+                        last = escapedChar();
+                    } else if (last == '[' || Character.isSurrogate(last)) {
+                        throw unsupported();
+                    }
+                    if (last < c) {
+                        throw unsupported();
+                    }
+                }
+                ranges.add(new int[]{c, last});
+            }
+            final int[] union = union(ranges);
+            return negated ? new Chars(invert(union), true) : new Chars(union, false);
+        }
+
+        /**
+         * Merges lists of ranges into one sorted list of disjoint ranges
+         */
+        private static int[] union(final List<int[]> lists) {
+            final List<int[]> ranges = new ArrayList<>();
+            for (final int[] list : lists) {
+                for (int i = 0; i < list.length; i += 2) {
+                    ranges.add(new int[]{list[i], list[i + 1]});
+                }
+            }
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            final int[] result = new int[2 * ranges.size()];
+            int size = 0;
+            for (final int[] range : ranges) {
+                if (size > 0 && range[0] <= result[size - 1] + 1) {
+                    result[size - 1] = Math.max(result[size - 1], range[1]);
+                } else {
+                    result[size++] = range[0];
+                    result[size++] = range[1];
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        /**
+         * Gets sorted ranges of all characters, that are not in given sorted ranges
+         */
+        private static int[] invert(final int[] ranges) {
+            final int[] result = new int[ranges.length + 2];
+            int size = 0;
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    result[size++] = next;
+                    result[size++] = ranges[i] - 1;
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= Character.MAX_VALUE) {
+                result[size++] = next;
+                result[size++] = Character.MAX_VALUE;
+            }
+            return Arrays.copyOf(result, size);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package editor.search;
+
+import java.util.Arrays;
+
+/**
+ * Engine for finding occurrences of fixed string in text.
+ * <p>
+ * Implementation is chosen by {@link #compile(String)} from length and alphabet of pattern:
+ * short patterns are found by scanning for their first char, and longer ones
+ * by Boyer-Moore-Horspool algorithm, that skips up to {@code |pattern|} chars after every mismatch,
+ * so it is sublinear on average and outperforms {@link String#indexOf(String)} for long patterns.
+ * All engines work with any {@link CharSequence} and can scan in both directions.
+ * </p>
+ */
+abstract class LiteralMatcher implements Finder {
+    /**
+     * Patterns shorter than this are not worth building skip table
+     */
+    private static final int MIN_SKIP_PATTERN = 4;
+
+    /**
+     * Number of checked positions between checks of cancellation, must be power of two
+     */
+    private static final int CANCEL_CHECK_STEPS = 1 << 16;
+
+    protected final String pattern;
+
+    LiteralMatcher(final String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Creates matcher, that is the most suitable for given pattern
+     *
+     * @param pattern searched string
+     * @return matcher of pattern
+     */
+    static LiteralMatcher compile(final String pattern) {
+        return pattern.length() < MIN_SKIP_PATTERN ? new NaiveMatcher(pattern) : new HorspoolMatcher(pattern);
+    }
+
+    /**
+     * Gets length of pattern
+     *
+     * @return length of each occurrence
+     */
+    int length() {
+        return pattern.length();
+    }
+
+    @Override
+    public long find(final CharSequence text, final int from, final int to) {
+        final int index = indexOf(text, from, to);
+        return index == -1 ? NOT_FOUND : Finder.pack(index, pattern.length());
+    }
+
+    @Override
+    public int radius() {
+        return pattern.length();
+    }
+
+    @Override
+    public boolean isBounded() {
+        return true;
+    }
+
+    /**
+     * Analogue of {@link String#indexOf(String, int)} for any {@link CharSequence}
+     *
+     * @param text text for searching
+     * @param fromIndex minimal index of occurrence
+     * @return index of first occurrence, that begins at {@code fromIndex} or later, or {@code -1}
+     */
+    int indexOf(final CharSequence text, final int fromIndex) {
+        return indexOf(text, fromIndex, text.length());
+    }
+
+    /**
+     * Finds the first occurrence inside the region of text
+     *
+     * @param text text for searching
+     * @param fromIndex minimal index of occurrence
+     * @param toIndex maximal index of occurrence end, exclusive
+     * @return index of first occurrence, that begins at {@code fromIndex} or later
+     * and ends at {@code toIndex} or earlier, or {@code -1}
+     */
+    abstract int indexOf(final CharSequence text, final int fromIndex, final int toIndex);
+
+    /**
+     * Analogue of {@link String#lastIndexOf(String, int)} for any {@link CharSequence}
+     *
+     * @param text text for searching
+     * @param fromIndex maximal index of occurrence
+     * @return index of last occurrence, that begins at {@code fromIndex} or earlier, or {@code -1}
+     */
+    abstract int lastIndexOf(final CharSequence text, final int fromIndex);
+
+    /**
+     * Checks cancellation of search once per {@value #CANCEL_CHECK_STEPS} steps
+     */
+    protected static void checkCancelled(final int step) {
+        if ((step & (CANCEL_CHECK_STEPS - 1)) == 0) {
+            SearchScheduler.checkCancelled();
+        }
+    }
+
+    protected boolean matchesAt(final CharSequence text, final int index) {
+        for (int i = pattern.length() - 1; i >= 0; i--) {
+            if (text.charAt(index + i) != pattern.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks every position, that begins with the first char of pattern
+     */
+    private static final class NaiveMatcher extends LiteralMatcher {
+        NaiveMatcher(final String pattern) {
+            super(pattern);
+        }
+
+        @Override
+        int indexOf(final CharSequence text, final int fromIndex, final int toIndex) {
+            final int last = toIndex - pattern.length();
+            if (pattern.isEmpty()) {
+                final int index = Math.min(Math.max(fromIndex, 0), text.length());
+                return index <= toIndex ? index : -1;
+            }
+            final char first = pattern.charAt(0);
+            for (int i = Math.max(fromIndex, 0); i <= last; i++) {
+                checkCancelled(i);
+                if (text.charAt(i) == first && matchesAt(text, i)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int lastIndexOf(final CharSequence text, final int fromIndex) {
+            final int start = Math.min(fromIndex, text.length() - pattern.length());
+            if (pattern.isEmpty()) {
+                return Math.max(start, -1);
+            }
+            final char first = pattern.charAt(0);
+            for (int i = start; i >= 0; i--) {
+                checkCancelled(i);
+                if (text.charAt(i) == first && matchesAt(text, i)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Boyer-Moore-Horspool algorithm with skip tables for both directions.
+     * <p>
+     * If all chars of pattern are Latin-1, tables are exact. Otherwise chars are hashed by their low byte,
+     * and the shortest skip among chars with the same hash is stored, so skips stay safe.
+     * </p>
+     */
+    private static final class HorspoolMatcher extends LiteralMatcher {
+        private static final int TABLE_SIZE = 256;
+
+        private final boolean latin;
+        private final int[] forwardSkip = new int[TABLE_SIZE];
+        private final int[] backwardSkip = new int[TABLE_SIZE];
+
+        HorspoolMatcher(final String pattern) {
+            super(pattern);
+            final int m = pattern.length();
+            this.latin = pattern.chars().allMatch(c -> c < TABLE_SIZE);
+            Arrays.fill(forwardSkip, m);
+            Arrays.fill(backwardSkip, m);
+            for (int i = 0; i < m - 1; i++) {
+                final int slot = pattern.charAt(i) & (TABLE_SIZE - 1);
+                forwardSkip[slot] = Math.min(forwardSkip[slot], m - 1 - i);
+            }
+            for (int i = m - 1; i > 0; i--) {
+                final int slot = pattern.charAt(i) & (TABLE_SIZE - 1);
+                backwardSkip[slot] = Math.min(backwardSkip[slot], i);
+            }
+        }
+
+        private int skip(final int[] table, final char c) {
+            if (latin && c >= TABLE_SIZE) {
+                return pattern.length();
+            }
+            return table[c & (TABLE_SIZE - 1)];
+        }
+
+        @Override
+        int indexOf(final CharSequence text, final int fromIndex, final int toIndex) {
+            final int m = pattern.length();
+            final char lastChar = pattern.charAt(m - 1);
+            final int last = toIndex - m;
+            int i = Math.max(fromIndex, 0);
+            for (int step = 1; i <= last; step++) {
+                checkCancelled(step);
+                final char c = text.charAt(i + m - 1);
+                if (c == lastChar && matchesAt(text, i)) {
+                    return i;
+                }
+                i += skip(forwardSkip, c);
+            }
+            return -1;
+        }
+
+        @Override
+        int lastIndexOf(final CharSequence text, final int fromIndex) {
+            final char firstChar = pattern.charAt(0);
+            int i = Math.min(fromIndex, text.length() - pattern.length());
+            for (int step = 1; i >= 0; step++) {
+                checkCancelled(step);
+                final char c = text.charAt(i);
+                if (c == firstChar && matchesAt(text, i)) {
+                    return i;
+                }
+                i -= skip(backwardSkip, c);
+            }
+            return -1;
+        }
+    }
+}
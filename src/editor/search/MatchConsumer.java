@@ -0,0 +1,15 @@
+package editor.search;
+
+/**
+ * Receiver of found occurrences, that are reported in order of their positions in text
+ */
+@FunctionalInterface
+public interface MatchConsumer {
+    /**
+     * Receives next occurrence
+     *
+     * @param start index in text, when occurrence begins
+     * @param length length of occurrence
+     */
+    void accept(final int start, final int length);
+}
@@ -0,0 +1,373 @@
+package editor.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ordered occurrences of pattern in text, that is being edited.
+ * <p>
+ * Occurrences are stored in blocks of primitive arrays. Positions in block are relative to
+ * the offset of block, and offsets of all blocks are kept in Fenwick tree, so shifting all
+ * occurrences after the edited place costs O({@code |block| + log |blocks|}) instead of O({@code |occurrences|}).
+ * Only splitting and removing of whole blocks rebuilds the tree in O({@code |blocks|}).
+ * All methods are thread-safe.
+ * </p>
+ */
+final class MatchIndex {
+    private static final int BLOCK = 512;
+
+    private final List<Block> blocks = new ArrayList<>();
+
+    /**
+     * Fenwick tree of point additions, offset of block {@code b} is prefix sum up to {@code b + 1}
+     */
+    private int[] tree = new int[1];
+    private int size;
+
+    /**
+     * Index of the first occurrence of every block, {@code null} if blocks were changed
+     */
+    private int[] firstIndexes;
+
+    private static final class Block {
+        private int[] starts = new int[BLOCK];
+        private int[] lengths = new int[BLOCK];
+        private int count;
+
+        void insert(final int index, final int start, final int length) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * count);
+                lengths = Arrays.copyOf(lengths, 2 * count);
+            }
+            System.arraycopy(starts, index, starts, index + 1, count - index);
+            System.arraycopy(lengths, index, lengths, index + 1, count - index);
+            starts[index] = start;
+            lengths[index] = length;
+            count++;
+        }
+
+        void remove(final int from, final int to) {
+            System.arraycopy(starts, to, starts, from, count - to);
+            System.arraycopy(lengths, to, lengths, from, count - to);
+            count -= to - from;
+        }
+
+        /**
+         * Gets index of the first occurrence, whose relative start is not less than given
+         */
+        int lowerBound(final int relative) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (starts[mid] < relative) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Gets number of occurrences
+     *
+     * @return number of occurrences
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets index in text of occurrence
+     *
+     * @param index index of occurrence
+     * @return index in text, when occurrence begins
+     */
+    synchronized int start(final int index) {
+        final int block = blockOfIndex(index);
+        return blocks.get(block).starts[index - firstIndexes[block]] + offset(block);
+    }
+
+    /**
+     * Gets length of occurrence
+     *
+     * @param index index of occurrence
+     * @return length of occurrence
+     */
+    synchronized int length(final int index) {
+        final int block = blockOfIndex(index);
+        return blocks.get(block).lengths[index - firstIndexes[block]];
+    }
+
+    /**
+     * Gets index of the first occurrence, that begins at given position or later
+     *
+     * @param position index in text
+     * @return index of occurrence or {@link #size()}, if there are no such occurrences
+     */
+    synchronized int indexAtOrAfter(final int position) {
+        final int block = blockAtOrAfter(position);
+        if (block == blocks.size()) {
+            return size;
+        }
+        indexBlocks();
+        return firstIndexes[block] + blocks.get(block).lowerBound(position - offset(block));
+    }
+
+    /**
+     * Gets length of occurrence, that begins at given position
+     *
+     * @param position index in text
+     * @return length of occurrence or {@code -1}, if there is no such occurrence
+     */
+    synchronized int lengthAt(final int position) {
+        final int block = blockAtOrAfter(position);
+        if (block == blocks.size()) {
+            return -1;
+        }
+        final Block b = blocks.get(block);
+        final int relative = position - offset(block);
+        final int index = b.lowerBound(relative);
+        return index < b.count && b.starts[index] == relative ? b.lengths[index] : -1;
+    }
+
+    /**
+     * Reports occurrences, that intersect given range, in O({@code log |blocks| + |reported|})
+     *
+     * @param from begin of range, inclusive
+     * @param to end of range, exclusive
+     * @param consumer receiver of occurrences in order of their positions
+     */
+    synchronized void forEach(final int from, final int to, final MatchConsumer consumer) {
+        // the last occurrence of previous block may begin before range and end inside it
+        for (int block = Math.max(blockAtOrAfter(from) - 1, 0); block < blocks.size(); block++) {
+            final Block b = blocks.get(block);
+            final int offset = offset(block);
+            for (int i = Math.max(b.lowerBound(from - offset) - 1, 0); i < b.count; i++) {
+                final int start = b.starts[i] + offset;
+                if (start >= to) {
+                    return;
+                }
+                if (start >= from || start + b.lengths[i] > from) {
+                    consumer.accept(start, b.lengths[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends occurrence, that begins after all other occurrences
+     *
+     * @param start index in text, when occurrence begins
+     * @param length length of occurrence
+     */
+    synchronized void add(final int start, final int length) {
+        if (blocks.isEmpty() || blocks.get(blocks.size() - 1).count >= BLOCK) {
+            final int[] offsets = Arrays.copyOf(offsets(), blocks.size() + 1);
+            if (offsets.length > 1) {
+                offsets[offsets.length - 1] = offsets[offsets.length - 2];
+            }
+            blocks.add(new Block());
+            rebuild(offsets);
+        }
+        final int block = blocks.size() - 1;
+        final Block b = blocks.get(block);
+        b.insert(b.count, start - offset(block), length);
+        size++;
+    }
+
+    /**
+     * Inserts occurrence in order of positions
+     *
+     * @param start index in text, when occurrence begins
+     * @param length length of occurrence
+     */
+    synchronized void insert(final int start, final int length) {
+        int block = blockAtOrAfter(start);
+        if (block == blocks.size()) {
+            add(start, length);
+            return;
+        }
+        if (block > 0 && blocks.get(block).starts[0] + offset(block) > start) {
+            // prefer to append to previous block instead of prepending to the next one
+            block--;
+        }
+        final Block b = blocks.get(block);
+        final int relative = start - offset(block);
+        b.insert(b.lowerBound(relative), relative, length);
+        size++;
+        firstIndexes = null;
+        if (b.count >= 2 * BLOCK) {
+            split(block);
+        }
+    }
+
+    /**
+     * Removes all occurrences, that begin in given range
+     *
+     * @param from begin of range, inclusive
+     * @param to end of range, exclusive
+     * @return maximal end index in text of removed occurrences, or {@code -1}, if nothing was removed
+     */
+    synchronized int remove(final int from, final int to) {
+        int removedEnd = -1;
+        if (from >= to) {
+            return removedEnd;
+        }
+        int block = blockAtOrAfter(from);
+        while (block < blocks.size()) {
+            final Block b = blocks.get(block);
+            final int offset = offset(block);
+            final int low = b.lowerBound(from - offset);
+            final int high = b.lowerBound(to - offset);
+            if (low == high) {
+                break;
+            }
+            for (int i = low; i < high; i++) {
+                removedEnd = Math.max(removedEnd, b.starts[i] + b.lengths[i] + offset);
+            }
+            final boolean last = high < b.count;
+            b.remove(low, high);
+            size -= high - low;
+            firstIndexes = null;
+            if (b.count == 0) {
+                final int[] offsets = offsets();
+                blocks.remove(block);
+                rebuild(removeAt(offsets, block));
+            } else {
+                block++;
+            }
+            if (last) {
+                break;
+            }
+        }
+        return removedEnd;
+    }
+
+    /**
+     * Removes all occurrences
+     */
+    synchronized void clear() {
+        blocks.clear();
+        rebuild(new int[0]);
+        size = 0;
+    }
+
+    /**
+     * Moves all occurrences, that begin at given position or later
+     *
+     * @param position index in text
+     * @param delta distance of moving
+     */
+    synchronized void shift(final int position, final int delta) {
+        final int block = blockAtOrAfter(position);
+        if (block == blocks.size() || delta == 0) {
+            return;
+        }
+        final Block b = blocks.get(block);
+        for (int i = b.lowerBound(position - offset(block)); i < b.count; i++) {
+            b.starts[i] += delta;
+        }
+        for (int i = block + 2; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Gets offset of block, prefix sum of Fenwick tree
+     */
+    private int offset(final int block) {
+        int sum = 0;
+        for (int i = block + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private int[] offsets() {
+        final int[] offsets = new int[blocks.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = offset(i);
+        }
+        return offsets;
+    }
+
+    private static int[] removeAt(final int[] array, final int index) {
+        final int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    /**
+     * Rebuilds Fenwick tree for given offsets of blocks in O({@code |blocks|})
+     */
+    private void rebuild(final int[] offsets) {
+        tree = new int[offsets.length + 1];
+        for (int i = 0; i < offsets.length; i++) {
+            tree[i + 1] = offsets[i] - (i == 0 ? 0 : offsets[i - 1]);
+        }
+        for (int i = 1; i < tree.length; i++) {
+            final int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+        firstIndexes = null;
+    }
+
+    private void split(final int block) {
+        final Block b = blocks.get(block);
+        final Block tail = new Block();
+        final int half = b.count / 2;
+        tail.count = b.count - half;
+        tail.starts = Arrays.copyOfRange(b.starts, half, Math.max(b.count, half + BLOCK));
+        tail.lengths = Arrays.copyOfRange(b.lengths, half, Math.max(b.count, half + BLOCK));
+        b.count = half;
+        final int[] offsets = offsets();
+        final int[] result = new int[offsets.length + 1];
+        System.arraycopy(offsets, 0, result, 0, block + 1);
+        System.arraycopy(offsets, block, result, block + 1, offsets.length - block);
+        blocks.add(block + 1, tail);
+        rebuild(result);
+    }
+
+    /**
+     * Gets index of the first block, whose last occurrence begins at given position or later
+     */
+    private int blockAtOrAfter(final int position) {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final Block b = blocks.get(mid);
+            if (b.starts[b.count - 1] + offset(mid) < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void indexBlocks() {
+        if (firstIndexes == null) {
+            firstIndexes = new int[blocks.size()];
+            for (int i = 1; i < firstIndexes.length; i++) {
+                firstIndexes[i] = firstIndexes[i - 1] + blocks.get(i - 1).count;
+            }
+        }
+    }
+
+    private int blockOfIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        indexBlocks();
+        final int found = Arrays.binarySearch(firstIndexes, index);
+        return found >= 0 ? found : -found - 2;
+    }
+}
@@ -0,0 +1,110 @@
+package editor.search;
+
+import java.util.Arrays;
+
+/**
+ * Compact growable list of occurrences, ordered by their positions.
+ * <p>
+ * Occurrences are stored as pairs of primitive {@code int}s, so each takes 8 bytes
+ * instead of two boxed {@link Integer}s in lists. One thread can append occurrences,
+ * while other threads read already published ones. Writer publishes grown array before size,
+ * so readers read size first and then array, that is at least as long, as the size needs.
+ * </p>
+ */
+public final class MatchList {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile int[] data = new int[2 * INITIAL_CAPACITY];
+    private volatile int size;
+
+    /**
+     * Appends occurrence. Must be called by one thread at a time.
+     *
+     * @param start index in text, when occurrence begins
+     * @param length length of occurrence
+     */
+    public void add(final int start, final int length) {
+        int[] array = data;
+        final int count = size;
+        if (2 * count == array.length) {
+            array = Arrays.copyOf(array, 2 * array.length);
+            data = array;
+        }
+        array[2 * count] = start;
+        array[2 * count + 1] = length;
+        size = count + 1;
+    }
+
+    /**
+     * Gets number of published occurrences
+     *
+     * @return number of occurrences
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets index in text of occurrence
+     *
+     * @param index index of occurrence in list
+     * @return index in text, when occurrence begins
+     */
+    public int start(final int index) {
+        checkIndex(index, size);
+        return data[2 * index];
+    }
+
+    /**
+     * Gets length of occurrence
+     *
+     * @param index index of occurrence in list
+     * @return length of occurrence
+     */
+    public int length(final int index) {
+        checkIndex(index, size);
+        return data[2 * index + 1];
+    }
+
+    /**
+     * Gets end index in text of occurrence
+     *
+     * @param index index of occurrence in list
+     * @return index in text, when occurrence ends, exclusive
+     */
+    public int end(final int index) {
+        return start(index) + length(index);
+    }
+
+    /**
+     * Finds occurrence, that begins at given index in text, by binary search
+     *
+     * @param start index in text
+     * @return index of occurrence in list, if it exists, otherwise {@code -(insertion point) - 1}
+     * @see Arrays#binarySearch(int[], int)
+     */
+    public int indexOf(final int start) {
+        final int count = size;
+        final int[] array = data;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midStart = array[2 * mid];
+            if (midStart < start) {
+                low = mid + 1;
+            } else if (midStart > start) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static void checkIndex(final int index, final int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+}
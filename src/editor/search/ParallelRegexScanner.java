@@ -0,0 +1,354 @@
+package editor.search;
+
+import editor.document.Rope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds all occurrences of regular expression, scanning segments of text in parallel.
+ * <p>
+ * Text is split into segments, that are scanned by tasks of {@link ForkJoinPool}. Every segment is
+ * scanned with transparent bounds, so lookarounds see neighbour segments, and its region is extended
+ * by maximal length of occurrence, so occurrences, that begin in segment, are not cut at its end.
+ * Line-bounded patterns can't cross line breaks, so segments end at line breaks and are not extended.
+ * Pattern is line-bounded, if {@link #isLineBounded(Pattern)} proves it by syntax of expression.
+ * </p>
+ * <p>
+ * Then chains of occurrences are merged in the same way, as {@link Matcher#find()} would produce them
+ * in one pass: if last occurrence of segment crosses the seam, the scan is resumed sequentially from
+ * its end, until it meets occurrence, that was found by the next segment. So result is exactly
+ * the same, as the sequential scan gives, for all occurrences not longer, than maximal length.
+ * </p>
+ * <p>
+ * Scan is cancelled, when the calling thread is interrupted: segments, that are not scanned yet,
+ * are stopped, and {@link CancellationException} is thrown.
+ * </p>
+ * <p>
+ * Text is read through {@link BudgetedText}, so expressions, that backtrack exponentially, stop
+ * with {@link SearchLimitException} instead of scanning forever.
+ * </p>
+ */
+public final class ParallelRegexScanner {
+    /**
+     * Default maximal length of occurrence, that is guaranteed to be found across segments
+     */
+    public static final int DEFAULT_MAX_MATCH_LENGTH = 1 << 12;
+
+    /**
+     * Texts shorter than two segments are scanned sequentially
+     */
+    private static final int MIN_SEGMENT = 1 << 20;
+
+    /**
+     * Number of segments per worker thread, that lets work-stealing balance uneven segments
+     */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    /**
+     * Escapes, that never match line break: digits, word characters, horizontal whitespaces, control characters
+     * except line feed, and boundaries
+     */
+    private static final String LINE_BOUNDED_ESCAPES = "dwhtrfaebBAGZz";
+
+    private final Pattern pattern;
+    private final int maxMatchLength;
+    private final boolean lineBounded;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs scanner
+     *
+     * @param pattern compiled regular expression
+     * @param maxMatchLength overlap of neighbour segments, maximal length of occurrence
+     * @param lineBounded {@code true} if occurrences of pattern never contain line breaks
+     * @param pool pool for scanning segments
+     */
+    public ParallelRegexScanner(final Pattern pattern, final int maxMatchLength, final boolean lineBounded,
+                                final ForkJoinPool pool) {
+        this.pattern = pattern;
+        this.maxMatchLength = maxMatchLength;
+        this.lineBounded = lineBounded;
+        this.pool = pool;
+    }
+
+    /**
+     * Constructs scanner with default overlap, that uses common pool.
+     * Segments end at line breaks, if pattern is line-bounded
+     *
+     * @param pattern compiled regular expression
+     */
+    public ParallelRegexScanner(final Pattern pattern) {
+        this(pattern, DEFAULT_MAX_MATCH_LENGTH, isLineBounded(pattern), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Checks, that occurrences of pattern never contain {@code '\n'}. Check is conservative: expression
+     * may contain only literals except line feed, {@code .} without {@link Pattern#DOTALL}, classes without
+     * negation and ranges, back references and escapes, that can't match line feed. Other expressions,
+     * like ones with {@code \s}, {@code \D}, {@code [^a]}, {@code [\t-\r]} or {@code \x0A},
+     * are considered unbounded
+     *
+     * @param pattern compiled regular expression
+     * @return {@code true} if pattern is line-bounded
+     */
+    static boolean isLineBounded(final Pattern pattern) {
+        final String regex = pattern.pattern();
+        final int flags = pattern.flags();
+        if ((flags & Pattern.LITERAL) != 0) {
+            return regex.indexOf('\n') < 0;
+        }
+        if ((flags & (Pattern.DOTALL | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+            return false;
+        }
+        // depth of nested classes, range inside of class may contain line feed, like [\t-\r] does
+        int classes = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            final char next = i + 1 < regex.length() ? regex.charAt(i + 1) : 0;
+            if (c == '\n' || (c == '[' && next == '^') || (c == '-' && classes > 0)) {
+                return false;
+            }
+            if (c == '[') {
+                classes++;
+                if (classes == 1 && next == ']') {
+                    // ']' right after '[' is literal
+                    i++;
+                }
+            } else if (c == ']' && classes > 0) {
+                classes--;
+            } else if (c == '(' && next == '?' && classes == 0) {
+                // inline flags, like (?s) or (?i-x:...), may enable dotall or comments
+                int j = i + 2;
+                while (j < regex.length() && (Character.isLetter(regex.charAt(j)) || regex.charAt(j) == '-')) {
+                    if (regex.charAt(j) == 's' || regex.charAt(j) == 'x') {
+                        return false;
+                    }
+                    j++;
+                }
+            } else if (c == '\\') {
+                if (next == 'Q') {
+                    final int end = regex.indexOf("\\E", i + 2);
+                    final String quoted = regex.substring(i + 2, end < 0 ? regex.length() : end);
+                    if (quoted.indexOf('\n') >= 0) {
+                        return false;
+                    }
+                    i = end < 0 ? regex.length() : end + 1;
+                    continue;
+                }
+                if (Character.isLetterOrDigit(next) && LINE_BOUNDED_ESCAPES.indexOf(next) < 0
+                        && (next < '1' || next > '9')) {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds all occurrences of pattern in text.
+     * <p>
+     * Segments are merged in order as soon as they are scanned,
+     * so the first occurrences are reported before the whole text is scanned.
+     * </p>
+     *
+     * @param text text for searching
+     * @param consumer receiver of occurrences in order of their positions
+     * @throws CancellationException if the calling thread was interrupted
+     * @throws SearchLimitException if expression is too complex for text
+     */
+    public void scan(final CharSequence text, final MatchConsumer consumer) {
+        final int[] bounds = split(text);
+        final Segment[] segments = new Segment[bounds.length - 1];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(text, bounds[i], bounds[i + 1]);
+            if (segments.length > 1) {
+                pool.execute(segments[i]);
+            }
+        }
+        try {
+            if (segments.length == 1) {
+                segments[0].compute();
+            }
+            merge(text, segments, consumer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Search was cancelled");
+        } finally {
+            // segments, that are still running after failure or after the chain has passed the end of text,
+            // aren't needed anymore
+            cancel(segments);
+        }
+    }
+
+    private static void cancel(final Segment[] segments) {
+        for (final Segment segment : segments) {
+            segment.cancelled = true;
+            segment.budgeted.cancel();
+            segment.cancel(false);
+        }
+    }
+
+    /**
+     * Waits for the end of segment's scan, unlike {@link RecursiveAction#join()} it can be interrupted
+     */
+    private static void await(final Segment segment) throws InterruptedException {
+        try {
+            segment.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private int[] split(final CharSequence text) {
+        final int length = text.length();
+        final int count = Math.min(pool.getParallelism() * SEGMENTS_PER_THREAD, length / MIN_SEGMENT);
+        if (count < 2) {
+            return new int[]{0, length};
+        }
+        final List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        for (int i = 1; i < count; i++) {
+            int bound = (int) ((long) length * i / count);
+            if (lineBounded) {
+                while (bound < length && text.charAt(bound - 1) != '\n') {
+                    bound++;
+                }
+            }
+            if (bound > bounds.get(bounds.size() - 1) && bound < length) {
+                bounds.add(bound);
+            }
+        }
+        bounds.add(length);
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static BudgetedText budgeted(final CharSequence text) {
+        return new BudgetedText(text instanceof Rope ? ((Rope) text).duplicate() : text, text.length());
+    }
+
+    private static Matcher matcher(final Pattern pattern, final CharSequence text) {
+        return pattern.matcher(text).useTransparentBounds(true).useAnchoringBounds(false);
+    }
+
+    /**
+     * Gets position, from which {@link Matcher#find()} continues after occurrence
+     */
+    private static int resumeAfter(final int start, final int end) {
+        return start == end ? end + 1 : end;
+    }
+
+    private void merge(final CharSequence text, final Segment[] segments, final MatchConsumer consumer)
+            throws InterruptedException {
+        final BudgetedText budgeted = budgeted(text);
+        final Matcher matcher = matcher(pattern, budgeted);
+        int resume = 0;
+        for (final Segment segment : segments) {
+            if (segments.length > 1) {
+                await(segment);
+            }
+            int adopted = 0;
+            if (resume > segment.from) {
+                // the chain entered this segment, resume it sequentially until it meets the segment's chain
+                adopted = -1;
+                while (adopted < 0 && resume <= text.length()) {
+                    SearchScheduler.checkCancelled();
+                    budgeted.reset(text.length() - resume);
+                    matcher.region(resume, text.length());
+                    if (!matcher.find()) {
+                        return;
+                    }
+                    if (matcher.start() >= segment.to && segment.to < text.length()) {
+                        // no occurrences in the rest of segment, the next segment starts the same chain
+                        resume = segment.to;
+                        adopted = segment.matches.size();
+                    } else {
+                        final int index = segment.matches.indexOf(matcher.start());
+                        if (index >= 0 && segment.matches.end(index) == matcher.end()) {
+                            adopted = index;
+                        } else {
+                            consumer.accept(matcher.start(), matcher.end() - matcher.start());
+                            resume = resumeAfter(matcher.start(), matcher.end());
+                            if (resume >= segment.to) {
+                                adopted = segment.matches.size();
+                            }
+                        }
+                    }
+                }
+                if (adopted < 0) {
+                    // the chain has passed the end of text
+                    return;
+                }
+            }
+            for (int i = adopted; i < segment.matches.size(); i++) {
+                consumer.accept(segment.matches.start(i), segment.matches.length(i));
+                resume = resumeAfter(segment.matches.start(i), segment.matches.end(i));
+            }
+        }
+    }
+
+    /**
+     * Chain of occurrences, that begin in [{@code from}, {@code to}), as if scanning started at {@code from}
+     */
+    private final class Segment extends RecursiveAction {
+        private final CharSequence text;
+        private final int from;
+        private final int to;
+        private final MatchList matches = new MatchList();
+        private final BudgetedText budgeted;
+        private volatile boolean cancelled;
+
+        Segment(final CharSequence text, final int from, final int to) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+            this.budgeted = budgeted(text);
+        }
+
+        @Override
+        protected void compute() {
+            final int length = text.length();
+            final int regionEnd = lineBounded ? to : (int) Math.min(length, (long) to + maxMatchLength);
+            budgeted.reset(regionEnd - from);
+            final Matcher matcher = matcher(pattern, budgeted);
+            int position = from;
+            while (position < to || (to == length && position <= length)) {
+                if (cancelled) {
+                    return;
+                }
+                SearchScheduler.checkCancelled();
+                matcher.region(position, regionEnd);
+                if (!matcher.find()) {
+                    break;
+                }
+                if (matcher.hitEnd() && regionEnd < length) {
+                    // occurrence may continue after the region
+                    matcher.region(position, length);
+                    if (!matcher.find()) {
+                        break;
+                    }
+                }
+                final int start = matcher.start();
+                if (start > to || (start == to && to < length)) {
+                    break;
+                }
+                matches.add(start, matcher.end() - start);
+                position = resumeAfter(start, matcher.end());
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package editor.search;
+
+import editor.metrics.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded cache of compiled regular expressions.
+ * <p>
+ * Users usually switch between a few complex patterns, and compiling them again on every search
+ * is wasted work. Last {@value #CAPACITY} used patterns are kept, the least recently used one
+ * is evicted. Numbers of hits and misses are counted for diagnostics.
+ * All methods are thread-safe.
+ * </p>
+ */
+public final class PatternCache {
+    private static final int CAPACITY = 64;
+
+    private static final PatternCache INSTANCE = new PatternCache();
+
+    private final Map<Key, Pattern> patterns = new LinkedHashMap<>(CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Pattern> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    private long hits;
+    private long misses;
+
+    private PatternCache() {
+        Metrics.getInstance().gauge("search.patterns.hits", this::getHits);
+        Metrics.getInstance().gauge("search.patterns.misses", this::getMisses);
+    }
+
+    /**
+     * Gets cache, that is shared by all strategies
+     *
+     * @return shared cache
+     */
+    public static PatternCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets compiled regular expression, compiling it only if it isn't cached
+     *
+     * @param regex regular expression
+     * @param flags match flags, as in {@link Pattern#compile(String, int)}
+     * @return compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if expression is invalid
+     */
+    public synchronized Pattern compile(final String regex, final int flags) {
+        final Key key = new Key(regex, flags);
+        Pattern pattern = patterns.get(key);
+        if (pattern == null) {
+            misses++;
+            pattern = Pattern.compile(regex, flags);
+            patterns.put(key, pattern);
+        } else {
+            hits++;
+        }
+        return pattern;
+    }
+
+    /**
+     * Gets number of patterns, that were found in cache
+     *
+     * @return number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets number of patterns, that were compiled
+     *
+     * @return number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static final class Key {
+        private final String regex;
+        private final int flags;
+
+        Key(final String regex, final int flags) {
+            this.regex = regex;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return flags == other.flags && regex.equals(other.regex);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(regex, flags);
+        }
+    }
+}
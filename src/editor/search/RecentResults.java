@@ -0,0 +1,85 @@
+package editor.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Occurrences of the last {@value #CAPACITY} searches in documents.
+ * <p>
+ * Occurrences are keyed by version of document and pattern, so switching back to recent search
+ * on unchanged document needs no rescan. Occurrences are mutable and are followed by one strategy
+ * at a time: strategy takes them out of cache and puts them back, when it is closed.
+ * Too large results are not kept, so cache can't hold much memory.
+ * All methods are thread-safe.
+ * </p>
+ */
+final class RecentResults {
+    private static final int CAPACITY = 8;
+
+    /**
+     * Results with more occurrences are not cached
+     */
+    private static final int MAX_OCCURRENCES = 1 << 20;
+
+    private static final Map<Key, MatchIndex> RESULTS = new LinkedHashMap<>(CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, MatchIndex> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private RecentResults() {
+    }
+
+    /**
+     * Takes occurrences of pattern out of cache
+     *
+     * @param version version of document
+     * @param pattern searched pattern
+     * @return occurrences in the given version of document or {@code null}, if they aren't cached
+     */
+    static synchronized MatchIndex take(final long version, final Pattern pattern) {
+        return RESULTS.remove(new Key(version, pattern));
+    }
+
+    /**
+     * Puts complete occurrences of pattern into cache
+     *
+     * @param version version of document, in which occurrences were found
+     * @param pattern searched pattern
+     * @param matches all occurrences, that must not be changed after this call
+     */
+    static synchronized void put(final long version, final Pattern pattern, final MatchIndex matches) {
+        if (matches.size() <= MAX_OCCURRENCES) {
+            RESULTS.put(new Key(version, pattern), matches);
+        }
+    }
+
+    private static final class Key {
+        private final long version;
+        private final String regex;
+        private final int flags;
+
+        Key(final long version, final Pattern pattern) {
+            this.version = version;
+            this.regex = pattern.pattern();
+            this.flags = pattern.flags();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return version == other.version && flags == other.flags && regex.equals(other.regex);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, regex, flags);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package editor.search;
+
+import editor.document.Rope;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link Finder} for regular expressions.
+ * <p>
+ * Regions are scanned with transparent and non-anchoring bounds,
+ * so the result is the same, as {@link Matcher#find()} over the whole text gives.
+ * Every search is limited by {@link BudgetedText}, proportionally to the length of region.
+ * </p>
+ */
+final class RegexFinder implements Finder {
+    private final Pattern pattern;
+    private final int maxMatchLength;
+    private CharSequence text;
+    private BudgetedText budgeted;
+    private Matcher matcher;
+
+    RegexFinder(final Pattern pattern, final int maxMatchLength) {
+        this.pattern = pattern;
+        this.maxMatchLength = maxMatchLength;
+    }
+
+    @Override
+    public synchronized long find(final CharSequence text, final int from, final int to) {
+        if (this.text != text) {
+            this.text = text;
+            this.budgeted = new BudgetedText(text instanceof Rope ? ((Rope) text).duplicate() : text, 0);
+            this.matcher = pattern.matcher(budgeted)
+                    .useTransparentBounds(true)
+                    .useAnchoringBounds(false);
+        }
+        budgeted.reset(to - from);
+        matcher.region(from, to);
+        return matcher.find() ? Finder.pack(matcher.start(), matcher.end() - matcher.start()) : NOT_FOUND;
+    }
+
+    @Override
+    public int radius() {
+        return maxMatchLength;
+    }
+
+    /**
+     * Length of occurrences of {@code java.util.regex} expression isn't known
+     */
+    @Override
+    public boolean isBounded() {
+        return false;
+    }
+}
@@ -1,83 +1,116 @@
 package editor.search;
 
-import editor.TextEditorController;
+import editor.document.TextDocument;
 
-import javax.swing.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Represents search strategy with regular expressions.
  * <p>
- * This strategy uses O({@code |occurrences|}) additional memory, but O({@code 1})
+ * This strategy uses O({@code |occurrences|}) additional memory, but O({@code log |occurrences|})
  * time complexity for finding next/previous occurrence and O({@code |text| + |pattern|}) preprocessing.
+ * Expressions, that {@link LinearRegex} supports, are searched by it in linear time,
+ * other ones are searched by {@code java.util.regex}, large texts in parallel by {@link ParallelRegexScanner},
+ * and search stops with warning, if expression backtracks too much.
+ * Compiled patterns are taken from {@link PatternCache}, and occurrences of recent searches
+ * in unchanged document are reused from {@link RecentResults}.
  * All searches happens in separate thread.
  * </p>
  */
-public class RegexSearcher extends AbstractSearcher {
-    private List<Integer> indexes;
-    private List<Integer> lengths;
-    private int indexInList;
+public class RegexSearcher extends IndexedSearcher {
+    private final Pattern pattern;
 
-    public RegexSearcher(final String text, final String pattern, final TextEditorController controller) {
-        super(controller);
+    /**
+     * Linear-time engine for pattern or {@code null}, if pattern uses unsupported syntax
+     */
+    private final LinearRegex linear;
 
-        final SwingWorker<Void, Void> searchWorker = new SwingWorker<>() {
-
-            @Override
-            protected Void doInBackground() {
-                final Pattern regex = Pattern.compile(pattern);
-                final Matcher matcher = regex.matcher(text);
-                indexes = new ArrayList<>();
-                lengths = new ArrayList<>();
-                while (matcher.find()) {
-                    indexes.add(matcher.start());
-                    lengths.add(matcher.group().length());
-                }
-                return null;
-            }
-
-            @Override
-            protected void done() {
-                highlightTextArea();
-            }
-        };
+    public RegexSearcher(final CharSequence text, final String pattern, final SearchListener listener) {
+        this(text, pattern, 0, listener);
+    }
 
-        searchWorker.execute();
+    /**
+     * Constructs strategy, that searches in fixed text
+     *
+     * @param text text for searching
+     * @param pattern regular expression
+     * @param flags match flags, as in {@link Pattern#compile(String, int)}
+     * @param listener receiver of occurrences
+     */
+    public RegexSearcher(final CharSequence text, final String pattern, final int flags,
+                         final SearchListener listener) {
+        this(text, PatternCache.getInstance().compile(pattern, flags), null, listener);
     }
 
-    private void findByNewIndex(int newIndex) {
-        indexInList = newIndex % indexes.size();
-        highlightTextArea();
+    private RegexSearcher(final CharSequence text, final Pattern pattern, final MatchIndex found,
+                          final SearchListener listener) {
+        this(text, pattern, LinearRegex.compile(pattern), found, listener);
     }
 
-    @Override
-    public void findNext() {
-        executor.execute(() -> findByNewIndex(indexInList + 1));
+    /**
+     * Constructs strategy, that searches in document and follows its edits.
+     * Must be called from thread, that edits document.
+     *
+     * @param document document for searching
+     * @param pattern regular expression
+     * @param listener receiver of occurrences
+     */
+    public RegexSearcher(final TextDocument document, final String pattern, final SearchListener listener) {
+        this(document, pattern, 0, listener);
     }
 
-    @Override
-    public void findPrev() {
-        executor.execute(() -> findByNewIndex(indexInList - 1 + indexes.size()));
+    /**
+     * Constructs strategy, that searches in document and follows its edits.
+     * If the same search was done recently and document wasn't changed since then,
+     * its occurrences are reused without scanning.
+     * Must be called from thread, that edits document.
+     *
+     * @param document document for searching
+     * @param pattern regular expression
+     * @param flags match flags, as in {@link Pattern#compile(String, int)}
+     * @param listener receiver of occurrences
+     */
+    public RegexSearcher(final TextDocument document, final String pattern, final int flags,
+                         final SearchListener listener) {
+        this(document, PatternCache.getInstance().compile(pattern, flags), listener);
     }
 
-    private boolean inBounds() {
-        return 0 <= indexInList && indexInList < indexes.size();
+    private RegexSearcher(final TextDocument document, final Pattern pattern, final SearchListener listener) {
+        this(document.snapshot(), pattern, RecentResults.take(document.getVersion(), pattern), listener);
+        follow(document);
     }
 
-    private int getFromOrDefault(final List<Integer> list) {
-        return inBounds() ? list.get(indexInList) : 0;
+    private RegexSearcher(final CharSequence text, final Pattern pattern, final LinearRegex linear,
+                          final MatchIndex found, final SearchListener listener) {
+        super(listener, linear != null ? linear : new RegexFinder(pattern, ParallelRegexScanner.DEFAULT_MAX_MATCH_LENGTH),
+                found, text);
+        this.pattern = pattern;
+        this.linear = linear;
+        if (found == null) {
+            startScan();
+        } else {
+            highlightFirst();
+        }
     }
 
     @Override
-    public int getPos() {
-        return getFromOrDefault(indexes);
+    protected void scan(final CharSequence text, final MatchConsumer consumer) {
+        if (linear != null) {
+            linear.scan(text, consumer);
+        } else {
+            new ParallelRegexScanner(pattern).scan(text, consumer);
+        }
     }
 
+    /**
+     * Complete occurrences are kept in {@link RecentResults}, so the same search can reuse them
+     */
     @Override
-    public int getPatternLength() {
-        return getFromOrDefault(lengths);
+    public void close() {
+        super.close();
+        final TextDocument document = getDocument();
+        if (document != null && isComplete()) {
+            RecentResults.put(document.getVersion(), pattern, getMatches());
+        }
     }
 }
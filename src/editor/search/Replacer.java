@@ -0,0 +1,339 @@
+package editor.search;
+
+import editor.document.Rope;
+import editor.metrics.Counter;
+import editor.metrics.LatencyHistogram;
+import editor.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replacement of occurrences of pattern.
+ * <p>
+ * Occurrences are found by the same engines, as search strategies use. All occurrences are replaced
+ * in one pass over text: text between them is appended to {@link Rope.Builder} as slices of text,
+ * that are shared without copying, when they are long, and replacements are appended after them.
+ * So replacing a million occurrences costs about as much as one scan, and the result is one edit of document
+ * instead of one edit per occurrence. Occurrences don't overlap: the leftmost ones are replaced,
+ * as {@link Matcher#replaceAll(String)} does.
+ * </p>
+ * <p>
+ * Replacement of regular expression refers to its groups by {@code $n} and {@code ${name}},
+ * and {@code \} escapes the next character, as in {@link Matcher#appendReplacement(StringBuilder, String)}.
+ * Groups of occurrence are matched again only inside the occurrence, and only if replacement refers to them.
+ * Replacements of fixed strings and keywords are inserted as is.
+ * </p>
+ */
+public final class Replacer {
+    private static final LatencyHistogram REPLACE_ALL = Metrics.getInstance().histogram("search.replaceAll");
+    private static final Counter REPLACEMENTS = Metrics.getInstance().counter("search.replacements");
+
+    /**
+     * Finder of all occurrences, as {@link IndexedSearcher#scan(CharSequence, MatchConsumer)}
+     */
+    private interface Scanner {
+        void scan(final CharSequence text, final MatchConsumer consumer);
+    }
+
+    private final Scanner scanner;
+
+    /**
+     * Expression, whose groups are referred by replacement, or {@code null}
+     */
+    private final Pattern pattern;
+
+    /**
+     * Literal parts of replacement, there is one more part, than groups
+     */
+    private final String[] parts;
+
+    /**
+     * References between literal parts: numbers ({@link Integer}) or names ({@link String}) of groups
+     */
+    private final Object[] groups;
+
+    private Replacer(final Scanner scanner, final Pattern pattern, final List<String> parts,
+                     final List<Object> groups) {
+        this.scanner = scanner;
+        this.pattern = groups.isEmpty() ? null : pattern;
+        this.parts = parts.toArray(new String[0]);
+        this.groups = groups.toArray();
+    }
+
+    private Replacer(final Scanner scanner, final String replacement) {
+        this(scanner, null, List.of(replacement), List.of());
+    }
+
+    /**
+     * Creates replacement of fixed string
+     *
+     * @param pattern replaced string, that isn't empty
+     * @param replacement inserted string
+     * @return replacement
+     */
+    public static Replacer literal(final String pattern, final String replacement) {
+        final LiteralMatcher matcher = LiteralMatcher.compile(pattern);
+        return new Replacer((text, consumer) -> {
+            final int length = matcher.length();
+            int index = matcher.indexOf(text, 0);
+            while (index != -1) {
+                consumer.accept(index, length);
+                index = matcher.indexOf(text, index + Math.max(length, 1));
+            }
+        }, replacement);
+    }
+
+    /**
+     * Creates replacement of regular expression
+     *
+     * @param regex regular expression
+     * @param flags match flags, as in {@link Pattern#compile(String, int)}
+     * @param replacement inserted string with references to groups
+     * @return replacement
+     * @throws java.util.regex.PatternSyntaxException if expression is invalid
+     * @throws IllegalArgumentException if replacement refers to group, that expression doesn't have,
+     *                                  names of groups are checked, when occurrence is replaced
+     */
+    public static Replacer regex(final String regex, final int flags, final String replacement) {
+        final Pattern pattern = PatternCache.getInstance().compile(regex, flags);
+        final LinearRegex linear = LinearRegex.compile(pattern);
+        final Scanner scanner = linear != null
+                ? linear::scan
+                : (text, consumer) -> new ParallelRegexScanner(pattern).scan(text, consumer);
+        final List<String> parts = new ArrayList<>();
+        final List<Object> groups = new ArrayList<>();
+        parse(replacement, pattern.matcher("").groupCount(), parts, groups);
+        return new Replacer(scanner, pattern, parts, groups);
+    }
+
+    /**
+     * Creates replacement of any of keywords
+     *
+     * @param keywords replaced strings
+     * @param replacement inserted string
+     * @return replacement
+     */
+    public static Replacer keywords(final List<String> keywords, final String replacement) {
+        return new Replacer(AhoCorasick.compile(keywords)::scan, replacement);
+    }
+
+    /**
+     * Splits replacement into literal parts and references to groups by rules of {@link Matcher#appendReplacement}:
+     * the longest number of existing group is taken after {@code $}
+     */
+    private static void parse(final String replacement, final int groupCount,
+                              final List<String> parts, final List<Object> groups) {
+        final StringBuilder part = new StringBuilder();
+        int i = 0;
+        while (i < replacement.length()) {
+            final char c = replacement.charAt(i++);
+            if (c == '\\') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("Character to be escaped is missing");
+                }
+                part.append(replacement.charAt(i++));
+            } else if (c != '$') {
+                part.append(c);
+            } else if (i == replacement.length()) {
+                throw new IllegalArgumentException("Illegal group reference: group index is missing");
+            } else if (replacement.charAt(i) == '{') {
+                final int end = replacement.indexOf('}', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Named capturing group is missing trailing '}'");
+                }
+                final String name = replacement.substring(i + 1, end);
+                if (name.isEmpty() || !name.chars().allMatch(Replacer::isNameChar)) {
+                    throw new IllegalArgumentException("Illegal name of capturing group: " + name);
+                }
+                parts.add(part.toString());
+                part.setLength(0);
+                groups.add(name);
+                i = end + 1;
+            } else {
+                if (!isDigit(replacement.charAt(i))) {
+                    throw new IllegalArgumentException("Illegal group reference");
+                }
+                int number = replacement.charAt(i++) - '0';
+                while (i < replacement.length() && isDigit(replacement.charAt(i))
+                        && number * 10 + replacement.charAt(i) - '0' <= groupCount) {
+                    number = number * 10 + replacement.charAt(i++) - '0';
+                }
+                if (number > groupCount) {
+                    throw new IllegalArgumentException("No group " + number);
+                }
+                parts.add(part.toString());
+                part.setLength(0);
+                groups.add(number);
+            }
+        }
+        parts.add(part.toString());
+    }
+
+    private static boolean isDigit(final int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNameChar(final int c) {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Gets replacement of one occurrence
+     *
+     * @param text text with occurrence
+     * @param start index in text, when occurrence begins
+     * @param length length of occurrence
+     * @return inserted string
+     * @throws IllegalArgumentException if replacement refers to group, that expression doesn't have
+     */
+    public String expand(final CharSequence text, final int start, final int length) {
+        final StringBuilder expanded = new StringBuilder();
+        append(expanded, matcher(text), start, length);
+        return expanded.toString();
+    }
+
+    /**
+     * Replaces all occurrences in text. Must be called from background thread, that can be cancelled
+     * by interruption, as {@link SearchScheduler#checkCancelled()} expects
+     *
+     * @param text text with occurrences, it must not change
+     * @return replaced part of text
+     * @throws IllegalArgumentException if replacement refers to group, that expression doesn't have
+     * @throws SearchLimitException if expression is too complex for text
+     */
+    public Result replaceAll(final CharSequence text) {
+        final long startNanos = System.nanoTime();
+        final CharSequence local = text instanceof Rope ? ((Rope) text).duplicate() : text;
+        final Pass pass = new Pass(local, matcher(text));
+        scanner.scan(local, pass);
+        REPLACE_ALL.recordSince(startNanos);
+        REPLACEMENTS.add(pass.count);
+        return pass.count == 0
+                ? new Result(0, 0, Rope.empty(), 0)
+                : new Result(pass.first, pass.end, pass.builder.build(), pass.count);
+    }
+
+    /**
+     * Matcher of groups has own copy of rope, so it doesn't evict cached leaf of scanner
+     */
+    private Matcher matcher(final CharSequence text) {
+        if (pattern == null) {
+            return null;
+        }
+        return pattern.matcher(text instanceof Rope ? ((Rope) text).duplicate() : text)
+                .useTransparentBounds(true)
+                .useAnchoringBounds(false);
+    }
+
+    /**
+     * Appends replacement of occurrence. Groups are matched inside occurrence with the surrounding text
+     * as context, so lookarounds and anchors see the same text, as scanner did
+     */
+    private void append(final StringBuilder target, final Matcher matcher, final int start, final int length) {
+        target.append(parts[0]);
+        if (groups.length == 0) {
+            return;
+        }
+        matcher.region(start, start + length);
+        final boolean matched = matcher.lookingAt();
+        for (int i = 0; i < groups.length; i++) {
+            final String group = !matched ? null : groups[i] instanceof Integer
+                    ? matcher.group((Integer) groups[i])
+                    : matcher.group((String) groups[i]);
+            if (group != null) {
+                target.append(group);
+            }
+            target.append(parts[i + 1]);
+        }
+    }
+
+    /**
+     * One pass over occurrences, that appends text between them and their replacements to builder
+     */
+    private final class Pass implements MatchConsumer {
+        private final CharSequence text;
+        private final Matcher matcher;
+        private final Rope.Builder builder = new Rope.Builder();
+        private final StringBuilder replacement = new StringBuilder();
+        private int first = -1;
+        private int end;
+        private int count;
+
+        Pass(final CharSequence text, final Matcher matcher) {
+            this.text = text;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public void accept(final int start, final int length) {
+            if (first < 0) {
+                first = start;
+            } else if (start < end) {
+                return;
+            } else {
+                builder.append(text, end, start);
+            }
+            replacement.setLength(0);
+            append(replacement, matcher, start, length);
+            builder.append(replacement);
+            end = start + length;
+            count++;
+        }
+    }
+
+    /**
+     * Replaced part of text, from the first occurrence to the end of the last one
+     */
+    public static final class Result {
+        private final int start;
+        private final int end;
+        private final Rope text;
+        private final int count;
+
+        private Result(final int start, final int end, final Rope text, final int count) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.count = count;
+        }
+
+        /**
+         * Gets index in original text, when the first occurrence begins
+         *
+         * @return begin of replaced range
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Gets index in original text, when the last occurrence ends
+         *
+         * @return end of replaced range, exclusive
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Gets new text of replaced range
+         *
+         * @return text with replacements
+         */
+        public Rope getText() {
+            return text;
+        }
+
+        /**
+         * Gets number of replaced occurrences
+         *
+         * @return number of occurrences
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
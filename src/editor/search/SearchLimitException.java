@@ -0,0 +1,14 @@
+package editor.search;
+
+/**
+ * Thrown, when search by regular expression exceeds its budget of steps.
+ * <p>
+ * It happens with expressions, that make {@code java.util.regex} backtrack exponentially,
+ * like {@code (a+)+b}, and can't be searched by {@link LinearRegex}.
+ * </p>
+ */
+public class SearchLimitException extends RuntimeException {
+    public SearchLimitException(final String message) {
+        super(message);
+    }
+}
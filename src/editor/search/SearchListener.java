@@ -0,0 +1,34 @@
+package editor.search;
+
+/**
+ * Receiver of results of search strategy.
+ * <p>
+ * Strategies don't know, how occurrences are displayed: in GUI they are highlighted by
+ * {@link editor.TextEditorController}, so search package doesn't depend on Swing components
+ * of Text Editor. All methods are called from event dispatch thread.
+ * </p>
+ */
+public interface SearchListener {
+
+    /**
+     * Receives current occurrence, that user navigated to
+     *
+     * @param index begin index of current occurrence, or {@code -1}, if there are no occurrences
+     * @param length length of current occurrence
+     */
+    void highlightText(final int index, final int length);
+
+    /**
+     * Receives notification, that strategy has found new occurrences
+     *
+     * @param source strategy, that reports occurrences by {@link Searchable#forEachOccurrence}
+     */
+    void highlightOccurrences(final Searchable source);
+
+    /**
+     * Receives problem, that has stopped search
+     *
+     * @param message description of problem
+     */
+    void showSearchWarning(final String message);
+}
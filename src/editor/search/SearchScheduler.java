@@ -0,0 +1,137 @@
+package editor.search;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared scheduler of all search tasks.
+ * <p>
+ * Tasks are executed by bounded pool of daemon threads, so number of alive threads doesn't grow
+ * with number of searches, and idle threads are stopped. Every strategy submits its tasks
+ * to own {@link Lane}, that executes them one by one in order of submission. When strategy is
+ * superseded by new search, its lane is cancelled: queued tasks are dropped and the running
+ * task is interrupted. Long loops must call {@link #checkCancelled()} to stop early.
+ * </p>
+ */
+public final class SearchScheduler {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final SearchScheduler INSTANCE = new SearchScheduler(Runtime.getRuntime().availableProcessors());
+
+    private final ThreadPoolExecutor pool;
+
+    private SearchScheduler(final int threads) {
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadFactory factory = task -> {
+            final Thread thread = new Thread(task, "search-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets scheduler, that is shared by all strategies
+     *
+     * @return shared scheduler
+     */
+    public static SearchScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Creates new queue of ordered tasks
+     *
+     * @return new lane
+     */
+    public Lane newLane() {
+        return new Lane();
+    }
+
+    /**
+     * Stops current task, if it was cancelled
+     *
+     * @throws CancellationException if current thread was interrupted
+     */
+    public static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search was cancelled");
+        }
+    }
+
+    /**
+     * Queue of tasks, that are executed one by one in order of submission
+     */
+    public final class Lane implements Executor {
+        private final Queue<RunnableFuture<?>> queue = new ArrayDeque<>();
+        private RunnableFuture<?> active;
+        private boolean cancelled;
+
+        private Lane() {
+        }
+
+        /**
+         * Submits task. {@link RunnableFuture}s, like {@link javax.swing.SwingWorker},
+         * are executed as is, so they can be cancelled.
+         * Tasks, that are submitted after cancelling, are ignored.
+         *
+         * @param task submitted task
+         */
+        @Override
+        public synchronized void execute(final Runnable task) {
+            if (cancelled) {
+                return;
+            }
+            queue.add(task instanceof RunnableFuture ? (RunnableFuture<?>) task : new FutureTask<>(task, null));
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            final RunnableFuture<?> next = queue.poll();
+            active = next;
+            if (next != null) {
+                pool.execute(() -> {
+                    try {
+                        next.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Drops queued tasks and interrupts running one
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            queue.forEach(task -> task.cancel(false));
+            queue.clear();
+            if (active != null) {
+                active.cancel(true);
+            }
+        }
+
+        /**
+         * Checks, if lane was cancelled
+         *
+         * @return {@code true} if lane was cancelled
+         */
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package editor.search;
+
+/**
+ * Occurrences of pattern in document, that are kept up to date, while document is edited.
+ * <p>
+ * After every edit, only occurrences in the damaged region are rescanned: the edited range
+ * plus {@link Finder#radius()} characters of context around it. Occurrences after the edit are moved
+ * by {@link MatchIndex#shift(int, int)} in O({@code log |occurrences|}). If new occurrences overlap
+ * the following ones, rescanning continues until its chain of occurrences meets the old chain,
+ * so the result is the same, as the full scan of edited text gives.
+ * Cost of the update is proportional to the size of edit, not to the size of document.
+ * </p>
+ * <p>
+ * It needs pattern, whose occurrences are not longer, than radius. Occurrence of unbounded pattern,
+ * like {@code a.*b}, may begin anywhere before the edit and end anywhere after it, so such occurrences
+ * can't be updated locally, and the whole text must be scanned again.
+ * </p>
+ */
+final class SearchSession {
+    private final Finder finder;
+    private final MatchIndex matches;
+
+    SearchSession(final Finder finder) {
+        this(finder, new MatchIndex());
+    }
+
+    /**
+     * Constructs session, that continues to follow already found occurrences
+     *
+     * @param finder finder of pattern
+     * @param matches all occurrences of pattern in current text
+     */
+    SearchSession(final Finder finder, final MatchIndex matches) {
+        this.finder = finder;
+        this.matches = matches;
+    }
+
+    /**
+     * Gets current occurrences
+     *
+     * @return index of occurrences
+     */
+    MatchIndex getMatches() {
+        return matches;
+    }
+
+    /**
+     * Updates occurrences after the edit of text
+     *
+     * @param text text after the edit
+     * @param offset index of edited place
+     * @param removed number of removed characters
+     * @param inserted number of inserted characters
+     * @return {@code false} if pattern is unbounded, then occurrences aren't changed
+     *         and the whole text must be scanned again
+     */
+    boolean update(final CharSequence text, final int offset, final int removed, final int inserted) {
+        if (!finder.isBounded()) {
+            return false;
+        }
+        final int radius = finder.radius();
+        final int zoneStart = Math.max(0, offset - radius);
+        matches.remove(zoneStart, offset + removed);
+        matches.shift(offset + removed, inserted - removed);
+        rescan(text, zoneStart, offset + inserted);
+        return true;
+    }
+
+    private void rescan(final CharSequence text, final int zoneStart, final int zoneEnd) {
+        final int length = text.length();
+        final int radius = finder.radius();
+        final int previous = matches.indexAtOrAfter(zoneStart) - 1;
+        int position = zoneStart;
+        if (previous >= 0) {
+            position = Math.max(position, resumeAfter(matches.start(previous), matches.length(previous)));
+        }
+        // positions before this bound may begin occurrences, that old chain didn't check,
+        // empty occurrence may begin at the end of text
+        int untested = (int) Math.min(length + 1L, (long) zoneEnd + radius);
+        while (position <= length) {
+            final int regionEnd = (int) Math.min(length, (long) untested + radius);
+            final long found = position <= regionEnd ? finder.find(text, position, regionEnd) : Finder.NOT_FOUND;
+            final int start = Finder.start(found);
+            if (found == Finder.NOT_FOUND || start >= untested) {
+                matches.remove(position, untested);
+                return;
+            }
+            final int foundLength = Finder.length(found);
+            if (matches.lengthAt(start) == foundLength) {
+                // new chain met the old one, the rest of occurrences is valid
+                matches.remove(position, start);
+                return;
+            }
+            final int resume = resumeAfter(start, foundLength);
+            untested = Math.max(untested, Math.min(length, matches.remove(position, resume)));
+            matches.insert(start, foundLength);
+            position = resume;
+        }
+    }
+
+    /**
+     * Gets position, from which search continues after occurrence, as {@link java.util.regex.Matcher#find()} does
+     */
+    private static int resumeAfter(final int start, final int length) {
+        return length == 0 ? start + 1 : start + length;
+    }
+}
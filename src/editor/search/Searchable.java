@@ -25,4 +25,30 @@ public interface Searchable {
      * @return length of current occurrence of pattern in text
      */
     int getPatternLength();
+
+    /**
+     * Reports occurrences, that intersect given range of text, so GUI can highlight the visible ones.
+     * Cost depends on the length of range, not on the number of all occurrences.
+     * Must be called from thread, that edits document.
+     *
+     * @param from begin of range, inclusive
+     * @param to end of range, exclusive
+     * @param consumer receiver of occurrences in order of their positions
+     */
+    default void forEachOccurrence(final int from, final int to, final MatchConsumer consumer) {
+    }
+
+    /**
+     * Cancels running and queued searches of strategy, so it never highlights anything.
+     * Found occurrences are kept, so strategy can still be narrowed by new one.
+     */
+    default void cancel() {
+    }
+
+    /**
+     * Stops following changes of text and releases resources of strategy.
+     * Strategy must not be used after closing.
+     */
+    default void close() {
+    }
 }
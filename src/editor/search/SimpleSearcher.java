@@ -1,27 +1,68 @@
 package editor.search;
 
-import editor.TextEditorController;
+import editor.document.TextDocument;
 
 import javax.swing.*;
 
 /**
  * Represents search strategy without regular expressions.
  * <p>
- * This strategy uses O({@code 1}) additional memory, but O({@code |text| + |pattern|})
- * time complexity for finding next/previous occurrence.
+ * This strategy uses O({@code |alphabet|}) additional memory for {@link LiteralMatcher} skip tables,
+ * and O({@code |text| / |pattern|}) average time complexity for finding next/previous occurrence.
+ * First and last occurrences, that are used for wrapping around the text, are found once and reused
+ * until the followed document is edited.
+ * When user extends pattern while typing, new strategy is narrowed by the old one: every occurrence
+ * of extended pattern is an occurrence of the old pattern, so search continues from the current
+ * occurrence and is bounded by the first and the last known occurrences, and nothing is scanned at all,
+ * if the old pattern doesn't occur in text.
  * All searches happens in separate thread.
  * </p>
  */
 public class SimpleSearcher extends AbstractSearcher {
-    private final String text;
-    private final String pattern;
-    private int pos;
+    private static final int NOT_FOUND_YET = -2;
+
+    private final LiteralMatcher matcher;
+    private volatile CharSequence text;
+    private volatile int pos;
+    private volatile int firstOccurrence = NOT_FOUND_YET;
+    private volatile int lastOccurrence = NOT_FOUND_YET;
+
+    /**
+     * All occurrences begin in [{@code lowerBound}, {@code upperBound}], bounds are known from narrowed strategy
+     */
+    private volatile int lowerBound;
+    private volatile int upperBound = Integer.MAX_VALUE;
+
+    private class SearchFromPos extends SwingWorker<Void, Void> {
+        private final int from;
+
+        SearchFromPos(final int from) {
+            this.from = from;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            final long start = System.nanoTime();
+            final int next = from > upperBound ? -1 : matcher.indexOf(text, from);
+            pos = next == -1 ? getFirstOccurrence() : next;
+            NAVIGATION.recordSince(start);
+            return null;
+        }
+
+        @Override
+        protected void done() {
+            highlightTextArea();
+        }
+    }
 
     private class SearchAfterPos extends SwingWorker<Void, Void> {
 
         @Override
         protected Void doInBackground() {
-            setNextOccurrence(text.indexOf(pattern, pos + 1), text.indexOf(pattern));
+            final long start = System.nanoTime();
+            final int next = matcher.indexOf(text, pos + 1);
+            pos = next == -1 ? getFirstOccurrence() : next;
+            NAVIGATION.recordSince(start);
             return null;
         }
 
@@ -35,7 +76,10 @@ public class SimpleSearcher extends AbstractSearcher {
 
         @Override
         protected Void doInBackground() {
-            setNextOccurrence(text.lastIndexOf(pattern, pos - 1), text.lastIndexOf(pattern));
+            final long start = System.nanoTime();
+            final int prev = matcher.lastIndexOf(text, pos - 1);
+            pos = prev == -1 ? getLastOccurrence() : prev;
+            NAVIGATION.recordSince(start);
             return null;
         }
 
@@ -45,15 +89,93 @@ public class SimpleSearcher extends AbstractSearcher {
         }
     }
 
-    public SimpleSearcher(final String text, final String pattern, final TextEditorController controller) {
-        super(controller);
+    public SimpleSearcher(final CharSequence text, final String pattern, final SearchListener listener) {
+        super(listener);
         this.text = text;
-        this.pattern = pattern;
+        this.matcher = LiteralMatcher.compile(pattern);
         findNext();
     }
 
-    private void setNextOccurrence(final int mainValue, final int defaultValue) {
-        pos = mainValue == -1 ? defaultValue : mainValue;
+    /**
+     * Constructs strategy, that searches in document and follows its edits.
+     * Must be called from thread, that edits document.
+     *
+     * @param document document for searching
+     * @param pattern searched string
+     * @param listener receiver of occurrences
+     */
+    public SimpleSearcher(final TextDocument document, final String pattern, final SearchListener listener) {
+        this(document.snapshot(), pattern, listener);
+        follow(document);
+    }
+
+    /**
+     * Constructs strategy for pattern, that extends pattern of previous strategy,
+     * reusing occurrences, that previous strategy has found.
+     * Must be called from thread, that edits document, before closing previous strategy.
+     *
+     * @param previous strategy, that searches prefix of pattern
+     * @param pattern searched string
+     * @param listener receiver of occurrences
+     * @throws IllegalArgumentException if previous strategy can't be narrowed to pattern
+     * @see #canNarrow(String)
+     */
+    public SimpleSearcher(final SimpleSearcher previous, final String pattern, final SearchListener listener) {
+        super(listener);
+        if (!previous.canNarrow(pattern)) {
+            throw new IllegalArgumentException("Pattern " + pattern + " doesn't extend " + previous.matcher.pattern);
+        }
+        this.text = previous.text;
+        this.matcher = LiteralMatcher.compile(pattern);
+        final int first = previous.firstOccurrence;
+        final int last = previous.lastOccurrence;
+        this.lowerBound = first >= 0 ? first : previous.lowerBound;
+        this.upperBound = last >= 0 ? last : previous.upperBound;
+        follow(previous.getDocument());
+        if (first == -1) {
+            pos = -1;
+            firstOccurrence = -1;
+            lastOccurrence = -1;
+            highlightTextArea();
+        } else {
+            executor.execute(new SearchFromPos(Math.max(previous.pos, lowerBound)));
+        }
+    }
+
+    /**
+     * Checks, if strategy for pattern can be made from this strategy by narrowing
+     *
+     * @param pattern new searched string
+     * @return {@code true} if pattern extends searched string and this strategy follows document
+     */
+    public boolean canNarrow(final String pattern) {
+        return getDocument() != null && pattern.length() > matcher.length() && pattern.startsWith(matcher.pattern);
+    }
+
+    @Override
+    protected void onEdit(final CharSequence text, final int offset, final int removed, final int inserted) {
+        this.text = text;
+        if (pos != -1) {
+            pos = shiftPosition(pos, offset, removed, inserted);
+        }
+        firstOccurrence = NOT_FOUND_YET;
+        lastOccurrence = NOT_FOUND_YET;
+        lowerBound = 0;
+        upperBound = Integer.MAX_VALUE;
+    }
+
+    private int getFirstOccurrence() {
+        if (firstOccurrence == NOT_FOUND_YET) {
+            firstOccurrence = matcher.indexOf(text, lowerBound);
+        }
+        return firstOccurrence;
+    }
+
+    private int getLastOccurrence() {
+        if (lastOccurrence == NOT_FOUND_YET) {
+            lastOccurrence = matcher.lastIndexOf(text, Math.min(upperBound, text.length()));
+        }
+        return lastOccurrence;
     }
 
     @Override
@@ -73,6 +195,24 @@ public class SimpleSearcher extends AbstractSearcher {
 
     @Override
     public int getPatternLength() {
-        return pos == -1 ? 0 : pattern.length();
+        return pos == -1 ? 0 : matcher.length();
+    }
+
+    /**
+     * Occurrences are not stored, so range is scanned by {@link LiteralMatcher} on every call
+     */
+    @Override
+    public void forEachOccurrence(final int from, final int to, final MatchConsumer consumer) {
+        final int length = matcher.length();
+        if (length == 0) {
+            return;
+        }
+        final CharSequence scanned = text;
+        final int end = Math.min(to + length - 1, scanned.length());
+        int index = matcher.indexOf(scanned, Math.max(from - length + 1, 0), end);
+        while (index != -1) {
+            consumer.accept(index, length);
+            index = matcher.indexOf(scanned, index + 1, end);
+        }
     }
-}
\ No newline at end of file
+}
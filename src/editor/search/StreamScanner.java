@@ -0,0 +1,674 @@
+package editor.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Finder of occurrences in stream of bytes in bounded memory.
+ * <p>
+ * Stream is read in chunks of {@value #CHUNK_BYTES} bytes into buffer, that keeps {@link Finder#radius()}
+ * units of the previous chunk, so occurrences on the border of chunks are found, and memory doesn't depend
+ * on length of stream. Occurrences, that begin before the last {@code radius} units of buffer,
+ * can't be cut by its end, so they are reported after each chunk. Buffer also keeps line of the next occurrence
+ * up to limits of preview, so line, that crosses the border of chunks, is previewed whole.
+ * </p>
+ * <p>
+ * Fixed strings are searched by {@link #bytewise} scanner in UTF-8 bytes without decoding: UTF-8 is
+ * self-synchronizing, so encoded pattern occurs in bytes exactly, where pattern occurs in text.
+ * Only offsets, lines and columns of occurrences are counted in characters, runs of ASCII by eight bytes at once.
+ * Regular expressions need characters, so {@link #decoding} scanner decodes every chunk.
+ * Malformed input counts as one U+FFFD per malformed sequence in both scanners.
+ * </p>
+ * <p>
+ * Scanner reuses its buffers and is used by one thread at a time.
+ * </p>
+ */
+abstract class StreamScanner {
+    /**
+     * Result of {@link #scan}, if stream was skipped as binary
+     */
+    static final long BINARY = -1;
+
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int BINARY_CHECK_BYTES = 1 << 13;
+
+    /**
+     * Eight bytes are checked for ASCII and line separators at once
+     */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long NON_ASCII_MASK = 0x8080808080808080L;
+    private static final long LOW_BITS_MASK = 0x7F7F7F7F7F7F7F7FL;
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+    /**
+     * Minimal code point of UTF-8 sequence by its length, shorter forms are malformed
+     */
+    private static final int[] MIN_CODE_POINTS = {0, 0, 0x80, 0x800, 0x10000};
+
+    /**
+     * Maximal length of UTF-8 sequence, incomplete sequence at the end of buffer is kept for the next chunk
+     */
+    private static final int MAX_SEQUENCE_BYTES = 4;
+
+    protected final ByteBuffer bytes;
+    protected final int previewBefore;
+    protected final int previewAfter;
+    private final Finder finder;
+    private final int radius;
+
+    /**
+     * Number of units after the beginning of occurrence, that must be read, before it is reported
+     */
+    private final int tail;
+    private final long maxMatches;
+
+    /**
+     * Buffer contains {@code size} units of stream from absolute index {@code base}
+     */
+    protected long base;
+    protected int size;
+    private long reported;
+
+    private StreamScanner(final Finder finder, final int capacity, final long maxMatches,
+                          final int previewBefore, final int previewAfter) {
+        this.bytes = ByteBuffer.allocate(capacity);
+        this.finder = finder;
+        this.radius = finder.radius();
+        this.tail = Math.max(radius, previewAfter);
+        this.maxMatches = maxMatches;
+        this.previewBefore = previewBefore;
+        this.previewAfter = previewAfter;
+    }
+
+    /**
+     * Creates scanner, that searches UTF-8 bytes
+     *
+     * @param finder engine, that finds pattern, encoded by {@link #latin1(String)}, in bytes
+     * @param maxMatches maximal number of reported occurrences per stream
+     * @param previewBefore maximal number of bytes of line before occurrence in preview
+     * @param previewAfter maximal number of bytes of line after the beginning of occurrence in preview
+     * @return new scanner
+     */
+    static StreamScanner bytewise(final Finder finder, final long maxMatches,
+                                  final int previewBefore, final int previewAfter) {
+        return new Bytewise(finder, maxMatches, previewBefore, previewAfter);
+    }
+
+    /**
+     * Creates scanner, that decodes UTF-8 and searches characters
+     *
+     * @param finder engine, that finds occurrences in chunks
+     * @param maxMatches maximal number of reported occurrences per stream
+     * @param previewBefore maximal number of characters of line before occurrence in preview
+     * @param previewAfter maximal number of characters of line after the beginning of occurrence in preview
+     * @return new scanner
+     */
+    static StreamScanner decoding(final Finder finder, final long maxMatches,
+                                  final int previewBefore, final int previewAfter) {
+        return new Decoding(finder, maxMatches, previewBefore, previewAfter);
+    }
+
+    /**
+     * Encodes pattern for {@link #bytewise} scanner: every byte of UTF-8 encoding becomes one character
+     *
+     * @param pattern searched string
+     * @return encoded pattern, or {@code null}, if pattern contains unpaired surrogates and can't be encoded
+     */
+    static String latin1(final String pattern) {
+        if (!StandardCharsets.UTF_8.newEncoder().canEncode(pattern)) {
+            return null;
+        }
+        return new String(pattern.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Finds occurrences in stream, stops at its end or after {@code maxMatches} occurrences
+     *
+     * @param path file, that is reported with occurrences, may be {@code null} for standard input
+     * @param channel stream of bytes, it isn't closed
+     * @param skipBinary {@code true}, if stream with zero bytes in its beginning should be skipped
+     * @param consumer receiver of occurrences, that receives them in order of positions after each chunk
+     * @return number of read bytes, or {@link #BINARY}, if stream was skipped
+     * @throws IOException if stream can't be read
+     * @throws SearchLimitException if regular expression exceeds its budget
+     * @throws java.util.concurrent.CancellationException if current thread was interrupted
+     */
+    final long scan(final Path path, final ReadableByteChannel channel, final boolean skipBinary,
+                    final Consumer<List<FileMatch>> consumer) throws IOException {
+        bytes.clear();
+        base = 0;
+        size = 0;
+        reported = 0;
+        reset();
+        if (skipBinary && isBinary(channel)) {
+            return BINARY;
+        }
+        long read = bytes.position();
+        long resume = 0;
+        boolean eof = false;
+        while (reported < maxMatches) {
+            SearchScheduler.checkCancelled();
+            if (!eof) {
+                final int count = channel.read(bytes);
+                eof = count < 0;
+                read += Math.max(count, 0);
+            }
+            fill(eof);
+            final long limit = base + size;
+            final long acceptEnd = eof ? limit + 1 : limit - tail;
+            resume = scanChunk(path, resume, acceptEnd, consumer);
+            if (eof) {
+                break;
+            }
+            final long keepFrom = Math.max(base, Math.min(Math.min(resume, acceptEnd) - radius - MAX_SEQUENCE_BYTES,
+                    base + previewStart((int) (resume - base))));
+            compact((int) (keepFrom - base));
+            base = keepFrom;
+        }
+        return read;
+    }
+
+    /**
+     * Reads the beginning of stream into buffer and checks it for zero bytes
+     */
+    private boolean isBinary(final ReadableByteChannel channel) throws IOException {
+        while (bytes.position() < BINARY_CHECK_BYTES && channel.read(bytes) > 0) {
+            // fill the beginning of buffer
+        }
+        for (int i = Math.min(bytes.position(), BINARY_CHECK_BYTES) - 1; i >= 0; i--) {
+            if (bytes.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets capacity of buffer, that keeps units of the previous chunk for occurrences and their previews
+     */
+    private static int capacity(final Finder finder, final int previewBefore, final int previewAfter) {
+        return CHUNK_BYTES + 2 * Math.max(finder.radius(), previewAfter) + previewBefore + 2 * MAX_SEQUENCE_BYTES;
+    }
+
+    /**
+     * Finds occurrences, that begin before {@code acceptEnd}, so they can't be cut by the end of buffer
+     *
+     * @return absolute position, from which search continues
+     */
+    private long scanChunk(final Path path, final long resume, final long acceptEnd,
+                           final Consumer<List<FileMatch>> consumer) {
+        final CharSequence text = text();
+        final List<FileMatch> matches = new ArrayList<>();
+        int from = (int) (resume - base);
+        while (from <= size && base + from < acceptEnd && reported < maxMatches) {
+            final long found = finder.find(text, from, size);
+            if (found == Finder.NOT_FOUND || base + Finder.start(found) >= acceptEnd) {
+                break;
+            }
+            final int start = Finder.start(found);
+            final int length = Finder.length(found);
+            matches.add(match(path, start, length));
+            reported++;
+            from = length == 0 ? start + 1 : start + length;
+        }
+        if (!matches.isEmpty()) {
+            consumer.accept(matches);
+        }
+        return Math.max(base + from, Math.min(acceptEnd, base + size));
+    }
+
+    /**
+     * Resets state of the previous stream
+     */
+    protected abstract void reset();
+
+    /**
+     * Moves bytes, that were read, to searched units of buffer
+     *
+     * @param eof {@code true}, if stream has ended
+     */
+    protected abstract void fill(final boolean eof);
+
+    /**
+     * Gets units of buffer for searching. Every chunk is new {@link CharSequence},
+     * because engines may cache state by identity of text
+     *
+     * @return text of {@code size} units
+     */
+    protected abstract CharSequence text();
+
+    /**
+     * Creates occurrence
+     *
+     * @param path file of occurrence
+     * @param start index of occurrence in buffer
+     * @param length number of units in occurrence
+     * @return occurrence with offset and length in characters
+     */
+    protected abstract FileMatch match(final Path path, final int start, final int length);
+
+    /**
+     * Finds the first unit of preview of occurrence: the beginning of its line,
+     * or {@code previewBefore} units before it, if line is longer
+     *
+     * @param start index of occurrence in buffer
+     * @return index of the first unit of preview
+     */
+    protected abstract int previewStart(final int start);
+
+    /**
+     * Drops units before {@code dropped} from buffer, {@code base} is moved after it
+     *
+     * @param dropped number of dropped units
+     */
+    protected abstract void compact(final int dropped);
+
+    /**
+     * Decodes UTF-8 sequence, that begins with non-ASCII byte. Sequence is its first byte and following
+     * continuation bytes up to length, that is declared by the first byte
+     *
+     * @param src bytes
+     * @param i index of the first byte
+     * @param end end of read bytes
+     * @return number of bytes of sequence in high half and code point in low half, that is {@code -1},
+     *         if sequence is malformed or incomplete
+     */
+    private static long decode(final byte[] src, final int i, final int end) {
+        final int length = sequenceLength(src[i]);
+        int codePoint = src[i] & (0x7F >> length);
+        int j = 1;
+        while (j < length && i + j < end && (src[i + j] & 0xC0) == 0x80) {
+            codePoint = codePoint << 6 | (src[i + j] & 0x3F);
+            j++;
+        }
+        if (length == 1 || j < length || codePoint < MIN_CODE_POINTS[length]
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)
+                || codePoint > Character.MAX_CODE_POINT) {
+            codePoint = -1;
+        }
+        return (long) j << 32 | (codePoint & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets length of UTF-8 sequence by its first byte, that isn't ASCII, it is {@code 1} for malformed bytes
+     */
+    private static int sequenceLength(final int b) {
+        return (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : (b & 0xF8) == 0xF0 ? 4 : 1;
+    }
+
+    /**
+     * Finds line separators in eight bytes
+     *
+     * @return word, whose high bit is set exactly in bytes, that are equal to {@code '\n'}
+     */
+    private static long newlines(final long word) {
+        final long difference = word ^ NEWLINES;
+        return ~(((difference & LOW_BITS_MASK) + LOW_BITS_MASK) | difference | LOW_BITS_MASK);
+    }
+
+    /**
+     * Gets index of character after the last line separator in eight bytes, that are read in little-endian order
+     *
+     * @param newlines result of {@link #newlines(long)}, that isn't zero
+     */
+    private static int afterLastNewline(final long newlines) {
+        return (Long.SIZE - Long.numberOfLeadingZeros(newlines)) / Byte.SIZE;
+    }
+
+    /**
+     * Scanner of UTF-8 bytes. Offsets, lines and columns are counted from the cursor to every occurrence
+     * and to every compaction, so each byte is counted once
+     */
+    private static final class Bytewise extends StreamScanner {
+        private final byte[] src = bytes.array();
+        private long cursor;
+        private long charsAtCursor;
+        private long lineAtCursor;
+
+        /**
+         * Offset of the first character of line, that contains cursor
+         */
+        private long lineStartAtCursor;
+
+        Bytewise(final Finder finder, final long maxMatches, final int previewBefore, final int previewAfter) {
+            super(finder, capacity(finder, previewBefore, previewAfter), maxMatches, previewBefore, previewAfter);
+        }
+
+        @Override
+        protected void reset() {
+            cursor = 0;
+            charsAtCursor = 0;
+            lineAtCursor = 1;
+            lineStartAtCursor = 0;
+        }
+
+        @Override
+        protected void fill(final boolean eof) {
+            size = bytes.position();
+        }
+
+        @Override
+        protected CharSequence text() {
+            return new Latin1Text(src, size);
+        }
+
+        @Override
+        protected FileMatch match(final Path path, final int start, final int length) {
+            advance(start);
+            return new FileMatch(path, charsAtCursor, countChars(start, start + length), lineAtCursor,
+                    charsAtCursor - lineStartAtCursor + 1, preview(start, length));
+        }
+
+        @Override
+        protected void compact(final int dropped) {
+            advance(dropped);
+            System.arraycopy(src, dropped, src, 0, size - dropped);
+            size -= dropped;
+            bytes.position(size);
+        }
+
+        /**
+         * Moves cursor forward to index in buffer, counting characters and lines. Cursor stops at the end
+         * of sequence, that contains index, continuation bytes after index can't begin occurrence
+         */
+        private void advance(final int index) {
+            int i = (int) (cursor - base);
+            long chars = 0;
+            long lines = 0;
+            while (i < index) {
+                if (i + Long.BYTES <= index) {
+                    final long word = (long) LONGS.get(src, i);
+                    if ((word & NON_ASCII_MASK) == 0) {
+                        final long newlines = newlines(word);
+                        if (newlines != 0) {
+                            lines += Long.bitCount(newlines);
+                            lineStartAtCursor = charsAtCursor + chars + afterLastNewline(newlines);
+                        }
+                        chars += Long.BYTES;
+                        i += Long.BYTES;
+                        continue;
+                    }
+                }
+                final int b = src[i];
+                if (b >= 0) {
+                    chars++;
+                    if (b == '\n') {
+                        lines++;
+                        lineStartAtCursor = charsAtCursor + chars;
+                    }
+                    i++;
+                } else {
+                    final long decoded = decode(src, i, size);
+                    chars += (int) decoded >= Character.MIN_SUPPLEMENTARY_CODE_POINT ? 2 : 1;
+                    i += (int) (decoded >>> 32);
+                }
+            }
+            charsAtCursor += chars;
+            lineAtCursor += lines;
+            cursor = Math.max(cursor, base + i);
+        }
+
+        /**
+         * Counts characters in valid UTF-8: every byte, that isn't continuation of sequence, begins character,
+         * and four-byte sequences are pairs of surrogates
+         */
+        private int countChars(final int from, final int to) {
+            int chars = 0;
+            for (int i = from; i < to; i++) {
+                final int b = src[i];
+                if ((b & 0xC0) != 0x80) {
+                    chars += (b & 0xF8) == 0xF0 ? 2 : 1;
+                }
+            }
+            return chars;
+        }
+
+        /**
+         * Preview isn't cut inside of character
+         */
+        @Override
+        protected int previewStart(final int start) {
+            int begin = start;
+            while (begin > 0 && start - begin < previewBefore && src[begin - 1] != '\n') {
+                begin--;
+            }
+            while (begin < start && (src[begin] & 0xC0) == 0x80) {
+                begin++;
+            }
+            return begin;
+        }
+
+        /**
+         * Gets line around occurrence, that is cut by limits of preview, but not inside of character
+         */
+        private String preview(final int start, final int length) {
+            final int begin = previewStart(start);
+            int end = start + length;
+            while (end < size && end - start < previewAfter && src[end] != '\n' && src[end] != '\r') {
+                end++;
+            }
+            while (end > start + length && end < size && (src[end] & 0xC0) == 0x80) {
+                end--;
+            }
+            return new String(src, begin, end - begin, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Scanner, that decodes UTF-8 into characters. Lines are counted while decoding
+     */
+    private static final class Decoding extends StreamScanner {
+        private static final char REPLACEMENT = '\uFFFD';
+
+        private final char[] chars;
+
+        /**
+         * Number of line at {@code base} and number of line separators in buffer
+         */
+        private long lineAtBase;
+        private int newlines;
+
+        /**
+         * Number of line and offset of its first character at absolute index {@code linesCountedTo},
+         * that is moved forward to occurrences
+         */
+        private long line;
+        private long lineStart;
+        private long linesCountedTo;
+
+        Decoding(final Finder finder, final long maxMatches, final int previewBefore, final int previewAfter) {
+            super(finder, CHUNK_BYTES, maxMatches, previewBefore, previewAfter);
+            this.chars = new char[capacity(finder, previewBefore, previewAfter)];
+        }
+
+        @Override
+        protected void reset() {
+            lineAtBase = 1;
+            newlines = 0;
+            line = 1;
+            lineStart = 0;
+            linesCountedTo = 0;
+        }
+
+        /**
+         * Decodes bytes of buffer, that are complete UTF-8 sequences, or all bytes at the end of stream.
+         * ASCII, that is most of text in logs and code, is checked by eight bytes and inflated to characters
+         * by intrinsic of JVM, that is several times faster, than {@link java.nio.charset.CharsetDecoder}
+         * on mixed text. Malformed sequences are replaced by U+FFFD
+         */
+        @Override
+        protected void fill(final boolean eof) {
+            final byte[] src = bytes.array();
+            final int end = bytes.position();
+            final int capacity = chars.length - 1;
+            int i = 0;
+            int o = size;
+            int found = 0;
+            while (i < end && o < capacity) {
+                final int run = i;
+                long word;
+                while (i + Long.BYTES <= end && i - run + Long.BYTES <= capacity - o
+                        && ((word = (long) LONGS.get(src, i)) & NON_ASCII_MASK) == 0) {
+                    found += Long.bitCount(newlines(word));
+                    i += Long.BYTES;
+                }
+                if (i > run) {
+                    new String(src, run, i - run, StandardCharsets.ISO_8859_1).getChars(0, i - run, chars, o);
+                    o += i - run;
+                }
+                if (i == end || o == capacity) {
+                    break;
+                }
+                final int b = src[i];
+                if (b >= 0) {
+                    chars[o++] = (char) b;
+                    if (b == '\n') {
+                        found++;
+                    }
+                    i++;
+                    continue;
+                }
+                final long decoded = decode(src, i, end);
+                final int j = (int) (decoded >>> 32);
+                final int codePoint = (int) decoded;
+                if (j < sequenceLength(b) && i + j == end && !eof) {
+                    // sequence continues in the next chunk
+                    break;
+                }
+                if (codePoint < 0) {
+                    chars[o++] = REPLACEMENT;
+                } else if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    chars[o++] = Character.highSurrogate(codePoint);
+                    chars[o++] = Character.lowSurrogate(codePoint);
+                } else {
+                    chars[o++] = (char) codePoint;
+                }
+                i += j;
+            }
+            bytes.flip();
+            bytes.position(i);
+            bytes.compact();
+            size = o;
+            newlines += found;
+        }
+
+        @Override
+        protected CharSequence text() {
+            return CharBuffer.wrap(chars, 0, size);
+        }
+
+        @Override
+        protected FileMatch match(final Path path, final int start, final int length) {
+            final long line = lineOf(start);
+            return new FileMatch(path, base + start, length, line, base + start - lineStart + 1,
+                    preview(start, length));
+        }
+
+        private long lineOf(final int index) {
+            for (int i = (int) (linesCountedTo - base); i < index; i++) {
+                if (chars[i] == '\n') {
+                    line++;
+                    lineStart = base + i + 1;
+                }
+            }
+            linesCountedTo = Math.max(linesCountedTo, base + index);
+            return line;
+        }
+
+        @Override
+        protected int previewStart(final int start) {
+            int begin = start;
+            while (begin > 0 && start - begin < previewBefore && chars[begin - 1] != '\n') {
+                begin--;
+            }
+            return begin;
+        }
+
+        /**
+         * Gets line around occurrence, that is cut by limits of preview
+         */
+        private String preview(final int start, final int length) {
+            final int begin = previewStart(start);
+            int end = start + length;
+            while (end < size && end - start < previewAfter && chars[end] != '\n' && chars[end] != '\r') {
+                end++;
+            }
+            return new String(chars, begin, end - begin);
+        }
+
+        /**
+         * Lines in dropped characters are known from decoding, so only the short kept part of buffer is scanned.
+         * If lines were skipped, start of the current line is found backwards from the end of dropped part
+         */
+        @Override
+        protected void compact(final int dropped) {
+            int kept = 0;
+            for (int i = dropped; i < size; i++) {
+                if (chars[i] == '\n') {
+                    kept++;
+                }
+            }
+            lineAtBase += newlines - kept;
+            newlines = kept;
+            if (linesCountedTo < base + dropped) {
+                if (line != lineAtBase) {
+                    int i = dropped - 1;
+                    while (chars[i] != '\n') {
+                        i--;
+                    }
+                    lineStart = base + i + 1;
+                    line = lineAtBase;
+                }
+                linesCountedTo = base + dropped;
+            }
+            System.arraycopy(chars, dropped, chars, 0, size - dropped);
+            size -= dropped;
+        }
+    }
+
+    /**
+     * Bytes as characters from {@code 0} to {@code 255}, like ISO-8859-1 string, without copying
+     */
+    private static final class Latin1Text implements CharSequence {
+        private final byte[] bytes;
+        private final int length;
+
+        Latin1Text(final byte[] bytes, final int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            if (index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package editor.syntax;
+
+import java.util.Set;
+
+/**
+ * Lexer of Java source.
+ * <p>
+ * Block comments and text blocks span lines, so they are the states, that are carried between lines.
+ * Without receiver of tokens, lexer only looks for starts and ends of them and of string literals,
+ * that may contain them.
+ * </p>
+ */
+public final class JavaLexer implements Lexer {
+    private static final int BLOCK_COMMENT = 1;
+    private static final int TEXT_BLOCK = 2;
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "record", "return", "sealed", "short", "static",
+            "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "var",
+            "void", "volatile", "while", "yield"
+    );
+    private static final Set<String> LITERALS = Set.of("true", "false", "null");
+
+    @Override
+    public int lexLine(final CharSequence line, final int state, final TokenConsumer tokens) {
+        final int length = line.length();
+        int i = 0;
+        if (state == BLOCK_COMMENT || state == TEXT_BLOCK) {
+            final int end = state == BLOCK_COMMENT ? endOf(line, "*/", 0) : endOfTextBlock(line, 0);
+            emit(tokens, 0, end < 0 ? length : end, state == BLOCK_COMMENT ? TokenType.COMMENT : TokenType.STRING);
+            if (end < 0) {
+                return state;
+            }
+            i = end;
+        }
+        while (i < length) {
+            final char c = line.charAt(i);
+            if (c == '/' && i + 1 < length && line.charAt(i + 1) == '/') {
+                emit(tokens, i, length, TokenType.COMMENT);
+                return INITIAL;
+            } else if (c == '/' && i + 1 < length && line.charAt(i + 1) == '*') {
+                final int end = endOf(line, "*/", i + 2);
+                emit(tokens, i, end < 0 ? length : end, TokenType.COMMENT);
+                if (end < 0) {
+                    return BLOCK_COMMENT;
+                }
+                i = end;
+            } else if (c == '"' && startsWith(line, i, "\"\"\"")) {
+                final int end = endOfTextBlock(line, i + 3);
+                emit(tokens, i, end < 0 ? length : end, TokenType.STRING);
+                if (end < 0) {
+                    return TEXT_BLOCK;
+                }
+                i = end;
+            } else if (c == '"' || c == '\'') {
+                final int end = endOfQuoted(line, i + 1, c);
+                emit(tokens, i, end, TokenType.STRING);
+                i = end;
+            } else if (tokens == null) {
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                final int end = endOfIdentifier(line, i + 1);
+                final String word = line.subSequence(i, end).toString();
+                if (KEYWORDS.contains(word)) {
+                    tokens.accept(i, end, TokenType.KEYWORD);
+                } else if (LITERALS.contains(word)) {
+                    tokens.accept(i, end, TokenType.LITERAL);
+                }
+                i = end;
+            } else if (c == '@' && i + 1 < length && Character.isJavaIdentifierStart(line.charAt(i + 1))) {
+                final int end = endOfIdentifier(line, i + 2);
+                tokens.accept(i, end, TokenType.ANNOTATION);
+                i = end;
+            } else if (Character.isDigit(c)) {
+                final int end = endOfNumber(line, i + 1);
+                tokens.accept(i, end, TokenType.NUMBER);
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return INITIAL;
+    }
+
+    private static void emit(final TokenConsumer tokens, final int start, final int end, final TokenType type) {
+        if (tokens != null && start < end) {
+            tokens.accept(start, end, type);
+        }
+    }
+
+    /**
+     * Finds end of text block, that isn't escaped
+     *
+     * @return index after closing quotes, or {@code -1}, if text block continues on the next line
+     */
+    private static int endOfTextBlock(final CharSequence line, int from) {
+        while (from < line.length()) {
+            final char c = line.charAt(from);
+            if (c == '\\') {
+                from += 2;
+            } else if (c == '"' && startsWith(line, from, "\"\"\"")) {
+                return from + 3;
+            } else {
+                from++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds end of string or character literal, unclosed literal ends with line
+     */
+    static int endOfQuoted(final CharSequence line, int from, final char quote) {
+        while (from < line.length()) {
+            final char c = line.charAt(from);
+            if (c == '\\') {
+                from += 2;
+            } else if (c == quote) {
+                return from + 1;
+            } else {
+                from++;
+            }
+        }
+        return line.length();
+    }
+
+    private static int endOfIdentifier(final CharSequence line, int from) {
+        while (from < line.length() && Character.isJavaIdentifierPart(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Number is lexed loosely: digits, letters of suffixes, exponents and radixes, dots and underscores
+     */
+    static int endOfNumber(final CharSequence line, int from) {
+        while (from < line.length()) {
+            final char c = line.charAt(from);
+            if (Character.isLetterOrDigit(c) || c == '.' || c == '_') {
+                from++;
+            } else if ((c == '+' || c == '-') && "eEpP".indexOf(line.charAt(from - 1)) >= 0) {
+                from++;
+            } else {
+                break;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Finds string in line
+     *
+     * @return index after the first occurrence, that starts at {@code from} or later,
+     *         or {@code -1}, if there is no occurrence
+     */
+    static int endOf(final CharSequence line, final String string, final int from) {
+        for (int i = from; i + string.length() <= line.length(); i++) {
+            if (startsWith(line, i, string)) {
+                return i + string.length();
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(final CharSequence line, final int offset, final String string) {
+        if (offset + string.length() > line.length()) {
+            return false;
+        }
+        for (int j = 0; j < string.length(); j++) {
+            if (line.charAt(offset + j) != string.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
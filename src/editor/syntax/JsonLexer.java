@@ -0,0 +1,57 @@
+package editor.syntax;
+
+/**
+ * Lexer of JSON.
+ * <p>
+ * Strings of JSON can't span lines, so lexer has no states, and lines are lexed only to be painted.
+ * String, that is followed by colon, is name of property.
+ * </p>
+ */
+public final class JsonLexer implements Lexer {
+    @Override
+    public int lexLine(final CharSequence line, final int state, final TokenConsumer tokens) {
+        if (tokens == null) {
+            return INITIAL;
+        }
+        final int length = line.length();
+        int i = 0;
+        while (i < length) {
+            final char c = line.charAt(i);
+            if (c == '"') {
+                final int end = JavaLexer.endOfQuoted(line, i + 1, c);
+                int next = end;
+                while (next < length && Character.isWhitespace(line.charAt(next))) {
+                    next++;
+                }
+                tokens.accept(i, end, next < length && line.charAt(next) == ':' ? TokenType.PROPERTY : TokenType.STRING);
+                i = end;
+            } else if (c == '-' || Character.isDigit(c)) {
+                final int end = JavaLexer.endOfNumber(line, i + 1);
+                tokens.accept(i, end, TokenType.NUMBER);
+                i = end;
+            } else if (Character.isLetter(c)) {
+                int end = i + 1;
+                while (end < length && Character.isLetter(line.charAt(end))) {
+                    end++;
+                }
+                if (isLiteral(line, i, end)) {
+                    tokens.accept(i, end, TokenType.LITERAL);
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return INITIAL;
+    }
+
+    private static boolean isLiteral(final CharSequence line, final int start, final int end) {
+        final String word = line.subSequence(start, end).toString();
+        return word.equals("true") || word.equals("false") || word.equals("null");
+    }
+
+    @Override
+    public boolean hasStates() {
+        return false;
+    }
+}
@@ -0,0 +1,35 @@
+package editor.syntax;
+
+/**
+ * Lexer of one language, that lexes text line by line.
+ * <p>
+ * Everything, that lexer carries from one line to the next one, like unclosed block comment, is encoded
+ * in {@code int} state, so lexing can be restarted from start of any line, whose state is known.
+ * Lexer must be deterministic: the same line and state give the same tokens and the same next state.
+ * </p>
+ */
+public interface Lexer {
+    /**
+     * State at start of text
+     */
+    int INITIAL = 0;
+
+    /**
+     * Lexes one line
+     *
+     * @param line characters of line without line separator
+     * @param state state at start of line
+     * @param tokens receiver of tokens, or {@code null}, if only state at end of line is needed
+     * @return state at start of the next line
+     */
+    int lexLine(final CharSequence line, final int state, final TokenConsumer tokens);
+
+    /**
+     * Checks, if lexer carries states between lines
+     *
+     * @return {@code false}, if every line starts in {@link #INITIAL} state, so lines are lexed independently
+     */
+    default boolean hasStates() {
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package editor.syntax;
+
+import java.util.Arrays;
+
+/**
+ * States of lexer at starts of lines, that are packed in gap buffer of {@code int}.
+ * <p>
+ * Lines are inserted and removed near the previous edit, so only the gap moves and typing costs O(1),
+ * however many lines are lexed.
+ * </p>
+ */
+final class LineStates {
+    private static final int MIN_GAP = 16;
+
+    private int[] states = new int[MIN_GAP];
+    private int size;
+    private int gapStart;
+    private int gapLength = MIN_GAP;
+
+    /**
+     * Gets number of lines with states
+     *
+     * @return number of states
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets state at start of line
+     *
+     * @param line index of line, that is less than {@link #size()}
+     * @return state of lexer
+     */
+    int get(final int line) {
+        return states[line < gapStart ? line : line + gapLength];
+    }
+
+    /**
+     * Sets state at start of line
+     *
+     * @param line index of line, that is less than {@link #size()}
+     * @param state state of lexer
+     */
+    void set(final int line, final int state) {
+        states[line < gapStart ? line : line + gapLength] = state;
+    }
+
+    /**
+     * Inserts states of new lines
+     *
+     * @param line index of the first new line, that is at most {@link #size()}
+     * @param lines number of new lines
+     * @param state state of new lines
+     */
+    void insert(final int line, final int lines, final int state) {
+        while (gapLength < lines) {
+            grow();
+        }
+        moveGap(line);
+        Arrays.fill(states, gapStart, gapStart + lines, state);
+        gapStart += lines;
+        gapLength -= lines;
+        size += lines;
+    }
+
+    /**
+     * Removes states of lines
+     *
+     * @param line index of the first removed line
+     * @param lines number of removed lines, that are less than {@link #size()}
+     */
+    void remove(final int line, final int lines) {
+        moveGap(line);
+        gapLength += lines;
+        size -= lines;
+    }
+
+    private void moveGap(final int position) {
+        if (position < gapStart) {
+            System.arraycopy(states, position, states, position + gapLength, gapStart - position);
+        } else if (position > gapStart) {
+            System.arraycopy(states, gapStart + gapLength, states, gapStart, position - gapStart);
+        }
+        gapStart = position;
+    }
+
+    private void grow() {
+        final int capacity = Math.max(2 * states.length, MIN_GAP);
+        final int tail = size - gapStart;
+        final int[] grown = Arrays.copyOf(states, capacity);
+        System.arraycopy(states, gapStart + gapLength, grown, capacity - tail, tail);
+        gapLength = capacity - gapStart - tail;
+        states = grown;
+    }
+}
@@ -0,0 +1,108 @@
+package editor.syntax;
+
+/**
+ * Lexer of log files.
+ * <p>
+ * Line of log is lexed as timestamp at its start, severity levels, names of exceptions, quoted strings
+ * and numbers, and lines of stack traces are dimmed. Lines of log don't depend on each other,
+ * so lexer has no states, and lines are lexed only to be painted.
+ * </p>
+ */
+public final class LogLexer implements Lexer {
+    /**
+     * Characters, that may follow the first digit of timestamp
+     */
+    private static final String TIMESTAMP_CHARS = "0123456789-:.,/ TZ+";
+    private static final int MAX_TIMESTAMP_LENGTH = 40;
+
+    @Override
+    public int lexLine(final CharSequence line, final int state, final TokenConsumer tokens) {
+        if (tokens == null) {
+            return INITIAL;
+        }
+        final int length = line.length();
+        int i = 0;
+        while (i < length && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i > 0 && i + 3 <= length && line.subSequence(i, i + 3).toString().equals("at ")) {
+            tokens.accept(i, length, TokenType.COMMENT);
+            return INITIAL;
+        }
+        if (i + 1 < length && line.charAt(i) == '[' && Character.isDigit(line.charAt(i + 1))) {
+            i++;
+        }
+        if (i < length && Character.isDigit(line.charAt(i))) {
+            final int end = endOfTimestamp(line, i);
+            tokens.accept(i, end, TokenType.TIMESTAMP);
+            i = end;
+        }
+        while (i < length) {
+            final char c = line.charAt(i);
+            if (c == '"') {
+                final int end = JavaLexer.endOfQuoted(line, i + 1, c);
+                tokens.accept(i, end, TokenType.STRING);
+                i = end;
+            } else if (Character.isLetter(c)) {
+                int end = i + 1;
+                while (end < length && isWordPart(line.charAt(end))) {
+                    end++;
+                }
+                final TokenType type = typeOf(line.subSequence(i, end).toString());
+                if (type != null) {
+                    tokens.accept(i, end, type);
+                }
+                i = end;
+            } else if (Character.isDigit(c)) {
+                final int end = JavaLexer.endOfNumber(line, i + 1);
+                tokens.accept(i, end, TokenType.NUMBER);
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return INITIAL;
+    }
+
+    /**
+     * Timestamp ends with its last digit, so that separator after it isn't colored
+     */
+    private static int endOfTimestamp(final CharSequence line, final int start) {
+        final int limit = Math.min(line.length(), start + MAX_TIMESTAMP_LENGTH);
+        int end = start + 1;
+        for (int i = start + 1; i < limit && TIMESTAMP_CHARS.indexOf(line.charAt(i)) >= 0; i++) {
+            if (Character.isDigit(line.charAt(i)) || line.charAt(i) == 'Z') {
+                end = i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static boolean isWordPart(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+    }
+
+    private static TokenType typeOf(final String word) {
+        switch (word) {
+            case "FATAL":
+            case "ERROR":
+            case "SEVERE":
+                return TokenType.ERROR;
+            case "WARN":
+            case "WARNING":
+                return TokenType.WARNING;
+            case "INFO":
+            case "DEBUG":
+            case "TRACE":
+            case "FINE":
+                return TokenType.KEYWORD;
+            default:
+                return word.endsWith("Exception") || word.endsWith("Error") ? TokenType.ERROR : null;
+        }
+    }
+
+    @Override
+    public boolean hasStates() {
+        return false;
+    }
+}
@@ -0,0 +1,322 @@
+package editor.syntax;
+
+import editor.document.TextDocument;
+import editor.metrics.Counter;
+import editor.metrics.LatencyHistogram;
+import editor.metrics.Metrics;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Incremental syntax highlighting of one document, that gives tokens of lines to the view, that paints them.
+ * <p>
+ * State of {@link Lexer} at start of every lexed line is checkpointed in {@link LineStates}, so any line
+ * is lexed alone from its checkpoint. Lines are lexed lazily, when they are painted, so only lines
+ * from the beginning of document to the viewport are ever lexed. Edit invalidates checkpoints after
+ * the edited line, and the edited lines are lexed again at once, until state at start of the next
+ * line matches its previous checkpoint: then all following checkpoints are valid again, and typing
+ * costs a couple of lexed lines, however large document is. Otherwise, listeners are notified,
+ * that lines after the edit changed their colors.
+ * </p>
+ * <p>
+ * Viewport, that is far from the lexed lines, like after jump to the end of large file, is lexed first
+ * from initial state at its first line, and then lexer catches up to it in time slices on event dispatch
+ * thread, so GUI stays responsive, and viewport is repainted with exact colors, when it is reached.
+ * </p>
+ * <p>
+ * Highlighter is used on event dispatch thread, that edits and paints document.
+ * </p>
+ */
+public final class SyntaxHighlighter implements DocumentListener {
+    private static final String PROPERTY = "syntaxHighlighter";
+
+    /**
+     * Lines, that are lexed at once to reach line, that is painted or edited
+     */
+    private static final int MAX_SYNC_LINES = 2000;
+
+    /**
+     * Longer lines, like minified JSON, aren't lexed and don't change state
+     */
+    private static final int MAX_LINE_LENGTH = 10_000;
+
+    private static final long SLICE_NANOS = 5_000_000L;
+    private static final int SLICE_DELAY_MILLIS = 15;
+
+    private static final Counter LEXED_LINES = Metrics.getInstance().counter("syntax.lines");
+    private static final LatencyHistogram RELEX_TIME = Metrics.getInstance().histogram("syntax.relex");
+
+    private final TextDocument document;
+    private final Lexer lexer;
+    private final List<ChangeListener> listeners = new ArrayList<>();
+    private final Segment segment = new Segment();
+    private int lineCount;
+
+    /**
+     * Checkpoints of lines before {@code valid} are exact. Checkpoints from {@code dirtyEnd}
+     * to the last one are stale, but lines after them weren't edited since they were lexed
+     */
+    private final LineStates states = new LineStates();
+    private int valid = 1;
+    private int dirtyEnd = 1;
+
+    /**
+     * The farthest line, that was painted from guessed state, or {@code -1}
+     */
+    private int target = -1;
+    private final Timer catchUp = new Timer(SLICE_DELAY_MILLIS, e -> catchUp());
+
+    /**
+     * States of viewport, that are guessed from initial state at its first line
+     */
+    private int guessedFrom = -1;
+    private int[] guessed = new int[64];
+    private int guessedCount;
+
+    private SyntaxHighlighter(final TextDocument document, final Lexer lexer) {
+        this.document = document;
+        this.lexer = lexer;
+        this.lineCount = document.getLineCount();
+        states.insert(0, 1, Lexer.INITIAL);
+    }
+
+    /**
+     * Installs highlighter of language of file to document, or removes it, if language isn't known.
+     * Highlighter of the same language is kept with its checkpoints
+     *
+     * @param document document, that is shown
+     * @param path file of document, or {@code null}
+     */
+    public static void install(final TextDocument document, final Path path) {
+        final Lexer lexer = lexerOf(path);
+        final SyntaxHighlighter installed = of(document);
+        if (installed != null) {
+            if (lexer != null && lexer.getClass() == installed.lexer.getClass()) {
+                return;
+            }
+            installed.catchUp.stop();
+            document.removeDocumentListener(installed);
+            document.putProperty(PROPERTY, null);
+        }
+        if (lexer != null) {
+            final SyntaxHighlighter highlighter = new SyntaxHighlighter(document, lexer);
+            document.addDocumentListener(highlighter);
+            document.putProperty(PROPERTY, highlighter);
+        }
+    }
+
+    /**
+     * Gets highlighter of document
+     *
+     * @param document document, that is painted
+     * @return installed highlighter, or {@code null}, if document isn't highlighted
+     */
+    public static SyntaxHighlighter of(final Document document) {
+        final Object highlighter = document.getProperty(PROPERTY);
+        return highlighter instanceof SyntaxHighlighter ? (SyntaxHighlighter) highlighter : null;
+    }
+
+    private static Lexer lexerOf(final Path path) {
+        if (path == null) {
+            return null;
+        }
+        final String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".java")) {
+            return new JavaLexer();
+        } else if (name.endsWith(".json")) {
+            return new JsonLexer();
+        } else if (name.endsWith(".log")) {
+            return new LogLexer();
+        }
+        return null;
+    }
+
+    /**
+     * Adds listener, that is notified, when colors of lines, that weren't edited, change
+     *
+     * @param listener listener, that repaints document
+     */
+    public void addChangeListener(final ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes listener
+     *
+     * @param listener listener, that was added
+     */
+    public void removeChangeListener(final ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Lexes line and reports its tokens
+     *
+     * @param line index of line
+     * @param tokens receiver of tokens, whose indices are relative to start of line
+     */
+    public void tokens(final int line, final TokenConsumer tokens) {
+        if (line >= lineCount) {
+            return;
+        }
+        final int state;
+        if (!lexer.hasStates()) {
+            state = Lexer.INITIAL;
+        } else if (line - valid < MAX_SYNC_LINES) {
+            advance(line);
+            state = states.get(line);
+        } else {
+            state = guess(line);
+            target = Math.max(target, line);
+            catchUp.start();
+        }
+        lex(line, state, tokens);
+    }
+
+    @Override
+    public void insertUpdate(final DocumentEvent e) {
+        update(e.getOffset());
+    }
+
+    @Override
+    public void removeUpdate(final DocumentEvent e) {
+        update(e.getOffset());
+    }
+
+    @Override
+    public void changedUpdate(final DocumentEvent e) {
+    }
+
+    /**
+     * Moves checkpoints with lines, that are inserted or removed after edited line, invalidates them
+     * and lexes edited lines again, if checkpoint of edited line was valid
+     */
+    private void update(final int offset) {
+        final int line = document.getLineOfOffset(offset);
+        final int count = document.getLineCount();
+        final int delta = count - lineCount;
+        lineCount = count;
+        guessedFrom = -1;
+        if (!lexer.hasStates()) {
+            return;
+        }
+        final boolean lexed = line < valid;
+        if (valid == states.size()) {
+            // all checkpoints were valid, so only lines of this edit are dirty
+            dirtyEnd = 1;
+        } else {
+            // the first invalid checkpoint wasn't lexed from the valid one before it, so it can't be matched
+            dirtyEnd = Math.max(dirtyEnd, valid);
+            if (dirtyEnd > line + 1) {
+                dirtyEnd = Math.max(line + 1, dirtyEnd + delta);
+            }
+        }
+        if (line + 1 < states.size()) {
+            if (delta > 0) {
+                states.insert(line + 1, delta, Lexer.INITIAL);
+            } else if (delta < 0) {
+                states.remove(line + 1, Math.min(-delta, states.size() - line - 1));
+            }
+        }
+        dirtyEnd = Math.min(Math.max(dirtyEnd, line + Math.max(delta, 0) + 1), lineCount);
+        valid = Math.min(Math.min(valid, line + 1), states.size());
+        if (lexed && dirtyEnd - valid < MAX_SYNC_LINES) {
+            final long start = System.nanoTime();
+            advance(Math.min(dirtyEnd, lineCount - 1));
+            RELEX_TIME.recordSince(start);
+            if (valid < states.size()) {
+                fireStateChanged();
+            }
+        }
+    }
+
+    /**
+     * Lexes lines after the last valid checkpoint, until checkpoint of given line is valid
+     */
+    private void advance(final int line) {
+        final int from = valid;
+        while (valid <= line) {
+            final int state = lex(valid - 1, states.get(valid - 1), null);
+            if (valid == states.size()) {
+                states.insert(valid, 1, state);
+                valid++;
+            } else if (valid >= dirtyEnd && states.get(valid) == state) {
+                // the following lines weren't edited and start from the same state, as before
+                valid = states.size();
+            } else {
+                states.set(valid, state);
+                valid++;
+            }
+        }
+        LEXED_LINES.add(Math.max(0, valid - from));
+    }
+
+    /**
+     * Gets state of line in viewport, that is guessed from initial state at the first painted line of it
+     */
+    private int guess(final int line) {
+        if (guessedFrom < 0 || line < guessedFrom || line - guessedFrom >= MAX_SYNC_LINES) {
+            guessedFrom = line;
+            guessed[0] = Lexer.INITIAL;
+            guessedCount = 1;
+        }
+        while (guessedFrom + guessedCount <= line) {
+            if (guessedCount == guessed.length) {
+                guessed = Arrays.copyOf(guessed, 2 * guessed.length);
+            }
+            guessed[guessedCount] = lex(guessedFrom + guessedCount - 1, guessed[guessedCount - 1], null);
+            guessedCount++;
+        }
+        return guessed[line - guessedFrom];
+    }
+
+    /**
+     * Lexes lines up to the farthest guessed line in time slice, and repaints, when it is reached
+     */
+    private void catchUp() {
+        final long start = System.nanoTime();
+        final int last = Math.min(target, lineCount - 1);
+        while (valid <= last && System.nanoTime() - start < SLICE_NANOS) {
+            advance(Math.min(last, valid + 256));
+        }
+        if (valid > last) {
+            catchUp.stop();
+            target = -1;
+            guessedFrom = -1;
+            fireStateChanged();
+        }
+    }
+
+    private int lex(final int line, final int state, final TokenConsumer tokens) {
+        final int start = document.getLineStartOffset(line);
+        final int end = line + 1 < lineCount ? document.getLineStartOffset(line + 1) - 1 : document.getLength();
+        if (end - start > MAX_LINE_LENGTH) {
+            return state;
+        }
+        try {
+            document.getText(start, end - start, segment);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Line " + line + " is out of document", e);
+        }
+        return lexer.lexLine(segment, state, tokens);
+    }
+
+    private void fireStateChanged() {
+        final ChangeEvent event = new ChangeEvent(this);
+        for (final ChangeListener listener : new ArrayList<>(listeners)) {
+            listener.stateChanged(event);
+        }
+    }
+}
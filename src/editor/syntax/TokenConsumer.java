@@ -0,0 +1,16 @@
+package editor.syntax;
+
+/**
+ * Receiver of tokens of line, that are reported in order of their positions in line
+ */
+@FunctionalInterface
+public interface TokenConsumer {
+    /**
+     * Receives next token
+     *
+     * @param start index in line, when token begins
+     * @param end index in line, when token ends, exclusive
+     * @param type kind of token
+     */
+    void accept(final int start, final int end, final TokenType type);
+}
@@ -0,0 +1,17 @@
+package editor.syntax;
+
+/**
+ * Kinds of tokens, that are colored differently
+ */
+public enum TokenType {
+    KEYWORD,
+    LITERAL,
+    NUMBER,
+    STRING,
+    COMMENT,
+    ANNOTATION,
+    PROPERTY,
+    TIMESTAMP,
+    WARNING,
+    ERROR
+}
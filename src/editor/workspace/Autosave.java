@@ -0,0 +1,188 @@
+package editor.workspace;
+
+import editor.io.TextEncoding;
+import editor.metrics.Counter;
+import editor.metrics.LatencyHistogram;
+import editor.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autosave of open documents, that lets their unsaved changes be recovered after crash.
+ * <p>
+ * Every edited document has {@link AutosaveLog} in autosave directory. Edits are queued by event dispatch thread
+ * and autosave thread appends them to logs every {@value #FLUSH_MILLIS} ms, so one sync to disk covers
+ * all edits of this period, and cost of autosave depends on rate of edits, not on size of documents.
+ * Log, that grows larger than its base and {@value #MIN_COMPACT_BYTES} bytes, is compacted into snapshot,
+ * so compaction takes amortized time proportional to the size of edits too.
+ * </p>
+ * <p>
+ * Logs are deleted, when documents are closed, logs of documents, that weren't closed, are replayed
+ * on the next start by {@link Workspace#recover()}. Logs are locked, while they are used,
+ * so other running instance of editor doesn't recover them. Log, that can't be replayed,
+ * like log of file, that was changed since, is never deleted: it is moved to subdirectory
+ * {@value #UNRECOVERABLE}, so its edits are kept for user, but it isn't replayed on every start.
+ * </p>
+ */
+public final class Autosave {
+    private static final long FLUSH_MILLIS = 500;
+    private static final long MIN_COMPACT_BYTES = 16L << 20;
+    private static final long SHUTDOWN_MILLIS = 5000;
+    private static final String UNRECOVERABLE = "unrecoverable";
+
+    private static final Counter WRITTEN_BYTES = Metrics.getInstance().counter("autosave.bytes");
+    private static final LatencyHistogram FLUSH_TIME = Metrics.getInstance().histogram("autosave.flush");
+
+    private final Path directory;
+    private final Set<AutosaveLog> logs = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs autosave and starts its thread. Logs, that weren't written yet, are written on exit
+     *
+     * @param directory directory of logs, it is created on the first edit
+     */
+    public Autosave(final Path directory) {
+        this.directory = directory;
+        writer.scheduleWithFixedDelay(this::flushAll, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "autosave-shutdown"));
+    }
+
+    /**
+     * Creates log for document, log file is created on the first edit
+     *
+     * @param path file of document, or {@code null}, if document was never saved
+     * @param encoding encoding of file
+     * @return log, that should listen to edits of document
+     */
+    AutosaveLog create(final Path path, final TextEncoding encoding) {
+        final AutosaveLog log = new AutosaveLog(directory.resolve("document-" + UUID.randomUUID() + ".log"),
+                path, encoding);
+        logs.add(log);
+        return log;
+    }
+
+    /**
+     * Continues recovered log
+     *
+     * @param log log, that was replayed
+     */
+    void register(final AutosaveLog log) {
+        logs.add(log);
+    }
+
+    /**
+     * Deletes log of closed document in autosave thread, after edits, that are being written
+     *
+     * @param log log of document
+     */
+    void delete(final AutosaveLog log) {
+        logs.remove(log);
+        log.fail();
+        try {
+            writer.execute(() -> deleteNow(log));
+        } catch (RejectedExecutionException e) {
+            // application exits, log is recovered on the next start
+        }
+    }
+
+    /**
+     * Moves log, that can't be replayed, out of the way of recovery
+     *
+     * @param log recovered log
+     * @return new path of log
+     * @throws IOException if log can't be moved
+     */
+    Path keep(final AutosaveLog log) throws IOException {
+        return log.moveTo(directory.resolve(UNRECOVERABLE));
+    }
+
+    /**
+     * Finds and locks logs, that were left by previous runs. Logs, that can't be opened, are skipped,
+     * but not deleted, so they are recovered, when they can be opened again
+     *
+     * @return logs, that aren't used by other instances of editor
+     * @throws IOException if directory can't be read
+     */
+    List<AutosaveLog> recover() throws IOException {
+        final List<AutosaveLog> recovered = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return recovered;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+            for (final Path path : stream) {
+                final AutosaveLog log = new AutosaveLog(path, null, TextEncoding.DEFAULT);
+                try {
+                    if (log.lock()) {
+                        recovered.add(log);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return recovered;
+    }
+
+    private void flushAll() {
+        for (final AutosaveLog log : logs) {
+            final long start = System.nanoTime();
+            try {
+                final long written = log.flush(MIN_COMPACT_BYTES);
+                if (written > 0) {
+                    WRITTEN_BYTES.add(written);
+                    FLUSH_TIME.recordSince(start);
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                logs.remove(log);
+                log.fail();
+            }
+        }
+    }
+
+    private static void deleteNow(final AutosaveLog log) {
+        try {
+            log.delete();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the last edits and closes logs, that stay on disk for recovery
+     */
+    private void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        flushAll();
+        for (final AutosaveLog log : logs) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
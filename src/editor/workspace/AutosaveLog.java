@@ -0,0 +1,559 @@
+package editor.workspace;
+
+import editor.document.MappedText;
+import editor.document.Rope;
+import editor.document.TextDocument;
+import editor.io.DocumentWriter;
+import editor.io.TextEncoding;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of edits of one document, that lets its unsaved changes be recovered after crash.
+ * <p>
+ * Log starts with header, that describes base text: empty text, file of document or snapshot of document,
+ * and encoding of file, so recovered document is read and saved in the same encoding.
+ * Every edit is appended as record with its offset, length of removed text, inserted characters
+ * and checksum, so a torn record at the end of log is detected and ignored by recovery.
+ * Edits are queued by event dispatch thread and written by {@link Autosave} in batches.
+ * </p>
+ * <p>
+ * When log grows larger than its base, it is compacted: snapshot of document is written as UTF-8
+ * and log starts again from it. Snapshot and new log are written aside and replace the old ones
+ * atomically, so log is valid at every moment.
+ * </p>
+ */
+final class AutosaveLog implements DocumentListener {
+    private static final int MAGIC = 0x54454c32;
+    private static final byte BASE_EMPTY = 0;
+    private static final byte BASE_FILE = 1;
+    private static final byte BASE_SNAPSHOT = 2;
+
+    /**
+     * Checksum, offset, length of removed text and number of inserted characters
+     */
+    private static final int RECORD_HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final Path log;
+    private final Object lock = new Object();
+
+    /**
+     * Edits and new bases, that aren't written yet
+     */
+    private List<Object> pending = new ArrayList<>();
+
+    /**
+     * Path and encoding of document, that are known to event dispatch thread
+     */
+    private Path path;
+    private TextEncoding encoding;
+    private boolean started;
+
+    /**
+     * Log is compacted with snapshot, that is taken on the next edit
+     */
+    private volatile boolean snapshotRequested;
+    private volatile boolean failed;
+
+    private FileChannel channel;
+    private FileLock fileLock;
+    private int generation;
+    private long size;
+    private long headerBytes;
+    private long baseBytes;
+    private long written;
+    private ByteBuffer buffer;
+    private final CRC32 checksum = new CRC32();
+
+    /**
+     * Header of recovered log
+     */
+    private byte baseKind;
+    private long baseTime;
+    private Path basePath;
+    private TextEncoding baseEncoding;
+
+    /**
+     * Constructs log, that is created on the first edit
+     *
+     * @param log path of log file
+     * @param path file of document, or {@code null}, if document was never saved
+     * @param encoding encoding of file
+     */
+    AutosaveLog(final Path log, final Path path, final TextEncoding encoding) {
+        this.log = log;
+        this.path = path;
+        this.encoding = encoding;
+    }
+
+    private static final class Edit {
+        private final int offset;
+        private final int removed;
+        private final Rope inserted;
+
+        private Edit(final int offset, final int removed, final Rope inserted) {
+            this.offset = offset;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+    }
+
+    /**
+     * Replaces base of log, edits before it aren't needed anymore
+     */
+    private static final class Base {
+        private final Path path;
+        private final TextEncoding encoding;
+        private final Rope snapshot;
+
+        private Base(final Path path, final TextEncoding encoding, final Rope snapshot) {
+            this.path = path;
+            this.encoding = encoding;
+            this.snapshot = snapshot;
+        }
+    }
+
+    @Override
+    public void insertUpdate(final DocumentEvent e) {
+        final TextDocument document = (TextDocument) e.getDocument();
+        final Rope inserted = document.snapshot().subSequence(e.getOffset(), e.getOffset() + e.getLength());
+        append(new Edit(e.getOffset(), 0, inserted), document);
+    }
+
+    @Override
+    public void removeUpdate(final DocumentEvent e) {
+        append(new Edit(e.getOffset(), e.getLength(), Rope.empty()), (TextDocument) e.getDocument());
+    }
+
+    @Override
+    public void changedUpdate(final DocumentEvent e) {
+    }
+
+    /**
+     * The first edit starts log from file of document, that equals text before it.
+     * Snapshot for compaction is taken right after edit, so it is consistent with the queued edits
+     */
+    private void append(final Edit edit, final TextDocument document) {
+        if (failed) {
+            return;
+        }
+        synchronized (lock) {
+            if (!started) {
+                started = true;
+                pending.add(new Base(path, encoding, null));
+            }
+            pending.add(edit);
+            if (snapshotRequested) {
+                snapshotRequested = false;
+                pending.add(new Base(path, encoding, document.snapshot()));
+            }
+        }
+    }
+
+    /**
+     * Restarts log from saved file, it is called from event dispatch thread, when document is saved
+     *
+     * @param path file, that document was saved to
+     * @param encoding encoding of saved file
+     * @param unchanged {@code true}, if document wasn't edited since its text was saved
+     */
+    void saved(final Path path, final TextEncoding encoding, final boolean unchanged) {
+        synchronized (lock) {
+            this.path = path;
+            this.encoding = encoding;
+            if (unchanged) {
+                pending.clear();
+                pending.add(new Base(path, encoding, null));
+                started = true;
+            } else {
+                snapshotRequested = true;
+            }
+        }
+    }
+
+    /**
+     * Writes queued edits and syncs log to disk
+     *
+     * @param minCompactBytes log, that is larger than its base and this size, is compacted
+     * @return number of written bytes
+     * @throws IOException if log can't be written
+     */
+    long flush(final long minCompactBytes) throws IOException {
+        final List<Object> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        final long before = written;
+        for (final Object entry : batch) {
+            if (entry instanceof Base) {
+                rebase((Base) entry);
+            } else {
+                write((Edit) entry);
+            }
+        }
+        flushBuffer();
+        channel.force(false);
+        if (size > Math.max(minCompactBytes, baseBytes)) {
+            snapshotRequested = true;
+        }
+        return written - before;
+    }
+
+    /**
+     * Starts new log from base in temporary file, that atomically replaces log
+     */
+    private void rebase(final Base base) throws IOException {
+        flushBuffer();
+        final Path snapshot;
+        final byte kind;
+        if (base.snapshot != null) {
+            snapshot = snapshotPath(generation + 1);
+            new DocumentWriter(TextEncoding.DEFAULT, progress -> {
+            }).write(base.snapshot, snapshot);
+            kind = BASE_SNAPSHOT;
+            baseBytes = Files.size(snapshot);
+        } else {
+            snapshot = null;
+            kind = base.path == null ? BASE_EMPTY : BASE_FILE;
+            baseBytes = base.path == null ? 0 : Files.size(base.path);
+        }
+        Files.createDirectories(log.getParent());
+        final Path temp = log.resolveSibling(log.getFileName() + ".tmp");
+        final byte[] header = header(kind, base, snapshot != null ? generation + 1 : generation);
+        Files.write(temp, header);
+        try (FileChannel synced = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            synced.force(true);
+        }
+        closeChannel();
+        try {
+            Files.move(temp, log, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, log, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(snapshotPath(generation));
+        if (snapshot != null) {
+            generation++;
+        }
+        open();
+        size = header.length;
+        headerBytes = header.length;
+        written += header.length;
+    }
+
+    private byte[] header(final byte kind, final Base base, final int generation) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(generation);
+            out.writeByte(kind);
+            out.writeLong(kind == BASE_FILE ? Files.getLastModifiedTime(base.path).toMillis() : 0);
+            writeString(out, base.path == null ? "" : base.path.toAbsolutePath().toString());
+            writeString(out, base.encoding.getCharset().name());
+            out.writeBoolean(base.encoding.hasBom());
+            // mixed separators are written as empty separator
+            writeString(out, base.encoding.isMixed() ? "" : base.encoding.getLineSeparator());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(final DataOutputStream out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads string of header and counts its bytes
+     */
+    private String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > channel.size()) {
+            throw new IOException("Corrupted header of autosave log: " + log);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        headerBytes += Integer.BYTES + length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        }
+    }
+
+    /**
+     * Small records are batched in buffer, larger ones are streamed in chunks and their header is written last
+     */
+    private void write(final Edit edit) throws IOException {
+        final int chars = edit.inserted.length();
+        if (chars <= BUFFER_BYTES / 4) {
+            if (buffer.remaining() < RECORD_HEADER_BYTES + 2 * chars) {
+                flushBuffer();
+            }
+            final int start = buffer.position();
+            buffer.putInt(0).putInt(edit.offset).putInt(edit.removed).putInt(chars);
+            buffer.asCharBuffer().put(edit.inserted.toString());
+            buffer.position(buffer.position() + 2 * chars);
+            checksum.reset();
+            checksum.update(buffer.array(), start + Integer.BYTES, buffer.position() - start - Integer.BYTES);
+            buffer.putInt(start, (int) checksum.getValue());
+            return;
+        }
+        flushBuffer();
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES)
+                .putInt(0).putInt(edit.offset).putInt(edit.removed).putInt(chars);
+        checksum.reset();
+        checksum.update(header.array(), Integer.BYTES, RECORD_HEADER_BYTES - Integer.BYTES);
+        final long start = size;
+        size += RECORD_HEADER_BYTES;
+        final char[] chunk = new char[BUFFER_BYTES / 2];
+        for (int from = 0; from < chars; from += chunk.length) {
+            final int to = Math.min(chars, from + chunk.length);
+            edit.inserted.getChars(from, to, chunk, 0);
+            buffer.asCharBuffer().put(chunk, 0, to - from);
+            buffer.position(2 * (to - from));
+            checksum.update(buffer.array(), 0, buffer.position());
+            flushBuffer();
+        }
+        header.putInt(0, (int) checksum.getValue());
+        written += write(header.rewind(), start);
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffer != null && buffer.position() > 0) {
+            buffer.flip();
+            final long bytes = write(buffer, size);
+            size += bytes;
+            written += bytes;
+            buffer.clear();
+        }
+    }
+
+    private long write(final ByteBuffer bytes, final long position) throws IOException {
+        long written = 0;
+        while (bytes.hasRemaining()) {
+            written += channel.write(bytes, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * Opens existing log for recovery, log is locked, so other instance of editor doesn't recover it too
+     *
+     * @return {@code true}, if log isn't used by another instance
+     * @throws IOException if log can't be opened
+     */
+    boolean lock() throws IOException {
+        open();
+        if (fileLock == null) {
+            closeChannel();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replays log over its base and truncates torn edits at its end. Log continues from recovered text
+     *
+     * @return recovered text
+     * @throws IOException if log is corrupted or its base has been changed
+     */
+    Rope replay() throws IOException {
+        // stream isn't closed, because it would close channel, that stays open for logging
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0)), BUFFER_BYTES));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an autosave log: " + log);
+        }
+        generation = in.readInt();
+        baseKind = in.readByte();
+        baseTime = in.readLong();
+        headerBytes = 2L * Integer.BYTES + 1 + Long.BYTES;
+        final String base = readString(in);
+        basePath = base.isEmpty() ? null : Path.of(base);
+        final Charset charset = Charset.forName(readString(in));
+        final boolean bom = in.readBoolean();
+        headerBytes++;
+        final String separator = readString(in);
+        baseEncoding = separator.isEmpty()
+                ? new TextEncoding(charset, bom, "\n").withMixedLineSeparators()
+                : new TextEncoding(charset, bom, separator);
+        size = headerBytes;
+        Rope text = readBase();
+        final byte[] header = new byte[RECORD_HEADER_BYTES];
+        while (size + RECORD_HEADER_BYTES <= channel.size()) {
+            in.readFully(header);
+            final ByteBuffer fields = ByteBuffer.wrap(header);
+            final int crc = fields.getInt();
+            final int offset = fields.getInt();
+            final int removed = fields.getInt();
+            final int chars = fields.getInt();
+            if (chars < 0 || offset < 0 || removed < 0 || offset > text.length() - removed
+                    || size + RECORD_HEADER_BYTES + 2L * chars > channel.size()) {
+                break;
+            }
+            final byte[] payload = new byte[2 * chars];
+            in.readFully(payload);
+            checksum.reset();
+            checksum.update(header, Integer.BYTES, RECORD_HEADER_BYTES - Integer.BYTES);
+            checksum.update(payload);
+            if ((int) checksum.getValue() != crc) {
+                break;
+            }
+            final String inserted = ByteBuffer.wrap(payload).asCharBuffer().toString();
+            text = text.delete(offset, offset + removed).insert(offset, inserted);
+            size += RECORD_HEADER_BYTES + payload.length;
+        }
+        channel.truncate(size);
+        path = basePath;
+        encoding = baseEncoding;
+        started = true;
+        return text;
+    }
+
+    private Rope readBase() throws IOException {
+        switch (baseKind) {
+            case BASE_EMPTY:
+                return Rope.empty();
+            case BASE_FILE:
+                if (!Files.isRegularFile(basePath)
+                        || Files.getLastModifiedTime(basePath).toMillis() != baseTime) {
+                    throw new IOException("File was changed after autosave: " + basePath);
+                }
+                baseBytes = Files.size(basePath);
+                return Workspace.readText(basePath, baseEncoding);
+            case BASE_SNAPSHOT:
+                final Path snapshot = snapshotPath(generation);
+                baseBytes = Files.size(snapshot);
+                return Rope.wrap(MappedText.open(snapshot));
+            default:
+                throw new IOException("Unknown base of autosave log: " + log);
+        }
+    }
+
+    /**
+     * Gets file of recovered document
+     *
+     * @return path to file, or {@code null}, if document wasn't saved
+     */
+    Path getBasePath() {
+        return basePath;
+    }
+
+    /**
+     * Gets encoding of file of recovered document
+     *
+     * @return encoding, that document is saved in
+     */
+    TextEncoding getBaseEncoding() {
+        return baseEncoding;
+    }
+
+    /**
+     * Checks, if recovered log has edits over its base
+     *
+     * @return {@code true}, if document differs from its file or is not empty
+     */
+    boolean hasEdits() {
+        return baseKind == BASE_SNAPSHOT || size > headerBytes;
+    }
+
+    /**
+     * Stops logging, it is called, when log can't be written
+     */
+    void fail() {
+        failed = true;
+        synchronized (lock) {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Closes and deletes log and its snapshot
+     *
+     * @throws IOException if log can't be deleted
+     */
+    void delete() throws IOException {
+        fail();
+        closeChannel();
+        Files.deleteIfExists(log);
+        Files.deleteIfExists(snapshotPath(generation));
+    }
+
+    /**
+     * Moves log and its snapshots to directory, so log, that can't be replayed, is kept for user
+     *
+     * @param directory target directory, it is created, if it doesn't exist
+     * @return new path of log
+     * @throws IOException if log can't be moved
+     */
+    Path moveTo(final Path directory) throws IOException {
+        fail();
+        closeChannel();
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(log.getParent(),
+                log.getFileName() + ".*.snapshot")) {
+            for (final Path snapshot : snapshots) {
+                Files.move(snapshot, directory.resolve(snapshot.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        final Path moved = directory.resolve(log.getFileName());
+        Files.move(log, moved, StandardCopyOption.REPLACE_EXISTING);
+        return moved;
+    }
+
+    /**
+     * Closes log, that stays on disk for recovery
+     *
+     * @throws IOException if log can't be closed
+     */
+    void close() throws IOException {
+        closeChannel();
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            fileLock = null;
+        }
+    }
+
+    private Path snapshotPath(final int generation) {
+        return log.resolveSibling(log.getFileName() + "." + generation + ".snapshot");
+    }
+}
@@ -0,0 +1,292 @@
+package editor.workspace;
+
+import editor.document.EditJournal;
+import editor.document.Rope;
+import editor.document.TextDocument;
+import editor.io.TextEncoding;
+
+import java.nio.file.Path;
+
+/**
+ * Document of one tab of Text Editor.
+ * <p>
+ * Text of inactive document may be evicted from heap by {@link Workspace}: unmodified text is dropped
+ * and read from its file again, modified text is spilled to temporary file. Evicted document
+ * is restored, when its tab is activated, so document keeps its file, caret, modification state
+ * and undo history, that is spilled to file, while its text is evicted.
+ * </p>
+ * <p>
+ * Edits of document are written to {@link AutosaveLog}, that listens to its text, until document is closed.
+ * </p>
+ */
+public final class OpenDocument {
+    private static final long NO_VERSION = -1;
+    private static final long NO_LENGTH = -1;
+
+    private Path path;
+    private TextEncoding encoding;
+
+    /**
+     * Text of document, or {@code null}, if it is evicted
+     */
+    private TextDocument document;
+
+    /**
+     * Temporary file with modified text of document, or {@code null}, if document equals its file
+     */
+    private Path spill;
+
+    /**
+     * Undo history of evicted text, or {@code null}, if text isn't evicted
+     */
+    private EditJournal journal;
+
+    private final AutosaveLog log;
+
+    /**
+     * Versions of {@code document}, that are equal to content of file and of spill
+     */
+    private long savedVersion;
+    private long spilledVersion = NO_VERSION;
+
+    /**
+     * Length of file, that text ends at, or {@code NO_LENGTH}, if it isn't known
+     */
+    private long fileLength = NO_LENGTH;
+
+    private int caret;
+    private long lastActive;
+
+    OpenDocument(final Path path, final TextDocument document, final TextEncoding encoding, final AutosaveLog log) {
+        this.path = path;
+        this.encoding = encoding;
+        this.document = document;
+        this.savedVersion = document.getVersion();
+        this.log = log;
+        document.addDocumentListener(log);
+    }
+
+    /**
+     * Gets file of document
+     *
+     * @return path to file, or {@code null}, if document was never saved
+     */
+    public synchronized Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets encoding of file
+     *
+     * @return encoding, that was detected, when file was opened, or that file was saved in
+     */
+    public synchronized TextEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Gets title of tab
+     *
+     * @return name of file, or {@code "Untitled"} for new document
+     */
+    public synchronized String getTitle() {
+        return path == null ? "Untitled" : path.getFileName().toString();
+    }
+
+    /**
+     * Checks, if document has changes, that weren't saved to its file
+     *
+     * @return {@code true}, if text differs from file
+     */
+    public synchronized boolean isModified() {
+        return document == null ? spill != null : document.getVersion() != savedVersion;
+    }
+
+    /**
+     * Gets position of caret, that was saved, when document was hidden
+     *
+     * @return position of caret
+     */
+    public synchronized int getCaret() {
+        return caret;
+    }
+
+    /**
+     * Saves position of caret, when document is hidden
+     *
+     * @param caret position of caret
+     */
+    public synchronized void setCaret(final int caret) {
+        this.caret = caret;
+    }
+
+    /**
+     * Gets length of file, that text ends at, so file is followed from it
+     *
+     * @return length of file in bytes, when text was read from it or when followed text was appended,
+     *         or {@code -1}, if it isn't known, like after saving
+     */
+    public synchronized long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * Marks document as saved to file, it is called from event dispatch thread, that edits document,
+     * so autosave log is restarted from file only if there are no edits after saved version
+     *
+     * @param path file, that document was saved to
+     * @param encoding encoding, that document was saved in
+     * @param version version of document, whose text was saved
+     */
+    public synchronized void markSaved(final Path path, final TextEncoding encoding, final long version) {
+        this.path = path;
+        this.encoding = encoding;
+        this.savedVersion = version;
+        this.fileLength = NO_LENGTH;
+        log.saved(path, encoding, document != null && document.getVersion() == version);
+    }
+
+    /**
+     * Appends text, that was appended to followed file, it is called from event dispatch thread.
+     * Unmodified document stays unmodified, so its autosave log is restarted from file.
+     * Evicted document is read from file again, so text isn't appended to it
+     *
+     * @param text appended text
+     * @param fileLength length of file after appended text
+     */
+    public void append(final Rope text, final long fileLength) {
+        final TextDocument document = getDocument();
+        if (document == null) {
+            return;
+        }
+        final boolean saved = isSaved();
+        document.append(text);
+        synchronized (this) {
+            this.fileLength = fileLength;
+            if (saved) {
+                savedVersion = document.getVersion();
+                log.saved(path, encoding, true);
+            }
+        }
+    }
+
+    /**
+     * Replaces text with text of rotated or truncated followed file, it is called from event dispatch thread.
+     * Document, that has only the end of file, is modified, so file isn't overwritten by it silently
+     *
+     * @param text text of file, or of its end
+     * @param fileLength length of file after text
+     * @param complete {@code true}, if text is the whole file
+     */
+    public void reload(final Rope text, final long fileLength, final boolean complete) {
+        final TextDocument document = getDocument();
+        if (document == null) {
+            return;
+        }
+        document.load(text);
+        synchronized (this) {
+            this.fileLength = fileLength;
+            savedVersion = complete ? document.getVersion() : NO_VERSION;
+            log.saved(path, encoding, complete);
+        }
+    }
+
+    /**
+     * Marks recovered document as modified, because its changes weren't saved to file
+     */
+    synchronized void markRecovered() {
+        savedVersion = NO_VERSION;
+    }
+
+    AutosaveLog getLog() {
+        return log;
+    }
+
+    synchronized TextDocument getDocument() {
+        return document;
+    }
+
+    synchronized Path getSpill() {
+        return spill;
+    }
+
+    synchronized long getLastActive() {
+        return lastActive;
+    }
+
+    synchronized void setLastActive(final long lastActive) {
+        this.lastActive = lastActive;
+    }
+
+    synchronized void setFileLength(final long fileLength) {
+        this.fileLength = fileLength;
+    }
+
+    /**
+     * Checks, if text equals content of file
+     */
+    synchronized boolean isSaved() {
+        return document.getVersion() == savedVersion;
+    }
+
+    /**
+     * Checks, if text equals content of spill
+     */
+    synchronized boolean isSpilled() {
+        return document.getVersion() == spilledVersion;
+    }
+
+    /**
+     * Drops text of document. Unmodified document forgets its spill, so it is read from file again
+     *
+     * @param spill file with text of document, or {@code null}, if text equals file
+     * @return previous spill, that isn't used anymore, or {@code null}
+     */
+    synchronized Path evict(final Path spill) {
+        final Path previous = this.spill;
+        this.spill = spill;
+        journal = document.getJournal();
+        journal.spillAll();
+        document.removeDocumentListener(log);
+        document = null;
+        return previous == null || previous.equals(spill) ? null : previous;
+    }
+
+    /**
+     * Drops text and undo history of closed document
+     *
+     * @return spill, that isn't used anymore, or {@code null}
+     */
+    synchronized Path close() {
+        final Path previous = spill;
+        if (document != null) {
+            document.removeDocumentListener(log);
+        }
+        (document == null ? journal : document.getJournal()).close();
+        spill = null;
+        journal = null;
+        document = null;
+        return previous;
+    }
+
+    /**
+     * Sets restored text of document
+     *
+     * @param document text, that was read from spill or from file
+     */
+    synchronized void restore(final TextDocument document) {
+        this.document = document;
+        document.addDocumentListener(log);
+        if (journal != null) {
+            document.setJournal(journal);
+            journal = null;
+        }
+        if (spill == null) {
+            savedVersion = document.getVersion();
+            spilledVersion = NO_VERSION;
+        } else {
+            savedVersion = NO_VERSION;
+            spilledVersion = document.getVersion();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package editor.workspace;
+
+import editor.document.MappedText;
+import editor.document.Rope;
+import editor.document.TextDocument;
+import editor.io.DocumentReader;
+import editor.io.DocumentWriter;
+import editor.io.MixedLineSeparatorsException;
+import editor.io.TextEncoding;
+import editor.metrics.Counter;
+import editor.metrics.LatencyHistogram;
+import editor.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Open documents of Text Editor, whose total heap is limited by budget.
+ * <p>
+ * Document is activated, when its tab is selected. After every activation documents, that weren't
+ * active for the longest time, are evicted, while estimated heap of all documents exceeds budget.
+ * Unmodified document is dropped and read from its file again, large files are mapped again,
+ * so they are restored without decoding. Modified document is spilled as UTF-8, that is about twice
+ * as compact, as characters on heap, to temporary file, that is memory-mapped on restore.
+ * Activated document and document, that is shown, are never evicted, so they may exceed budget alone.
+ * </p>
+ * <p>
+ * Edits of documents are logged by {@link Autosave}, so documents, that weren't closed, are recovered
+ * by {@link #recover()} after crash.
+ * </p>
+ * <p>
+ * Documents are read, restored and evicted in background threads, methods are thread-safe.
+ * </p>
+ */
+public final class Workspace {
+    /**
+     * Files of this size and larger are opened in large-file mode
+     */
+    private static final long LARGE_FILE_THRESHOLD = 16L << 20;
+
+    private static final Counter EVICTED = Metrics.getInstance().counter("documents.evicted");
+    private static final Counter SPILLED_BYTES = Metrics.getInstance().counter("documents.spilled.bytes");
+    private static final LatencyHistogram RESTORE_TIME = Metrics.getInstance().histogram("documents.restore");
+
+    private final long budget;
+    private final Autosave autosave;
+    private final List<OpenDocument> documents = new ArrayList<>();
+    private volatile OpenDocument shown;
+    private volatile long heapBytes;
+    private long clock;
+    private Path spillDirectory;
+
+    /**
+     * Autosave logs, that couldn't be replayed by {@link #recover()} and were kept aside
+     */
+    private final List<Path> unrecoverable = new ArrayList<>();
+
+    /**
+     * Constructs workspace without documents
+     *
+     * @param budget maximal estimated heap of all documents in bytes
+     * @param autosave autosave of edits
+     */
+    public Workspace(final long budget, final Autosave autosave) {
+        this.budget = budget;
+        this.autosave = autosave;
+        Metrics.getInstance().gauge("documents.heapBytes", () -> heapBytes);
+    }
+
+    /**
+     * Adds document, that isn't related to file, like empty document of new tab
+     *
+     * @param document text of document
+     * @return open document
+     */
+    public synchronized OpenDocument add(final TextDocument document) {
+        final OpenDocument added = new OpenDocument(null, document, TextEncoding.DEFAULT,
+                autosave.create(null, TextEncoding.DEFAULT));
+        documents.add(added);
+        return added;
+    }
+
+    /**
+     * Opens file, if it isn't opened yet.
+     * <p>
+     * Large files in UTF-8 or ISO-8859-1 are opened in large-file mode: file is memory-mapped and becomes
+     * content of {@link TextDocument} without decoding it on heap, so only pages, that are displayed
+     * or searched, are decoded.
+     * </p>
+     * <p>
+     * Encoding of file is detected by {@link TextEncoding#detect(Path)}. If file turns out to be malformed
+     * in guessed charset after detected prefix, it is read again in fallback charset, and if it has different
+     * line separators after prefix, it is read again with mixed separators, that are kept as they are.
+     * </p>
+     *
+     * @param path path to regular file
+     * @return new or already open document of file
+     * @throws IOException if file can't be read
+     */
+    public OpenDocument open(final Path path) throws IOException {
+        final OpenDocument open = find(path);
+        if (open != null) {
+            return open;
+        }
+        TextEncoding encoding = TextEncoding.detect(path);
+        final long length = Files.size(path);
+        TextDocument document = null;
+        while (document == null) {
+            try {
+                document = read(path, encoding, length);
+            } catch (MixedLineSeparatorsException e) {
+                encoding = encoding.withMixedLineSeparators();
+            } catch (CharacterCodingException e) {
+                if (encoding.fallback() == null) {
+                    throw e;
+                }
+                encoding = encoding.fallback();
+            }
+        }
+        final OpenDocument opened = new OpenDocument(path, document, encoding, autosave.create(path, encoding));
+        opened.setFileLength(length);
+        synchronized (this) {
+            documents.add(opened);
+        }
+        return opened;
+    }
+
+    /**
+     * Finds open document of file
+     *
+     * @param path path to file
+     * @return document, or {@code null}, if file isn't opened
+     */
+    public synchronized OpenDocument find(final Path path) {
+        for (final OpenDocument document : documents) {
+            if (path.equals(document.getPath())) {
+                return document;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recovers documents, whose changes weren't saved, when editor was closed or crashed, from their autosave logs.
+     * Logs, that can't be replayed, like logs of files, that were changed since, are never deleted:
+     * they are kept aside and reported by {@link #getUnrecoverable()}
+     *
+     * @return recovered modified documents
+     * @throws IOException if autosave directory can't be read
+     */
+    public List<OpenDocument> recover() throws IOException {
+        final List<OpenDocument> recovered = new ArrayList<>();
+        for (final AutosaveLog log : autosave.recover()) {
+            try {
+                final Rope text = log.replay();
+                if (!log.hasEdits()) {
+                    autosave.delete(log);
+                    continue;
+                }
+                final TextDocument document = new TextDocument();
+                document.load(text);
+                final OpenDocument opened = new OpenDocument(log.getBasePath(), document, log.getBaseEncoding(), log);
+                opened.markRecovered();
+                autosave.register(log);
+                synchronized (this) {
+                    documents.add(opened);
+                }
+                recovered.add(opened);
+            } catch (IOException e) {
+                e.printStackTrace();
+                try {
+                    final Path kept = autosave.keep(log);
+                    synchronized (this) {
+                        unrecoverable.add(kept);
+                    }
+                } catch (IOException moveFailure) {
+                    moveFailure.printStackTrace();
+                }
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * Gets autosave logs, that couldn't be replayed, like logs of files, that were changed after autosave.
+     * Their edits aren't applied to any document, but they aren't deleted, so user can inspect them
+     *
+     * @return paths of kept logs
+     */
+    public synchronized List<Path> getUnrecoverable() {
+        return new ArrayList<>(unrecoverable);
+    }
+
+    /**
+     * Restores text of document, if it was evicted, and evicts other documents, while they exceed budget
+     *
+     * @param activated document of selected tab
+     * @return text of document
+     * @throws IOException if evicted text can't be read or other documents can't be spilled
+     */
+    public synchronized TextDocument activate(final OpenDocument activated) throws IOException {
+        activated.setLastActive(++clock);
+        TextDocument document = activated.getDocument();
+        if (document == null) {
+            final long start = System.nanoTime();
+            final Path spill = activated.getSpill();
+            if (spill != null) {
+                document = new TextDocument();
+                document.load(Rope.wrap(MappedText.open(spill)));
+            } else if (activated.getPath() == null) {
+                document = new TextDocument();
+            } else {
+                final long length = Files.size(activated.getPath());
+                document = read(activated.getPath(), activated.getEncoding(), length);
+                activated.setFileLength(length);
+            }
+            activated.restore(document);
+            RESTORE_TIME.recordSince(start);
+        }
+        evictOverBudget(activated);
+        return document;
+    }
+
+    /**
+     * Sets document, that is shown in editor now, it is called from event dispatch thread
+     *
+     * @param document shown document
+     */
+    public void show(final OpenDocument document) {
+        shown = document;
+    }
+
+    /**
+     * Closes document and deletes its spill, undo history and autosave log
+     *
+     * @param closed document of closed tab
+     * @throws IOException if spill can't be deleted
+     */
+    public synchronized void close(final OpenDocument closed) throws IOException {
+        documents.remove(closed);
+        autosave.delete(closed.getLog());
+        final Path unused = closed.close();
+        if (unused != null) {
+            Files.deleteIfExists(unused);
+        }
+    }
+
+    private static TextDocument read(final Path path, final TextEncoding encoding, final long length)
+            throws IOException {
+        final TextDocument document = new TextDocument();
+        document.load(readText(path, encoding, length));
+        return document;
+    }
+
+    /**
+     * Reads file, that is mapped in large-file mode, if its charset can be mapped
+     *
+     * @param path path to regular file
+     * @param encoding encoding of file
+     * @return text of file
+     * @throws IOException if file can't be read or isn't valid in encoding
+     */
+    static Rope readText(final Path path, final TextEncoding encoding) throws IOException {
+        return readText(path, encoding, Files.size(path));
+    }
+
+    /**
+     * Reads the first bytes of file, so text ends exactly at offset, that file is followed from,
+     * even if file is appended to, while it is read
+     */
+    private static Rope readText(final Path path, final TextEncoding encoding, final long length)
+            throws IOException {
+        if (length >= LARGE_FILE_THRESHOLD && MappedText.canMap(encoding.getCharset())) {
+            final MappedText text = MappedText.open(path, encoding.getCharset(), encoding.getBom().length, length,
+                    !encoding.isMixed());
+            if (!encoding.isMixed() && !text.isSeparatedBy(encoding.getLineSeparator())) {
+                throw new MixedLineSeparatorsException("File " + path + " has different line separators");
+            }
+            return Rope.wrap(text);
+        }
+        return new DocumentReader(encoding).read(path, length);
+    }
+
+    private void evictOverBudget(final OpenDocument activated) throws IOException {
+        final List<OpenDocument> candidates = new ArrayList<>();
+        long total = 0;
+        for (final OpenDocument document : documents) {
+            final TextDocument text = document.getDocument();
+            if (text != null) {
+                total += text.estimateHeapBytes();
+                if (document != activated && document != shown) {
+                    candidates.add(document);
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingLong(OpenDocument::getLastActive));
+        for (int i = 0; i < candidates.size() && total > budget; i++) {
+            total -= candidates.get(i).getDocument().estimateHeapBytes();
+            evict(candidates.get(i));
+        }
+        heapBytes = total;
+    }
+
+    /**
+     * Spill is written only if text was changed since it was read from file or from the previous spill
+     */
+    private void evict(final OpenDocument evicted) throws IOException {
+        final Path spill;
+        if (evicted.isSaved()) {
+            spill = null;
+        } else if (evicted.isSpilled()) {
+            spill = evicted.getSpill();
+        } else {
+            spill = spill(evicted.getDocument().snapshot());
+        }
+        final Path unused = evicted.evict(spill);
+        if (unused != null) {
+            Files.deleteIfExists(unused);
+        }
+        EVICTED.increment();
+    }
+
+    private Path spill(final Rope text) throws IOException {
+        if (spillDirectory == null) {
+            spillDirectory = Files.createTempDirectory("text-editor-");
+            spillDirectory.toFile().deleteOnExit();
+        }
+        final Path spill = Files.createTempFile(spillDirectory, "document-", ".txt");
+        spill.toFile().deleteOnExit();
+        new DocumentWriter(TextEncoding.DEFAULT, progress -> {
+        }).write(text, spill);
+        SPILLED_BYTES.add(Files.size(spill));
+        return spill;
+    }
+}
@@ -0,0 +1,110 @@
+package editor.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares index after random edits with lines of {@link StringBuilder}, that is edited the same way
+ */
+class LineIndexTest {
+    private static final int EDITS = 3000;
+
+    @Test
+    void randomEdits() {
+        final Random random = new Random(17);
+        final StringBuilder text = new StringBuilder(randomText(random, 5000));
+        final LineIndex index = LineIndex.of(text);
+        check(random, text, index);
+        for (int edit = 0; edit < EDITS; edit++) {
+            final int offset = random.nextInt(text.length() + 1);
+            if (random.nextBoolean()) {
+                final String inserted = randomText(random, random.nextInt(random.nextInt(10) == 0 ? 2000 : 20));
+                text.insert(offset, inserted);
+                index.insert(offset, inserted);
+            } else {
+                final int limit = random.nextInt(10) == 0 ? 2000 : 20;
+                final int length = Math.min(text.length() - offset, random.nextInt(limit));
+                index.remove(offset, length);
+                text.delete(offset, offset + length);
+            }
+            check(random, text, index);
+        }
+    }
+
+    @Test
+    void anchorsFollowLines() {
+        final Random random = new Random(19);
+        final StringBuilder text = new StringBuilder(randomText(random, 2000));
+        final LineIndex index = LineIndex.of(text);
+        // ids of lines, anchor of each line is made with its id as object
+        final List<Integer> ids = new ArrayList<>();
+        final List<LineIndex.Anchor<Integer>> anchors = new ArrayList<>();
+        for (int line = 0; line < index.getLineCount(); line++) {
+            final Integer id = line;
+            ids.add(id);
+            anchors.add(index.anchor(line, id, null));
+        }
+        for (int edit = 0; edit < EDITS; edit++) {
+            final int offset = random.nextInt(text.length() + 1);
+            if (random.nextBoolean()) {
+                final String inserted = randomText(random, random.nextInt(30));
+                text.insert(offset, inserted);
+                final int line = index.insert(offset, inserted);
+                for (int i = 1; i <= lineBreaks(inserted); i++) {
+                    final Integer id = anchors.size();
+                    ids.add(line + i, id);
+                    anchors.add(index.anchor(line + i, id, null));
+                }
+            } else {
+                final int length = Math.min(text.length() - offset, random.nextInt(30));
+                final int line = index.remove(offset, length);
+                final int merged = lineBreaks(text.substring(offset, offset + length));
+                ids.subList(line + 1, line + 1 + merged).clear();
+                text.delete(offset, offset + length);
+            }
+            assertEquals(ids.size(), index.getLineCount(), "Edit " + edit);
+            for (final LineIndex.Anchor<Integer> anchor : anchors) {
+                assertEquals(ids.indexOf(anchor.get()), index.getLine(anchor), "Edit " + edit);
+            }
+        }
+    }
+
+    private static void check(final Random random, final StringBuilder text, final LineIndex index) {
+        final List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        assertEquals(starts.size(), index.getLineCount());
+        for (int line = 0; line < starts.size(); line++) {
+            assertEquals(starts.get(line), index.getLineStart(line));
+        }
+        for (int i = 0; i < 16; i++) {
+            final int offset = random.nextInt(text.length() + 1);
+            int line = starts.size() - 1;
+            while (starts.get(line) > offset) {
+                line--;
+            }
+            assertEquals(line, index.getLineOfOffset(offset));
+        }
+    }
+
+    private static int lineBreaks(final String text) {
+        return (int) text.chars().filter(c -> c == '\n').count();
+    }
+
+    private static String randomText(final Random random, final int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = random.nextInt(8) == 0 ? '\n' : (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
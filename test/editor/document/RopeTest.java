@@ -0,0 +1,102 @@
+package editor.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares rope after random edits with {@link StringBuilder}, that is edited the same way
+ */
+class RopeTest {
+    private static final int EDITS = 3000;
+    private static final int LEAF_SIZE = 8192;
+
+    @Test
+    void randomEdits() {
+        final Random random = new Random(11);
+        final StringBuilder model = new StringBuilder(randomText(random, 50_000));
+        Rope rope = Rope.of(model);
+        for (int edit = 0; edit < EDITS; edit++) {
+            switch (random.nextInt(5)) {
+                case 0 -> {
+                    final int index = random.nextInt(model.length() + 1);
+                    final String text = randomText(random, randomLength(random));
+                    model.insert(index, text);
+                    rope = rope.insert(index, text);
+                }
+                case 1 -> {
+                    final int start = random.nextInt(model.length() + 1);
+                    final int end = Math.min(model.length(), start + randomLength(random));
+                    model.delete(start, end);
+                    rope = rope.delete(start, end);
+                }
+                case 2 -> {
+                    final String text = randomText(random, randomLength(random));
+                    model.append(text);
+                    rope = rope.append(Rope.of(text));
+                }
+                case 3 -> {
+                    final int start = random.nextInt(model.length() + 1);
+                    final int end = start + random.nextInt(model.length() - start + 1);
+                    assertEquals(model.substring(start, end), rope.subSequence(start, end).toString());
+                }
+                default -> {
+                    final Rope.Builder builder = new Rope.Builder();
+                    final int middle = random.nextInt(model.length() + 1);
+                    builder.append(rope.subSequence(0, middle));
+                    builder.append(model, middle, model.length());
+                    rope = builder.build();
+                }
+            }
+            assertEquals(model.length(), rope.length(), "Edit " + edit);
+            check(random, model, rope);
+        }
+        assertEquals(model.toString(), rope.toString());
+    }
+
+    @Test
+    void previousVersionsAreKept() {
+        final Random random = new Random(13);
+        final String origin = randomText(random, 5 * LEAF_SIZE);
+        final Rope first = Rope.of(origin);
+        Rope rope = first;
+        for (int edit = 0; edit < 100; edit++) {
+            final int index = random.nextInt(rope.length() + 1);
+            rope = random.nextBoolean() ? rope.insert(index, randomText(random, randomLength(random)))
+                    : rope.delete(index, Math.min(rope.length(), index + randomLength(random)));
+        }
+        assertEquals(origin, first.toString());
+        assertEquals(rope.toString(), rope.duplicate().toString());
+    }
+
+    private static void check(final Random random, final StringBuilder model, final Rope rope) {
+        for (int i = 0; i < 16 && model.length() > 0; i++) {
+            final int index = random.nextInt(model.length());
+            assertEquals(model.charAt(index), rope.charAt(index));
+        }
+        final int start = random.nextInt(model.length() + 1);
+        final int end = start + random.nextInt(Math.min(3 * LEAF_SIZE, model.length() - start) + 1);
+        final char[] expected = new char[end - start + 2];
+        final char[] actual = new char[end - start + 2];
+        model.getChars(start, end, expected, 1);
+        rope.getChars(start, end, actual, 1);
+        assertEquals(new String(expected), new String(actual));
+    }
+
+    /**
+     * Gets length of edit, that is usually short, but sometimes longer than leaf
+     */
+    private static int randomLength(final Random random) {
+        return random.nextInt(10) == 0 ? random.nextInt(3 * LEAF_SIZE) : random.nextInt(64);
+    }
+
+    private static String randomText(final Random random, final int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
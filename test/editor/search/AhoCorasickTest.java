@@ -0,0 +1,98 @@
+package editor.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares occurrences of keywords with the ones of alternation, whose longer keywords are first,
+ * so {@link Matcher#find()} finds the same leftmost-longest occurrences
+ */
+class AhoCorasickTest {
+    private static final String ALPHABET = "abcж";
+
+    @Test
+    void randomKeywords() {
+        final Random random = new Random(59);
+        for (int i = 0; i < 500; i++) {
+            final List<String> keywords = new ArrayList<>();
+            for (int k = 1 + random.nextInt(random.nextBoolean() ? 4 : 40); k > 0; k--) {
+                keywords.add(text(random, 1 + random.nextInt(6)));
+            }
+            final AhoCorasick automaton = AhoCorasick.compile(keywords);
+            final Pattern alternation = alternation(keywords);
+            final String text = text(random, 2000);
+            final List<Long> scanned = new ArrayList<>();
+            automaton.scan(text, (start, length) -> scanned.add(Finder.pack(start, length)));
+            assertEquals(expected(alternation, text, 0, text.length()), scanned, keywords::toString);
+
+            final int from = random.nextInt(text.length() + 1);
+            final int to = from + random.nextInt(text.length() - from + 1);
+            assertEquals(expected(alternation, text, from, to), found(automaton, text, from, to),
+                    () -> keywords + " in [" + from + ", " + to + ")");
+        }
+    }
+
+    @Test
+    void keywordsAreSuffixesOfEachOther() {
+        final List<String> keywords = List.of("a", "aa", "aaa", "ba", "aaab");
+        final String text = "aaaabaaaaab".repeat(100);
+        assertEquals(expected(alternation(keywords), text, 0, text.length()),
+                found(AhoCorasick.compile(keywords), text, 0, text.length()));
+    }
+
+    @Test
+    void emptyKeywordsAreIgnored() {
+        final AhoCorasick automaton = AhoCorasick.compile(List.of("", "ab"));
+        assertEquals(List.of(Finder.pack(1, 2)), found(automaton, "xab", 0, 3));
+        assertEquals(Finder.NOT_FOUND, AhoCorasick.compile(List.of("")).find("abc", 0, 3));
+    }
+
+    /**
+     * Finds occurrences in region one by one, as incremental search does
+     */
+    private static List<Long> found(final AhoCorasick automaton, final String text, final int from, final int to) {
+        final List<Long> result = new ArrayList<>();
+        int position = from;
+        while (true) {
+            final long found = automaton.find(text, position, to);
+            if (found == Finder.NOT_FOUND) {
+                return result;
+            }
+            result.add(found);
+            position = Finder.start(found) + Finder.length(found);
+        }
+    }
+
+    private static List<Long> expected(final Pattern alternation, final String text, final int from, final int to) {
+        final List<Long> result = new ArrayList<>();
+        final Matcher matcher = alternation.matcher(text).region(from, to);
+        while (matcher.find()) {
+            result.add(Finder.pack(matcher.start(), matcher.end() - matcher.start()));
+        }
+        return result;
+    }
+
+    private static Pattern alternation(final List<String> keywords) {
+        return Pattern.compile(keywords.stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .map(Pattern::quote)
+                .collect(Collectors.joining("|")));
+    }
+
+    private static String text(final Random random, final int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+}
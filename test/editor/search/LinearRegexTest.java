@@ -0,0 +1,134 @@
+package editor.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares occurrences, that engine finds, with {@link Matcher#find()} on random expressions of supported syntax
+ */
+class LinearRegexTest {
+    private static final String ALPHABET = "abc \n";
+    private static final String[] ATOMS = {"a", "b", "c", ".", "[ab]", "[^a]", "[a-c]", "\\s", "\\w", "\\n", " "};
+    private static final String[] QUANTIFIERS = {"*", "+", "?", "{2}", "{1,3}", "{0,2}", "{2,}"};
+
+    @Test
+    void randomExpressions() {
+        final Random random = new Random(23);
+        int checked = 0;
+        for (int i = 0; i < 3000; i++) {
+            final String regex = expression(random, 3);
+            // repetitions of expressions, that match empty string, are left to java.util.regex
+            if (LinearRegex.compile(Pattern.compile(regex)) != null) {
+                final String text = text(random, 200);
+                if (check(Pattern.compile(regex), text) && check(Pattern.compile(regex, Pattern.DOTALL), text)) {
+                    checked++;
+                }
+            }
+        }
+        assertTrue(checked > 1000, "Only " + checked + " expressions are supported");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "a*", "(a|ab)(c|bcd)", "(a|b)*?b", "a{0}", "(?:ab|a)(?:bc|c)*?",
+            "x*y|x", "a[^\\n]{0,5}b", "\\u0061\\x62", "(?<name>a)b"})
+    void knownExpressions(final String regex) {
+        final Random random = new Random(29);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(check(Pattern.compile(regex), text(random, 300) + "a.bxxy"));
+        }
+    }
+
+    /**
+     * Checks expression, whose DFA has more states, than cache keeps, so it is dropped while scanning
+     */
+    @Test
+    void manyStates() {
+        final Random random = new Random(31);
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            text.append(random.nextInt(64) == 0 ? 'c' : random.nextBoolean() ? 'a' : 'b');
+        }
+        assertTrue(check(Pattern.compile("a[ab]{18}c"), text.toString()));
+    }
+
+    @Test
+    void unsupportedSyntax() {
+        for (final String regex : new String[]{"^a", "a$", "\\ba", "a(?=b)", "(a)\\1", "a*+", "(?i)a", "(a*)*b",
+                "[\\w&&[^b]]", "\\Qa\\E"}) {
+            assertNull(LinearRegex.compile(Pattern.compile(regex)), regex);
+        }
+        assertNull(LinearRegex.compile(Pattern.compile("a", Pattern.CASE_INSENSITIVE)));
+    }
+
+    /**
+     * Compares occurrences with the ones of {@code java.util.regex}, unless it backtracks too long
+     *
+     * @return {@code false} if {@code java.util.regex} has exceeded its budget, and nothing was compared
+     */
+    private static boolean check(final Pattern pattern, final String text) {
+        final LinearRegex regex = LinearRegex.compile(pattern);
+        assertNotNull(regex, pattern.pattern());
+        final List<Long> expected = new ArrayList<>();
+        final Matcher matcher = pattern.matcher(new BudgetedText(text, text.length()));
+        try {
+            while (matcher.find()) {
+                expected.add(Finder.pack(matcher.start(), matcher.end() - matcher.start()));
+            }
+        } catch (SearchLimitException e) {
+            return false;
+        }
+        final List<Long> actual = new ArrayList<>();
+        regex.scan(text, (start, length) -> actual.add(Finder.pack(start, length)));
+        assertEquals(expected, actual, () -> "/" + pattern.pattern() + "/ in \"" + text + "\"");
+        return true;
+    }
+
+    private static String expression(final Random random, final int depth) {
+        final StringBuilder result = new StringBuilder(concatenation(random, depth));
+        while (random.nextInt(4) == 0) {
+            result.append('|').append(concatenation(random, depth));
+        }
+        return result.toString();
+    }
+
+    private static String concatenation(final Random random, final int depth) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = random.nextInt(4); i >= 0; i--) {
+            final int kind = random.nextInt(depth > 0 ? 6 : 4);
+            if (kind == 4) {
+                result.append('(').append(expression(random, depth - 1)).append(')');
+            } else if (kind == 5) {
+                result.append("(?:").append(expression(random, depth - 1)).append(')');
+            } else {
+                result.append(ATOMS[random.nextInt(ATOMS.length)]);
+            }
+            if (random.nextInt(3) == 0) {
+                result.append(QUANTIFIERS[random.nextInt(QUANTIFIERS.length)]);
+                if (random.nextInt(3) == 0) {
+                    result.append('?');
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    private static String text(final Random random, final int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,129 @@
+package editor.search;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares parallel scan with sequential {@link Matcher#find()} over the whole text
+ */
+class ParallelRegexScannerTest {
+    private static final int THREADS = 8;
+
+    private static ForkJoinPool pool;
+    private static String text;
+
+    @BeforeAll
+    static void setUp() {
+        pool = new ForkJoinPool(THREADS);
+        // short lines, that begin with 'b' and end with 'a', so occurrences cross every border of segments
+        final Random random = new Random(5);
+        final String alphabet = "aab\t\r x1";
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < 6_000_000) {
+            builder.append('b');
+            final int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            builder.append("a\n");
+        }
+        text = builder.toString();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"a[\t-\r]b", "a[\\t-\\r]b", "a[\\a-\\r]b", "a[\\t- ]b", "a[\\x00-z]b", "a[\\s]b",
+            "\\d+", "a.*?b", "(a|b)+", "x\\s*a", "b$", "^a", "ab|b\n", "a(?=\\n)", "(?<=\\n)b", "x\\Z", "[ab]{3}"})
+    void sameAsSequentialScan(final String regex) {
+        final Pattern pattern = Pattern.compile(regex, Pattern.MULTILINE);
+        final List<Long> parallel = new ArrayList<>();
+        new ParallelRegexScanner(pattern, ParallelRegexScanner.DEFAULT_MAX_MATCH_LENGTH,
+                ParallelRegexScanner.isLineBounded(pattern), pool)
+                .scan(text, (start, length) -> parallel.add(Finder.pack(start, length)));
+        final List<Long> sequential = new ArrayList<>();
+        final Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            sequential.add(Finder.pack(matcher.start(), matcher.end() - matcher.start()));
+        }
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    void lineBoundedPatterns() {
+        for (final String regex : new String[]{"foo\\d+", "a.*b", "\\Q.*\\E\\w", "(a)\\1", "[abc\\[]+", "(?i)abc",
+                "(?<=x)y", "\\.", "[]a]"}) {
+            assertTrue(ParallelRegexScanner.isLineBounded(Pattern.compile(regex)), regex);
+        }
+        for (final String regex : new String[]{"(?s)a.*b", "a\\sb", "[^a]+", "\\x0A", "\\Qa\nb\\E", "a\nb", "\\n",
+                "\\R", "(?<name>x)\\k<name>", "[\\t-\\r]", "[\\a-\\r]", "[\\t- ]", "[\\x00-z]", "[a[\\t-\\r]]"}) {
+            assertFalse(ParallelRegexScanner.isLineBounded(Pattern.compile(regex)), regex);
+        }
+        assertFalse(ParallelRegexScanner.isLineBounded(Pattern.compile("a.b", Pattern.DOTALL)));
+        assertFalse(ParallelRegexScanner.isLineBounded(Pattern.compile("a\nb", Pattern.LITERAL)));
+    }
+
+    @Test
+    void failureCancelsOtherSegments() throws InterruptedException {
+        final int length = 4 << 20;
+        final CountDownLatch failed = new CountDownLatch(1);
+        final AtomicLong readsAfterFailure = new AtomicLong();
+        // the first segment fails at once, other ones wait for failure and then would read their whole segments
+        final CharSequence failing = new CharSequence() {
+            @Override
+            public int length() {
+                return length;
+            }
+
+            @Override
+            public char charAt(final int index) {
+                if (index == 10) {
+                    throw new IllegalStateException("Text can't be read");
+                }
+                if (index >= length / 4) {
+                    try {
+                        failed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    readsAfterFailure.incrementAndGet();
+                }
+                return 'a';
+            }
+
+            @Override
+            public CharSequence subSequence(final int start, final int end) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final ParallelRegexScanner scanner = new ParallelRegexScanner(Pattern.compile("b"),
+                ParallelRegexScanner.DEFAULT_MAX_MATCH_LENGTH, false, pool);
+        assertThrows(IllegalStateException.class, () -> scanner.scan(failing, (start, l) -> {
+        }));
+        failed.countDown();
+        assertTrue(pool.awaitQuiescence(1, TimeUnit.MINUTES));
+        // segments stop at the next check of budget
+        assertTrue(readsAfterFailure.get() < 4 * 2 * 4096, "Segments read " + readsAfterFailure.get());
+    }
+}
@@ -0,0 +1,98 @@
+package editor.search;
+
+import editor.document.Rope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Compares text after replacement of all occurrences with {@link Matcher#replaceAll(String)}
+ */
+class ReplacerTest {
+    private static final String ALPHABET = "abcx\n";
+
+    /**
+     * Expressions, that are scanned by linear engine and by {@code java.util.regex}, with references to groups
+     */
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+            "a(b+)(?<c>c?);<$1|${c}|\\$>",
+            "x*;-",
+            "ab|a;[$0]",
+            "(a)|(b);$2$1",
+            "(?<=a)b(?=c);B",
+            "^a|b$;$0$0",
+            "(?i)AB;\\\\",
+            "(a)(b)?\\1;<$2>"
+    })
+    void regex(final String regex, final String replacement) {
+        final Random random = new Random(61);
+        for (final int length : new int[]{0, 1, 100, 50_000}) {
+            final String text = text(random, length);
+            final Pattern pattern = Pattern.compile(regex, Pattern.MULTILINE);
+            final Matcher matcher = pattern.matcher(text);
+            check(text, Replacer.regex(regex, Pattern.MULTILINE, replacement), matcher.replaceAll(replacement),
+                    (int) matcher.reset().results().count());
+        }
+    }
+
+    @Test
+    void literal() {
+        final Random random = new Random(67);
+        for (final String pattern : new String[]{"a", "aa", "abca", "x\n"}) {
+            final String text = text(random, 50_000);
+            check(text, Replacer.literal(pattern, "$1\\"), text.replace(pattern, "$1\\"),
+                    (int) Pattern.compile(Pattern.quote(pattern)).matcher(text).results().count());
+        }
+    }
+
+    @Test
+    void keywords() {
+        final Random random = new Random(71);
+        final List<String> keywords = List.of("ab", "abc", "bca", "c", "xx");
+        // keywords are replaced leftmost-longest, as alternation, that is ordered by descending length
+        final Pattern alternation = Pattern.compile(keywords.stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .map(Pattern::quote)
+                .collect(Collectors.joining("|")));
+        final String text = text(random, 50_000);
+        check(text, Replacer.keywords(keywords, "${k}"),
+                alternation.matcher(text).replaceAll(Matcher.quoteReplacement("${k}")),
+                (int) alternation.matcher(text).results().count());
+    }
+
+    @Test
+    void missingGroup() {
+        assertThrows(IllegalArgumentException.class, () -> Replacer.regex("a", 0, "$2"));
+    }
+
+    /**
+     * Replaces occurrences in string and in rope, and applies replaced range to text
+     */
+    private static void check(final String text, final Replacer replacer, final String expected, final int count) {
+        for (final CharSequence source : new CharSequence[]{text, Rope.of(text)}) {
+            final Replacer.Result result = replacer.replaceAll(source);
+            assertEquals(count, result.getCount());
+            assertEquals(expected, text.substring(0, result.getStart()) + result.getText()
+                    + text.substring(result.getEnd()));
+        }
+    }
+
+    private static String text(final Random random, final int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,92 @@
+package editor.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares occurrences, that session keeps after random edits, with the full scan of edited text
+ */
+class SearchSessionTest {
+    private static final int EDITS = 2000;
+
+    @Test
+    void literal() {
+        check(LiteralMatcher.compile("aba"), "ab\n");
+    }
+
+    @Test
+    void keywords() {
+        check(AhoCorasick.compile(List.of("ab", "abc", "bca", "c")), "abc\n");
+    }
+
+    @Test
+    void boundedRegex() {
+        for (final String regex : new String[]{"a[xb]{0,3}b", "ab|ba", "(a|b)c?", "a[^\n]{0,50}b", "x?"}) {
+            check(LinearRegex.compile(Pattern.compile(regex)), "abcx\n");
+        }
+    }
+
+    @Test
+    void unboundedPatternIsScannedAgain() {
+        final Finder finder = LinearRegex.compile(Pattern.compile("a.*b"));
+        final StringBuilder text = new StringBuilder("a" + "x".repeat(20_000) + "b");
+        final SearchSession session = new SearchSession(finder);
+        assertFalse(session.update(text, 0, 0, text.length()));
+        assertFalse(new SearchSession(new RegexFinder(Pattern.compile("a(?=b)"), 16)).update(text, 0, 0, 0));
+    }
+
+    private static void check(final Finder finder, final String alphabet) {
+        final Random random = new Random(7);
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        final SearchSession session = new SearchSession(finder);
+        String current = text.toString();
+        assertTrue(session.update(current, 0, 0, current.length()));
+        assertEquals(fullScan(finder, current), occurrences(session.getMatches()));
+        for (int edit = 0; edit < EDITS; edit++) {
+            final int offset = random.nextInt(text.length() + 1);
+            final int removed = random.nextInt(Math.min(8, text.length() - offset) + 1);
+            final StringBuilder inserted = new StringBuilder();
+            for (int i = random.nextInt(8); i > 0; i--) {
+                inserted.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            text.replace(offset, offset + removed, inserted.toString());
+            current = text.toString();
+            assertTrue(session.update(current, offset, removed, inserted.length()));
+            assertEquals(fullScan(finder, current), occurrences(session.getMatches()),
+                    "Edit " + edit + " at " + offset);
+        }
+    }
+
+    private static List<Long> fullScan(final Finder finder, final String text) {
+        final List<Long> result = new ArrayList<>();
+        int position = 0;
+        while (position <= text.length()) {
+            final long found = finder.find(text, position, text.length());
+            if (found == Finder.NOT_FOUND) {
+                break;
+            }
+            result.add(found);
+            position = Finder.length(found) == 0 ? Finder.start(found) + 1 : Finder.start(found) + Finder.length(found);
+        }
+        return result;
+    }
+
+    private static List<Long> occurrences(final MatchIndex matches) {
+        final List<Long> result = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+            result.add(Finder.pack(matches.start(i), matches.length(i)));
+        }
+        return result;
+    }
+}
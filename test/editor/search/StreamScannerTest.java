@@ -0,0 +1,206 @@
+package editor.search;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares occurrences, that scanners find in stream, which is read by chunks of random sizes,
+ * with the naive scan of the whole text. Text is a few chunks long, and has long lines and characters
+ * of two, three and four bytes, so occurrences, their lines and previews cross borders of chunks
+ */
+class StreamScannerTest {
+    private static final int PREVIEW_BEFORE = 60;
+    private static final int PREVIEW_AFTER = 120;
+    private static final String LITERAL = "é😀b";
+    private static final String[] PIECES = {"a", "b", "é", "€", "😀", " ", "\r", LITERAL};
+
+    private static String text;
+    private static byte[] bytes;
+    private static List<Integer> lineStarts;
+
+    @BeforeAll
+    static void generate() {
+        final Random random = new Random(37);
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < 3_500_000) {
+            final int line = random.nextInt(50) == 0 ? 20_000 + random.nextInt(300_000) : random.nextInt(200);
+            for (int i = 0; i < line; i++) {
+                builder.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            builder.append('\n');
+        }
+        text = builder.toString();
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+        lineStarts = new ArrayList<>();
+        lineStarts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineStarts.add(i + 1);
+            }
+        }
+    }
+
+    @Test
+    void bytewiseLiteral() throws IOException {
+        final String encoded = StreamScanner.latin1(LITERAL);
+        final StreamScanner scanner = StreamScanner.bytewise(LiteralMatcher.compile(encoded),
+                Long.MAX_VALUE, PREVIEW_BEFORE, PREVIEW_AFTER);
+        assertEquals(bytewiseScan(Pattern.quote(encoded), Long.MAX_VALUE),
+                scan(scanner, Long.MAX_VALUE, new Random(41)));
+    }
+
+    @Test
+    void bytewiseKeywords() throws IOException {
+        final List<String> keywords = List.of(StreamScanner.latin1("€a"), StreamScanner.latin1("€ab"),
+                StreamScanner.latin1("😀"));
+        final StreamScanner scanner = StreamScanner.bytewise(AhoCorasick.compile(keywords),
+                Long.MAX_VALUE, PREVIEW_BEFORE, PREVIEW_AFTER);
+        // keywords are found leftmost-longest, as alternation, that is ordered by descending length
+        final String alternation = String.join("|", Pattern.quote(keywords.get(1)), Pattern.quote(keywords.get(0)),
+                Pattern.quote(keywords.get(2)));
+        assertEquals(bytewiseScan(alternation, Long.MAX_VALUE),
+                scan(scanner, Long.MAX_VALUE, new Random(43)));
+    }
+
+    @Test
+    void decodingRegex() throws IOException {
+        final Pattern pattern = Pattern.compile("é(?:ab|€| )+b");
+        final StreamScanner scanner = StreamScanner.decoding(LinearRegex.compile(pattern),
+                Long.MAX_VALUE, PREVIEW_BEFORE, PREVIEW_AFTER);
+        assertEquals(decodingScan(pattern, Long.MAX_VALUE), scan(scanner, Long.MAX_VALUE, new Random(47)));
+    }
+
+    @Test
+    void limitOfOccurrences() throws IOException {
+        final Pattern pattern = Pattern.compile(Pattern.quote(LITERAL));
+        final StreamScanner scanner = StreamScanner.decoding(LiteralMatcher.compile(LITERAL),
+                1000, PREVIEW_BEFORE, PREVIEW_AFTER);
+        assertEquals(decodingScan(pattern, 1000), scan(scanner, 1000, new Random(53)));
+    }
+
+    private static List<String> scan(final StreamScanner scanner, final long maxMatches, final Random random)
+            throws IOException {
+        final List<String> result = new ArrayList<>();
+        final long read = scanner.scan(null, new RandomChannel(random), false,
+                matches -> matches.forEach(match -> result.add(describe(match.getOffset(), match.getLength(),
+                        match.getLine(), match.getColumn(), match.getPreview()))));
+        if (result.size() < maxMatches) {
+            assertEquals(bytes.length, read);
+        }
+        return result;
+    }
+
+    /**
+     * Finds occurrences of pattern in characters of the whole text
+     */
+    private static List<String> decodingScan(final Pattern pattern, final long maxMatches) {
+        final List<String> result = new ArrayList<>();
+        final Matcher matcher = pattern.matcher(text);
+        while (result.size() < maxMatches && matcher.find()) {
+            final int start = matcher.start();
+            final int lineStart = lineStarts.get(line(start) - 1);
+            int end = matcher.end();
+            while (end < text.length() && end - start < PREVIEW_AFTER
+                    && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+                end++;
+            }
+            result.add(describe(start, matcher.end() - start, line(start), start - lineStart + 1,
+                    text.substring(Math.max(lineStart, start - PREVIEW_BEFORE), end)));
+        }
+        return result;
+    }
+
+    /**
+     * Finds occurrences of expression over bytes of UTF-8 encoding, each byte is one character, in the whole text
+     */
+    private static List<String> bytewiseScan(final String regex, final long maxMatches) {
+        final int[] charsBefore = new int[bytes.length + 1];
+        for (int i = 0; i < bytes.length; i++) {
+            final int b = bytes[i] & 0xFF;
+            charsBefore[i + 1] = charsBefore[i] + ((b & 0xC0) == 0x80 ? 0 : b >= 0xF0 ? 2 : 1);
+        }
+        final List<String> result = new ArrayList<>();
+        final Matcher matcher = Pattern.compile(regex).matcher(new String(bytes, StandardCharsets.ISO_8859_1));
+        while (result.size() < maxMatches && matcher.find()) {
+            final int start = matcher.start();
+            int begin = start;
+            while (begin > 0 && start - begin < PREVIEW_BEFORE && bytes[begin - 1] != '\n') {
+                begin--;
+            }
+            while ((bytes[begin] & 0xC0) == 0x80) {
+                begin++;
+            }
+            int end = matcher.end();
+            while (end < bytes.length && end - start < PREVIEW_AFTER && bytes[end] != '\n' && bytes[end] != '\r') {
+                end++;
+            }
+            while (end > matcher.end() && end < bytes.length && (bytes[end] & 0xC0) == 0x80) {
+                end--;
+            }
+            final int offset = charsBefore[start];
+            final int lineStart = lineStarts.get(line(offset) - 1);
+            result.add(describe(offset, charsBefore[matcher.end()] - offset, line(offset), offset - lineStart + 1,
+                    new String(bytes, begin, end - begin, StandardCharsets.UTF_8)));
+        }
+        return result;
+    }
+
+    /**
+     * Gets number of line of offset, starting from {@code 1}
+     */
+    private static int line(final int offset) {
+        final int index = Collections.binarySearch(lineStarts, offset);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private static String describe(final long offset, final int length, final long line, final long column,
+                                   final String preview) {
+        return offset + "+" + length + " at " + line + ":" + column + " " + preview;
+    }
+
+    /**
+     * Stream of text, whose reads return random numbers of bytes, from one byte to a few chunks
+     */
+    private static final class RandomChannel implements ReadableByteChannel {
+        private final Random random;
+        private int position;
+
+        RandomChannel(final Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) {
+            if (position == bytes.length) {
+                return -1;
+            }
+            final int limit = random.nextBoolean() ? 1 + random.nextInt(16) : 1 + random.nextInt(3 << 20);
+            final int count = Math.min(Math.min(limit, dst.remaining()), bytes.length - position);
+            dst.put(bytes, position, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}